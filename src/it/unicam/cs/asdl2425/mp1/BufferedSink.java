@@ -0,0 +1,265 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Base delle {@link Sink} che calcolano l'hash di una foglia man mano che il
+ * funnel scrive il contenuto del dato. I byte vengono accumulati in un blocco
+ * di lunghezza fissa, che viene passato all'algoritmo quando è pieno, quindi
+ * la memoria usata non dipende dalla dimensione del dato.
+ *
+ * Ogni algoritmo mantiene una sink per thread, riusata tra le chiamate, in
+ * modo che il calcolo non allochi oggetti.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+abstract class BufferedSink implements Sink {
+
+    /**
+     * Lunghezza del blocco, multipla della dimensione dei blocchi degli
+     * algoritmi disponibili.
+     */
+    static final int BLOCK_LENGTH = 64;
+
+    private final byte[] block = new byte[BLOCK_LENGTH]; // Byte in attesa
+
+    private int position; // Numero di byte in attesa nel blocco
+
+    private boolean inUse; // True durante un calcolo, per i funnel annidati
+
+    /**
+     * Prepara l'algoritmo per un nuovo hash.
+     */
+    protected abstract void begin();
+
+    /**
+     * Passa all'algoritmo un blocco completo di {@link #BLOCK_LENGTH} byte.
+     *
+     * @param block
+     *                  il blocco.
+     */
+    protected abstract void processBlock(byte[] block);
+
+    /**
+     * Passa all'algoritmo gli ultimi byte e scrive l'hash risultante.
+     *
+     * @param block
+     *                   il blocco contenente gli ultimi byte.
+     * @param length
+     *                   il numero di byte validi nel blocco, minore di
+     *                   {@link #BLOCK_LENGTH}.
+     * @param out
+     *                   l'array in cui scrivere l'hash.
+     * @param outOff
+     *                   la posizione di out da cui scrivere l'hash.
+     */
+    protected abstract void finish(byte[] block, int length, byte[] out, int outOff);
+
+    /**
+     * Calcola l'hash del contenuto di un dato scritto da un funnel, usando la
+     * sink del thread corrente. Se la sink è già in uso, perché il funnel
+     * calcola a sua volta un hash, ne viene creata una nuova.
+     *
+     * @param sinks
+     *                    le sink dei thread.
+     * @param factory
+     *                    il costruttore di nuove sink.
+     * @param data
+     *                    il dato.
+     * @param funnel
+     *                    il funnel del dato.
+     * @param out
+     *                    l'array in cui scrivere l'hash.
+     * @param outOff
+     *                    la posizione di out da cui scrivere l'hash.
+     */
+    static <T> void digest(ThreadLocal<? extends BufferedSink> sinks, Supplier<? extends BufferedSink> factory,
+            T data, Funnel<? super T> funnel, byte[] out, int outOff) {
+        BufferedSink sink = sinks.get();
+        digest(sink.inUse ? factory.get() : sink, data, funnel, out, outOff);
+    }
+
+    /**
+     * Calcola l'hash del contenuto di un dato scritto da un funnel con la
+     * sink fornita, che non deve essere in uso.
+     *
+     * @param sink
+     *                   la sink.
+     * @param data
+     *                   il dato.
+     * @param funnel
+     *                   il funnel del dato.
+     * @param out
+     *                   l'array in cui scrivere l'hash.
+     * @param outOff
+     *                   la posizione di out da cui scrivere l'hash.
+     */
+    static <T> void digest(BufferedSink sink, T data, Funnel<? super T> funnel, byte[] out, int outOff) {
+        sink.inUse = true;
+        try {
+            sink.position = 0;
+            sink.begin();
+            funnel.funnel(data, sink);
+            sink.finish(sink.block, sink.position, out, outOff);
+        } finally {
+            sink.inUse = false;
+        }
+    }
+
+    @Override
+    public Sink putByte(byte value) {
+        this.block[this.position++] = value;
+        if(this.position == BLOCK_LENGTH)
+            flush();
+        return this;
+    }
+
+    @Override
+    public Sink putBytes(byte[] bytes, int off, int len) {
+        while (len > 0) {
+            int count = Math.min(len, BLOCK_LENGTH - this.position);
+            System.arraycopy(bytes, off, this.block, this.position, count);
+            this.position += count;
+            off += count;
+            len -= count;
+            if(this.position == BLOCK_LENGTH)
+                flush();
+        }
+        return this;
+    }
+
+    @Override
+    public Sink putInt(int value) {
+        if(this.position + Integer.BYTES > BLOCK_LENGTH)
+            return Sink.super.putInt(value);
+
+        this.block[this.position] = (byte) (value >> 24);
+        this.block[this.position + 1] = (byte) (value >> 16);
+        this.block[this.position + 2] = (byte) (value >> 8);
+        this.block[this.position + 3] = (byte) value;
+        this.position += Integer.BYTES;
+        if(this.position == BLOCK_LENGTH)
+            flush();
+        return this;
+    }
+
+    @Override
+    public Sink putLong(long value) {
+        if(this.position + Long.BYTES > BLOCK_LENGTH)
+            return Sink.super.putLong(value);
+
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            this.block[this.position + i] = (byte) value;
+            value >>= 8;
+        }
+        this.position += Long.BYTES;
+        if(this.position == BLOCK_LENGTH)
+            flush();
+        return this;
+    }
+
+    /**
+     * Passa all'algoritmo il blocco pieno e lo svuota.
+     */
+    private void flush() {
+        processBlock(this.block);
+        this.position = 0;
+    }
+
+    /**
+     * Sink che passa i byte a un {@link MessageDigest}, eventualmente dopo un
+     * byte di prefisso.
+     */
+    static final class MessageDigestSink extends BufferedSink {
+
+        private final MessageDigest md; // Digest riusato tra le chiamate
+
+        private final int prefix; // Byte scritto prima del contenuto, -1 se
+                                  // assente
+
+        /**
+         * Costruisce una sink per l'algoritmo dato.
+         *
+         * @param algorithm
+         *                      il nome dell'algoritmo.
+         * @param prefix
+         *                      il byte da scrivere prima del contenuto, -1
+         *                      se non va scritto nessun prefisso.
+         */
+        MessageDigestSink(String algorithm, int prefix) {
+            try {
+                this.md = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(algorithm + " algorithm not found", e);
+            }
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected void begin() {
+            this.md.reset();
+            if(this.prefix >= 0)
+                this.md.update((byte) this.prefix);
+        }
+
+        @Override
+        protected void processBlock(byte[] block) {
+            this.md.update(block, 0, BLOCK_LENGTH);
+        }
+
+        @Override
+        protected void finish(byte[] block, int length, byte[] out, int outOff) {
+            this.md.update(block, 0, length);
+            try {
+                this.md.digest(out, outOff, this.md.getDigestLength());
+            } catch (DigestException e) {
+                throw new IllegalArgumentException("Spazio insufficiente per l'hash nell'array di output", e);
+            }
+        }
+    }
+
+    /**
+     * Sink che accumula tutti i byte in un array e ne calcola l'hash con
+     * {@link MerkleHasher#digestInto(byte[], int, int, byte[], int)}, usata
+     * per gli algoritmi che non forniscono una sink propria.
+     */
+    static final class ArraySink extends BufferedSink {
+
+        private final MerkleHasher hasher; // Algoritmo degli hash
+
+        private byte[] content = new byte[2 * BLOCK_LENGTH]; // Byte accumulati
+
+        private int length; // Numero di byte accumulati
+
+        ArraySink(MerkleHasher hasher) {
+            this.hasher = hasher;
+        }
+
+        @Override
+        protected void begin() {
+            this.length = 0;
+        }
+
+        @Override
+        protected void processBlock(byte[] block) {
+            append(block, BLOCK_LENGTH);
+        }
+
+        @Override
+        protected void finish(byte[] block, int length, byte[] out, int outOff) {
+            append(block, length);
+            this.hasher.digestInto(this.content, 0, this.length, out, outOff);
+        }
+
+        private void append(byte[] block, int count) {
+            if(this.length + count > this.content.length)
+                this.content = Arrays.copyOf(this.content, 2 * this.content.length);
+            System.arraycopy(block, 0, this.content, this.length, count);
+            this.length += count;
+        }
+    }
+}
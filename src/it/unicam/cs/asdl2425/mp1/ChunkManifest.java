@@ -0,0 +1,304 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Elenco dei chunk in cui un file è stato diviso da un
+ * {@link FileMerkleizer}, con la posizione, la lunghezza e l'hash di ogni
+ * chunk, insieme al root dell'albero di Merkle che ha i chunk come foglie. Il
+ * root coincide con quello di un {@link MerkleTree} costruito su una
+ * HashLinkedList dei contenuti dei chunk con {@link Funnel#BYTE_ARRAY}.
+ *
+ * Il manifest può essere scritto e letto nel formato binario seguente:
+ *
+ * <pre>
+ * offset  lunghezza     contenuto
+ * 0       1             versione del formato ({@link #VERSION})
+ * 1       1             identificativo dell'algoritmo di hash
+ *                       ({@link MerkleHasher#getId()})
+ * 2       1             lunghezza h di un hash in byte
+ * 3       1             riservato, sempre 0
+ * 4       4             numero n di chunk
+ * 8       8             lunghezza del file in byte
+ * 16      n * (4 + h)   per ogni chunk, la sua lunghezza e il suo hash
+ * </pre>
+ *
+ * Tutti i valori su più byte sono in ordine big-endian. Le posizioni dei
+ * chunk e il root non vengono scritti, perché si ricavano dalle lunghezze e
+ * dagli hash.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public final class ChunkManifest {
+
+    /**
+     * Versione del formato binario prodotto e accettato da questa classe.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Lunghezza in byte dell'intestazione che precede i chunk.
+     */
+    private static final int HEADER_LENGTH = 16;
+
+    /**
+     * Algoritmo usato per calcolare gli hash.
+     */
+    private final MerkleHasher hasher;
+
+    /**
+     * Posizione di ogni chunk nel file, seguita dalla lunghezza del file.
+     */
+    private final long[] offsets;
+
+    /**
+     * Hash dei chunk, memorizzati in modo contiguo.
+     */
+    private final byte[] digests;
+
+    /**
+     * Hash del root dell'albero che ha i chunk come foglie.
+     */
+    private final byte[] rootHash;
+
+    /**
+     * Costruisce il manifest di un file a partire dalle lunghezze e dagli
+     * hash dei suoi chunk, calcolandone il root.
+     *
+     * @param hasher
+     *                    l'algoritmo con cui sono stati calcolati gli hash.
+     * @param lengths
+     *                    le lunghezze dei chunk, almeno uno.
+     * @param digests
+     *                    gli hash contigui dei chunk, nello stesso ordine.
+     */
+    ChunkManifest(MerkleHasher hasher, int[] lengths, byte[] digests) {
+        int hashLength = hasher.getDigestLength();
+        this.hasher = hasher;
+        this.digests = digests;
+        this.offsets = new long[lengths.length + 1];
+
+        StreamingMerkleRoot<Object> root = new StreamingMerkleRoot<>(hasher);
+        byte[] digest = new byte[hashLength];
+        for (int i = 0; i < lengths.length; i++) {
+            this.offsets[i + 1] = this.offsets[i] + lengths[i];
+            System.arraycopy(digests, i * hashLength, digest, 0, hashLength);
+            root.addDigest(digest);
+        }
+        this.rootHash = root.getRootDigest();
+    }
+
+    /**
+     * Legge un manifest dalla posizione corrente di un buffer, avanzando la
+     * posizione alla fine del manifest.
+     *
+     * @param buffer
+     *                   il buffer da cui leggere il manifest.
+     * @return il manifest letto.
+     * @throws IllegalArgumentException
+     *                                      se il buffer è null o non contiene
+     *                                      un manifest valido nel formato
+     *                                      {@link #VERSION} con un algoritmo
+     *                                      di hash disponibile.
+     */
+    public static ChunkManifest fromByteBuffer(ByteBuffer buffer) {
+
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer passato a fromByteBuffer() è null!");
+
+        int position = buffer.position();
+        if(buffer.limit() - position < HEADER_LENGTH)
+            throw new IllegalArgumentException("Il buffer non contiene un'intestazione completa!");
+        if(buffer.get(position) != VERSION)
+            throw new IllegalArgumentException("Versione del formato non supportata: " + buffer.get(position));
+        MerkleHasher hasher = MerkleHasher.forId(buffer.get(position + 1));
+        if(hasher == null)
+            throw new IllegalArgumentException("Algoritmo di hash non supportato: " + buffer.get(position + 1));
+        int hashLength = hasher.getDigestLength();
+        if(buffer.get(position + 2) != hashLength)
+            throw new IllegalArgumentException("Lunghezza degli hash non supportata: " + buffer.get(position + 2));
+
+        int count = buffer.getInt(position + 4);
+        long fileLength = buffer.getLong(position + 8);
+        if(count < 1 || count > (buffer.limit() - position - HEADER_LENGTH) / (4 + hashLength))
+            throw new IllegalArgumentException("Il buffer non contiene un manifest completo!");
+
+        int[] lengths = new int[count];
+        byte[] digests = new byte[count * hashLength];
+        long total = 0;
+        int offset = position + HEADER_LENGTH;
+        for (int i = 0; i < count; i++) {
+            lengths[i] = buffer.getInt(offset);
+            if(lengths[i] < 0)
+                throw new IllegalArgumentException("Lunghezza del chunk " + i + " non valida: " + lengths[i]);
+            buffer.get(offset + 4, digests, i * hashLength, hashLength);
+            total += lengths[i];
+            offset += 4 + hashLength;
+        }
+
+        if(total != fileLength)
+            throw new IllegalArgumentException("La lunghezza del file non coincide con quella dei chunk!");
+
+        buffer.position(offset);
+        return new ChunkManifest(hasher, lengths, digests);
+    }
+
+    /**
+     * Restituisce l'algoritmo con cui sono stati calcolati gli hash.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    public MerkleHasher getHasher() {
+        return this.hasher;
+    }
+
+    /**
+     * Restituisce la lunghezza in byte del file.
+     *
+     * @return la lunghezza del file.
+     */
+    public long getFileLength() {
+        return this.offsets[this.offsets.length - 1];
+    }
+
+    /**
+     * Restituisce il numero di chunk del file. Un file vuoto ha un solo chunk
+     * di lunghezza 0.
+     *
+     * @return il numero di chunk.
+     */
+    public int getChunkCount() {
+        return this.offsets.length - 1;
+    }
+
+    /**
+     * Restituisce la posizione nel file del primo byte di un chunk.
+     *
+     * @param index
+     *                  l'indice del chunk.
+     * @return la posizione del chunk.
+     * @throws IllegalArgumentException
+     *                                      se l'indice non è valido.
+     */
+    public long getChunkOffset(int index) {
+        checkIndex(index, "getChunkOffset");
+        return this.offsets[index];
+    }
+
+    /**
+     * Restituisce la lunghezza in byte di un chunk.
+     *
+     * @param index
+     *                  l'indice del chunk.
+     * @return la lunghezza del chunk.
+     * @throws IllegalArgumentException
+     *                                      se l'indice non è valido.
+     */
+    public int getChunkLength(int index) {
+        checkIndex(index, "getChunkLength");
+        return (int) (this.offsets[index + 1] - this.offsets[index]);
+    }
+
+    /**
+     * Restituisce una copia dell'hash di un chunk.
+     *
+     * @param index
+     *                  l'indice del chunk.
+     * @return l'hash del chunk.
+     * @throws IllegalArgumentException
+     *                                      se l'indice non è valido.
+     */
+    public byte[] getChunkDigest(int index) {
+        checkIndex(index, "getChunkDigest");
+        int hashLength = this.hasher.getDigestLength();
+        byte[] digest = new byte[hashLength];
+        System.arraycopy(this.digests, index * hashLength, digest, 0, hashLength);
+        return digest;
+    }
+
+    private void checkIndex(int index, String method) {
+        if(index < 0 || index >= getChunkCount())
+            throw new IllegalArgumentException("index passato a " + method + "() non è valido!");
+    }
+
+    /**
+     * Restituisce il nodo radice dell'albero che ha i chunk come foglie. Il
+     * nodo contiene solamente l'hash del root.
+     *
+     * @return il nodo radice.
+     */
+    public MerkleNode getRoot() {
+        return new MerkleNode(this.rootHash.clone());
+    }
+
+    /**
+     * Restituisce gli indici dei chunk di questo manifest il cui contenuto
+     * non è presente tra i chunk dell'altro manifest, in qualunque posizione.
+     * Se l'altro manifest descrive una versione del file già disponibile,
+     * questi sono i soli chunk da trasferire per ricostruire questa versione.
+     *
+     * @param available
+     *                      il manifest dei chunk già disponibili.
+     * @return l'insieme non modificabile degli indici dei chunk mancanti, in
+     *         ordine crescente.
+     * @throws IllegalArgumentException
+     *                                      se l'altro manifest è null o usa
+     *                                      un algoritmo di hash diverso.
+     */
+    public SortedSet<Integer> findMissingChunks(ChunkManifest available) {
+
+        if(available == null)
+            throw new IllegalArgumentException("available passato a findMissingChunks() è null!");
+        if(!this.hasher.equals(available.hasher))
+            throw new IllegalArgumentException("available usa un algoritmo di hash diverso!");
+
+        Set<MerkleNode> known = new HashSet<>();
+        for (int i = 0; i < available.getChunkCount(); i++)
+            known.add(new MerkleNode(available.getChunkDigest(i)));
+
+        SortedSet<Integer> missing = new TreeSet<>();
+        for (int i = 0; i < getChunkCount(); i++)
+            if(!known.contains(new MerkleNode(getChunkDigest(i))))
+                missing.add(i);
+
+        return Collections.unmodifiableSortedSet(missing);
+    }
+
+    /**
+     * Restituisce la lunghezza in byte del formato binario del manifest.
+     *
+     * @return la lunghezza del manifest codificato.
+     */
+    public long getEncodedLength() {
+        return HEADER_LENGTH + (long) getChunkCount() * (4 + this.hasher.getDigestLength());
+    }
+
+    /**
+     * Scrive il formato binario del manifest nella posizione corrente di un
+     * buffer, avanzandone la posizione.
+     *
+     * @param buffer
+     *                   il buffer in cui scrivere.
+     * @throws IllegalArgumentException
+     *                                      se il buffer è null.
+     * @throws java.nio.BufferOverflowException
+     *                                              se il buffer non ha
+     *                                              abbastanza spazio.
+     */
+    public void writeTo(ByteBuffer buffer) {
+
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer passato a writeTo() è null!");
+
+        int hashLength = this.hasher.getDigestLength();
+        buffer.put(VERSION).put(this.hasher.getId()).put((byte) hashLength).put((byte) 0);
+        buffer.putInt(getChunkCount()).putLong(getFileLength());
+        for (int i = 0; i < getChunkCount(); i++)
+            buffer.putInt(getChunkLength(i)).put(this.digests, i * hashLength, hashLength);
+    }
+}
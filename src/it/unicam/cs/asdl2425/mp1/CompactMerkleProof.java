@@ -0,0 +1,528 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rappresentazione compatta e immutabile di una prova di Merkle. Gli hash
+ * degli step sono memorizzati in modo contiguo e le direzioni in una maschera
+ * di bit, quindi ogni step occupa solamente i byte del suo hash.
+ *
+ * La prova è memorizzata direttamente nel suo formato binario, che è anche
+ * il formato usato per la trasmissione e la memorizzazione su disco:
+ *
+ * <pre>
+ * offset  lunghezza  contenuto
+ * 0       1          versione del formato ({@link #VERSION})
+ * 1       1          lunghezza h di un hash in byte
+ * 2       1          numero n di step, al più 64
+ * 3       1          identificativo dell'algoritmo di hash
+ *                    ({@link MerkleHasher#getId()}, 0 per MD5)
+ * 4       8          maschera delle direzioni: il bit i vale 1 se l'hash
+ *                    dello step i va concatenato a sinistra
+ * 12      8          maschera dei fratelli mancanti: il bit i vale 1 se lo
+ *                    step i non ha fratello e l'hash viene ricalcolato da solo
+ * 20      h          hash del root
+ * 20 + h  n * h      hash degli step, nell'ordine della verifica; gli step
+ *                    senza fratello contengono h byte a 0
+ * </pre>
+ *
+ * Tutti i valori su più byte sono in ordine big-endian. Le prove MD5 hanno
+ * l'identificativo 0, quindi sono identiche a quelle prodotte prima che
+ * l'algoritmo fosse configurabile. La lettura da un
+ * ByteBuffer non copia i dati e la verifica può essere eseguita direttamente
+ * sul buffer, senza costruire nessun oggetto.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public final class CompactMerkleProof {
+
+    /**
+     * Versione del formato binario prodotto e accettato da questa classe.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Lunghezza in byte dell'intestazione che precede l'hash del root.
+     */
+    private static final int HEADER_LENGTH = 20;
+
+    /**
+     * Numero massimo di step, limitato dalla dimensione delle maschere.
+     */
+    private static final int MAX_STEPS = Long.SIZE;
+
+    /**
+     * Hash vuoto, usato al posto del fratello mancante di un nodo.
+     */
+    private static final byte[] EMPTY_HASH = new byte[0];
+
+    /**
+     * La prova nel formato binario, dalla posizione 0 al limite.
+     */
+    private final ByteBuffer encoded;
+
+    /**
+     * Costruisce la rappresentazione compatta di una prova di Merkle,
+     * considerando gli step aggiunti alla prova.
+     *
+     * @param proof
+     *                  la prova da rappresentare.
+     * @throws IllegalArgumentException
+     *                                      se la prova è null, ha più di 64
+     *                                      step o contiene un hash che non ha
+     *                                      la lunghezza di quelli del suo
+     *                                      algoritmo.
+     */
+    public CompactMerkleProof(MerkleProof proof) {
+
+        if(proof == null)
+            throw new IllegalArgumentException("proof passato al costruttore è null!");
+
+        MerkleHasher hasher = proof.getHasher();
+        int hashLength = hasher.getDigestLength();
+        byte[] rootHash = proof.getRootDigest();
+        if(rootHash == null || rootHash.length != hashLength)
+            throw new IllegalArgumentException("proof passato al costruttore non ha un root valido!");
+
+        HashLinkedList<MerkleProof.MerkleProofHash> steps = proof.getProofHashes();
+        if(steps.getSize() > MAX_STEPS)
+            throw new IllegalArgumentException("proof passato al costruttore ha troppi step!");
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + (steps.getSize() + 1) * hashLength);
+        buffer.put(VERSION).put((byte) hashLength).put((byte) steps.getSize()).put(hasher.getId());
+
+        long leftMask = 0;
+        long missingMask = 0;
+        int offset = HEADER_LENGTH + hashLength;
+        int i = 0;
+        for (MerkleProof.MerkleProofHash step : steps) {
+            byte[] digest = step.getDigest();
+
+            if(digest == null || (digest.length != 0 && digest.length != hashLength))
+                throw new IllegalArgumentException("proof passato al costruttore contiene un hash non valido!");
+
+            if(digest.length == 0)
+                missingMask |= 1L << i;
+            else {
+                if(step.isLeft())
+                    leftMask |= 1L << i;
+                buffer.put(offset, digest);
+            }
+
+            offset += hashLength;
+            i++;
+        }
+
+        buffer.putLong(4, leftMask).putLong(12, missingMask).put(HEADER_LENGTH, rootHash);
+        buffer.clear();
+        this.encoded = buffer;
+    }
+
+    /**
+     * Costruisce una prova a partire dal buffer che la contiene, senza
+     * copiarlo.
+     *
+     * @param encoded
+     *                    il buffer, contenente esattamente una prova dalla
+     *                    posizione 0 al limite.
+     */
+    private CompactMerkleProof(ByteBuffer encoded) {
+        this.encoded = encoded;
+    }
+
+    /**
+     * Legge una prova dalla posizione corrente di un buffer, avanzando la
+     * posizione alla fine della prova. La prova restituita condivide il
+     * contenuto del buffer, senza copiarlo, quindi il buffer non deve essere
+     * modificato finché la prova è in uso.
+     *
+     * @param buffer
+     *                   il buffer da cui leggere la prova.
+     * @return la prova letta.
+     * @throws IllegalArgumentException
+     *                                      se il buffer è null o non contiene
+     *                                      una prova valida nel formato
+     *                                      {@link #VERSION} con un algoritmo
+     *                                      di hash disponibile.
+     */
+    public static CompactMerkleProof fromByteBuffer(ByteBuffer buffer) {
+
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer passato a fromByteBuffer() è null!");
+
+        int position = buffer.position();
+        int length = encodedLength(buffer, position);
+
+        // Le viste create con slice sono sempre big-endian
+        ByteBuffer slice = buffer.slice(position, length);
+        buffer.position(position + length);
+
+        return new CompactMerkleProof(slice);
+    }
+
+    /**
+     * Controlla l'intestazione della prova che inizia nella posizione data e
+     * ne restituisce la lunghezza complessiva.
+     *
+     * @param buffer
+     *                     il buffer contenente la prova.
+     * @param position
+     *                     la posizione di inizio della prova.
+     * @return la lunghezza in byte della prova.
+     * @throws IllegalArgumentException
+     *                                      se la prova non è valida o non è
+     *                                      interamente contenuta nel buffer.
+     */
+    private static int encodedLength(ByteBuffer buffer, int position) {
+
+        if(buffer.limit() - position < HEADER_LENGTH)
+            throw new IllegalArgumentException("Il buffer non contiene un'intestazione completa!");
+        if(buffer.get(position) != VERSION)
+            throw new IllegalArgumentException("Versione del formato non supportata: " + buffer.get(position));
+        MerkleHasher hasher = MerkleHasher.forId(buffer.get(position + 3));
+        if(hasher == null)
+            throw new IllegalArgumentException("Algoritmo di hash non supportato: " + buffer.get(position + 3));
+        int hashLength = hasher.getDigestLength();
+        if(buffer.get(position + 1) != hashLength)
+            throw new IllegalArgumentException("Lunghezza degli hash non supportata: " + buffer.get(position + 1));
+
+        int steps = buffer.get(position + 2);
+        if(steps < 0 || steps > MAX_STEPS)
+            throw new IllegalArgumentException("Numero di step non valido: " + steps);
+
+        int length = HEADER_LENGTH + (steps + 1) * hashLength;
+        if(buffer.limit() - position < length)
+            throw new IllegalArgumentException("Il buffer non contiene una prova completa!");
+
+        return length;
+    }
+
+    /**
+     * Restituisce l'algoritmo di hash indicato nell'intestazione di una prova
+     * già controllata.
+     */
+    private static MerkleHasher hasherAt(ByteBuffer buffer, int position) {
+        return MerkleHasher.forId(buffer.get(position + 3));
+    }
+
+    /**
+     * Restituisce l'algoritmo di hash con cui è stata costruita la prova.
+     *
+     * @return l'algoritmo di hash.
+     */
+    public MerkleHasher getHasher() {
+        return hasherAt(this.encoded, 0);
+    }
+
+    /**
+     * Restituisce il numero di step della prova.
+     *
+     * @return il numero di step.
+     */
+    public int getLength() {
+        return this.encoded.get(2);
+    }
+
+    /**
+     * Restituisce la lunghezza in byte del formato binario della prova.
+     *
+     * @return la lunghezza della prova codificata.
+     */
+    public int getEncodedLength() {
+        return this.encoded.limit();
+    }
+
+    /**
+     * Restituisce l'hash esadecimale del root per il quale la prova è stata
+     * costruita.
+     *
+     * @return l'hash del root.
+     */
+    public String getRootHash() {
+        byte[] rootHash = new byte[this.encoded.get(1)];
+        this.encoded.get(HEADER_LENGTH, rootHash);
+        return HashUtil.toHex(rootHash);
+    }
+
+    /**
+     * Restituisce una vista in sola lettura del formato binario della prova,
+     * dalla posizione 0 al limite, senza copiarlo.
+     *
+     * @return il buffer contenente la prova.
+     */
+    public ByteBuffer asByteBuffer() {
+        return this.encoded.asReadOnlyBuffer();
+    }
+
+    /**
+     * Scrive il formato binario della prova nella posizione corrente di un
+     * buffer, avanzandone la posizione.
+     *
+     * @param buffer
+     *                   il buffer in cui scrivere.
+     * @throws IllegalArgumentException
+     *                                      se il buffer è null.
+     * @throws java.nio.BufferOverflowException
+     *                                              se il buffer non ha
+     *                                              abbastanza spazio.
+     */
+    public void writeTo(ByteBuffer buffer) {
+
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer passato a writeTo() è null!");
+
+        buffer.put(this.encoded.duplicate());
+    }
+
+    /**
+     * Restituisce la prova come oggetto {@link MerkleProof}, con gli stessi
+     * step nello stesso ordine.
+     *
+     * @return la prova equivalente.
+     */
+    public MerkleProof toMerkleProof() {
+        int steps = getLength();
+        long leftMask = this.encoded.getLong(4);
+        long missingMask = this.encoded.getLong(12);
+        MerkleHasher hasher = getHasher();
+        int hashLength = hasher.getDigestLength();
+
+        byte[] rootHash = new byte[hashLength];
+        this.encoded.get(HEADER_LENGTH, rootHash);
+        MerkleProof proof = new MerkleProof(rootHash, steps, hasher);
+
+        for (int i = 0; i < steps; i++) {
+            if((missingMask & (1L << i)) != 0)
+                proof.addHash(EMPTY_HASH, false);
+            else {
+                byte[] digest = new byte[hashLength];
+                this.encoded.get(HEADER_LENGTH + (i + 1) * hashLength, digest);
+                proof.addHash(digest, (leftMask & (1L << i)) != 0);
+            }
+        }
+
+        return proof;
+    }
+
+    /**
+     * Valida un dato elemento per questa prova, come
+     * {@link MerkleProof#proveValidityOfData(Object)}.
+     *
+     * @param data
+     *                 l'elemento da validare.
+     * @return true se il dato è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public boolean proveValidityOfData(Object data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato in proveValidityOfData() è null!");
+
+        return verify(this.encoded, 0, data, Funnel.HASH_CODE);
+    }
+
+    /**
+     * Valida un dato elemento per questa prova, calcolando l'hash del dato a
+     * partire dal contenuto scritto dal funnel, come
+     * {@link MerkleProof#proveValidityOfData(Object, Funnel)}.
+     *
+     * @param <T>
+     *                   il tipo del dato.
+     * @param data
+     *                   l'elemento da validare.
+     * @param funnel
+     *                   il funnel con cui è stato costruito l'albero.
+     * @return true se il dato è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il dato o il funnel sono null.
+     */
+    public <T> boolean proveValidityOfData(T data, Funnel<? super T> funnel) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato in proveValidityOfData() è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato in proveValidityOfData() è null!");
+
+        return verify(this.encoded, 0, data, funnel);
+    }
+
+    /**
+     * Valida un dato branch per questa prova, come
+     * {@link MerkleProof#proveValidityOfBranch(MerkleNode)}.
+     *
+     * @param branch
+     *                   il branch da validare.
+     * @return true se il branch è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il branch è null.
+     */
+    public boolean proveValidityOfBranch(MerkleNode branch) {
+
+        if(branch == null)
+            throw new IllegalArgumentException("branch passato in proveValidityOfBranch() è null!");
+
+        int hashLength = this.encoded.get(1);
+        byte[] digest = branch.getDigest();
+        if(digest == null || digest.length != hashLength)
+            return false;
+
+        byte[] hash = HashUtil.scratchDigest(hashLength);
+        System.arraycopy(digest, 0, hash, 0, hashLength);
+        return computeRoot(this.encoded, 0, hash);
+    }
+
+    /**
+     * Valida un dato rispetto alla prova che inizia nella posizione corrente
+     * di un buffer, leggendo gli hash direttamente dal buffer. La posizione
+     * del buffer non viene modificata.
+     *
+     * @param buffer
+     *                   il buffer contenente la prova.
+     * @param data
+     *                   l'elemento da validare.
+     * @return true se il dato è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il buffer o il dato sono null o
+     *                                      il buffer non contiene una prova
+     *                                      valida.
+     */
+    public static boolean verify(ByteBuffer buffer, Object data) {
+
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer passato a verify() è null!");
+        if(data == null)
+            throw new IllegalArgumentException("data passato a verify() è null!");
+
+        return verify(buffer, buffer.position(), data, Funnel.HASH_CODE);
+    }
+
+    /**
+     * Valida un dato rispetto alla prova che inizia nella posizione corrente
+     * di un buffer, calcolando l'hash del dato a partire dal contenuto
+     * scritto dal funnel. La posizione del buffer non viene modificata.
+     *
+     * @param <T>
+     *                   il tipo del dato.
+     * @param buffer
+     *                   il buffer contenente la prova.
+     * @param data
+     *                   l'elemento da validare.
+     * @param funnel
+     *                   il funnel con cui è stato costruito l'albero.
+     * @return true se il dato è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il buffer, il dato o il funnel
+     *                                      sono null o il buffer non contiene
+     *                                      una prova valida.
+     */
+    public static <T> boolean verify(ByteBuffer buffer, T data, Funnel<? super T> funnel) {
+
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer passato a verify() è null!");
+        if(data == null)
+            throw new IllegalArgumentException("data passato a verify() è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato a verify() è null!");
+
+        return verify(buffer, buffer.position(), data, funnel);
+    }
+
+    /**
+     * Valida un dato rispetto alla prova che inizia nella posizione data.
+     */
+    private static <T> boolean verify(ByteBuffer buffer, int position, T data, Funnel<? super T> funnel) {
+        encodedLength(buffer, position);
+        MerkleHasher hasher = hasherAt(buffer, position);
+
+        // Hash del dato calcolato nell'array di lavoro del thread
+        byte[] hash = HashUtil.scratchDigest(hasher.getDigestLength());
+        hasher.dataDigestInto(data, funnel, hash, 0);
+
+        return computeRoot(buffer, position, hash);
+    }
+
+    /**
+     * Ricalcola il root combinando l'hash dato con gli hash degli step letti
+     * dal buffer e lo confronta con il root della prova. Se il buffer è
+     * basato su un array gli hash vengono combinati direttamente dall'array,
+     * altrimenti vengono copiati uno alla volta in un array di appoggio.
+     *
+     * @param buffer
+     *                     il buffer contenente una prova valida.
+     * @param position
+     *                     la posizione di inizio della prova.
+     * @param hash
+     *                     l'hash da cui partire, sovrascritto con gli hash
+     *                     intermedi.
+     * @return true se il root calcolato coincide con quello della prova,
+     *         false altrimenti.
+     */
+    private static boolean computeRoot(ByteBuffer buffer, int position, byte[] hash) {
+        int steps = buffer.get(position + 2);
+        long leftMask = readLong(buffer, position + 4);
+        long missingMask = readLong(buffer, position + 12);
+        MerkleHasher hasher = hasherAt(buffer, position);
+        int hashLength = hasher.getDigestLength();
+
+        byte[] array = buffer.hasArray() ? buffer.array() : null;
+        int arrayOffset = buffer.hasArray() ? buffer.arrayOffset() : 0;
+        byte[] step = (array == null) ? new byte[hashLength] : null;
+
+        for (int i = 0; i < steps; i++) {
+            if((missingMask & (1L << i)) != 0) {
+                // Fratello mancante, l'hash viene ricalcolato da solo
+                hasher.combineInto(hash, 0, hashLength, EMPTY_HASH, 0, 0, hash, 0);
+                continue;
+            }
+
+            int offset = position + HEADER_LENGTH + (i + 1) * hashLength;
+            byte[] source = array;
+            int sourceOffset = arrayOffset + offset;
+            if(array == null) {
+                buffer.get(offset, step);
+                source = step;
+                sourceOffset = 0;
+            }
+
+            if((leftMask & (1L << i)) != 0)
+                hasher.combineInto(source, sourceOffset, hashLength, hash, 0, hashLength, hash, 0);
+            else
+                hasher.combineInto(hash, 0, hashLength, source, sourceOffset, hashLength, hash, 0);
+        }
+
+        for (int i = 0; i < hashLength; i++)
+            if(hash[i] != buffer.get(position + HEADER_LENGTH + i))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Legge un long in ordine big-endian, indipendentemente dall'ordine
+     * impostato sul buffer.
+     */
+    private static long readLong(ByteBuffer buffer, int position) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++)
+            value = (value << 8) | (buffer.get(position + i) & 0xFF);
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if(this == obj)
+            return true;
+
+        if(!(obj instanceof CompactMerkleProof))
+            return false;
+
+        return this.encoded.equals(((CompactMerkleProof) obj).encoded);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.encoded.hashCode();
+    }
+}
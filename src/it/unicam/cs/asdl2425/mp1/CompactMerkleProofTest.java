@@ -0,0 +1,155 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link CompactMerkleProof}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testEquivalentToMerkleProof()}: Verifica che la prova compatta di ogni foglia di un
+ * albero con 13 foglie validi gli stessi dati della prova originale e che la conversione inversa
+ * produca una prova equivalente.</li>
+ *
+ * <li>{@link #testWireFormatRoundTrip()}: Verifica che più prove scritte di seguito in un buffer
+ * vengano rilette senza copie e verificate direttamente sul buffer, anche diretto e little-endian.</li>
+ *
+ * <li>{@link #testBranchAndSize()}: Verifica la validazione di un branch e che la prova compatta
+ * occupi solamente l'intestazione più un hash per step.</li>
+ *
+ * <li>{@link #testFunnel()}: Verifica che la prova compatta di un albero costruito con un funnel
+ * validi il dato con lo stesso funnel, anche direttamente sul buffer.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per prove con hash
+ * non validi e per buffer con versione non supportata o troncati.</li>
+ * </ul>
+ */
+class CompactMerkleProofTest {
+
+    private MerkleTree<Integer> tree;
+
+    @BeforeEach
+    void setUp() {
+        HashLinkedList<Integer> list = new HashLinkedList<>();
+        for (int i = 0; i < 13; i++)
+            list.addAtTail(i);
+        tree = new MerkleTree<>(list);
+    }
+
+    @Test
+    void testEquivalentToMerkleProof() {
+        for (int i = 0; i < 13; i++) {
+            MerkleProof proof = tree.getMerkleProof(i);
+            CompactMerkleProof compact = new CompactMerkleProof(proof);
+
+            assertEquals(proof.getLength(), compact.getLength(), "Il numero di step dovrebbe coincidere.");
+            assertEquals(tree.getRoot().getHash(), compact.getRootHash(), "Il root dovrebbe coincidere.");
+            assertTrue(compact.proveValidityOfData(i), "La prova compatta dovrebbe essere valida.");
+            assertFalse(compact.proveValidityOfData(i + 1), "La prova compatta non dovrebbe validare altri dati.");
+
+            MerkleProof converted = compact.toMerkleProof();
+            assertTrue(converted.proveValidityOfData(i), "La prova convertita dovrebbe essere valida.");
+            assertEquals(compact, new CompactMerkleProof(converted),
+                    "La conversione inversa dovrebbe produrre la stessa prova.");
+        }
+    }
+
+    @Test
+    void testWireFormatRoundTrip() {
+        CompactMerkleProof first = new CompactMerkleProof(tree.getMerkleProof(3));
+        CompactMerkleProof second = new CompactMerkleProof(tree.getMerkleProof(12));
+
+        for (ByteBuffer buffer : new ByteBuffer[] {
+                ByteBuffer.allocate(first.getEncodedLength() + second.getEncodedLength()),
+                ByteBuffer.allocateDirect(first.getEncodedLength() + second.getEncodedLength())
+                        .order(ByteOrder.LITTLE_ENDIAN) }) {
+            first.writeTo(buffer);
+            second.writeTo(buffer);
+            assertFalse(buffer.hasRemaining(), "Il buffer dovrebbe essere pieno.");
+            buffer.flip();
+
+            assertTrue(CompactMerkleProof.verify(buffer, 3), "La prima prova dovrebbe essere valida sul buffer.");
+            assertEquals(0, buffer.position(), "La verifica non dovrebbe spostare la posizione.");
+
+            CompactMerkleProof readFirst = CompactMerkleProof.fromByteBuffer(buffer);
+            assertTrue(CompactMerkleProof.verify(buffer, 12), "La seconda prova dovrebbe essere valida sul buffer.");
+            assertFalse(CompactMerkleProof.verify(buffer, 3), "La seconda prova non dovrebbe validare altri dati.");
+            CompactMerkleProof readSecond = CompactMerkleProof.fromByteBuffer(buffer);
+            assertFalse(buffer.hasRemaining(), "Entrambe le prove dovrebbero essere state lette.");
+
+            assertEquals(first, readFirst, "La prima prova letta dovrebbe coincidere.");
+            assertEquals(second, readSecond, "La seconda prova letta dovrebbe coincidere.");
+            assertTrue(readSecond.proveValidityOfData(12), "La prova letta dovrebbe essere valida.");
+        }
+    }
+
+    @Test
+    void testBranchAndSize() {
+        MerkleNode branch = tree.getRoot().getRight();
+        CompactMerkleProof compact = new CompactMerkleProof(tree.getMerkleProof(branch));
+
+        assertTrue(compact.proveValidityOfBranch(branch), "La prova del branch dovrebbe essere valida.");
+        assertFalse(compact.proveValidityOfBranch(tree.getRoot().getLeft()),
+                "La prova non dovrebbe validare un altro branch.");
+
+        CompactMerkleProof leafProof = new CompactMerkleProof(tree.getMerkleProof(0));
+        assertEquals(20 + (leafProof.getLength() + 1) * HashUtil.MD5_LENGTH, leafProof.getEncodedLength(),
+                "La prova dovrebbe occupare l'intestazione, il root e un hash per step.");
+        assertEquals(leafProof.getEncodedLength(), leafProof.asByteBuffer().remaining(),
+                "Il buffer dovrebbe contenere esattamente la prova.");
+    }
+
+    @Test
+    void testFunnel() {
+        HashLinkedList<String> list = new HashLinkedList<>(MerkleHasher.SHA_256, Funnel.STRING);
+        for (int i = 0; i < 13; i++)
+            list.addAtTail("Transazione " + i);
+        MerkleTree<String> stringTree = new MerkleTree<>(list);
+        CompactMerkleProof compact = new CompactMerkleProof(stringTree.getMerkleProof("Transazione 7"));
+
+        assertTrue(compact.proveValidityOfData("Transazione 7", Funnel.STRING),
+                "La prova compatta dovrebbe essere valida con il funnel.");
+        assertFalse(compact.proveValidityOfData("Transazione 7"),
+                "La prova compatta non dovrebbe essere valida con hashCode().");
+        assertFalse(compact.proveValidityOfData("Transazione 8", Funnel.STRING),
+                "La prova compatta non dovrebbe validare altri dati.");
+
+        ByteBuffer buffer = ByteBuffer.allocate(compact.getEncodedLength());
+        compact.writeTo(buffer);
+        buffer.flip();
+        assertTrue(CompactMerkleProof.verify(buffer, "Transazione 7", Funnel.STRING),
+                "La prova dovrebbe essere valida sul buffer con il funnel.");
+        assertEquals(0, buffer.position(), "La posizione del buffer non dovrebbe cambiare.");
+        assertThrows(IllegalArgumentException.class, () -> compact.proveValidityOfData("Transazione 7", null));
+        assertThrows(IllegalArgumentException.class, () -> CompactMerkleProof.verify(buffer, "Transazione 7", null));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        MerkleProof labelProof = new MerkleProof(tree.getRoot().getHash(), 1);
+        labelProof.addHash("HashNonValido", false);
+
+        assertThrows(IllegalArgumentException.class, () -> new CompactMerkleProof(null));
+        assertThrows(IllegalArgumentException.class, () -> new CompactMerkleProof(labelProof));
+        assertThrows(IllegalArgumentException.class, () -> new CompactMerkleProof(new MerkleProof("root", 0)));
+
+        ByteBuffer encoded = ByteBuffer.allocate(200);
+        new CompactMerkleProof(tree.getMerkleProof(5)).writeTo(encoded);
+        encoded.flip();
+
+        ByteBuffer truncated = encoded.duplicate();
+        truncated.limit(truncated.limit() - 1);
+        assertThrows(IllegalArgumentException.class, () -> CompactMerkleProof.fromByteBuffer(truncated));
+
+        encoded.put(0, (byte) 99);
+        assertThrows(IllegalArgumentException.class, () -> CompactMerkleProof.fromByteBuffer(encoded));
+        assertThrows(IllegalArgumentException.class, () -> CompactMerkleProof.verify(encoded, 5));
+        assertThrows(IllegalArgumentException.class, () -> CompactMerkleProof.verify(null, 5));
+    }
+}
@@ -0,0 +1,496 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Albero di Merkle che può essere letto da più thread mentre altri thread lo
+ * aggiornano, senza che i lettori debbano acquisire lock.
+ *
+ * Lo stato dell'albero è uno snapshot immutabile, identificato dal root di un
+ * albero di {@link MerkleNode} con la stessa forma di un {@link MerkleTree},
+ * pubblicato attraverso un campo volatile. Ogni lettura legge il root una
+ * sola volta e lavora solamente sui suoi nodi, quindi vede sempre uno stato
+ * consistente dell'albero anche mentre viene pubblicato il successivo. Gli
+ * aggiornamenti costruiscono il nuovo snapshot copiando solamente i cammini
+ * dalle foglie aggiornate al root, come in {@link VersionedMerkleTree}, e lo
+ * pubblicano con una sola scrittura.
+ *
+ * Gli aggiornamenti dei diversi thread vengono accodati e applicati a gruppi:
+ * il thread che ottiene il lock di scrittura applica tutti gli aggiornamenti
+ * in coda e pubblica un solo root, in cui ogni antenato comune a più foglie
+ * aggiornate viene ricalcolato una sola volta. Gli altri thread trovano i
+ * propri aggiornamenti già pubblicati e non ricalcolano nulla. Gli hash dei
+ * dati vengono calcolati prima di accodare gli aggiornamenti, quindi in
+ * parallelo.
+ *
+ * Per cercare un dato senza visitare tutte le foglie viene mantenuto, per
+ * ogni hash di foglia, l'insieme delle posizioni in cui compare. Le nuove
+ * posizioni vengono aggiunte prima di pubblicare il root che le contiene e
+ * quelle sostituite vengono rimosse solamente dopo, quindi le posizioni di un
+ * dato in uno snapshot sono sempre presenti nell'indice mentre lo snapshot è
+ * quello pubblicato. Le posizioni trovate vengono sempre confrontate con le
+ * foglie dello snapshot letto; se il dato non viene trovato e nel frattempo è
+ * stato pubblicato un altro root la ricerca viene ripetuta sul nuovo.
+ *
+ * @param <T>
+ *                il tipo di dati su cui l'albero è costruito.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public class ConcurrentMerkleTree<T> {
+
+    /**
+     * Gruppo di aggiornamenti da applicare nello stesso root.
+     */
+    private static final class Batch {
+
+        /**
+         * Posizioni delle foglie da aggiornare.
+         */
+        private final int[] positions;
+
+        /**
+         * Hash dei nuovi dati, nello stesso ordine delle posizioni.
+         */
+        private final byte[][] digests;
+
+        private Batch(int[] positions, byte[][] digests) {
+            this.positions = positions;
+            this.digests = digests;
+        }
+    }
+
+    /**
+     * Numero di foglie dell'albero.
+     */
+    private final int width;
+
+    /**
+     * Altezza dell'albero.
+     */
+    private final int height;
+
+    /**
+     * Algoritmo usato per calcolare gli hash.
+     */
+    private final MerkleHasher hasher;
+
+    /**
+     * Funnel usato per calcolare gli hash delle foglie.
+     */
+    private final Funnel<? super T> funnel;
+
+    /**
+     * Root dello snapshot pubblicato.
+     */
+    private volatile MerkleNode root;
+
+    /**
+     * Numero di root pubblicati dopo la costruzione.
+     */
+    private volatile long version;
+
+    /**
+     * Posizioni, in ordine crescente, delle foglie con un certo hash. Gli
+     * array non vengono mai modificati dopo essere stati inseriti.
+     */
+    private final Map<MerkleNode, int[]> leafPositions = new ConcurrentHashMap<>();
+
+    /**
+     * Gruppi di aggiornamenti non ancora applicati.
+     */
+    private final ConcurrentLinkedQueue<Batch> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Lock acquisito per applicare gli aggiornamenti in coda.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Costruisce un albero concorrente a partire da un oggetto
+     * HashLinkedList, usando l'algoritmo e il funnel della lista. Il primo
+     * snapshot è l'albero di un {@link MerkleTree} costruito sulla stessa
+     * lista.
+     *
+     * @param hashList
+     *                     un oggetto HashLinkedList contenente i dati e i
+     *                     relativi hash.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota.
+     */
+    public ConcurrentMerkleTree(HashLinkedList<T> hashList) {
+
+        MerkleTree<T> tree = new MerkleTree<>(hashList);
+        this.width = tree.getWidth();
+        this.height = tree.getHeight();
+        this.hasher = tree.getHasher();
+        this.funnel = tree.getFunnel();
+        this.root = tree.getRoot();
+
+        indexLeaves(this.root, this.height, 0);
+    }
+
+    /**
+     * Aggiunge all'indice le posizioni di tutte le foglie di un sottoalbero.
+     *
+     * @param node
+     *                  il root del sottoalbero.
+     * @param level
+     *                  il livello del nodo, 0 per le foglie.
+     * @param first
+     *                  la posizione della prima foglia del sottoalbero.
+     */
+    private void indexLeaves(MerkleNode node, int level, int first) {
+        if(level == 0) {
+            addPosition(node, first);
+            return;
+        }
+        indexLeaves(node.getLeft(), level - 1, first);
+        if(node.getRight() != null)
+            indexLeaves(node.getRight(), level - 1, first + (1 << (level - 1)));
+    }
+
+    /**
+     * Restituisce il numero di foglie dell'albero.
+     *
+     * @return il numero di foglie.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Restituisce l'altezza dell'albero.
+     *
+     * @return l'altezza dell'albero.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Restituisce l'algoritmo usato per calcolare gli hash dell'albero.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    public MerkleHasher getHasher() {
+        return this.hasher;
+    }
+
+    /**
+     * Restituisce il funnel usato per calcolare gli hash delle foglie.
+     *
+     * @return il funnel dei dati.
+     */
+    public Funnel<? super T> getFunnel() {
+        return this.funnel;
+    }
+
+    /**
+     * Restituisce il root dello snapshot pubblicato. I figli del nodo non
+     * cambiano con gli aggiornamenti successivi.
+     *
+     * @return il nodo radice dello snapshot pubblicato.
+     */
+    public MerkleNode getRoot() {
+        return this.root;
+    }
+
+    /**
+     * Restituisce il numero di root pubblicati dopo la costruzione, che può
+     * essere minore del numero di aggiornamenti se questi sono stati
+     * applicati a gruppi.
+     *
+     * @return il numero di root pubblicati.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Restituisce la posizione della prima occorrenza di un dato nello
+     * snapshot pubblicato.
+     *
+     * @param data
+     *                 il dato da cercare.
+     * @return la posizione della prima foglia con il dato, -1 se il dato non
+     *         è presente.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public int getIndexOfData(T data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a getIndexOfData() è null!");
+
+        MerkleNode leaf = new MerkleNode(this.hasher.dataDigest(data, this.funnel));
+        MerkleNode snapshot;
+        int index;
+        do {
+            snapshot = this.root;
+            index = indexOf(snapshot, leaf);
+        } while (index < 0 && snapshot != this.root);
+
+        return index;
+    }
+
+    /**
+     * Verifica se un dato è presente nello snapshot pubblicato.
+     *
+     * @param data
+     *                 il dato da validare.
+     * @return true se il dato è una foglia dell'albero; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public boolean validateData(T data) {
+        return getIndexOfData(data) > -1;
+    }
+
+    /**
+     * Restituisce la prova di Merkle della prima occorrenza di un dato nello
+     * snapshot pubblicato. La prova è generata sullo stesso snapshot in cui il
+     * dato è stato trovato, quindi è valida per il root della prova anche se
+     * nel frattempo ne è stato pubblicato un altro.
+     *
+     * @param data
+     *                 il dato per cui generare la prova.
+     * @return la prova di Merkle per il dato.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o non è parte
+     *                                      dell'albero.
+     */
+    public MerkleProof getMerkleProof(T data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a getMerkleProof() è null!");
+
+        MerkleNode leaf = new MerkleNode(this.hasher.dataDigest(data, this.funnel));
+        MerkleNode snapshot;
+        int index;
+        do {
+            snapshot = this.root;
+            index = indexOf(snapshot, leaf);
+        } while (index < 0 && snapshot != this.root);
+
+        if(index < 0)
+            throw new IllegalArgumentException("data passato a getMerkleProof() non è parte dell'albero!");
+
+        return PersistentNodes.proofOf(snapshot, this.height, index, this.hasher);
+    }
+
+    /**
+     * Restituisce la prova di Merkle per la foglia di posizione data nello
+     * snapshot pubblicato.
+     *
+     * @param index
+     *                  la posizione della foglia.
+     * @return la prova di Merkle per la foglia.
+     * @throws IllegalArgumentException
+     *                                      se la posizione non è valida.
+     */
+    public MerkleProof getMerkleProofAt(int index) {
+
+        if(index < 0 || index >= this.width)
+            throw new IllegalArgumentException("index passato a getMerkleProofAt() non è valido!");
+
+        return PersistentNodes.proofOf(this.root, this.height, index, this.hasher);
+    }
+
+    /**
+     * Sostituisce il dato di una foglia. Al ritorno il nuovo dato è presente
+     * nello snapshot pubblicato.
+     *
+     * @param index
+     *                    la posizione della foglia da aggiornare.
+     * @param newData
+     *                    il nuovo dato della foglia.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o l'indice non è
+     *                                      compreso tra 0 e la larghezza
+     *                                      dell'albero esclusa.
+     */
+    public void updateLeaf(int index, T newData) {
+
+        if(newData == null)
+            throw new IllegalArgumentException("newData passato a updateLeaf() è null!");
+        if(index < 0 || index >= this.width)
+            throw new IllegalArgumentException("index passato a updateLeaf() non è una posizione valida!");
+
+        this.pending.add(new Batch(new int[] { index },
+                new byte[][] { this.hasher.dataDigest(newData, this.funnel) }));
+        applyPending();
+    }
+
+    /**
+     * Sostituisce i dati di più foglie. Gli aggiornamenti della mappa vengono
+     * pubblicati tutti nello stesso root, eventualmente insieme a quelli di
+     * altri thread; al ritorno sono presenti nello snapshot pubblicato.
+     *
+     * @param updates
+     *                    mappa che associa alla posizione di ogni foglia da
+     *                    aggiornare il suo nuovo dato.
+     * @throws IllegalArgumentException
+     *                                      se la mappa è null, contiene un
+     *                                      dato null o una posizione non
+     *                                      compresa tra 0 e la larghezza
+     *                                      dell'albero esclusa.
+     */
+    public void updateLeaves(Map<Integer, T> updates) {
+
+        if(updates == null)
+            throw new IllegalArgumentException("updates passato a updateLeaves() è null!");
+
+        // Controllo di tutti gli aggiornamenti prima di accodarli
+        int[] positions = new int[updates.size()];
+        byte[][] digests = new byte[updates.size()][];
+        int count = 0;
+        for (Map.Entry<Integer, T> entry : updates.entrySet()) {
+            Integer index = entry.getKey();
+            if(index == null || index < 0 || index >= this.width)
+                throw new IllegalArgumentException("updates passato a updateLeaves() contiene una posizione non valida!");
+            if(entry.getValue() == null)
+                throw new IllegalArgumentException("updates passato a updateLeaves() contiene un dato null!");
+            positions[count] = index;
+            digests[count++] = this.hasher.dataDigest(entry.getValue(), this.funnel);
+        }
+
+        if(count == 0)
+            return;
+
+        this.pending.add(new Batch(positions, digests));
+        applyPending();
+    }
+
+    /**
+     * Applica tutti gli aggiornamenti in coda pubblicando un solo root. Se la
+     * coda è vuota gli aggiornamenti del thread chiamante sono già stati
+     * pubblicati da chi ha tenuto il lock prima di lui.
+     */
+    private void applyPending() {
+        synchronized (this.writeLock) {
+
+            // Aggiornamenti in ordine di accodamento: l'ultimo di una
+            // posizione sostituisce i precedenti
+            TreeMap<Integer, byte[]> merged = new TreeMap<>();
+            Batch batch;
+            while ((batch = this.pending.poll()) != null)
+                for (int i = 0; i < batch.positions.length; i++)
+                    merged.put(batch.positions[i], batch.digests[i]);
+
+            if(merged.isEmpty())
+                return;
+
+            int count = merged.size();
+            int[] positions = new int[count];
+            byte[][] digests = new byte[count][];
+            MerkleNode[] replaced = new MerkleNode[count];
+            int i = 0;
+            for (Map.Entry<Integer, byte[]> entry : merged.entrySet()) {
+                positions[i] = entry.getKey();
+                digests[i] = entry.getValue();
+                replaced[i] = leafOf(this.root, positions[i]);
+                addPosition(new MerkleNode(digests[i]), positions[i]);
+                i++;
+            }
+
+            this.root = PersistentNodes.copyPath(this.hasher, this.root, this.height, 0, positions, digests, 0,
+                    count);
+            this.version++;
+
+            // Le vecchie posizioni vengono rimosse solamente dopo la
+            // pubblicazione del root che non le contiene più
+            for (i = 0; i < count; i++)
+                if(!Arrays.equals(replaced[i].getDigest(), digests[i]))
+                    removePosition(replaced[i], positions[i]);
+        }
+    }
+
+    /**
+     * Restituisce la prima posizione di una foglia nell'albero di un root,
+     * confrontando con le foglie dell'albero le posizioni dell'indice.
+     *
+     * @param snapshot
+     *                     il root dell'albero.
+     * @param leaf
+     *                     il nodo foglia da cercare.
+     * @return la prima posizione della foglia, -1 se non è presente.
+     */
+    private int indexOf(MerkleNode snapshot, MerkleNode leaf) {
+        int[] positions = this.leafPositions.get(leaf);
+        if(positions == null)
+            return -1;
+        for (int position : positions)
+            if(leafOf(snapshot, position).equals(leaf))
+                return position;
+        return -1;
+    }
+
+    /**
+     * Restituisce la foglia di posizione data nell'albero di un root.
+     *
+     * @param snapshot
+     *                     il root dell'albero.
+     * @param index
+     *                     la posizione valida della foglia.
+     * @return il nodo foglia.
+     */
+    private MerkleNode leafOf(MerkleNode snapshot, int index) {
+        MerkleNode node = snapshot;
+        for (int level = this.height; level > 0; level--)
+            node = (((index >> (level - 1)) & 1) != 0) ? node.getRight() : node.getLeft();
+        return node;
+    }
+
+    /**
+     * Aggiunge una posizione all'indice delle foglie, sostituendo l'array
+     * delle posizioni della foglia.
+     *
+     * @param leaf
+     *                     il nodo foglia.
+     * @param position
+     *                     la posizione da aggiungere.
+     */
+    private void addPosition(MerkleNode leaf, int position) {
+        this.leafPositions.compute(leaf, (key, positions) -> {
+            if(positions == null)
+                return new int[] { position };
+            int insertion = Arrays.binarySearch(positions, position);
+            if(insertion >= 0)
+                return positions;
+            insertion = -insertion - 1;
+            int[] added = new int[positions.length + 1];
+            System.arraycopy(positions, 0, added, 0, insertion);
+            added[insertion] = position;
+            System.arraycopy(positions, insertion, added, insertion + 1, positions.length - insertion);
+            return added;
+        });
+    }
+
+    /**
+     * Rimuove una posizione dall'indice delle foglie, sostituendo l'array
+     * delle posizioni della foglia o rimuovendolo se resta vuoto.
+     *
+     * @param leaf
+     *                     il nodo foglia.
+     * @param position
+     *                     la posizione da rimuovere.
+     */
+    private void removePosition(MerkleNode leaf, int position) {
+        this.leafPositions.computeIfPresent(leaf, (key, positions) -> {
+            int removal = Arrays.binarySearch(positions, position);
+            if(removal < 0)
+                return positions;
+            if(positions.length == 1)
+                return null;
+            int[] removed = new int[positions.length - 1];
+            System.arraycopy(positions, 0, removed, 0, removal);
+            System.arraycopy(positions, removal + 1, removed, removal, removed.length - removal);
+            return removed;
+        });
+    }
+}
@@ -0,0 +1,187 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Misura il numero di prove generate al secondo da un numero crescente di
+ * thread lettori mentre un thread writer aggiorna l'albero, confrontando un
+ * ConcurrentMerkleTree con un MerkleTree protetto da un ReadWriteLock, che è
+ * l'unico modo sicuro di condividere un MerkleTree tra lettori e writer.
+ *
+ * I lettori chiedono la prova di un dato scelto a caso nella prima metà delle
+ * foglie, che non viene mai aggiornata, mentre il writer sostituisce ogni
+ * millisecondo un gruppo di foglie scelte a caso nella seconda metà. Con il
+ * ConcurrentMerkleTree i lettori non si bloccano mai e il numero di prove al
+ * secondo dovrebbe crescere con il numero di thread fino al numero di
+ * processori disponibili; con il lock ogni aggiornamento ferma tutti i
+ * lettori.
+ *
+ * Il main può essere chiamato con il numero di foglie come parametro di linea
+ * di comando. Se non è presente nessun parametro allora vengono usate 2^18
+ * foglie. I numeri di lettori misurati sono le potenze di 2 fino al doppio
+ * dei processori disponibili.
+ *
+ * I risultati sono stampati sullo standard output in formato .csv (Comma
+ * Separated Values).
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public class ConcurrentMerkleTreeBenchmark {
+
+    /**
+     * Numero di foglie usato se non viene passato nessun parametro.
+     */
+    private static final int DEFAULT_SIZE = 1 << 18;
+
+    /**
+     * Numero di foglie sostituite da ogni aggiornamento del writer.
+     */
+    private static final int BATCH_SIZE = 32;
+
+    /**
+     * Intervallo tra due aggiornamenti del writer, in nanosecondi.
+     */
+    private static final long WRITE_INTERVAL_NANO = 1_000_000;
+
+    /**
+     * Durata del riscaldamento prima di ogni misura, in millisecondi.
+     */
+    private static final long WARMUP_MS = 500;
+
+    /**
+     * Durata di ogni misura, in millisecondi.
+     */
+    private static final long DURATION_MS = 2000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        int half = n / 2;
+
+        HashLinkedList<Long> list = new HashLinkedList<>(MerkleHasher.SHA_256);
+        for (long i = 0; i < n; i++)
+            list.addAtTail(i * 111L);
+
+        ConcurrentMerkleTree<Long> concurrent = new ConcurrentMerkleTree<>(list);
+        MerkleTree<Long> locked = new MerkleTree<>(list);
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        long[] written = { -1 };
+
+        Consumer<SplittableRandom> concurrentRead = random -> concurrent.getMerkleProof(random.nextInt(half) * 111L);
+        Consumer<SplittableRandom> concurrentWrite = random -> concurrent.updateLeaves(batch(random, half, n, written));
+        Consumer<SplittableRandom> lockedRead = random -> {
+            long data = random.nextInt(half) * 111L;
+            lock.readLock().lock();
+            try {
+                locked.getMerkleProof(data);
+            }
+            finally {
+                lock.readLock().unlock();
+            }
+        };
+        Consumer<SplittableRandom> lockedWrite = random -> {
+            Map<Integer, Long> updates = batch(random, half, n, written);
+            lock.writeLock().lock();
+            try {
+                locked.updateLeaves(updates);
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        };
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("leaves,processors,readers,concurrentProofsPerSec,concurrentUpdatesPerSec,"
+                + "lockedProofsPerSec,lockedUpdatesPerSec");
+        for (int readers = 1; readers <= 2 * processors; readers *= 2) {
+            measure(readers, concurrentRead, concurrentWrite, WARMUP_MS);
+            long[] concurrentOps = measure(readers, concurrentRead, concurrentWrite, DURATION_MS);
+            measure(readers, lockedRead, lockedWrite, WARMUP_MS);
+            long[] lockedOps = measure(readers, lockedRead, lockedWrite, DURATION_MS);
+
+            System.out.println(n + "," + processors + "," + readers + ","
+                    + (concurrentOps[0] * 1000 / DURATION_MS) + "," + (concurrentOps[1] * 1000 / DURATION_MS) + ","
+                    + (lockedOps[0] * 1000 / DURATION_MS) + "," + (lockedOps[1] * 1000 / DURATION_MS));
+        }
+    }
+
+    /**
+     * Genera un gruppo di aggiornamenti nella seconda metà delle foglie, con
+     * dati sempre diversi.
+     */
+    private static Map<Integer, Long> batch(SplittableRandom random, int half, int n, long[] written) {
+        Map<Integer, Long> updates = new HashMap<>();
+        for (int i = 0; i < BATCH_SIZE; i++)
+            updates.put(half + random.nextInt(n - half), written[0]--);
+        return updates;
+    }
+
+    /**
+     * Esegue le letture su più thread e le scritture su un thread per la
+     * durata data.
+     *
+     * @return il numero di letture e di scritture eseguite.
+     */
+    private static long[] measure(int readers, Consumer<SplittableRandom> read, Consumer<SplittableRandom> write,
+            long durationMs) throws InterruptedException {
+        long[] reads = new long[readers];
+        long[] writes = new long[1];
+        CountDownLatch start = new CountDownLatch(1);
+        long[] end = new long[1];
+
+        Thread[] threads = new Thread[readers + 1];
+        for (int r = 0; r < readers; r++) {
+            int reader = r;
+            threads[r] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(reader);
+                awaitStart(start);
+                long count = 0;
+                while (System.nanoTime() < end[0]) {
+                    read.accept(random);
+                    count++;
+                }
+                reads[reader] = count;
+            });
+        }
+        threads[readers] = new Thread(() -> {
+            SplittableRandom random = new SplittableRandom(-1);
+            awaitStart(start);
+            long count = 0;
+            long next = System.nanoTime();
+            while (System.nanoTime() < end[0]) {
+                write.accept(random);
+                count++;
+                next += WRITE_INTERVAL_NANO;
+                LockSupport.parkNanos(next - System.nanoTime());
+            }
+            writes[0] = count;
+        });
+
+        for (Thread thread : threads)
+            thread.start();
+        end[0] = System.nanoTime() + durationMs * 1_000_000;
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+
+        long totalReads = 0;
+        for (long count : reads)
+            totalReads += count;
+        return new long[] { totalReads, writes[0] };
+    }
+
+    private static void awaitStart(CountDownLatch start) {
+        try {
+            start.await();
+        }
+        catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per {@link ConcurrentMerkleTree}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testMatchesMerkleTree()}: Verifica che root, posizioni dei dati e prove coincidano con
+ * quelli di un {@link MerkleTree} aggiornato allo stesso modo, anche con dati ripetuti.</li>
+ *
+ * <li>{@link #testBatchedWriters()}: Verifica che gli aggiornamenti di più thread vengano tutti
+ * pubblicati e che al ritorno siano visibili.</li>
+ *
+ * <li>{@link #testReadersSeeConsistentSnapshots()}: Verifica che i lettori trovino sempre un dato
+ * spostato da un writer e che le prove siano valide per il proprio root.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per parametri non
+ * validi.</li>
+ * </ul>
+ */
+class ConcurrentMerkleTreeTest {
+
+    @Test
+    void testMatchesMerkleTree() {
+        for (int width : new int[] { 1, 2, 5, 37, 64 }) {
+            ConcurrentMerkleTree<Integer> concurrent = new ConcurrentMerkleTree<>(TestLists.multiplesOf7(width));
+            MerkleTree<Integer> tree = new MerkleTree<>(TestLists.multiplesOf7(width));
+            assertEquals(tree.getRoot(), concurrent.getRoot());
+            assertEquals(tree.getHeight(), concurrent.getHeight());
+
+            for (int step = 1; step <= 10; step++) {
+                int index = (step * 13) % width;
+                // Dati ripetuti: lo stesso valore compare in più posizioni
+                int data = -(step % 4);
+                if(step % 3 == 0) {
+                    int other = (index + width / 2) % width;
+                    Map<Integer, Integer> updates = (other == index) ? Map.of(index, data)
+                            : Map.of(index, data, other, step * 7);
+                    concurrent.updateLeaves(updates);
+                    tree.updateLeaves(updates);
+                }
+                else {
+                    concurrent.updateLeaf(index, data);
+                    tree.updateLeaf(index, data);
+                }
+
+                assertEquals(tree.getRoot(), concurrent.getRoot(), width + " foglie, passo " + step);
+                for (int value = -3; value <= width * 7; value++) {
+                    assertEquals(tree.getIndexOfData(value), concurrent.getIndexOfData(value),
+                            width + " foglie, passo " + step + ", dato " + value);
+                    assertEquals(tree.validateData(value), concurrent.validateData(value));
+                }
+                assertIterableEquals(tree.getMerkleProof(data).getProofHashes(),
+                        concurrent.getMerkleProof(data).getProofHashes());
+                assertIterableEquals(tree.getMerkleProof(data).getProofHashes(),
+                        concurrent.getMerkleProofAt(tree.getIndexOfData(data)).getProofHashes());
+            }
+            assertEquals(10, concurrent.getVersion());
+        }
+    }
+
+    @Test
+    void testBatchedWriters() throws Exception {
+        int writers = 4;
+        int updatesPerWriter = 250;
+        int width = writers * updatesPerWriter;
+        ConcurrentMerkleTree<Integer> concurrent = new ConcurrentMerkleTree<>(TestLists.multiplesOf7(width));
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                for (int i = 0; i < updatesPerWriter; i++) {
+                    int index = writer * updatesPerWriter + i;
+                    concurrent.updateLeaf(index, -index - 1);
+                    // L'aggiornamento è visibile al ritorno
+                    assertEquals(index, concurrent.getIndexOfData(-index - 1));
+                }
+            }));
+        }
+        start.countDown();
+        for (CompletableFuture<Void> future : futures)
+            future.get(30, TimeUnit.SECONDS);
+
+        Map<Integer, Integer> updates = new HashMap<>();
+        for (int index = 0; index < writers * updatesPerWriter; index++)
+            updates.put(index, -index - 1);
+        MerkleTree<Integer> tree = new MerkleTree<>(TestLists.multiplesOf7(width));
+        tree.updateLeaves(updates);
+
+        assertEquals(tree.getRoot(), concurrent.getRoot());
+        assertTrue(concurrent.getVersion() <= writers * updatesPerWriter);
+        assertFalse(concurrent.validateData(7));
+    }
+
+    @Test
+    void testReadersSeeConsistentSnapshots() throws Exception {
+        int width = 200;
+        int marker = -1;
+        ConcurrentMerkleTree<Integer> concurrent = new ConcurrentMerkleTree<>(TestLists.multiplesOf7(width));
+        concurrent.updateLeaf(0, marker);
+        AtomicBoolean stop = new AtomicBoolean();
+
+        // Il writer sposta il marker in una posizione diversa a ogni root,
+        // quindi ogni snapshot contiene il marker esattamente una volta
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            int position = 0;
+            for (int i = 1; i <= 2000; i++) {
+                int next = (position + 37) % width;
+                concurrent.updateLeaves(Map.of(position, 10_000 + i, next, marker));
+                position = next;
+            }
+            stop.set(true);
+        });
+
+        int reads = 0;
+        while (!stop.get() || reads < 100) {
+            int index = concurrent.getIndexOfData(marker);
+            assertTrue(index >= 0, "Marker non trovato");
+            MerkleProof proof = concurrent.getMerkleProof(marker);
+            assertTrue(proof.proveValidityOfData(marker));
+            assertTrue(concurrent.validateData(marker));
+            reads++;
+        }
+
+        writer.get(30, TimeUnit.SECONDS);
+        assertEquals(2001, concurrent.getVersion());
+        assertEquals(1, countOccurrences(concurrent, width, marker));
+    }
+
+    private static int countOccurrences(ConcurrentMerkleTree<Integer> concurrent, int width, int data) {
+        int count = 0;
+        for (int i = 0; i < width; i++)
+            if(concurrent.getMerkleProofAt(i).proveValidityOfData(data))
+                count++;
+        return count;
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentMerkleTree<Integer>(null));
+
+        ConcurrentMerkleTree<Integer> concurrent = new ConcurrentMerkleTree<>(TestLists.multiplesOf7(4));
+        assertThrows(IllegalArgumentException.class, () -> concurrent.updateLeaf(4, 1));
+        assertThrows(IllegalArgumentException.class, () -> concurrent.updateLeaf(0, null));
+        assertThrows(IllegalArgumentException.class, () -> concurrent.updateLeaves(null));
+        assertThrows(IllegalArgumentException.class, () -> concurrent.updateLeaves(Map.of(-1, 1)));
+        assertThrows(IllegalArgumentException.class, () -> concurrent.getMerkleProofAt(4));
+        assertThrows(IllegalArgumentException.class, () -> concurrent.getMerkleProof(1));
+        assertThrows(IllegalArgumentException.class, () -> concurrent.getMerkleProof(null));
+        assertThrows(IllegalArgumentException.class, () -> concurrent.getIndexOfData(null));
+
+        concurrent.updateLeaves(Map.of());
+        assertEquals(0, concurrent.getVersion());
+    }
+}
@@ -0,0 +1,501 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indice di Merkle gerarchico di un albero di directory, in cui i file sono
+ * le foglie e le directory i nodi interni. L'hash di un file è il root del
+ * suo {@link ChunkManifest}, calcolato da un {@link FileMerkleizer} con i
+ * parametri predefiniti. L'hash di una directory è il root dell'albero di
+ * Merkle che ha come foglie i suoi elementi in ordine di nome, dove ogni
+ * foglia è calcolata sul tipo, sul nome e sull'hash dell'elemento; una
+ * directory vuota ha l'hash del contenuto vuoto. Vengono considerati
+ * solamente i file regolari e le directory, senza seguire i collegamenti
+ * simbolici.
+ *
+ * Per ogni file l'indice memorizza la dimensione e la data di ultima
+ * modifica. Quando l'indice viene aggiornato vengono ricalcolati solamente
+ * gli hash dei file con dimensione o data diverse e quelli delle directory
+ * che li contengono, fino alla radice; le altre directory mantengono l'hash
+ * precedente. I file modificati entro {@link #RACY_WINDOW_MS} millisecondi
+ * dall'inizio di un aggiornamento vengono ricalcolati anche
+ * all'aggiornamento successivo, perché una modifica nello stesso intervallo
+ * potrebbe non cambiare la data.
+ *
+ * L'indice può essere salvato in un file e caricato in un'esecuzione
+ * successiva. Il formato inizia con il numero magico "MKDI", la versione
+ * ({@link #VERSION}), l'identificativo dell'algoritmo di hash e la lunghezza
+ * di un hash, seguiti dagli elementi in ordine anticipato: per ogni elemento
+ * il tipo (0 file, 1 directory), il nome, l'hash e, per i file, la
+ * dimensione e la data in nanosecondi, per le directory il numero di
+ * elementi.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public final class DirectoryMerkleIndex {
+
+    /**
+     * Versione del formato su file prodotto e accettato da questa classe.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Intervallo, prima dell'inizio di un aggiornamento, entro cui la data di
+     * un file non è considerata affidabile.
+     */
+    public static final long RACY_WINDOW_MS = 2000;
+
+    /**
+     * Numero magico all'inizio del file, "MKDI" in ASCII.
+     */
+    private static final int MAGIC = 0x4D4B4449;
+
+    /**
+     * Data memorizzata per i file da ricalcolare in ogni caso.
+     */
+    private static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+    private static final byte FILE = 0;
+
+    private static final byte DIRECTORY = 1;
+
+    /**
+     * Funnel delle foglie di una directory.
+     */
+    private static final Funnel<Entry> ENTRY = (from, into) -> into
+            .putByte((from instanceof FileEntry) ? FILE : DIRECTORY).putString(from.name).putBytes(from.digest);
+
+    /**
+     * Elemento dell'indice, immutabile.
+     */
+    private abstract static class Entry {
+        final String name;
+
+        final byte[] digest;
+
+        Entry(String name, byte[] digest) {
+            this.name = name;
+            this.digest = digest;
+        }
+    }
+
+    private static final class FileEntry extends Entry {
+        final long size;
+
+        final long modified;
+
+        FileEntry(String name, byte[] digest, long size, long modified) {
+            super(name, digest);
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private static final class DirectoryEntry extends Entry {
+        final Map<String, Entry> children;
+
+        DirectoryEntry(String name, byte[] digest, Map<String, Entry> children) {
+            super(name, digest);
+            this.children = children;
+        }
+    }
+
+    /**
+     * Algoritmo usato per calcolare gli hash.
+     */
+    private final MerkleHasher hasher;
+
+    /**
+     * Merkleizer usato per calcolare gli hash dei file, con un solo pool di
+     * thread condiviso da tutti i file.
+     */
+    private final FileMerkleizer merkleizer;
+
+    /**
+     * Directory radice dell'indice, null se l'indice non è mai stato
+     * aggiornato.
+     */
+    private DirectoryEntry root;
+
+    /**
+     * Costruisce un indice vuoto i cui hash sono calcolati con l'algoritmo
+     * dato.
+     *
+     * @param hasher
+     *                   l'algoritmo con cui calcolare gli hash.
+     * @throws IllegalArgumentException
+     *                                      se hasher è null.
+     */
+    public DirectoryMerkleIndex(MerkleHasher hasher) {
+
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato al costruttore è null!");
+
+        this.hasher = hasher;
+        this.merkleizer = new FileMerkleizer(hasher);
+    }
+
+    /**
+     * Costruisce un indice vuoto i cui hash sono calcolati con l'algoritmo
+     * dato sul pool dato, che può essere condiviso con altri indici. Il pool
+     * non viene mai chiuso dall'indice.
+     *
+     * @param hasher
+     *                   l'algoritmo con cui calcolare gli hash.
+     * @param pool
+     *                   il pool su cui calcolare gli hash dei file.
+     * @throws IllegalArgumentException
+     *                                      se hasher o pool sono null.
+     */
+    public DirectoryMerkleIndex(MerkleHasher hasher, ForkJoinPool pool) {
+
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato al costruttore è null!");
+        if(pool == null)
+            throw new IllegalArgumentException("pool passato al costruttore è null!");
+
+        this.hasher = hasher;
+        this.merkleizer = new FileMerkleizer(hasher, FileMerkleizer.DEFAULT_MIN_CHUNK,
+                FileMerkleizer.DEFAULT_AVERAGE_CHUNK, FileMerkleizer.DEFAULT_MAX_CHUNK, pool);
+    }
+
+    /**
+     * Restituisce l'algoritmo usato per calcolare gli hash.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    public MerkleHasher getHasher() {
+        return this.hasher;
+    }
+
+    /**
+     * Restituisce il nodo radice dell'indice, che contiene solamente l'hash
+     * della directory radice.
+     *
+     * @return il nodo radice; null se l'indice non è mai stato aggiornato.
+     */
+    public MerkleNode getRoot() {
+        return (this.root != null) ? new MerkleNode(this.root.digest.clone()) : null;
+    }
+
+    /**
+     * Restituisce il numero di file dell'indice.
+     *
+     * @return il numero di file.
+     */
+    public int getFileCount() {
+        return (this.root != null) ? countFiles(this.root) : 0;
+    }
+
+    private static int countFiles(DirectoryEntry directory) {
+        int count = 0;
+        for (Entry child : directory.children.values())
+            count += (child instanceof DirectoryEntry) ? countFiles((DirectoryEntry) child) : 1;
+        return count;
+    }
+
+    /**
+     * Aggiorna l'indice con il contenuto attuale della directory data,
+     * ricalcolando gli hash dei soli file nuovi o con dimensione o data
+     * diverse e delle directory che li contengono.
+     *
+     * @param directory
+     *                      la directory radice da indicizzare.
+     * @return il numero di file di cui è stato ricalcolato l'hash.
+     * @throws IllegalArgumentException
+     *                                      se la directory è null o non è una
+     *                                      directory.
+     * @throws IOException
+     *                                      se un file o una directory non
+     *                                      possono essere letti.
+     */
+    public int update(Path directory) throws IOException {
+
+        if(directory == null)
+            throw new IllegalArgumentException("directory passato a update() è null!");
+        if(!Files.isDirectory(directory))
+            throw new IllegalArgumentException("directory passato a update() non è una directory!");
+
+        long racyLimit = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - RACY_WINDOW_MS);
+        int[] rehashed = new int[1];
+        this.root = updateDirectory(directory, "", this.root, racyLimit, rehashed);
+        return rehashed[0];
+    }
+
+    /**
+     * Aggiorna una directory a partire dal suo elemento precedente,
+     * restituendo lo stesso elemento se nessun elemento contenuto è
+     * cambiato.
+     */
+    private DirectoryEntry updateDirectory(Path directory, String name, DirectoryEntry previous, long racyLimit,
+            int[] rehashed) throws IOException {
+        Map<String, Entry> children = new TreeMap<>();
+        boolean changed = previous == null;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String childName = path.getFileName().toString();
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                Entry old = (previous != null) ? previous.children.get(childName) : null;
+
+                Entry entry;
+                if(attributes.isDirectory())
+                    entry = updateDirectory(path, childName,
+                            (old instanceof DirectoryEntry) ? (DirectoryEntry) old : null, racyLimit, rehashed);
+                else if(attributes.isRegularFile())
+                    entry = updateFile(path, childName, attributes, (old instanceof FileEntry) ? (FileEntry) old : null,
+                            racyLimit, rehashed);
+                else
+                    continue;
+
+                children.put(childName, entry);
+                changed |= entry != old;
+            }
+        }
+
+        // Stessi elementi di prima, quindi lo stesso hash
+        if(!changed && children.size() == previous.children.size())
+            return previous;
+
+        return new DirectoryEntry(name, directoryDigest(children), Collections.unmodifiableMap(children));
+    }
+
+    /**
+     * Aggiorna un file a partire dal suo elemento precedente, ricalcolandone
+     * l'hash solamente se la dimensione o la data sono cambiate o la data
+     * non è affidabile.
+     */
+    private FileEntry updateFile(Path file, String name, BasicFileAttributes attributes, FileEntry previous,
+            long racyLimit, int[] rehashed) throws IOException {
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+
+        if(previous != null && previous.size == size && previous.modified == modified)
+            return previous;
+
+        rehashed[0]++;
+        byte[] digest;
+        long hashedSize;
+        if(size <= FileMerkleizer.DEFAULT_MIN_CHUNK) {
+            // Un solo chunk, il cui hash è anche il root del file
+            byte[] content = Files.readAllBytes(file);
+            digest = this.hasher.dataDigest(content, Funnel.BYTE_ARRAY);
+            hashedSize = content.length;
+        }
+        else {
+            ChunkManifest manifest = this.merkleizer.merkleize(file);
+            digest = manifest.getRoot().getDigest();
+            hashedSize = manifest.getFileLength();
+        }
+
+        // Un file modificato durante la lettura viene ricalcolato la volta
+        // successiva
+        boolean reliable = modified < racyLimit && hashedSize == size;
+        return new FileEntry(name, digest, size, reliable ? modified : UNKNOWN_TIME);
+    }
+
+    /**
+     * Calcola l'hash di una directory come root dell'albero di Merkle che ha
+     * come foglie i suoi elementi, nell'ordine dato.
+     */
+    private byte[] directoryDigest(Map<String, Entry> children) {
+        if(children.isEmpty())
+            return this.hasher.dataDigest(new byte[0], Funnel.BYTE_ARRAY);
+
+        StreamingMerkleRoot<Entry> root = new StreamingMerkleRoot<>(this.hasher);
+        for (Entry child : children.values())
+            root.addDigest(this.hasher.dataDigest(child, ENTRY));
+        return root.getRootDigest();
+    }
+
+    /**
+     * Restituisce i percorsi relativi, con separatore '/', dei file presenti
+     * in uno solo dei due indici o con hash diversi. Vengono visitate
+     * solamente le directory con hash diversi, quindi il confronto di due
+     * indici quasi uguali non dipende dal numero di file.
+     *
+     * @param other
+     *                  l'indice da confrontare.
+     * @return l'insieme non modificabile dei percorsi diversi, in ordine.
+     * @throws IllegalArgumentException
+     *                                      se l'altro indice è null o usa un
+     *                                      algoritmo di hash diverso.
+     */
+    public SortedSet<String> findChangedFiles(DirectoryMerkleIndex other) {
+
+        if(other == null)
+            throw new IllegalArgumentException("other passato a findChangedFiles() è null!");
+        if(!this.hasher.equals(other.hasher))
+            throw new IllegalArgumentException("other usa un algoritmo di hash diverso!");
+
+        SortedSet<String> changed = new TreeSet<>();
+        compare(this.root, other.root, "", changed);
+        return Collections.unmodifiableSortedSet(changed);
+    }
+
+    /**
+     * Confronta due elementi con lo stesso percorso, ognuno dei quali può
+     * mancare, aggiungendo i file diversi all'insieme.
+     */
+    private static void compare(Entry entry, Entry other, String path, SortedSet<String> changed) {
+        if(entry != null && other != null && Arrays.equals(entry.digest, other.digest)
+                && entry.getClass() == other.getClass())
+            return;
+
+        boolean entryIsDirectory = entry instanceof DirectoryEntry;
+        boolean otherIsDirectory = other instanceof DirectoryEntry;
+        if((entry != null && !entryIsDirectory) || (other != null && !otherIsDirectory))
+            changed.add(path);
+
+        Map<String, Entry> children = entryIsDirectory ? ((DirectoryEntry) entry).children : Map.of();
+        Map<String, Entry> otherChildren = otherIsDirectory ? ((DirectoryEntry) other).children : Map.of();
+        String prefix = path.isEmpty() ? "" : path + "/";
+
+        for (Map.Entry<String, Entry> child : children.entrySet())
+            compare(child.getValue(), otherChildren.get(child.getKey()), prefix + child.getKey(), changed);
+        for (Map.Entry<String, Entry> child : otherChildren.entrySet())
+            if(!children.containsKey(child.getKey()))
+                compare(null, child.getValue(), prefix + child.getKey(), changed);
+    }
+
+    /**
+     * Salva l'indice nel file dato. L'indice viene scritto in un file
+     * temporaneo nella stessa directory, che poi sostituisce il file dato,
+     * quindi un'interruzione non lascia un indice incompleto.
+     *
+     * @param file
+     *                 il percorso del file.
+     * @throws IllegalArgumentException
+     *                                      se il percorso è null.
+     * @throws IllegalStateException
+     *                                      se l'indice non è mai stato
+     *                                      aggiornato.
+     * @throws IOException
+     *                                      se il file non può essere scritto.
+     */
+    public void save(Path file) throws IOException {
+
+        if(file == null)
+            throw new IllegalArgumentException("file passato a save() è null!");
+        if(this.root == null)
+            throw new IllegalStateException("L'indice non è mai stato aggiornato!");
+
+        Path absolute = file.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeByte(this.hasher.getId());
+                out.writeByte(this.hasher.getDigestLength());
+                writeEntry(out, this.root);
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeByte((entry instanceof FileEntry) ? FILE : DIRECTORY);
+        out.writeUTF(entry.name);
+        out.write(entry.digest);
+
+        if(entry instanceof FileEntry) {
+            out.writeLong(((FileEntry) entry).size);
+            out.writeLong(((FileEntry) entry).modified);
+        }
+        else {
+            Map<String, Entry> children = ((DirectoryEntry) entry).children;
+            out.writeInt(children.size());
+            for (Entry child : children.values())
+                writeEntry(out, child);
+        }
+    }
+
+    /**
+     * Carica un indice salvato con {@link #save(Path)}.
+     *
+     * @param file
+     *                 il percorso del file.
+     * @return l'indice caricato.
+     * @throws IllegalArgumentException
+     *                                      se il percorso è null o il file non
+     *                                      contiene un indice valido nel
+     *                                      formato {@link #VERSION} con un
+     *                                      algoritmo di hash disponibile.
+     * @throws IOException
+     *                                      se il file non può essere letto o
+     *                                      è incompleto.
+     */
+    public static DirectoryMerkleIndex load(Path file) throws IOException {
+
+        if(file == null)
+            throw new IllegalArgumentException("file passato a load() è null!");
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != MAGIC)
+                throw new IllegalArgumentException("Il file non contiene un indice di Merkle!");
+            byte version = in.readByte();
+            if(version != VERSION)
+                throw new IllegalArgumentException("Versione del formato non supportata: " + version);
+            byte id = in.readByte();
+            MerkleHasher hasher = MerkleHasher.forId(id);
+            if(hasher == null)
+                throw new IllegalArgumentException("Algoritmo di hash non supportato: " + id);
+            byte hashLength = in.readByte();
+            if(hashLength != hasher.getDigestLength())
+                throw new IllegalArgumentException("Lunghezza degli hash non supportata: " + hashLength);
+
+            DirectoryMerkleIndex index = new DirectoryMerkleIndex(hasher);
+            Entry root = readEntry(in, hashLength);
+            if(!(root instanceof DirectoryEntry) || in.read() != -1)
+                throw new IllegalArgumentException("Il file non contiene un indice valido!");
+
+            index.root = (DirectoryEntry) root;
+            return index;
+        }
+    }
+
+    private static Entry readEntry(DataInputStream in, int hashLength) throws IOException {
+        byte type = in.readByte();
+        String name = in.readUTF();
+        byte[] digest = new byte[hashLength];
+        in.readFully(digest);
+
+        if(type == FILE)
+            return new FileEntry(name, digest, in.readLong(), in.readLong());
+        if(type != DIRECTORY)
+            throw new IllegalArgumentException("Tipo di elemento non valido: " + type);
+
+        int count = in.readInt();
+        if(count < 0)
+            throw new IllegalArgumentException("Numero di elementi non valido: " + count);
+
+        Map<String, Entry> children = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            Entry child = readEntry(in, hashLength);
+            children.put(child.name, child);
+        }
+        return new DirectoryEntry(name, digest, Collections.unmodifiableMap(children));
+    }
+}
@@ -0,0 +1,246 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per {@link DirectoryMerkleIndex}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testIncrementalUpdate()}: Verifica che un nuovo aggiornamento ricalcoli solamente i file
+ * modificati, aggiunti o rinominati.</li>
+ *
+ * <li>{@link #testRacyFiles()}: Verifica che i file modificati da poco vengano ricalcolati finché la loro
+ * data non è affidabile.</li>
+ *
+ * <li>{@link #testSaveAndLoad()}: Verifica che un indice salvato e caricato mantenga il root e non
+ * ricalcoli i file invariati.</li>
+ *
+ * <li>{@link #testRootDependsOnContentAndLayout()}: Verifica che directory con lo stesso contenuto
+ * abbiano lo stesso root e che nomi e posizioni dei file lo cambino.</li>
+ *
+ * <li>{@link #testSharedPool()}: Verifica che indici che condividono lo stesso pool calcolino lo
+ * stesso root di un indice con un pool proprio.</li>
+ *
+ * <li>{@link #testFindChangedFiles()}: Verifica i file diversi tra due indici, compresi quelli aggiunti,
+ * rimossi e le directory sostituite da file.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per parametri e file
+ * non validi.</li>
+ * </ul>
+ */
+class DirectoryMerkleIndexTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Data di modifica assegnata ai file, abbastanza vecchia da essere
+     * affidabile.
+     */
+    private static final FileTime OLD = FileTime.from(System.currentTimeMillis() - 3_600_000, TimeUnit.MILLISECONDS);
+
+    private static void write(Path file, byte[] content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, OLD);
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        write(file, content.getBytes());
+    }
+
+    private static Path createTree(Path root) throws IOException {
+        byte[] large = new byte[100_000];
+        new Random(1).nextBytes(large);
+
+        write(root.resolve("a.txt"), "alfa");
+        write(root.resolve("b/c.txt"), "gamma");
+        write(root.resolve("b/d/e.bin"), large);
+        Files.createDirectories(root.resolve("f"));
+        return root;
+    }
+
+    @Test
+    void testIncrementalUpdate() throws IOException {
+        Path root = createTree(this.directory.resolve("tree"));
+        DirectoryMerkleIndex index = new DirectoryMerkleIndex(MerkleHasher.SHA_256);
+
+        assertNull(index.getRoot());
+        assertEquals(3, index.update(root));
+        assertEquals(3, index.getFileCount());
+        MerkleNode first = index.getRoot();
+
+        assertEquals(0, index.update(root));
+        assertEquals(first, index.getRoot());
+
+        // Stessa dimensione, data diversa
+        write(root.resolve("b/c.txt"), "delta");
+        Files.setLastModifiedTime(root.resolve("b/c.txt"), FileTime.from(OLD.toMillis() + 1000, TimeUnit.MILLISECONDS));
+        assertEquals(1, index.update(root));
+        assertNotEquals(first, index.getRoot());
+
+        // Ripristino del contenuto originale
+        write(root.resolve("b/c.txt"), "gamma");
+        assertEquals(1, index.update(root));
+        assertEquals(first, index.getRoot());
+
+        // Un file rinominato viene ricalcolato, uno rimosso no
+        Files.move(root.resolve("a.txt"), root.resolve("z.txt"));
+        Files.delete(root.resolve("b/c.txt"));
+        assertEquals(1, index.update(root));
+        assertEquals(2, index.getFileCount());
+    }
+
+    @Test
+    void testRacyFiles() throws IOException {
+        Path root = createTree(this.directory.resolve("tree"));
+        Path recent = root.resolve("b/recent.txt");
+        Files.write(recent, "recente".getBytes());
+
+        DirectoryMerkleIndex index = new DirectoryMerkleIndex(MerkleHasher.MD5);
+        assertEquals(4, index.update(root));
+        assertEquals(1, index.update(root));
+        assertEquals(1, index.update(root));
+
+        Files.setLastModifiedTime(recent, OLD);
+        assertEquals(1, index.update(root));
+        assertEquals(0, index.update(root));
+    }
+
+    @Test
+    void testSaveAndLoad() throws IOException {
+        Path root = createTree(this.directory.resolve("tree"));
+        Path file = this.directory.resolve("index.mkdi");
+
+        DirectoryMerkleIndex index = new DirectoryMerkleIndex(MerkleHasher.MURMUR3_128);
+        index.update(root);
+        index.save(file);
+        index.save(file);
+
+        DirectoryMerkleIndex loaded = DirectoryMerkleIndex.load(file);
+        assertSame(MerkleHasher.MURMUR3_128, loaded.getHasher());
+        assertEquals(index.getRoot(), loaded.getRoot());
+        assertEquals(3, loaded.getFileCount());
+        assertTrue(loaded.findChangedFiles(index).isEmpty());
+
+        assertEquals(0, loaded.update(root));
+        write(root.resolve("b/d/e.bin"), "nuovo");
+        assertEquals(1, loaded.update(root));
+        assertEquals(Set.of("b/d/e.bin"), loaded.findChangedFiles(index));
+
+        // Nessun file temporaneo rimasto nella directory
+        try (var files = Files.list(this.directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void testRootDependsOnContentAndLayout() throws IOException {
+        DirectoryMerkleIndex first = new DirectoryMerkleIndex(MerkleHasher.SHA_256);
+        DirectoryMerkleIndex second = new DirectoryMerkleIndex(MerkleHasher.SHA_256);
+        first.update(createTree(this.directory.resolve("first")));
+        second.update(createTree(this.directory.resolve("second")));
+        assertEquals(first.getRoot(), second.getRoot());
+
+        Path root = this.directory.resolve("second");
+        MerkleNode original = second.getRoot();
+
+        // Lo stesso file spostato in un'altra directory
+        Files.move(root.resolve("a.txt"), root.resolve("f/a.txt"));
+        second.update(root);
+        assertNotEquals(original, second.getRoot());
+
+        Files.move(root.resolve("f/a.txt"), root.resolve("a.txt"));
+        second.update(root);
+        assertEquals(original, second.getRoot());
+
+        // Una directory vuota aggiunta
+        Files.createDirectories(root.resolve("g"));
+        second.update(root);
+        assertNotEquals(original, second.getRoot());
+    }
+
+    @Test
+    void testSharedPool() throws IOException {
+        Path root = createTree(this.directory.resolve("tree"));
+        DirectoryMerkleIndex expected = new DirectoryMerkleIndex(MerkleHasher.SHA_256);
+        expected.update(root);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            DirectoryMerkleIndex first = new DirectoryMerkleIndex(MerkleHasher.SHA_256, pool);
+            DirectoryMerkleIndex second = new DirectoryMerkleIndex(MerkleHasher.SHA_256, pool);
+            assertEquals(3, first.update(root));
+            assertEquals(3, second.update(root));
+            assertEquals(expected.getRoot(), first.getRoot());
+            assertEquals(expected.getRoot(), second.getRoot());
+            assertFalse(pool.isShutdown(), "Il pool non dovrebbe essere chiuso dall'indice.");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testFindChangedFiles() throws IOException {
+        Path root = createTree(this.directory.resolve("tree"));
+        DirectoryMerkleIndex before = new DirectoryMerkleIndex(MerkleHasher.SHA_256);
+        before.update(root);
+        before.save(this.directory.resolve("before"));
+
+        write(root.resolve("a.txt"), "alfa modificato");
+        write(root.resolve("f/nuovo.txt"), "nuovo");
+        Files.delete(root.resolve("b/d/e.bin"));
+        Files.delete(root.resolve("b/d"));
+        write(root.resolve("b/d"), "ora è un file");
+
+        DirectoryMerkleIndex after = DirectoryMerkleIndex.load(this.directory.resolve("before"));
+        assertEquals(3, after.update(root));
+
+        assertEquals(Set.of("a.txt", "b/d", "b/d/e.bin", "f/nuovo.txt"), after.findChangedFiles(before));
+        assertEquals(after.findChangedFiles(before), before.findChangedFiles(after));
+        assertTrue(after.findChangedFiles(after).isEmpty());
+    }
+
+    @Test
+    void testInvalidArguments() throws IOException {
+        Path root = createTree(this.directory.resolve("tree"));
+        DirectoryMerkleIndex index = new DirectoryMerkleIndex(MerkleHasher.MD5);
+
+        assertThrows(IllegalArgumentException.class, () -> new DirectoryMerkleIndex(null));
+        assertThrows(IllegalArgumentException.class, () -> new DirectoryMerkleIndex(null, ForkJoinPool.commonPool()));
+        assertThrows(IllegalArgumentException.class, () -> new DirectoryMerkleIndex(MerkleHasher.MD5, null));
+        assertThrows(IllegalArgumentException.class, () -> index.update(null));
+        assertThrows(IllegalArgumentException.class, () -> index.update(root.resolve("a.txt")));
+        assertThrows(IllegalStateException.class, () -> index.save(this.directory.resolve("index")));
+
+        index.update(root);
+        assertThrows(IllegalArgumentException.class, () -> index.save(null));
+        assertThrows(IllegalArgumentException.class, () -> index.findChangedFiles(null));
+        assertThrows(IllegalArgumentException.class,
+                () -> index.findChangedFiles(new DirectoryMerkleIndex(MerkleHasher.SHA_256)));
+
+        assertThrows(IllegalArgumentException.class, () -> DirectoryMerkleIndex.load(null));
+        assertThrows(IllegalArgumentException.class, () -> DirectoryMerkleIndex.load(root.resolve("a.txt")));
+
+        // Indice troncato
+        Path file = this.directory.resolve("index");
+        index.save(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class, () -> DirectoryMerkleIndex.load(file));
+    }
+}
@@ -0,0 +1,379 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Calcola l'albero di Merkle di un file senza caricarlo in memoria,
+ * dividendolo in chunk i cui confini dipendono dal contenuto. Il file viene
+ * letto a blocchi da un FileChannel e i confini vengono cercati con un hash
+ * scorrevole (Gear hash): un chunk termina nel primo byte, oltre la
+ * lunghezza minima, in cui i bit più alti dell'hash degli ultimi 64 byte sono
+ * tutti 0, oppure quando raggiunge la lunghezza massima. Gli hash dei chunk
+ * di ogni blocco vengono calcolati in parallelo su un ForkJoinPool mentre il
+ * blocco successivo viene letto. Il pool viene creato una sola volta con il
+ * merkleizer, oppure passato al costruttore per condividerlo con altri
+ * merkleizer, e viene usato da tutte le chiamate a merkleize().
+ *
+ * Poiché i confini dipendono solamente dai byte vicini, inserire o rimuovere
+ * byte in un punto del file modifica solamente i chunk intorno a quel punto:
+ * i confini successivi si riallineano e i chunk restanti mantengono lo
+ * stesso hash, anche se si trovano in posizioni diverse. Il risultato è un
+ * {@link ChunkManifest}, con cui si possono individuare i chunk da
+ * trasferire tra due versioni di un file.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public final class FileMerkleizer {
+
+    /**
+     * Lunghezza minima predefinita di un chunk.
+     */
+    public static final int DEFAULT_MIN_CHUNK = 16 << 10;
+
+    /**
+     * Distanza media predefinita tra un confine e il successivo oltre la
+     * lunghezza minima.
+     */
+    public static final int DEFAULT_AVERAGE_CHUNK = 64 << 10;
+
+    /**
+     * Lunghezza massima predefinita di un chunk.
+     */
+    public static final int DEFAULT_MAX_CHUNK = 256 << 10;
+
+    /**
+     * Lunghezza massima accettata per un chunk.
+     */
+    private static final int MAX_CHUNK_LIMIT = 64 << 20;
+
+    /**
+     * Dimensione minima dei blocchi letti dal file.
+     */
+    private static final int BLOCK_SIZE = 4 << 20;
+
+    /**
+     * Valori casuali associati a ogni byte dall'hash scorrevole, generati
+     * con SplitMix64 da un seme fisso. Cambiare la tabella cambia tutti i
+     * confini dei chunk.
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x4D4B4C54L;
+        for (int i = 0; i < GEAR.length; i++) {
+            long z = (seed += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Algoritmo usato per calcolare gli hash.
+     */
+    private final MerkleHasher hasher;
+
+    /**
+     * Lunghezza minima di un chunk, escluso l'ultimo del file.
+     */
+    private final int minChunk;
+
+    /**
+     * Lunghezza massima di un chunk.
+     */
+    private final int maxChunk;
+
+    /**
+     * Maschera dei bit dell'hash scorrevole che devono valere 0 in un
+     * confine.
+     */
+    private final long mask;
+
+    /**
+     * Pool su cui vengono calcolati gli hash dei chunk.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Costruisce un merkleizer con le lunghezze dei chunk predefinite, che
+     * usa tanti thread quanti i processori disponibili.
+     *
+     * @param hasher
+     *                   l'algoritmo con cui calcolare gli hash.
+     * @throws IllegalArgumentException
+     *                                      se hasher è null.
+     */
+    public FileMerkleizer(MerkleHasher hasher) {
+        this(hasher, DEFAULT_MIN_CHUNK, DEFAULT_AVERAGE_CHUNK, DEFAULT_MAX_CHUNK,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Costruisce un merkleizer con le lunghezze dei chunk e il numero di
+     * thread dati. La lunghezza attesa di un chunk è circa minChunk +
+     * averageChunk, limitata a maxChunk. I thread del pool creato non
+     * impediscono la terminazione della JVM e vengono rilasciati quando
+     * restano inattivi.
+     *
+     * @param hasher
+     *                         l'algoritmo con cui calcolare gli hash.
+     * @param minChunk
+     *                         la lunghezza minima di un chunk.
+     * @param averageChunk
+     *                         la distanza media tra due confini oltre la
+     *                         lunghezza minima, una potenza di 2.
+     * @param maxChunk
+     *                         la lunghezza massima di un chunk, al più
+     *                         64 MiB.
+     * @param parallelism
+     *                         il numero di thread con cui calcolare gli hash.
+     * @throws IllegalArgumentException
+     *                                      se hasher è null, se le lunghezze
+     *                                      non sono positive e crescenti, se
+     *                                      averageChunk non è una potenza di 2
+     *                                      o se parallelism non è positivo.
+     */
+    public FileMerkleizer(MerkleHasher hasher, int minChunk, int averageChunk, int maxChunk, int parallelism) {
+        this(hasher, minChunk, averageChunk, maxChunk, newPool(parallelism));
+    }
+
+    /**
+     * Costruisce un merkleizer con le lunghezze dei chunk date, che calcola
+     * gli hash sul pool dato. Il pool non viene mai chiuso dal merkleizer e
+     * può essere condiviso con altri merkleizer.
+     *
+     * @param hasher
+     *                         l'algoritmo con cui calcolare gli hash.
+     * @param minChunk
+     *                         la lunghezza minima di un chunk.
+     * @param averageChunk
+     *                         la distanza media tra due confini oltre la
+     *                         lunghezza minima, una potenza di 2.
+     * @param maxChunk
+     *                         la lunghezza massima di un chunk, al più
+     *                         64 MiB.
+     * @param pool
+     *                         il pool su cui calcolare gli hash.
+     * @throws IllegalArgumentException
+     *                                      se hasher o pool sono null, se le
+     *                                      lunghezze non sono positive e
+     *                                      crescenti o se averageChunk non è
+     *                                      una potenza di 2.
+     */
+    public FileMerkleizer(MerkleHasher hasher, int minChunk, int averageChunk, int maxChunk, ForkJoinPool pool) {
+
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato al costruttore è null!");
+        if(minChunk < 1 || averageChunk < minChunk || maxChunk < averageChunk || maxChunk > MAX_CHUNK_LIMIT)
+            throw new IllegalArgumentException("Lunghezze dei chunk passate al costruttore non valide!");
+        if(Integer.bitCount(averageChunk) != 1)
+            throw new IllegalArgumentException("averageChunk passato al costruttore non è una potenza di 2!");
+        if(pool == null)
+            throw new IllegalArgumentException("pool passato al costruttore è null!");
+
+        this.hasher = hasher;
+        this.minChunk = minChunk;
+        this.maxChunk = maxChunk;
+        this.pool = pool;
+
+        // I bit più alti dipendono da tutti gli ultimi 64 byte, quelli più
+        // bassi solamente dagli ultimi byte
+        this.mask = (averageChunk == 1) ? 0 : -1L << (Long.SIZE - Integer.numberOfTrailingZeros(averageChunk));
+    }
+
+    private static ForkJoinPool newPool(int parallelism) {
+        if(parallelism < 1)
+            throw new IllegalArgumentException("parallelism passato al costruttore non è positivo!");
+        return new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Restituisce il pool su cui vengono calcolati gli hash dei chunk.
+     *
+     * @return il pool del merkleizer.
+     */
+    public ForkJoinPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Restituisce l'algoritmo usato per calcolare gli hash.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    public MerkleHasher getHasher() {
+        return this.hasher;
+    }
+
+    /**
+     * Divide in chunk il file nel percorso dato e ne calcola gli hash.
+     *
+     * @param file
+     *                 il percorso del file.
+     * @return il manifest dei chunk del file.
+     * @throws IllegalArgumentException
+     *                                      se il percorso è null.
+     * @throws IOException
+     *                                      se il file non può essere letto.
+     */
+    public ChunkManifest merkleize(Path file) throws IOException {
+
+        if(file == null)
+            throw new IllegalArgumentException("file passato a merkleize() è null!");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return merkleize(channel);
+        }
+    }
+
+    /**
+     * Divide in chunk il contenuto di un canale, dall'inizio alla fine, e ne
+     * calcola gli hash. Il canale viene letto per posizione, quindi la sua
+     * posizione corrente non viene modificata. In memoria sono presenti al
+     * più due blocchi per thread, oltre al manifest.
+     *
+     * @param channel
+     *                    il canale da cui leggere il file.
+     * @return il manifest dei chunk del file.
+     * @throws IllegalArgumentException
+     *                                      se il canale è null o il file ha
+     *                                      troppi chunk.
+     * @throws IOException
+     *                                      se il canale non può essere letto.
+     */
+    public ChunkManifest merkleize(FileChannel channel) throws IOException {
+
+        if(channel == null)
+            throw new IllegalArgumentException("channel passato a merkleize() è null!");
+
+        int capacity = Math.max(BLOCK_SIZE, 2 * this.maxChunk);
+        ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+        ByteArrayOutputStream digests = new ByteArrayOutputStream();
+        int[] lengths = new int[64];
+        int count = 0;
+
+        int parallelism = this.pool.getParallelism();
+        try {
+            byte[] block = new byte[capacity];
+            int filled = 0;
+            long position = 0;
+            boolean endOfFile = false;
+
+            while (true) {
+                while (filled < capacity && !endOfFile) {
+                    int read = channel.read(ByteBuffer.wrap(block, filled, capacity - filled), position);
+                    if(read < 0)
+                        endOfFile = true;
+                    else {
+                        filled += read;
+                        position += read;
+                    }
+                }
+
+                // Confini dei chunk completi del blocco
+                int[] bounds = new int[filled / this.minChunk + 2];
+                int chunks = 0;
+                while (bounds[chunks] < filled) {
+                    int length = chunkLength(block, bounds[chunks], filled - bounds[chunks], endOfFile);
+                    if(length < 0)
+                        break;
+                    bounds[chunks + 1] = bounds[chunks] + length;
+                    chunks++;
+                }
+
+                // Un file vuoto ha un solo chunk vuoto
+                if(endOfFile && count == 0 && chunks == 0)
+                    chunks = 1;
+
+                if((long) (count + chunks) * this.hasher.getDigestLength() > Integer.MAX_VALUE - 8)
+                    throw new IllegalArgumentException("Il file ha troppi chunk!");
+                if(count + chunks > lengths.length)
+                    lengths = Arrays.copyOf(lengths, Math.max(2 * lengths.length, count + chunks));
+                for (int i = 0; i < chunks; i++)
+                    lengths[count++] = bounds[i + 1] - bounds[i];
+
+                if(chunks > 0) {
+                    byte[] hashed = block;
+                    int[] hashedBounds = Arrays.copyOf(bounds, chunks + 1);
+                    pending.add(this.pool.submit(() -> hashChunks(hashed, hashedBounds)));
+                }
+
+                if(endOfFile)
+                    break;
+
+                // I byte dell'ultimo chunk incompleto passano al blocco
+                // successivo, mentre questo può essere ancora in uso
+                int consumed = bounds[chunks];
+                byte[] next = new byte[capacity];
+                System.arraycopy(block, consumed, next, 0, filled - consumed);
+                filled -= consumed;
+                block = next;
+
+                while (pending.size() > 2 * parallelism)
+                    digests.writeBytes(pending.poll().join());
+            }
+
+            while (!pending.isEmpty())
+                digests.writeBytes(pending.poll().join());
+        } finally {
+            // I chunk già inviati di un file non leggibile non occupano il
+            // pool oltre questa chiamata
+            for (ForkJoinTask<byte[]> task : pending)
+                task.cancel(false);
+        }
+
+        return new ChunkManifest(this.hasher, Arrays.copyOf(lengths, count), digests.toByteArray());
+    }
+
+    /**
+     * Restituisce la lunghezza del chunk che inizia nella posizione data.
+     *
+     * @param data
+     *                      l'array contenente i byte del file.
+     * @param from
+     *                      la posizione di inizio del chunk.
+     * @param available
+     *                      il numero di byte disponibili da from.
+     * @param endOfFile
+     *                      true se i byte disponibili arrivano alla fine del
+     *                      file.
+     * @return la lunghezza del chunk; -1 se servono altri byte per trovarne
+     *         la fine.
+     */
+    int chunkLength(byte[] data, int from, int available, boolean endOfFile) {
+        if(available <= this.minChunk)
+            return endOfFile ? available : -1;
+
+        int limit = Math.min(available, this.maxChunk);
+        long hash = 0;
+        for (int i = this.minChunk; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[from + i] & 0xFF];
+            if((hash & this.mask) == 0)
+                return i + 1;
+        }
+
+        if(limit == this.maxChunk)
+            return this.maxChunk;
+        return endOfFile ? available : -1;
+    }
+
+    /**
+     * Calcola gli hash contigui dei chunk di un blocco.
+     */
+    private byte[] hashChunks(byte[] block, int[] bounds) {
+        int hashLength = this.hasher.getDigestLength();
+        byte[] result = new byte[(bounds.length - 1) * hashLength];
+        for (int i = 0; i + 1 < bounds.length; i++)
+            this.hasher.digestInto(block, bounds[i], bounds[i + 1] - bounds[i], result, i * hashLength);
+        return result;
+    }
+}
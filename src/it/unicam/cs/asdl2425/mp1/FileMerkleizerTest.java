@@ -0,0 +1,215 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per {@link FileMerkleizer} e {@link ChunkManifest}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testRootMatchesMerkleTree()}: Verifica che i chunk coprano tutto il file e che il root
+ * coincida con quello di un {@link MerkleTree} costruito sui contenuti dei chunk.</li>
+ *
+ * <li>{@link #testChunksAcrossBlocks()}: Verifica, su un file più grande di un blocco di lettura, che i
+ * confini coincidano con quelli calcolati sull'intero contenuto e rispettino le lunghezze.</li>
+ *
+ * <li>{@link #testInsertionChangesFewChunks()}: Verifica che inserire e modificare pochi byte cambi
+ * solamente i chunk vicini.</li>
+ *
+ * <li>{@link #testParallelismAndEmptyFile()}: Verifica che il numero di thread non cambi il risultato e
+ * che un file vuoto abbia un solo chunk vuoto.</li>
+ *
+ * <li>{@link #testSharedPool()}: Verifica che più merkleizer possano usare lo stesso pool, che resta
+ * utilizzabile tra una chiamata e l'altra.</li>
+ *
+ * <li>{@link #testEncoding()}: Verifica la scrittura e la lettura del formato binario del manifest.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per parametri e buffer
+ * non validi.</li>
+ * </ul>
+ */
+class FileMerkleizerTest {
+
+    @TempDir
+    Path directory;
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private Path write(String name, byte[] data) throws IOException {
+        return Files.write(this.directory.resolve(name), data);
+    }
+
+    private static FileMerkleizer smallChunks(MerkleHasher hasher, int parallelism) {
+        return new FileMerkleizer(hasher, 512, 2048, 8192, parallelism);
+    }
+
+    @Test
+    void testRootMatchesMerkleTree() throws IOException {
+        byte[] data = randomBytes(300_000, 1);
+        ChunkManifest manifest = smallChunks(MerkleHasher.SHA_256, 2).merkleize(write("file", data));
+
+        assertEquals(data.length, manifest.getFileLength());
+        assertTrue(manifest.getChunkCount() > 50);
+
+        HashLinkedList<byte[]> chunks = new HashLinkedList<>(MerkleHasher.SHA_256, Funnel.BYTE_ARRAY);
+        long offset = 0;
+        for (int i = 0; i < manifest.getChunkCount(); i++) {
+            assertEquals(offset, manifest.getChunkOffset(i));
+            byte[] chunk = Arrays.copyOfRange(data, (int) offset, (int) offset + manifest.getChunkLength(i));
+            assertArrayEquals(MerkleHasher.SHA_256.dataDigest(chunk, Funnel.BYTE_ARRAY), manifest.getChunkDigest(i));
+            chunks.addAtTail(chunk);
+            offset += chunk.length;
+        }
+        assertEquals(data.length, offset);
+
+        assertEquals(new MerkleTree<>(chunks).getRoot(), manifest.getRoot());
+    }
+
+    @Test
+    void testChunksAcrossBlocks() throws IOException {
+        byte[] data = randomBytes(9 << 20, 2);
+        FileMerkleizer merkleizer = smallChunks(MerkleHasher.MURMUR3_128, 2);
+        ChunkManifest manifest = merkleizer.merkleize(write("large", data));
+
+        int start = 0;
+        for (int i = 0; i < manifest.getChunkCount(); i++) {
+            int expected = merkleizer.chunkLength(data, start, data.length - start, true);
+            assertEquals(expected, manifest.getChunkLength(i), "Chunk " + i);
+            assertTrue(manifest.getChunkLength(i) <= 8192);
+            if(i < manifest.getChunkCount() - 1)
+                assertTrue(manifest.getChunkLength(i) > 512);
+            start += expected;
+        }
+        assertEquals(data.length, start);
+
+        // Lunghezza media vicina a minChunk + averageChunk
+        long average = data.length / manifest.getChunkCount();
+        assertTrue(average > 1500 && average < 4000, "Lunghezza media: " + average);
+    }
+
+    @Test
+    void testInsertionChangesFewChunks() throws IOException {
+        byte[] data = randomBytes(1 << 21, 3);
+        byte[] inserted = randomBytes(100, 4);
+
+        byte[] edited = new byte[data.length + inserted.length];
+        System.arraycopy(data, 0, edited, 0, 1000);
+        System.arraycopy(inserted, 0, edited, 1000, inserted.length);
+        System.arraycopy(data, 1000, edited, 1000 + inserted.length, data.length - 1000);
+        edited[1 << 20] ^= 1;
+
+        FileMerkleizer merkleizer = smallChunks(MerkleHasher.MD5, 2);
+        ChunkManifest original = merkleizer.merkleize(write("original", data));
+        ChunkManifest modified = merkleizer.merkleize(write("modified", edited));
+
+        assertNotEquals(original.getRoot(), modified.getRoot());
+        int missing = modified.findMissingChunks(original).size();
+        assertTrue(missing >= 2 && missing <= 6, "Chunk da trasferire: " + missing);
+        assertTrue(modified.findMissingChunks(modified).isEmpty());
+    }
+
+    @Test
+    void testParallelismAndEmptyFile() throws IOException {
+        Path file = write("file", randomBytes(100_000, 5));
+        ChunkManifest sequential = smallChunks(MerkleHasher.MD5, 1).merkleize(file);
+        ChunkManifest parallel = smallChunks(MerkleHasher.MD5, 3).merkleize(file);
+        assertEquals(sequential.getRoot(), parallel.getRoot());
+        assertEquals(sequential.getChunkCount(), parallel.getChunkCount());
+
+        ChunkManifest empty = new FileMerkleizer(MerkleHasher.SHA_256).merkleize(write("empty", new byte[0]));
+        assertEquals(1, empty.getChunkCount());
+        assertEquals(0, empty.getChunkLength(0));
+        assertEquals(0, empty.getFileLength());
+        assertArrayEquals(MerkleHasher.SHA_256.dataDigest(new byte[0], Funnel.BYTE_ARRAY), empty.getChunkDigest(0));
+    }
+
+    @Test
+    void testSharedPool() throws IOException {
+        Path file = write("file", randomBytes(100_000, 8));
+        ChunkManifest expected = smallChunks(MerkleHasher.SHA_256, 2).merkleize(file);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            FileMerkleizer first = new FileMerkleizer(MerkleHasher.SHA_256, 512, 2048, 8192, pool);
+            FileMerkleizer second = new FileMerkleizer(MerkleHasher.SHA_256, 512, 2048, 8192, pool);
+            assertSame(pool, first.getPool());
+
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expected.getRoot(), first.merkleize(file).getRoot());
+                assertEquals(expected.getRoot(), second.merkleize(file).getRoot());
+            }
+            assertFalse(pool.isShutdown(), "Il pool non dovrebbe essere chiuso dal merkleizer.");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testEncoding() throws IOException {
+        ChunkManifest manifest = smallChunks(MerkleHasher.SHA_256, 1).merkleize(write("file", randomBytes(50_000, 6)));
+        assertEquals(16 + manifest.getChunkCount() * 36L, manifest.getEncodedLength());
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) manifest.getEncodedLength() + 3);
+        buffer.put((byte) 1);
+        manifest.writeTo(buffer);
+        buffer.flip().position(1);
+
+        ChunkManifest read = ChunkManifest.fromByteBuffer(buffer);
+        assertEquals(1 + manifest.getEncodedLength(), buffer.position());
+        assertEquals(manifest.getRoot(), read.getRoot());
+        assertEquals(manifest.getFileLength(), read.getFileLength());
+        assertSame(MerkleHasher.SHA_256, read.getHasher());
+        for (int i = 0; i < manifest.getChunkCount(); i++)
+            assertEquals(manifest.getChunkOffset(i), read.getChunkOffset(i));
+    }
+
+    @Test
+    void testInvalidArguments() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> new FileMerkleizer(null));
+        assertThrows(IllegalArgumentException.class, () -> new FileMerkleizer(MerkleHasher.MD5, 0, 16, 64, 1));
+        assertThrows(IllegalArgumentException.class, () -> new FileMerkleizer(MerkleHasher.MD5, 16, 24, 64, 1));
+        assertThrows(IllegalArgumentException.class, () -> new FileMerkleizer(MerkleHasher.MD5, 16, 64, 32, 1));
+        assertThrows(IllegalArgumentException.class, () -> new FileMerkleizer(MerkleHasher.MD5, 16, 64, 128, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new FileMerkleizer(MerkleHasher.MD5, 16, 64, 128, (ForkJoinPool) null));
+
+        FileMerkleizer merkleizer = new FileMerkleizer(MerkleHasher.MD5);
+        assertThrows(IllegalArgumentException.class, () -> merkleizer.merkleize((Path) null));
+        assertThrows(IOException.class, () -> merkleizer.merkleize(this.directory.resolve("missing")));
+
+        ChunkManifest manifest = merkleizer.merkleize(write("file", randomBytes(1000, 7)));
+        ChunkManifest sha = new FileMerkleizer(MerkleHasher.SHA_256).merkleize(write("file", randomBytes(1000, 7)));
+        assertThrows(IllegalArgumentException.class, () -> manifest.getChunkLength(1));
+        assertThrows(IllegalArgumentException.class, () -> manifest.findMissingChunks(null));
+        assertThrows(IllegalArgumentException.class, () -> manifest.findMissingChunks(sha));
+        assertThrows(IllegalArgumentException.class, () -> ChunkManifest.fromByteBuffer(null));
+        assertThrows(IllegalArgumentException.class, () -> ChunkManifest.fromByteBuffer(ByteBuffer.allocate(10)));
+
+        ByteBuffer encoded = ByteBuffer.allocate((int) manifest.getEncodedLength());
+        manifest.writeTo(encoded);
+        byte[] bytes = encoded.array();
+
+        // Versione, algoritmo, numero di chunk e lunghezza del file non validi
+        for (int[] change : new int[][] { { 0, 9 }, { 1, 77 }, { 7, 2 }, { 15, 1 } }) {
+            byte[] copy = bytes.clone();
+            copy[change[0]] = (byte) change[1];
+            assertThrows(IllegalArgumentException.class, () -> ChunkManifest.fromByteBuffer(ByteBuffer.wrap(copy)),
+                    "Byte " + change[0]);
+        }
+    }
+}
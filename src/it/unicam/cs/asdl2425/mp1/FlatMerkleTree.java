@@ -0,0 +1,579 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Albero di Merkle in sola lettura i cui hash sono memorizzati in un'unica
+ * sequenza di byte fuori dallo heap, invece che in oggetti {@link MerkleNode}.
+ * Gli hash di tutti i livelli hanno lunghezza fissa e sono disposti in ordine
+ * di livello, dalle foglie al root: il livello l contiene ceil(w / 2^l) hash,
+ * dove w è il numero di foglie. Prove e confronti leggono gli hash dei
+ * fratelli direttamente dalla sequenza.
+ *
+ * Gli hash coincidono con quelli di un {@link MerkleTree} costruito sugli
+ * stessi dati, compresi i nodi senza fratello il cui hash viene ricalcolato a
+ * partire dall'unico figlio, e le prove generate sono normali oggetti
+ * {@link MerkleProof}.
+ *
+ * Un albero può essere interrogato da più thread contemporaneamente. Dopo la
+ * chiusura i metodi che leggono gli hash lanciano IllegalStateException.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ *
+ * @param <T>
+ *                il tipo di dati su cui l'albero è costruito.
+ */
+public abstract class FlatMerkleTree<T> implements AutoCloseable {
+
+    /**
+     * Numero di foglie lette alla volta durante la ricerca di un dato.
+     */
+    private static final int SCAN_CHUNK = 4096;
+
+    /**
+     * Hash vuoto, usato al posto del fratello mancante di un nodo.
+     */
+    private static final byte[] EMPTY_HASH = new byte[0];
+
+    /**
+     * Sequenza che contiene gli hash, null dopo la chiusura.
+     */
+    private volatile SegmentedBuffer buffer;
+
+    /**
+     * Numero di foglie dell'albero.
+     */
+    private final int width;
+
+    /**
+     * Algoritmo degli hash dell'albero.
+     */
+    private final MerkleHasher hasher;
+
+    /**
+     * Funnel usato per calcolare gli hash dei dati cercati.
+     */
+    private final Funnel<? super T> funnel;
+
+    /**
+     * Lunghezza in byte di un hash.
+     */
+    private final int hashLength;
+
+    /**
+     * Posizione del primo hash di ogni livello; l'ultimo elemento è la
+     * posizione successiva all'hash del root.
+     */
+    private final long[] levelOffsets;
+
+    /**
+     * Hash del root in forma binaria.
+     */
+    private final byte[] rootHash;
+
+    /**
+     * Lettore degli hash dei nodi di un albero, dato il livello e la
+     * posizione.
+     */
+    private interface NodeReader {
+        void read(int level, int index, byte[] dst);
+    }
+
+    /**
+     * Crea un albero sugli hash già calcolati contenuti nella sequenza.
+     *
+     * @param buffer
+     *                   la sequenza che contiene gli hash.
+     * @param start
+     *                   la posizione del primo hash delle foglie.
+     * @param width
+     *                   il numero di foglie.
+     * @param hasher
+     *                   l'algoritmo degli hash.
+     * @param funnel
+     *                   il funnel dei dati cercati.
+     */
+    FlatMerkleTree(SegmentedBuffer buffer, long start, int width, MerkleHasher hasher, Funnel<? super T> funnel) {
+        this.buffer = buffer;
+        this.width = width;
+        this.hasher = hasher;
+        this.funnel = funnel;
+        this.hashLength = hasher.getDigestLength();
+        this.levelOffsets = levelOffsets(start, width, this.hashLength);
+        this.rootHash = new byte[this.hashLength];
+        readDigest(getHeight(), 0, this.rootHash, 0);
+    }
+
+    /**
+     * Calcola la posizione del primo hash di ogni livello di un albero con la
+     * larghezza data.
+     *
+     * @param start
+     *                       la posizione del primo hash delle foglie.
+     * @param width
+     *                       il numero di foglie.
+     * @param hashLength
+     *                       la lunghezza di un hash.
+     * @return le posizioni dei livelli, dalle foglie al root, seguite dalla
+     *         posizione successiva all'hash del root.
+     */
+    static long[] levelOffsets(long start, int width, int hashLength) {
+        int height = MerkleTree.heightOf(width);
+        long[] offsets = new long[height + 2];
+
+        offsets[0] = start;
+        for (int level = 0; level <= height; level++)
+            offsets[level + 1] = offsets[level] + (long) levelSize(width, level) * hashLength;
+
+        return offsets;
+    }
+
+    /**
+     * Restituisce il numero di nodi di un livello.
+     *
+     * @param width
+     *                  il numero di foglie.
+     * @param level
+     *                  il livello, 0 per le foglie.
+     * @return il numero di nodi del livello.
+     */
+    static int levelSize(int width, int level) {
+        return ((width - 1) >> level) + 1;
+    }
+
+    /**
+     * Calcola i livelli interni a partire dalle foglie già scritte nella
+     * sequenza, leggendo ogni livello per calcolare il successivo.
+     *
+     * @param buffer
+     *                    la sequenza che contiene le foglie.
+     * @param offsets
+     *                    le posizioni dei livelli calcolate da
+     *                    {@link #levelOffsets(long, int, int)}.
+     * @param width
+     *                    il numero di foglie.
+     * @param hasher
+     *                    l'algoritmo degli hash.
+     */
+    static void buildLevels(SegmentedBuffer buffer, long[] offsets, int width, MerkleHasher hasher) {
+        int hashLength = hasher.getDigestLength();
+        byte[] children = new byte[2 * hashLength];
+        byte[] parent = new byte[hashLength];
+        int childCount = width;
+
+        for (int level = 1; level < offsets.length - 1; level++) {
+            int parentCount = (childCount + 1) / 2;
+
+            for (int i = 0; i < parentCount; i++) {
+                long childOffset = offsets[level - 1] + 2L * i * hashLength;
+                if(2 * i + 1 < childCount) {
+                    buffer.get(childOffset, children, 0, 2 * hashLength);
+                    hasher.combineInto(children, 0, hashLength, children, hashLength, hashLength, parent, 0);
+                }
+                else {
+                    // Nodo senza fratello, l'hash viene ricalcolato da solo
+                    buffer.get(childOffset, children, 0, hashLength);
+                    hasher.combineInto(children, 0, hashLength, EMPTY_HASH, 0, 0, parent, 0);
+                }
+                buffer.put(offsets[level] + (long) i * hashLength, parent, 0, hashLength);
+            }
+
+            childCount = parentCount;
+        }
+    }
+
+    /**
+     * Restituisce il numero di foglie dell'albero.
+     *
+     * @return la larghezza dell'albero.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Restituisce l'altezza dell'albero.
+     *
+     * @return l'altezza dell'albero.
+     */
+    public int getHeight() {
+        return this.levelOffsets.length - 2;
+    }
+
+    /**
+     * Restituisce l'algoritmo usato per calcolare gli hash dell'albero.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    public MerkleHasher getHasher() {
+        return this.hasher;
+    }
+
+    /**
+     * Restituisce il funnel usato per calcolare gli hash dei dati cercati.
+     *
+     * @return il funnel dei dati.
+     */
+    public Funnel<? super T> getFunnel() {
+        return this.funnel;
+    }
+
+    /**
+     * Restituisce il root dell'albero. Il nodo contiene solamente l'hash:
+     * i figli non vengono caricati nello heap.
+     *
+     * @return il nodo radice.
+     */
+    public MerkleNode getRoot() {
+        return new MerkleNode(this.rootHash.clone());
+    }
+
+    /**
+     * Copia l'hash del nodo di un dato livello e posizione nell'array fornito.
+     *
+     * @param level
+     *                  il livello del nodo, 0 per le foglie.
+     * @param index
+     *                  la posizione del nodo nel suo livello.
+     * @param dst
+     *                  l'array in cui copiare l'hash.
+     * @param off
+     *                  la posizione di dst da cui copiare.
+     * @throws IllegalStateException
+     *                                   se l'albero è stato chiuso.
+     */
+    void readDigest(int level, int index, byte[] dst, int off) {
+        buffer().get(this.levelOffsets[level] + (long) index * this.hashLength, dst, off, this.hashLength);
+    }
+
+    /**
+     * Restituisce la sequenza degli hash, controllando che l'albero non sia
+     * stato chiuso.
+     *
+     * @return la sequenza degli hash.
+     * @throws IllegalStateException
+     *                                   se l'albero è stato chiuso.
+     */
+    SegmentedBuffer buffer() {
+        SegmentedBuffer current = this.buffer;
+        if(current == null)
+            throw new IllegalStateException("L'albero è stato chiuso!");
+        return current;
+    }
+
+    /**
+     * Restituisce l'indice della prima foglia che contiene il dato fornito.
+     *
+     * @param data
+     *                 il dato da cercare.
+     * @return l'indice del dato nell'albero; -1 se il dato non è presente.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     * @throws IllegalStateException
+     *                                      se l'albero è stato chiuso.
+     */
+    public int getIndexOfData(T data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a getIndexOfData() è null!");
+
+        return indexOfLeaf(this.hasher.dataDigest(data, this.funnel));
+    }
+
+    /**
+     * Restituisce l'indice della prima foglia con l'hash dato. Le foglie
+     * vengono lette a blocchi e confrontate una alla volta, quindi la ricerca
+     * richiede tempo lineare nel numero di foglie; le sottoclassi con un
+     * indice delle foglie ridefiniscono questo metodo.
+     *
+     * @param digest
+     *                   l'hash da cercare.
+     * @return l'indice della foglia; -1 se nessuna foglia ha l'hash dato.
+     * @throws IllegalStateException
+     *                                   se l'albero è stato chiuso.
+     */
+    int indexOfLeaf(byte[] digest) {
+        SegmentedBuffer current = buffer();
+        byte[] chunk = new byte[SCAN_CHUNK * this.hashLength];
+
+        for (int start = 0; start < this.width; start += SCAN_CHUNK) {
+            int count = Math.min(SCAN_CHUNK, this.width - start);
+            current.get(this.levelOffsets[0] + (long) start * this.hashLength, chunk, 0, count * this.hashLength);
+
+            for (int i = 0; i < count; i++)
+                if(Arrays.equals(chunk, i * this.hashLength, (i + 1) * this.hashLength, digest, 0,
+                        this.hashLength))
+                    return start + i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Restituisce true se il dato fornito è contenuto in una foglia
+     * dell'albero.
+     *
+     * @param data
+     *                 il dato da cercare.
+     * @return true se il dato è presente; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     * @throws IllegalStateException
+     *                                      se l'albero è stato chiuso.
+     */
+    public boolean validateData(T data) {
+        return getIndexOfData(data) != -1;
+    }
+
+    /**
+     * Restituisce la prova di Merkle per la foglia di posizione data, leggendo
+     * gli hash dei fratelli direttamente dalla sequenza.
+     *
+     * @param index
+     *                  la posizione della foglia.
+     * @return la prova di Merkle per la foglia.
+     * @throws IllegalArgumentException
+     *                                      se la posizione non è valida.
+     * @throws IllegalStateException
+     *                                      se l'albero è stato chiuso.
+     */
+    public MerkleProof getMerkleProofAt(int index) {
+
+        if(index < 0 || index >= this.width)
+            throw new IllegalArgumentException("index passato a getMerkleProofAt() non è valido!");
+
+        int height = getHeight();
+        MerkleProof proof = new MerkleProof(this.rootHash, height, this.hasher);
+
+        for (int level = 0; level < height; level++, index /= 2) {
+            if(index % 2 == 0) {
+                // Fratello destro, se esiste
+                if(index + 1 < levelSize(this.width, level)) {
+                    byte[] sibling = new byte[this.hashLength];
+                    readDigest(level, index + 1, sibling, 0);
+                    proof.addHash(sibling, false);
+                }
+                else
+                    proof.addHash(EMPTY_HASH, false);
+            }
+            else {
+                byte[] sibling = new byte[this.hashLength];
+                readDigest(level, index - 1, sibling, 0);
+                proof.addHash(sibling, true);
+            }
+        }
+
+        return proof;
+    }
+
+    /**
+     * Restituisce la prova di Merkle per la prima foglia che contiene il dato
+     * fornito.
+     *
+     * @param data
+     *                 il dato per cui generare la prova.
+     * @return la prova di Merkle per il dato.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o non è parte
+     *                                      dell'albero.
+     * @throws IllegalStateException
+     *                                      se l'albero è stato chiuso.
+     */
+    public MerkleProof getMerkleProof(T data) {
+
+        int index = getIndexOfData(data);
+        if(index == -1)
+            throw new IllegalArgumentException("data passato a getMerkleProof() non è parte dell'albero!");
+
+        return getMerkleProofAt(index);
+    }
+
+    /**
+     * Restituisce true se l'altro albero ha lo stesso root di questo albero.
+     *
+     * @param otherTree
+     *                      l'albero da validare.
+     * @return true se l'altro albero è valido; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se l'albero fornito è null.
+     */
+    public boolean validateTree(FlatMerkleTree<T> otherTree) {
+
+        if(otherTree == null)
+            throw new IllegalArgumentException("otherTree passato a validateTree() è null!");
+
+        return Arrays.equals(this.rootHash, otherTree.rootHash);
+    }
+
+    /**
+     * Trova gli indici delle foglie con un hash diverso in un altro albero
+     * fuori dallo heap, come {@link MerkleTree#findInvalidDataIndices}:
+     * vengono confrontati gli hash dei nodi corrispondenti a partire dal root,
+     * scendendo solamente nei sottoalberi diversi.
+     *
+     * @param otherTree
+     *                      l'albero da confrontare.
+     * @return l'insieme degli indici delle foglie diverse.
+     * @throws IllegalArgumentException
+     *                                      se l'albero fornito è null, ha una
+     *                                      larghezza diversa o usa un altro
+     *                                      algoritmo di hash.
+     * @throws IllegalStateException
+     *                                      se uno dei due alberi è stato
+     *                                      chiuso.
+     */
+    public Set<Integer> findInvalidDataIndices(FlatMerkleTree<T> otherTree) {
+
+        if(otherTree == null)
+            throw new IllegalArgumentException("otherTree passato a findInvalidDataIndices() è null!");
+
+        checkComparable(otherTree.getWidth(), otherTree.getHasher());
+        return findInvalidDataIndices((level, index, dst) -> otherTree.readDigest(level, index, dst, 0));
+    }
+
+    /**
+     * Trova gli indici delle foglie con un hash diverso in un albero nello
+     * heap, leggendo gli hash di questo albero direttamente dalla sequenza.
+     *
+     * @param otherTree
+     *                      l'albero da confrontare.
+     * @return l'insieme degli indici delle foglie diverse.
+     * @throws IllegalArgumentException
+     *                                      se l'albero fornito è null, ha una
+     *                                      larghezza diversa o usa un altro
+     *                                      algoritmo di hash.
+     * @throws IllegalStateException
+     *                                      se l'albero è stato chiuso.
+     */
+    public Set<Integer> findInvalidDataIndices(MerkleTree<T> otherTree) {
+
+        if(otherTree == null)
+            throw new IllegalArgumentException("otherTree passato a findInvalidDataIndices() è null!");
+
+        checkComparable(otherTree.getWidth(), otherTree.getHasher());
+        return findInvalidDataIndices((level, index, dst) -> System.arraycopy(
+                otherTree.getNodeDigest(level, index), 0, dst, 0, this.hashLength));
+    }
+
+    /**
+     * Restituisce la prova di consistenza tra l'albero costruito sulle prime
+     * oldWidth foglie di questo albero e questo albero, che permette di
+     * verificare, conoscendo solamente i due root, che il primo è un prefisso
+     * del secondo (vedi {@link MerkleConsistencyProof}).
+     *
+     * @param oldWidth
+     *                     il numero di foglie dell'albero precedente.
+     * @return la prova di consistenza.
+     * @throws IllegalArgumentException
+     *                                      se oldWidth non è compreso tra 1 e
+     *                                      la larghezza di questo albero.
+     * @throws IllegalStateException
+     *                                      se l'albero è stato chiuso.
+     */
+    public MerkleConsistencyProof getConsistencyProof(int oldWidth) {
+        return MerkleConsistencyProof.generate(NodeSource.of(this), oldWidth);
+    }
+
+    /**
+     * Confronta questo albero, considerato la versione precedente, con una
+     * versione successiva fuori dallo heap che può avere una larghezza
+     * diversa, come {@link MerkleTree#diff(MerkleTree)}.
+     *
+     * @param otherTree
+     *                      la versione successiva dell'albero.
+     * @return le differenze tra i due alberi.
+     * @throws IllegalArgumentException
+     *                                      se l'altro albero è null o usa un
+     *                                      algoritmo di hash diverso.
+     * @throws IllegalStateException
+     *                                      se uno dei due alberi è stato
+     *                                      chiuso.
+     */
+    public MerkleTreeDiff diff(FlatMerkleTree<T> otherTree) {
+
+        if(otherTree == null)
+            throw new IllegalArgumentException("otherTree passato a diff() è null!");
+
+        return MerkleTreeDiff.between(NodeSource.of(this), NodeSource.of(otherTree));
+    }
+
+    /**
+     * Confronta questo albero, considerato la versione precedente, con una
+     * versione successiva nello heap che può avere una larghezza diversa, come
+     * {@link MerkleTree#diff(MerkleTree)}.
+     *
+     * @param otherTree
+     *                      la versione successiva dell'albero.
+     * @return le differenze tra i due alberi.
+     * @throws IllegalArgumentException
+     *                                      se l'altro albero è null o usa un
+     *                                      algoritmo di hash diverso.
+     * @throws IllegalStateException
+     *                                      se l'albero è stato chiuso.
+     */
+    public MerkleTreeDiff diff(MerkleTree<T> otherTree) {
+
+        if(otherTree == null)
+            throw new IllegalArgumentException("otherTree passato a diff() è null!");
+
+        return MerkleTreeDiff.between(NodeSource.of(this), NodeSource.of(otherTree));
+    }
+
+    /**
+     * Controlla che un altro albero abbia la stessa struttura e lo stesso
+     * algoritmo di questo albero.
+     */
+    private void checkComparable(int otherWidth, MerkleHasher otherHasher) {
+        if(otherWidth != this.width)
+            throw new IllegalArgumentException("La struttura di otherTree non corrisponde alla struttura di questo albero");
+        if(!this.hasher.equals(otherHasher))
+            throw new IllegalArgumentException("otherTree usa un algoritmo di hash diverso!");
+    }
+
+    /**
+     * Confronta questo albero con un altro della stessa struttura, a partire
+     * dal root.
+     */
+    private Set<Integer> findInvalidDataIndices(NodeReader other) {
+        Set<Integer> invalidIndices = new HashSet<>();
+        findInvalidDataIndicesRecursive(getHeight(), 0, other, new byte[this.hashLength],
+                new byte[this.hashLength], invalidIndices);
+        return invalidIndices;
+    }
+
+    /**
+     * Confronta il nodo di un dato livello e posizione con il corrispondente
+     * nodo dell'altro albero e, se sono diversi, scende nei figli. Gli array di
+     * appoggio vengono riusati a ogni livello, dato che il confronto precede
+     * la discesa.
+     */
+    private void findInvalidDataIndicesRecursive(int level, int index, NodeReader other, byte[] mine,
+            byte[] theirs, Set<Integer> invalidIndices) {
+        readDigest(level, index, mine, 0);
+        other.read(level, index, theirs);
+        if(Arrays.equals(mine, theirs))
+            return;
+
+        if(level == 0) {
+            invalidIndices.add(index);
+            return;
+        }
+
+        findInvalidDataIndicesRecursive(level - 1, 2 * index, other, mine, theirs, invalidIndices);
+        if(2 * index + 1 < levelSize(this.width, level - 1))
+            findInvalidDataIndicesRecursive(level - 1, 2 * index + 1, other, mine, theirs, invalidIndices);
+    }
+
+    /**
+     * Chiude l'albero, rilasciando il riferimento alla sequenza degli hash.
+     * Le chiamate successive ai metodi che leggono gli hash lanciano
+     * IllegalStateException; root, larghezza e algoritmo restano
+     * disponibili. Chiamare il metodo più volte non ha ulteriori effetti.
+     */
+    @Override
+    public void close() {
+        this.buffer = null;
+    }
+}
@@ -0,0 +1,125 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Descrive come scrivere il contenuto di un dato in una {@link Sink}, in modo
+ * che l'hash della foglia che lo contiene dipenda dal contenuto effettivo del
+ * dato e non solamente dal suo {@code hashCode()}. I campi vengono passati
+ * uno alla volta al calcolo dell'hash, senza costruire un array di byte
+ * intermedio.
+ *
+ * <p>
+ * Un funnel deve scrivere sempre la stessa sequenza di byte per dati uguali
+ * e, per quanto possibile, sequenze diverse per dati diversi. Quando un dato
+ * è composto da più campi di lunghezza variabile conviene far precedere ogni
+ * campo dalla sua lunghezza, in modo che ad esempio ("ab", "c") e ("a",
+ * "bc") producano sequenze diverse; i funnel dei record lo fanno
+ * automaticamente.
+ *
+ * <p>
+ * Un funnel non deve calcolare a sua volta hash di foglie con lo stesso
+ * {@link MerkleHasher}: la sink che riceve è quella del thread corrente.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ *
+ * @param <T>
+ *                il tipo di dati descritti dal funnel.
+ */
+@FunctionalInterface
+public interface Funnel<T> {
+
+    /**
+     * Funnel che scrive solamente i 4 byte di {@code data.hashCode()}, come
+     * {@link HashUtil#dataToHash(Object)}. È il funnel predefinito delle
+     * strutture del package e produce gli stessi hash delle versioni
+     * precedenti.
+     */
+    Funnel<Object> HASH_CODE = (from, into) -> into.putInt(from.hashCode());
+
+    /**
+     * Funnel che scrive i caratteri in UTF-8.
+     */
+    Funnel<CharSequence> STRING = (from, into) -> into.putString(from);
+
+    /**
+     * Funnel che scrive i byte dell'array.
+     */
+    Funnel<byte[]> BYTE_ARRAY = (from, into) -> into.putBytes(from);
+
+    /**
+     * Funnel che scrive un booleano su un byte.
+     */
+    Funnel<Boolean> BOOLEAN = (from, into) -> into.putBoolean(from);
+
+    /**
+     * Funnel che scrive un byte.
+     */
+    Funnel<Byte> BYTE = (from, into) -> into.putByte(from);
+
+    /**
+     * Funnel che scrive uno short su 2 byte.
+     */
+    Funnel<Short> SHORT = (from, into) -> into.putShort(from);
+
+    /**
+     * Funnel che scrive un carattere su 2 byte.
+     */
+    Funnel<Character> CHARACTER = (from, into) -> into.putChar(from);
+
+    /**
+     * Funnel che scrive un intero su 4 byte.
+     */
+    Funnel<Integer> INTEGER = (from, into) -> into.putInt(from);
+
+    /**
+     * Funnel che scrive un long su 8 byte.
+     */
+    Funnel<Long> LONG = (from, into) -> into.putLong(from);
+
+    /**
+     * Funnel che scrive un float su 4 byte.
+     */
+    Funnel<Float> FLOAT = (from, into) -> into.putFloat(from);
+
+    /**
+     * Funnel che scrive un double su 8 byte.
+     */
+    Funnel<Double> DOUBLE = (from, into) -> into.putDouble(from);
+
+    /**
+     * Scrive il contenuto di un dato nella sink fornita.
+     *
+     * @param from
+     *                 il dato da descrivere, non null.
+     * @param into
+     *                 la sink in cui scrivere.
+     */
+    void funnel(T from, Sink into);
+
+    /**
+     * Restituisce il funnel di un tipo record, che scrive le componenti del
+     * record nell'ordine della dichiarazione. Sono supportate componenti di
+     * tipo primitivo o wrapper, {@link CharSequence}, {@code byte[]}, enum e
+     * altri record. Le stringhe e gli array sono preceduti dalla lunghezza,
+     * le componenti di tipo riferimento da un byte che indica se valgono
+     * null e gli enum sono scritti come il nome della costante. I funnel
+     * vengono costruiti una sola volta per ogni tipo.
+     *
+     * @param <R>
+     *                 il tipo record.
+     * @param type
+     *                 la classe del record.
+     * @return il funnel del record.
+     * @throws IllegalArgumentException
+     *                                      se type è null o ha una componente
+     *                                      di tipo non supportato, oppure se
+     *                                      le sue componenti non sono
+     *                                      accessibili.
+     */
+    static <R extends Record> Funnel<R> ofRecord(Class<R> type) {
+
+        if(type == null)
+            throw new IllegalArgumentException("type passato a ofRecord() è null!");
+
+        return RecordFunnel.of(type);
+    }
+}
@@ -0,0 +1,198 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per l'interfaccia {@link Funnel} e per il calcolo degli hash
+ * delle foglie a partire dal contenuto dei dati.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testHashCodeFunnelMatchesLegacyHash()}: Verifica, per ogni algoritmo, che un funnel
+ * che scrive l'hashCode produca lo stesso hash del calcolo originale basato sull'hashCode.</li>
+ *
+ * <li>{@link #testStreamingMatchesDigest()}: Verifica, per ogni algoritmo e per contenuti di
+ * lunghezze diverse, che l'hash calcolato man mano dalla sink coincida con quello dei byte
+ * concatenati, anche per un algoritmo senza sink propria.</li>
+ *
+ * <li>{@link #testStringFunnelIsUtf8()}: Verifica che le stringhe vengano scritte in UTF-8, compresi
+ * i caratteri fuori dal piano di base.</li>
+ *
+ * <li>{@link #testCollidingHashCodes()}: Verifica che lista e albero costruiti con un funnel
+ * distinguano dati diversi con lo stesso hashCode, e che le prove vengano verificate con il funnel.</li>
+ *
+ * <li>{@link #testRecordFunnel()}: Verifica che il funnel di un record dipenda da tutte le
+ * componenti, separi i campi di lunghezza variabile e gestisca componenti null e record annidati.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per funnel null e per
+ * record con componenti di tipo non supportato.</li>
+ * </ul>
+ */
+class FunnelTest {
+
+    private static final MerkleHasher[] HASHERS = { MerkleHasher.MD5, MerkleHasher.SHA_256,
+            MerkleHasher.MURMUR3_128 };
+
+    private enum Color { RED, GREEN }
+
+    private record Label(String text, Color color) {
+    }
+
+    private record Item(long id, String name, byte[] payload, Label label, Integer quantity) {
+    }
+
+    private record Unsupported(List<String> values) {
+    }
+
+    /**
+     * Algoritmo che delega a MD5 senza fornire una sink propria.
+     */
+    private static final MerkleHasher DELEGATING = new MerkleHasher() {
+        public String getName() { return "MD5 delegato"; }
+
+        public byte getId() { return 99; }
+
+        public int getDigestLength() { return MerkleHasher.MD5.getDigestLength(); }
+
+        public void digestInto(byte[] input, int inOff, int inLen, byte[] out, int outOff) {
+            MerkleHasher.MD5.digestInto(input, inOff, inLen, out, outOff);
+        }
+
+        public void dataDigestInto(Object data, byte[] out, int outOff) {
+            MerkleHasher.MD5.dataDigestInto(data, out, outOff);
+        }
+
+        public void combineInto(byte[] left, int leftOff, int leftLen, byte[] right, int rightOff, int rightLen,
+                byte[] out, int outOff) {
+            MerkleHasher.MD5.combineInto(left, leftOff, leftLen, right, rightOff, rightLen, out, outOff);
+        }
+    };
+
+    @Test
+    void testHashCodeFunnelMatchesLegacyHash() {
+        // Funnel equivalente a HASH_CODE ma distinto, quindi calcolato dalla sink
+        Funnel<Object> hashCode = (from, into) -> into.putInt(from.hashCode());
+
+        for (MerkleHasher hasher : HASHERS)
+            for (Object data : new Object[] { "Alice paga Bob", 42, -7L }) {
+                assertArrayEquals(hasher.dataDigest(data), hasher.dataDigest(data, Funnel.HASH_CODE));
+                assertArrayEquals(hasher.dataDigest(data), hasher.dataDigest(data, hashCode),
+                        "La sink di " + hasher + " dovrebbe produrre l'hash originale.");
+            }
+    }
+
+    @Test
+    void testStreamingMatchesDigest() {
+        byte[] content = new byte[300];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) (i * 31 + 7);
+
+        for (MerkleHasher hasher : new MerkleHasher[] { MerkleHasher.MD5, MerkleHasher.SHA_256,
+                MerkleHasher.MURMUR3_128, DELEGATING }) {
+            byte[] expected = new byte[hasher.getDigestLength()];
+
+            for (int length : new int[] { 0, 1, 15, 16, 17, 63, 64, 65, 128, 300 }) {
+                byte[] bytes = Arrays.copyOf(content, length);
+                hasher.digestInto(bytes, 0, length, expected, 0);
+
+                assertArrayEquals(expected, hasher.dataDigest(bytes, Funnel.BYTE_ARRAY),
+                        hasher + " con " + length + " byte");
+
+                // Scrittura un byte alla volta e a blocchi non allineati
+                Funnel<byte[]> split = (from, into) -> {
+                    int i = 0;
+                    for (; i < from.length && i < 3; i++)
+                        into.putByte(from[i]);
+                    into.putBytes(from, i, from.length - i);
+                };
+                assertArrayEquals(expected, hasher.dataDigest(bytes, split), hasher + " con " + length + " byte");
+            }
+        }
+    }
+
+    @Test
+    void testStringFunnelIsUtf8() {
+        String text = "Perché 𝄞 costa 5€";
+        byte[] expected = new byte[MerkleHasher.SHA_256.getDigestLength()];
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        MerkleHasher.SHA_256.digestInto(utf8, 0, utf8.length, expected, 0);
+
+        assertArrayEquals(expected, MerkleHasher.SHA_256.dataDigest(text, Funnel.STRING));
+        assertArrayEquals(MerkleHasher.MD5.dataDigest(new StringBuilder(text), Funnel.STRING),
+                MerkleHasher.MD5.dataDigest(text, Funnel.STRING), "Il funnel dovrebbe dipendere solo dai caratteri.");
+    }
+
+    @Test
+    void testCollidingHashCodes() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        HashLinkedList<String> list = new HashLinkedList<>(MerkleHasher.MD5, Funnel.STRING);
+        list.addAtTail("Aa");
+        list.addAtTail("BB");
+        list.addAtTail("C");
+        MerkleTree<String> tree = new MerkleTree<>(list);
+
+        assertSame(Funnel.STRING, tree.getFunnel());
+        assertEquals(0, tree.getIndexOfData("Aa"));
+        assertEquals(1, tree.getIndexOfData("BB"), "Dati con lo stesso hashCode dovrebbero essere distinti.");
+
+        MerkleProof proof = tree.getMerkleProof("BB");
+        assertTrue(proof.proveValidityOfData("BB", Funnel.STRING));
+        assertFalse(proof.proveValidityOfData("Aa", Funnel.STRING));
+
+        HashLinkedList<String> legacy = new HashLinkedList<>();
+        legacy.addAtTail("Aa");
+        assertTrue(new MerkleTree<>(legacy).validateData("BB"), "Senza funnel i due dati coincidono.");
+        assertFalse(new MerkleTree<>(legacy, MerkleHasher.MD5, Funnel.STRING).validateData("BB"),
+                "Con il funnel l'albero dovrebbe ricalcolare gli hash e distinguere i dati.");
+    }
+
+    @Test
+    void testRecordFunnel() {
+        Funnel<Item> funnel = Funnel.ofRecord(Item.class);
+        assertSame(funnel, Funnel.ofRecord(Item.class), "Il funnel dovrebbe essere costruito una volta.");
+
+        Item item = new Item(1, "ab", new byte[] { 1, 2 }, new Label("c", Color.RED), 3);
+        byte[] digest = MerkleHasher.SHA_256.dataDigest(item, funnel);
+
+        assertArrayEquals(digest, MerkleHasher.SHA_256.dataDigest(
+                new Item(1, "ab", new byte[] { 1, 2 }, new Label("c", Color.RED), 3), funnel),
+                "Record con lo stesso contenuto dovrebbero avere lo stesso hash.");
+
+        for (Item other : new Item[] {
+                new Item(2, "ab", new byte[] { 1, 2 }, new Label("c", Color.RED), 3),
+                new Item(1, "a", new byte[] { 1, 2 }, new Label("bc", Color.RED), 3),
+                new Item(1, "ab", new byte[] { 1 }, new Label("c", Color.RED), 3),
+                new Item(1, "ab", new byte[] { 1, 2 }, new Label("c", Color.GREEN), 3),
+                new Item(1, "ab", new byte[] { 1, 2 }, new Label("c", Color.RED), null),
+                new Item(1, "ab", new byte[] { 1, 2 }, null, 3) })
+            assertFalse(Arrays.equals(digest, MerkleHasher.SHA_256.dataDigest(other, funnel)),
+                    "Ogni componente dovrebbe contribuire all'hash: " + other);
+
+        HashLinkedList<Item> list = new HashLinkedList<>(MerkleHasher.MURMUR3_128, funnel);
+        list.addAtTail(item);
+        list.addAtTail(new Item(2, null, new byte[0], null, null));
+        MerkleTree<Item> tree = new MerkleTree<>(list);
+        assertTrue(tree.getMerkleProof(item).proveValidityOfData(item, funnel));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new HashLinkedList<String>(MerkleHasher.MD5, null));
+
+        HashLinkedList<String> list = new HashLinkedList<>();
+        list.addAtTail("Alice");
+        assertThrows(IllegalArgumentException.class, () -> new MerkleTree<>(list, MerkleHasher.MD5, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MerkleTree<>(list).getMerkleProof("Alice").proveValidityOfData("Alice", null));
+
+        assertThrows(IllegalArgumentException.class, () -> Funnel.ofRecord(null));
+        assertThrows(IllegalArgumentException.class, () -> Funnel.ofRecord(Unsupported.class));
+    }
+}
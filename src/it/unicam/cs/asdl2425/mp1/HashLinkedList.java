@@ -3,7 +3,11 @@ package it.unicam.cs.asdl2425.mp1;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Una classe che rappresenta una lista concatenata con il calcolo degli hash
@@ -27,7 +31,11 @@ import java.util.NoSuchElementException;
  * coda un'operazione O(1).
  *
  * <p>
- * La classe utilizza la classe HashUtil per calcolare l'hash MD5 dei dati.
+ * La classe utilizza la classe HashUtil per calcolare l'hash MD5 dei dati, a
+ * meno che alla costruzione non venga fornito un diverso {@link MerkleHasher}.
+ * Per default l'hash di un dato è calcolato sul suo hashCode(); fornendo un
+ * {@link Funnel} viene invece calcolato sul contenuto del dato, in modo che
+ * dati diversi con lo stesso hashCode() abbiano hash diversi.
  *
  * @param <T>
  *                il tipo generico dei dati contenuti nei nodi della lista.
@@ -46,11 +54,73 @@ public class HashLinkedList<T> implements Iterable<T> {
                                  // per l'implementazione dell'iteratore
                                  // fail-fast
 
+    private final boolean lazyHashing; // Se true gli hash dei nodi vengono
+                                       // calcolati solo quando richiesti
+
+    private final MerkleHasher hasher; // Algoritmo usato per gli hash dei dati
+
+    private final Funnel<? super T> funnel; // Contenuto dei dati da hashare
+
     public HashLinkedList() {
+        this(MerkleHasher.MD5, Funnel.HASH_CODE, false);
+    }
+
+    /**
+     * Costruisce una lista vuota che calcola gli hash dei dati con
+     * l'algoritmo fornito.
+     *
+     * @param hasher
+     *                   l'algoritmo da usare per gli hash.
+     * @throws IllegalArgumentException
+     *                                      se hasher è null.
+     */
+    public HashLinkedList(MerkleHasher hasher) {
+        this(hasher, Funnel.HASH_CODE, false);
+    }
+
+    /**
+     * Costruisce una lista vuota che calcola gli hash dei dati con
+     * l'algoritmo fornito, a partire dal contenuto scritto dal funnel.
+     *
+     * @param hasher
+     *                   l'algoritmo da usare per gli hash.
+     * @param funnel
+     *                   il funnel che descrive il contenuto dei dati.
+     * @throws IllegalArgumentException
+     *                                      se hasher o funnel sono null.
+     */
+    public HashLinkedList(MerkleHasher hasher, Funnel<? super T> funnel) {
+        this(hasher, funnel, false);
+    }
+
+    /**
+     * Costruisce una lista vuota, specificando se l'hash di ogni elemento deve
+     * essere calcolato all'inserimento oppure solamente quando viene
+     * richiesto. Il calcolo posticipato è adatto a liste di elementi immutabili
+     * i cui hash vengono usati raramente o mai.
+     *
+     * @param hasher
+     *                        l'algoritmo da usare per gli hash.
+     * @param funnel
+     *                        il funnel che descrive il contenuto dei dati.
+     * @param lazyHashing
+     *                        true se gli hash vanno calcolati solamente quando
+     *                        richiesti.
+     * @throws IllegalArgumentException
+     *                                      se hasher o funnel sono null.
+     */
+    HashLinkedList(MerkleHasher hasher, Funnel<? super T> funnel, boolean lazyHashing) {
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato al costruttore è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato al costruttore è null!");
+        this.hasher = hasher;
+        this.funnel = funnel;
         this.head = null;
         this.tail = null;
         this.size = 0;
         this.numeroModifiche = 0;
+        this.lazyHashing = lazyHashing;
     }
 
     /**
@@ -62,21 +132,51 @@ public class HashLinkedList<T> implements Iterable<T> {
         return size;
     }
 
+    /**
+     * Restituisce l'algoritmo usato per calcolare gli hash dei dati.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    public MerkleHasher getHasher() {
+        return hasher;
+    }
+
+    /**
+     * Restituisce il funnel che descrive il contenuto dei dati da hashare,
+     * {@link Funnel#HASH_CODE} se non è stato specificato.
+     *
+     * @return il funnel dei dati.
+     */
+    public Funnel<? super T> getFunnel() {
+        return funnel;
+    }
+
     /**
      * Rappresenta un nodo nella lista concatenata.
      */
     private class Node {
-        String hash; // Hash del dato
+        byte[] hash; // Hash del dato in forma binaria, null se non ancora
+                     // calcolato
 
         T data; // Dato originale
 
         Node next;
 
         Node(T data) {
+            this(data, lazyHashing ? null : hasher.dataDigest(data, funnel));
+        }
+
+        Node(T data, byte[] hash) {
             this.data = data;
-            this.hash = HashUtil.dataToHash(data);
+            this.hash = hash;
             this.next = null;
         }
+
+        byte[] getHash() {
+            if(hash == null)
+                hash = hasher.dataDigest(data, funnel);
+            return hash;
+        }
     }
 
     /**
@@ -133,6 +233,121 @@ public class HashLinkedList<T> implements Iterable<T> {
         this.numeroModifiche++;
     }
 
+    /**
+     * Aggiunge in coda alla lista tutti gli elementi forniti, nell'ordine in
+     * cui compaiono. Gli hash degli elementi vengono calcolati in parallelo
+     * sul ForkJoinPool condiviso con il numero di thread indicato, che viene
+     * creato una sola volta e riusato dalle chiamate successive, mentre i nodi
+     * vengono poi collegati in coda sequenzialmente.
+     *
+     * @param data
+     *                        gli elementi da aggiungere.
+     * @param parallelism
+     *                        il numero di thread da usare per il calcolo degli
+     *                        hash.
+     * @throws IllegalArgumentException
+     *                                      se data è null o parallelism non è
+     *                                      positivo.
+     */
+    public void addAllAtTail(List<? extends T> data, int parallelism) {
+
+        if(parallelism < 1)
+            throw new IllegalArgumentException("parallelism passato a addAllAtTail() non è positivo!");
+
+        addAllAtTail(data, SharedPools.withParallelism(parallelism));
+    }
+
+    /**
+     * Aggiunge in coda alla lista tutti gli elementi forniti, come
+     * {@link #addAllAtTail(List, int)}, calcolando gli hash sul pool dato, che
+     * non viene chiuso.
+     *
+     * @param data
+     *                 gli elementi da aggiungere.
+     * @param pool
+     *                 il pool su cui calcolare gli hash.
+     * @throws IllegalArgumentException
+     *                                      se data o pool sono null.
+     */
+    public void addAllAtTail(List<? extends T> data, ForkJoinPool pool) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a addAllAtTail() è null!");
+        if(pool == null)
+            throw new IllegalArgumentException("pool passato a addAllAtTail() è null!");
+
+        // I task accedono agli elementi per posizione
+        List<? extends T> items = (data instanceof RandomAccess) ? data : new ArrayList<>(data);
+
+        // Calcolo parallelo degli hash
+        byte[][] hashes = new byte[items.size()][];
+        pool.invoke(new HashingTask<T>(hasher, funnel, items, hashes, 0, hashes.length));
+
+        // Collegamento sequenziale dei nodi in coda
+        for (int i = 0; i < hashes.length; i++) {
+            Node newNode = new Node(items.get(i), hashes[i]);
+
+            if(this.size == 0){
+                this.head = newNode;
+                this.tail = newNode;
+            }
+            else {
+                this.tail.next = newNode;
+                this.tail = newNode;
+            }
+            this.size++;
+        }
+
+        this.numeroModifiche++;
+    }
+
+    /**
+     * Task che calcola gli hash di un intervallo di elementi, dividendolo a
+     * metà finché non diventa abbastanza piccolo da essere calcolato
+     * sequenzialmente.
+     */
+    private static class HashingTask<E> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int SEQUENTIAL_THRESHOLD = 1024; // Elementi calcolati
+                                                              // sequenzialmente
+
+        private final MerkleHasher hasher; // Algoritmo degli hash
+
+        private final Funnel<? super E> funnel; // Contenuto degli elementi
+
+        private final List<? extends E> data; // Elementi di cui calcolare gli hash
+
+        private final byte[][] hashes; // Hash calcolati, nella stessa posizione
+                                       // del relativo elemento
+
+        private final int from, to; // Intervallo [from, to) da calcolare
+
+        HashingTask(MerkleHasher hasher, Funnel<? super E> funnel, List<? extends E> data, byte[][] hashes,
+                int from, int to) {
+            this.hasher = hasher;
+            this.funnel = funnel;
+            this.data = data;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= SEQUENTIAL_THRESHOLD) {
+                for (int i = from; i < to; i++)
+                    hashes[i] = hasher.dataDigest(data.get(i), funnel);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new HashingTask<E>(hasher, funnel, data, hashes, from, middle),
+                    new HashingTask<E>(hasher, funnel, data, hashes, middle, to));
+        }
+    }
+
     /**
      * Restituisce un'ArrayList contenente tutti gli hash nella lista in ordine.
      *
@@ -149,7 +364,7 @@ public class HashLinkedList<T> implements Iterable<T> {
         // Iterazione su tutti i nodi della lista
         while (currentNode != null) {
             // Inserimento hash del nodo corrente nel ArrayList
-            arrayHashes.add(currentNode.hash);
+            arrayHashes.add(HashUtil.toHex(currentNode.getHash()));
             
             // Puntatore currentNode al nodo seguente
             currentNode = currentNode.next;
@@ -158,6 +373,25 @@ public class HashLinkedList<T> implements Iterable<T> {
         return arrayHashes;
     }
 
+    /**
+     * Restituisce un array contenente tutti gli hash della lista in ordine, in
+     * forma binaria. Gli array restituiti non sono copiati e non devono essere
+     * modificati.
+     *
+     * @return un array con tutti gli hash della lista.
+     */
+    byte[][] getAllDigests() {
+
+        byte[][] digests = new byte[this.size][];
+
+        // Iterazione su tutti i nodi della lista
+        int i = 0;
+        for (Node currentNode = this.head; currentNode != null; currentNode = currentNode.next)
+            digests[i++] = currentNode.getHash();
+
+        return digests;
+    }
+
     /**
      * Costruisce una stringa contenente tutti i nodi della lista, includendo
      * dati e hash. La stringa dovrebbe essere formattata come nel seguente
@@ -183,7 +417,7 @@ public class HashLinkedList<T> implements Iterable<T> {
         // Iterazione sui nodi della lista
         while (currentNode != null) {
             // Crea il testo del seguente nodo e lo aggiunge alla stringa nodesString
-            nodesString.append("Dato: " + currentNode.data + ", Hash: " + currentNode.hash + "\n");
+            nodesString.append("Dato: " + currentNode.data + ", Hash: " + HashUtil.toHex(currentNode.getHash()) + "\n");
 
             // Puntatore currentNode al nodo seguente
             currentNode = currentNode.next;
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,6 +34,12 @@ import static org.junit.jupiter.api.Assertions.*;
  * <li>{@link #testGetAllHashes()}: Verifica che il metodo {@code getAllHashes}
  * restituisca gli hash corretti degli elementi della lista.</li>
  * 
+ * <li>{@link #testAddAllAtTailParallel()}: Aggiunge elementi in coda calcolando gli hash
+ * in parallelo e verifica che ordine e hash coincidano con quelli di {@code addAtTail}.</li>
+ * 
+ * <li>{@link #testLazyHashing()}: Verifica che una lista che calcola gli hash solo quando
+ * richiesti restituisca gli stessi hash e la stessa rappresentazione di una lista normale.</li>
+ * 
  * <li>{@link #testRemoveHeadElement()}: Rimuove l'elemento in testa e verifica
  * che la lista sia aggiornata correttamente.</li>
  * 
@@ -173,6 +180,50 @@ class HashLinkedListTest {
                 "Gli hash della lista non corrispondono all'atteso.");
     }
 
+    @Test
+    void testAddAllAtTailParallel() {
+        List<String> data = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) data.add("Transazione " + i);
+
+        HashLinkedList<String> expected = new HashLinkedList<>();
+        expected.addAtTail("Alice paga Bob");
+        for (String s : data) expected.addAtTail(s);
+
+        list.addAtTail("Alice paga Bob");
+        list.addAllAtTail(data, 4);
+
+        assertEquals(5001, list.getSize(), "La dimensione della lista non è corretta.");
+        assertEquals(expected.getAllHashes(), list.getAllHashes(),
+                "Gli hash calcolati in parallelo non corrispondono all'atteso.");
+        assertThrows(IllegalArgumentException.class, () -> list.addAllAtTail(data, 0),
+                "Dovrebbe lanciare IllegalArgumentException per un parallelismo non positivo.");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        HashLinkedList<String> pooled = new HashLinkedList<>();
+        pooled.addAtTail("Alice paga Bob");
+        pooled.addAllAtTail(data, pool);
+        assertEquals(expected.getAllHashes(), pooled.getAllHashes(),
+                "Gli hash calcolati sul pool dato non corrispondono all'atteso.");
+        assertFalse(pool.isShutdown(), "Il pool non dovrebbe essere chiuso dall'aggiunta.");
+        pool.shutdown();
+        assertThrows(IllegalArgumentException.class, () -> list.addAllAtTail(data, (ForkJoinPool) null),
+                "Dovrebbe lanciare IllegalArgumentException per un pool null.");
+    }
+
+    @Test
+    void testLazyHashing() {
+        HashLinkedList<String> lazy = new HashLinkedList<>(MerkleHasher.MD5, Funnel.HASH_CODE, true);
+        lazy.addAtTail("Alice paga Bob");
+        lazy.addAtHead("Bob paga Charlie");
+        list.addAtTail("Alice paga Bob");
+        list.addAtHead("Bob paga Charlie");
+
+        assertEquals(list.getAllHashes(), lazy.getAllHashes(),
+                "Gli hash calcolati su richiesta non corrispondono all'atteso.");
+        assertEquals(list.buildNodesString(), lazy.buildNodesString(),
+                "La rappresentazione testuale non corrisponde all'attesa.");
+    }
+
     @Test
     void testRemoveHeadElement() {
         list.addAtTail("Alice paga Bob");
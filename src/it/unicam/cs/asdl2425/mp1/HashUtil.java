@@ -1,15 +1,116 @@
 package it.unicam.cs.asdl2425.mp1;
 
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * Classe fornita di utilità per calcolare gli hash MD5.
- * 
+ *
+ * <p>
+ * Ogni thread possiede un proprio MessageDigest e un proprio buffer di lavoro,
+ * creati al primo utilizzo e poi riusati. I metodi che scrivono il risultato
+ * in un array fornito dal chiamante (quelli con suffisso Into) non allocano
+ * quindi nessun oggetto per chiamata.
+ *
  * @author Luca Tesei, Marco Caputo
  */
 public class HashUtil {
 
+    /**
+     * Lunghezza in byte di un hash MD5.
+     */
+    public static final int MD5_LENGTH = 16;
+
+    /**
+     * Cifre esadecimali in ASCII, indicizzate per valore.
+     */
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Lunghezza massima degli array di lavoro restituiti da scratchDigest.
+     */
+    private static final int MAX_SCRATCH_LENGTH = 64;
+
+    /**
+     * Stato di lavoro di ciascun thread.
+     */
+    private static final ThreadLocal<Engine> ENGINE = ThreadLocal.withInitial(Engine::new);
+
+    /**
+     * Stato riusabile per il calcolo degli hash da parte di un singolo thread.
+     */
+    private static final class Engine {
+        final MessageDigest md; // Digest MD5 riusato tra le chiamate
+
+        final byte[] intBytes = new byte[4]; // Buffer per la codifica di un int
+
+        // Hash di lavoro per i chiamanti, indicizzati per lunghezza
+        final byte[][] scratchDigests = new byte[MAX_SCRATCH_LENGTH + 1][];
+
+        byte[] hexBytes = new byte[4 * MD5_LENGTH]; // Buffer per la concatenazione
+                                                    // esadecimale di due hash
+
+        Engine() {
+            try {
+                this.md = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("MD5 algorithm not found", e);
+            }
+        }
+
+        /**
+         * Restituisce il buffer esadecimale, ingrandendolo se non contiene
+         * almeno size byte.
+         */
+        byte[] hexBuffer(int size) {
+            if (hexBytes.length < size)
+                hexBytes = new byte[size];
+            return hexBytes;
+        }
+
+        /**
+         * Completa il calcolo dell'hash scrivendolo in out a partire da off.
+         */
+        void finish(byte[] out, int off) {
+            try {
+                md.digest(out, off, MD5_LENGTH);
+            } catch (DigestException e) {
+                md.reset();
+                throw new IllegalArgumentException("Spazio insufficiente per l'hash nell'array di output", e);
+            }
+        }
+    }
+
+    /**
+     * Verifica che out abbia spazio per un hash a partire da off. Il controllo
+     * precede il calcolo, in modo che un errore non lasci byte già elaborati
+     * nel MessageDigest del thread.
+     */
+    private static void checkOutput(byte[] out, int off) {
+        if (out == null || off < 0 || off > out.length - MD5_LENGTH)
+            throw new IllegalArgumentException("Spazio insufficiente per l'hash nell'array di output");
+    }
+
+    /**
+     * Restituisce un array di lavoro del thread corrente, della lunghezza
+     * richiesta, in cui calcolare hash intermedi senza allocazioni. L'array è
+     * condiviso da tutte le chiamate dello stesso thread che richiedono la
+     * stessa lunghezza, quindi il suo contenuto non deve essere conservato
+     * oltre la chiamata che lo usa.
+     *
+     * @param length
+     *                   la lunghezza dell'array, al più 64.
+     * @return l'array di lavoro del thread corrente.
+     */
+    static byte[] scratchDigest(int length) {
+        byte[][] scratchDigests = ENGINE.get().scratchDigests;
+        if (scratchDigests[length] == null)
+            scratchDigests[length] = new byte[length];
+        return scratchDigests[length];
+    }
+
     /**
      * Calcola l'hash del dato fornito utilizzando MD5.
      *
@@ -18,7 +119,7 @@ public class HashUtil {
      * @return l'hash come stringa esadecimale.
      */
     public static String dataToHash(Object data) {
-        return HashUtil.computeMD5(intToBytes(data.hashCode()));
+        return toHex(dataToDigest(data));
     }
 
     /**
@@ -31,17 +132,241 @@ public class HashUtil {
      *                              se l'algoritmo di hashing non è disponibile.
      */
     public static String computeMD5(byte[] input) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] hashBytes = md.digest(input);
-            StringBuilder hashString = new StringBuilder();
-            for (byte b : hashBytes) {
-                hashString.append(String.format("%02x", b));
-            }
-            return hashString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("MD5 algorithm not found", e);
+        return toHex(computeMD5Digest(input));
+    }
+
+    /**
+     * Calcola l'hash del dato fornito utilizzando MD5, restituendolo in forma
+     * binaria.
+     *
+     * @param data
+     *                 il dato da hashare.
+     * @return l'hash come array di byte.
+     */
+    public static byte[] dataToDigest(Object data) {
+        byte[] digest = new byte[MD5_LENGTH];
+        dataDigestInto(data, digest, 0);
+        return digest;
+    }
+
+    /**
+     * Calcola l'hash del dato fornito utilizzando MD5 e lo scrive nell'array
+     * fornito, senza allocare altri oggetti.
+     *
+     * @param data
+     *                 il dato da hashare.
+     * @param out
+     *                 l'array in cui scrivere l'hash.
+     * @param off
+     *                 la posizione di out da cui scrivere l'hash.
+     */
+    public static void dataDigestInto(Object data, byte[] out, int off) {
+        checkOutput(out, off);
+        Engine engine = ENGINE.get();
+        int value = data.hashCode();
+        byte[] intBytes = engine.intBytes;
+
+        // Codifica big-endian, come in intToBytes
+        intBytes[0] = (byte) (value >> 24);
+        intBytes[1] = (byte) (value >> 16);
+        intBytes[2] = (byte) (value >> 8);
+        intBytes[3] = (byte) value;
+
+        engine.md.update(intBytes, 0, 4);
+        engine.finish(out, off);
+    }
+
+    /**
+     * Calcola l'hash di un array di byte fornito utilizzando MD5,
+     * restituendolo in forma binaria.
+     *
+     * @param input
+     *                  l'array di byte di cui calcolare l'hash.
+     * @return l'hash come array di byte.
+     * @throws RuntimeException
+     *                              se l'algoritmo di hashing non è disponibile.
+     */
+    public static byte[] computeMD5Digest(byte[] input) {
+        byte[] digest = new byte[MD5_LENGTH];
+        digestInto(input, 0, input.length, digest, 0);
+        return digest;
+    }
+
+    /**
+     * Calcola l'hash MD5 di una porzione di un array di byte e lo scrive
+     * nell'array fornito, senza allocare altri oggetti.
+     *
+     * @param input
+     *                  l'array di byte di cui calcolare l'hash.
+     * @param inOff
+     *                  la posizione del primo byte da considerare.
+     * @param inLen
+     *                  il numero di byte da considerare.
+     * @param out
+     *                  l'array in cui scrivere l'hash.
+     * @param outOff
+     *                  la posizione di out da cui scrivere l'hash.
+     */
+    public static void digestInto(byte[] input, int inOff, int inLen, byte[] out, int outOff) {
+        checkOutput(out, outOff);
+        Engine engine = ENGINE.get();
+        engine.md.update(input, inOff, inLen);
+        engine.finish(out, outOff);
+    }
+
+    /**
+     * Calcola l'hash combinato di due hash in forma binaria. Il risultato è lo
+     * stesso che si otterrebbe applicando MD5 ai byte della concatenazione
+     * delle rappresentazioni esadecimali dei due hash, ma senza costruire
+     * nessuna stringa intermedia. Un hash vuoto (di lunghezza 0) rappresenta
+     * un fratello mancante: in quel caso l'hash viene ricalcolato solamente a
+     * partire dall'altro.
+     *
+     * @param left
+     *                  l'hash da concatenare a sinistra.
+     * @param right
+     *                  l'hash da concatenare a destra.
+     * @return l'hash combinato come array di byte.
+     */
+    public static byte[] combineDigests(byte[] left, byte[] right) {
+        byte[] digest = new byte[MD5_LENGTH];
+        combineDigestsInto(left, 0, left.length, right, 0, right.length, digest, 0);
+        return digest;
+    }
+
+    /**
+     * Calcola l'hash combinato di due hash in forma binaria, come
+     * {@link #combineDigests(byte[], byte[])}, e lo scrive nell'array fornito
+     * senza allocare altri oggetti. L'array di output può coincidere con
+     * quelli di input.
+     *
+     * @param left
+     *                   l'hash da concatenare a sinistra.
+     * @param right
+     *                   l'hash da concatenare a destra.
+     * @param out
+     *                   l'array in cui scrivere l'hash.
+     * @param outOff
+     *                   la posizione di out da cui scrivere l'hash.
+     */
+    public static void combineDigestsInto(byte[] left, byte[] right, byte[] out, int outOff) {
+        combineDigestsInto(left, 0, left.length, right, 0, right.length, out, outOff);
+    }
+
+    /**
+     * Calcola l'hash combinato di due hash contenuti in porzioni di array, come
+     * {@link #combineDigests(byte[], byte[])}, e lo scrive nell'array fornito
+     * senza allocare altri oggetti. Una porzione di lunghezza 0 rappresenta un
+     * fratello mancante. L'array di output può coincidere con quelli di input.
+     *
+     * @param left
+     *                    l'array contenente l'hash da concatenare a sinistra.
+     * @param leftOff
+     *                    la posizione dell'hash sinistro.
+     * @param leftLen
+     *                    la lunghezza dell'hash sinistro.
+     * @param right
+     *                    l'array contenente l'hash da concatenare a destra.
+     * @param rightOff
+     *                    la posizione dell'hash destro.
+     * @param rightLen
+     *                    la lunghezza dell'hash destro.
+     * @param out
+     *                    l'array in cui scrivere l'hash.
+     * @param outOff
+     *                    la posizione di out da cui scrivere l'hash.
+     */
+    public static void combineDigestsInto(byte[] left, int leftOff, int leftLen, byte[] right, int rightOff,
+            int rightLen, byte[] out, int outOff) {
+        checkOutput(out, outOff);
+        Engine engine = ENGINE.get();
+        int size = (leftLen + rightLen) * 2;
+        byte[] hexBytes = engine.hexBuffer(size);
+
+        // Gli input vengono letti completamente prima di scrivere l'output
+        writeHex(left, leftOff, leftLen, hexBytes, 0);
+        writeHex(right, rightOff, rightLen, hexBytes, leftLen * 2);
+
+        engine.md.update(hexBytes, 0, size);
+        engine.finish(out, outOff);
+    }
+
+    /**
+     * Converte un hash in forma binaria nella sua rappresentazione
+     * esadecimale.
+     *
+     * @param digest
+     *                   l'hash da convertire.
+     * @return l'hash come stringa esadecimale.
+     */
+    public static String toHex(byte[] digest) {
+        byte[] hexBytes = new byte[digest.length * 2];
+        writeHex(digest, 0, digest.length, hexBytes, 0);
+        return new String(hexBytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Converte una stringa esadecimale nell'hash in forma binaria che
+     * rappresenta. Sono accettate solamente stringhe di lunghezza pari composte
+     * da cifre esadecimali minuscole, cioè esattamente le stringhe prodotte da
+     * {@link #toHex(byte[])}.
+     *
+     * @param hex
+     *                la stringa esadecimale da convertire.
+     * @return l'hash come array di byte, oppure null se la stringa non è una
+     *         rappresentazione esadecimale valida.
+     */
+    public static byte[] fromHex(String hex) {
+        if (hex == null || hex.length() % 2 != 0)
+            return null;
+
+        byte[] digest = new byte[hex.length() / 2];
+        for (int i = 0; i < digest.length; i++) {
+            int high = hexValue(hex.charAt(2 * i));
+            int low = hexValue(hex.charAt(2 * i + 1));
+            if (high < 0 || low < 0)
+                return null;
+            digest[i] = (byte) ((high << 4) | low);
         }
+        return digest;
+    }
+
+    /**
+     * Scrive la rappresentazione esadecimale in ASCII di una porzione di un
+     * hash nell'array fornito, utilizzando la tabella delle cifre.
+     *
+     * @param digest
+     *                   l'array contenente l'hash da convertire.
+     * @param off
+     *                   la posizione dell'hash.
+     * @param len
+     *                   la lunghezza dell'hash.
+     * @param out
+     *                   l'array in cui scrivere.
+     * @param outOff
+     *                   la posizione da cui iniziare a scrivere.
+     */
+    private static void writeHex(byte[] digest, int off, int len, byte[] out, int outOff) {
+        for (int i = off; i < off + len; i++) {
+            out[outOff++] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            out[outOff++] = HEX_DIGITS[digest[i] & 0xf];
+        }
+    }
+
+    /**
+     * Restituisce il valore di una cifra esadecimale minuscola.
+     *
+     * @param c
+     *              la cifra esadecimale.
+     * @return il valore della cifra, oppure -1 se non è una cifra esadecimale
+     *         minuscola.
+     */
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9')
+            return c - '0';
+        if (c >= 'a' && c <= 'f')
+            return c - 'a' + 10;
+        return -1;
     }
 
     /**
@@ -61,4 +386,4 @@ public class HashUtil {
         return new byte[] { (byte) (value >> 24), (byte) (value >> 16),
                 (byte) (value >> 8), (byte) value };
     }
-}
\ No newline at end of file
+}
@@ -18,6 +18,19 @@ import static org.junit.jupiter.api.Assertions.*;
  * 
  * <li>{@link #testComputeMD5_nullInput()}: Verifica che il metodo
  * {@code computeMD5} lanci una {@code NullPointerException} quando l'input è {@code null}.</li>
+ * 
+ * <li>{@link #testHexConversion()}: Verifica che {@code toHex} e {@code fromHex} siano
+ * l'una l'inversa dell'altra e che {@code fromHex} rifiuti stringhe non esadecimali.</li>
+ * 
+ * <li>{@link #testCombineDigests()}: Verifica che {@code combineDigests} calcoli lo stesso
+ * hash ottenuto concatenando le rappresentazioni esadecimali dei due hash.</li>
+ * 
+ * <li>{@link #testDigestIntoWithOffset()}: Verifica che i metodi {@code digestInto} e
+ * {@code combineDigestsInto} scrivano l'hash nella posizione richiesta dell'array
+ * fornito, anche quando l'output coincide con uno degli input.</li>
+ * 
+ * <li>{@link #testRejectedOutputKeepsState()}: Verifica che una chiamata rifiutata per spazio
+ * insufficiente nell'array di output non alteri gli hash calcolati successivamente.</li>
  * </ul>
  */
 class HashUtilTest {
@@ -49,4 +62,69 @@ class HashUtilTest {
         assertThrows(NullPointerException.class, () -> HashUtil.computeMD5(null),
                 "Dovrebbe lanciare NullPointerException se l'input è null.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testHexConversion() {
+        String hex = "65a8e27d8879283831b664bd8b7f0ad4";
+
+        assertEquals(hex, HashUtil.toHex(HashUtil.fromHex(hex)),
+                "La conversione esadecimale non è corretta.");
+        assertEquals(0, HashUtil.fromHex("").length,
+                "La stringa vuota dovrebbe corrispondere a un hash vuoto.");
+        assertNull(HashUtil.fromHex("hash123"),
+                "Una stringa non esadecimale non dovrebbe essere convertita.");
+        assertNull(HashUtil.fromHex("65A8"),
+                "Una stringa con cifre maiuscole non dovrebbe essere convertita.");
+    }
+
+    @Test
+    void testCombineDigests() {
+        String left = HashUtil.dataToHash("Alice paga Bob");
+        String right = HashUtil.dataToHash("Bob paga Charlie");
+
+        assertEquals(HashUtil.computeMD5((left + right).getBytes()),
+                HashUtil.toHex(HashUtil.combineDigests(HashUtil.fromHex(left), HashUtil.fromHex(right))),
+                "L'hash combinato non è corretto.");
+        assertEquals(HashUtil.computeMD5(left.getBytes()),
+                HashUtil.toHex(HashUtil.combineDigests(HashUtil.fromHex(left), new byte[0])),
+                "L'hash combinato con un fratello mancante non è corretto.");
+    }
+
+    @Test
+    void testDigestIntoWithOffset() {
+        byte[] input = "xxHello, World!".getBytes();
+        byte[] out = new byte[HashUtil.MD5_LENGTH + 3];
+
+        HashUtil.digestInto(input, 2, input.length - 2, out, 3);
+        assertEquals("65a8e27d8879283831b664bd8b7f0ad4",
+                HashUtil.toHex(java.util.Arrays.copyOfRange(out, 3, out.length)),
+                "L'hash scritto con offset non corrisponde all'atteso.");
+
+        byte[] left = HashUtil.dataToDigest("Alice paga Bob");
+        byte[] right = HashUtil.dataToDigest("Bob paga Charlie");
+        byte[] expected = HashUtil.combineDigests(left, right);
+        HashUtil.combineDigestsInto(left, right, left, 0);
+        assertArrayEquals(expected, left,
+                "L'hash combinato scritto su uno degli input non è corretto.");
+    }
+
+    @Test
+    void testRejectedOutputKeepsState() {
+        String expected = HashUtil.dataToHash(42);
+        byte[] left = HashUtil.dataToDigest(1);
+        byte[] right = HashUtil.dataToDigest(2);
+        byte[] combined = HashUtil.combineDigests(left, right);
+
+        assertThrows(IllegalArgumentException.class, () -> HashUtil.dataDigestInto(7, new byte[10], 0));
+        assertThrows(IllegalArgumentException.class, () -> HashUtil.dataDigestInto(7, new byte[16], -1));
+        assertEquals(expected, HashUtil.dataToHash(42), "L'hash non dovrebbe dipendere dalla chiamata rifiutata.");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> HashUtil.digestInto(new byte[] { 1, 2, 3 }, 0, 3, new byte[20], 5));
+        assertEquals(expected, HashUtil.dataToHash(42), "L'hash non dovrebbe dipendere dalla chiamata rifiutata.");
+
+        assertThrows(IllegalArgumentException.class, () -> HashUtil.combineDigestsInto(left, right, new byte[15], 0));
+        assertArrayEquals(combined, HashUtil.combineDigests(left, right),
+                "L'hash combinato non dovrebbe dipendere dalla chiamata rifiutata.");
+    }
+}
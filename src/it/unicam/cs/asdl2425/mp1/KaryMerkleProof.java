@@ -0,0 +1,367 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Prova di Merkle immutabile per una foglia di un {@link KaryMerkleTree}. Per
+ * ogni livello la prova contiene la posizione del nodo nel suo gruppo di
+ * fratelli e gli hash degli altri nodi del gruppo, nell'ordine in cui vanno
+ * concatenati; la verifica calcola un solo hash per livello.
+ *
+ * La prova è memorizzata direttamente nel suo formato binario:
+ *
+ * <pre>
+ * offset  lunghezza  contenuto
+ * 0       1          versione del formato ({@link #VERSION})
+ * 1       1          lunghezza h di un hash in byte
+ * 2       1          identificativo dell'algoritmo di hash
+ *                    ({@link MerkleHasher#getId()})
+ * 3       1          numero massimo di figli di un nodo, meno 1
+ * 4       1          numero n di livelli
+ * 5       h          hash del root
+ * 5 + h   ...        n livelli, dalle foglie al root, ognuno composto da:
+ *                    1 byte con la posizione p del nodo nel gruppo, 1 byte
+ *                    con il numero s di fratelli e s * h byte con i loro
+ *                    hash, senza quello del nodo
+ * </pre>
+ *
+ * La lettura da un ByteBuffer non copia i dati.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public final class KaryMerkleProof {
+
+    /**
+     * Versione del formato binario prodotto e accettato da questa classe.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Lunghezza in byte dell'intestazione che precede l'hash del root.
+     */
+    private static final int HEADER_LENGTH = 5;
+
+    /**
+     * La prova nel formato binario, dalla posizione 0 al limite.
+     */
+    private final ByteBuffer encoded;
+
+    private KaryMerkleProof(ByteBuffer encoded) {
+        this.encoded = encoded;
+    }
+
+    /**
+     * Genera la prova per la foglia di posizione data, leggendo i gruppi di
+     * fratelli direttamente dagli array dei livelli.
+     *
+     * @param tree
+     *                  l'albero per cui generare la prova.
+     * @param index
+     *                  la posizione valida della foglia.
+     * @return la prova per la foglia.
+     */
+    static KaryMerkleProof generate(KaryMerkleTree<?> tree, int index) {
+        int arity = tree.getArity();
+        int height = tree.getHeight();
+        MerkleHasher hasher = tree.getHasher();
+        int hashLength = hasher.getDigestLength();
+
+        // Prima passata per calcolare la lunghezza della prova
+        int length = HEADER_LENGTH + hashLength;
+        for (int level = 0, i = index; level < height; level++, i /= arity) {
+            int first = i - i % arity;
+            length += 2 + (Math.min(arity, tree.levelSize(level) - first) - 1) * hashLength;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(VERSION).put((byte) hashLength).put(hasher.getId()).put((byte) (arity - 1)).put((byte) height);
+        buffer.put(tree.getLevelDigests(height));
+
+        for (int level = 0, i = index; level < height; level++, i /= arity) {
+            byte[] digests = tree.getLevelDigests(level);
+            int position = i % arity;
+            int first = i - position;
+            int siblings = Math.min(arity, tree.levelSize(level) - first) - 1;
+
+            buffer.put((byte) position).put((byte) siblings);
+            buffer.put(digests, first * hashLength, position * hashLength);
+            buffer.put(digests, (i + 1) * hashLength, (siblings - position) * hashLength);
+        }
+
+        buffer.clear();
+        return new KaryMerkleProof(buffer);
+    }
+
+    /**
+     * Legge una prova dalla posizione corrente di un buffer, avanzando la
+     * posizione alla fine della prova. La prova restituita condivide il
+     * contenuto del buffer, senza copiarlo, quindi il buffer non deve essere
+     * modificato finché la prova è in uso.
+     *
+     * @param buffer
+     *                   il buffer da cui leggere la prova.
+     * @return la prova letta.
+     * @throws IllegalArgumentException
+     *                                      se il buffer è null o non contiene
+     *                                      una prova valida nel formato
+     *                                      {@link #VERSION} con un algoritmo
+     *                                      di hash disponibile.
+     */
+    public static KaryMerkleProof fromByteBuffer(ByteBuffer buffer) {
+
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer passato a fromByteBuffer() è null!");
+
+        int position = buffer.position();
+        int length = encodedLength(buffer, position);
+
+        // Le viste create con slice sono sempre big-endian
+        ByteBuffer slice = buffer.slice(position, length);
+        buffer.position(position + length);
+
+        return new KaryMerkleProof(slice);
+    }
+
+    /**
+     * Controlla la prova che inizia nella posizione data, livello per
+     * livello, e ne restituisce la lunghezza complessiva.
+     *
+     * @throws IllegalArgumentException
+     *                                      se la prova non è valida o non è
+     *                                      interamente contenuta nel buffer.
+     */
+    private static int encodedLength(ByteBuffer buffer, int position) {
+        int available = buffer.limit() - position;
+
+        if(available < HEADER_LENGTH)
+            throw new IllegalArgumentException("Il buffer non contiene un'intestazione completa!");
+        if(buffer.get(position) != VERSION)
+            throw new IllegalArgumentException("Versione del formato non supportata: " + buffer.get(position));
+        MerkleHasher hasher = MerkleHasher.forId(buffer.get(position + 2));
+        if(hasher == null)
+            throw new IllegalArgumentException("Algoritmo di hash non supportato: " + buffer.get(position + 2));
+        int hashLength = hasher.getDigestLength();
+        if(buffer.get(position + 1) != hashLength)
+            throw new IllegalArgumentException("Lunghezza degli hash non supportata: " + buffer.get(position + 1));
+
+        int arity = Byte.toUnsignedInt(buffer.get(position + 3)) + 1;
+        if(arity < KaryMerkleTree.MIN_ARITY)
+            throw new IllegalArgumentException("Numero di figli non valido: " + arity);
+
+        int levels = Byte.toUnsignedInt(buffer.get(position + 4));
+        int length = HEADER_LENGTH + hashLength;
+        for (int level = 0; level < levels; level++) {
+            if(available < length + 2)
+                throw new IllegalArgumentException("Il buffer non contiene una prova completa!");
+
+            int nodePosition = Byte.toUnsignedInt(buffer.get(position + length));
+            int siblings = Byte.toUnsignedInt(buffer.get(position + length + 1));
+            if(siblings >= arity || nodePosition > siblings)
+                throw new IllegalArgumentException("Livello " + level + " della prova non valido!");
+
+            length += 2 + siblings * hashLength;
+        }
+
+        if(available < length)
+            throw new IllegalArgumentException("Il buffer non contiene una prova completa!");
+
+        return length;
+    }
+
+    /**
+     * Restituisce l'algoritmo di hash con cui è stata costruita la prova.
+     *
+     * @return l'algoritmo di hash.
+     */
+    public MerkleHasher getHasher() {
+        return MerkleHasher.forId(this.encoded.get(2));
+    }
+
+    /**
+     * Restituisce il numero massimo di figli di un nodo dell'albero per cui è
+     * stata costruita la prova.
+     *
+     * @return il numero di figli.
+     */
+    public int getArity() {
+        return Byte.toUnsignedInt(this.encoded.get(3)) + 1;
+    }
+
+    /**
+     * Restituisce il numero di livelli della prova, pari al numero di hash
+     * calcolati in sequenza durante la verifica.
+     *
+     * @return il numero di livelli.
+     */
+    public int getLength() {
+        return Byte.toUnsignedInt(this.encoded.get(4));
+    }
+
+    /**
+     * Restituisce il numero complessivo di hash dei fratelli contenuti nella
+     * prova.
+     *
+     * @return il numero di hash dei fratelli.
+     */
+    public int getSiblingCount() {
+        int hashLength = this.encoded.get(1);
+        return (this.encoded.limit() - HEADER_LENGTH - hashLength - 2 * getLength()) / hashLength;
+    }
+
+    /**
+     * Restituisce la posizione della foglia per cui è stata costruita la
+     * prova, ricavata dalle posizioni dei nodi nei loro gruppi.
+     *
+     * @return la posizione della foglia.
+     */
+    public long getLeafIndex() {
+        int arity = getArity();
+        int hashLength = this.encoded.get(1);
+        long index = 0;
+        long weight = 1;
+
+        int offset = HEADER_LENGTH + hashLength;
+        for (int level = 0; level < getLength(); level++) {
+            index += Byte.toUnsignedInt(this.encoded.get(offset)) * weight;
+            weight *= arity;
+            offset += 2 + Byte.toUnsignedInt(this.encoded.get(offset + 1)) * hashLength;
+        }
+
+        return index;
+    }
+
+    /**
+     * Restituisce l'hash esadecimale del root per il quale la prova è stata
+     * costruita.
+     *
+     * @return l'hash del root.
+     */
+    public String getRootHash() {
+        byte[] rootHash = new byte[this.encoded.get(1)];
+        this.encoded.get(HEADER_LENGTH, rootHash);
+        return HashUtil.toHex(rootHash);
+    }
+
+    /**
+     * Restituisce la lunghezza in byte del formato binario della prova.
+     *
+     * @return la lunghezza della prova codificata.
+     */
+    public int getEncodedLength() {
+        return this.encoded.limit();
+    }
+
+    /**
+     * Restituisce una vista in sola lettura del formato binario della prova,
+     * dalla posizione 0 al limite, senza copiarlo.
+     *
+     * @return il buffer contenente la prova.
+     */
+    public ByteBuffer asByteBuffer() {
+        return this.encoded.asReadOnlyBuffer();
+    }
+
+    /**
+     * Scrive il formato binario della prova nella posizione corrente di un
+     * buffer, avanzandone la posizione.
+     *
+     * @param buffer
+     *                   il buffer in cui scrivere.
+     * @throws IllegalArgumentException
+     *                                      se il buffer è null.
+     * @throws java.nio.BufferOverflowException
+     *                                              se il buffer non ha
+     *                                              abbastanza spazio.
+     */
+    public void writeTo(ByteBuffer buffer) {
+
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer passato a writeTo() è null!");
+
+        buffer.put(this.encoded.duplicate());
+    }
+
+    /**
+     * Valida un dato elemento per questa prova, calcolando l'hash della
+     * foglia con {@link Funnel#HASH_CODE}.
+     *
+     * @param data
+     *                 l'elemento da validare.
+     * @return true se il dato è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public boolean proveValidityOfData(Object data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato in proveValidityOfData() è null!");
+
+        return proveValidityOfDigest(getHasher().dataDigest(data));
+    }
+
+    /**
+     * Valida un dato elemento per questa prova, calcolando l'hash della
+     * foglia sul contenuto scritto dal funnel, che deve essere lo stesso
+     * usato dall'albero.
+     *
+     * @param <T>
+     *                   il tipo del dato.
+     * @param data
+     *                   l'elemento da validare.
+     * @param funnel
+     *                   il funnel che descrive il contenuto del dato.
+     * @return true se il dato è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il dato o il funnel sono null.
+     */
+    public <T> boolean proveValidityOfData(T data, Funnel<? super T> funnel) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato in proveValidityOfData() è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato in proveValidityOfData() è null!");
+
+        return proveValidityOfDigest(getHasher().dataDigest(data, funnel));
+    }
+
+    /**
+     * Valida l'hash di una foglia per questa prova. Per ogni livello il nodo
+     * viene inserito nella sua posizione tra i fratelli e il gruppo viene
+     * combinato con un solo hash, fino al root.
+     *
+     * @param leafDigest
+     *                       l'hash della foglia.
+     * @return true se il root calcolato coincide con quello della prova;
+     *         false altrimenti.
+     */
+    boolean proveValidityOfDigest(byte[] leafDigest) {
+        MerkleHasher hasher = getHasher();
+        int hashLength = hasher.getDigestLength();
+        if(leafDigest.length != hashLength)
+            return false;
+
+        byte[] group = new byte[getArity() * hashLength];
+        byte[] hash = leafDigest.clone();
+
+        int offset = HEADER_LENGTH + hashLength;
+        for (int level = 0; level < getLength(); level++) {
+            int position = Byte.toUnsignedInt(this.encoded.get(offset));
+            int siblings = Byte.toUnsignedInt(this.encoded.get(offset + 1));
+            offset += 2;
+
+            // Fratelli a sinistra, nodo corrente e fratelli a destra
+            this.encoded.get(offset, group, 0, position * hashLength);
+            System.arraycopy(hash, 0, group, position * hashLength, hashLength);
+            this.encoded.get(offset + position * hashLength, group, (position + 1) * hashLength,
+                    (siblings - position) * hashLength);
+            offset += siblings * hashLength;
+
+            hasher.combineInto(group, 0, hashLength, group, hashLength, siblings * hashLength, hash, 0);
+        }
+
+        for (int i = 0; i < hashLength; i++)
+            if(hash[i] != this.encoded.get(HEADER_LENGTH + i))
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,379 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Albero di Merkle in cui ogni nodo interno ha fino a arity figli invece di
+ * 2. A parità di foglie l'altezza scende da log2(n) a log_arity(n), quindi una
+ * prova richiede meno hash sequenziali per essere verificata, al prezzo di
+ * arity - 1 fratelli per livello invece di uno solo.
+ *
+ * L'hash di un nodo interno è calcolato con una sola invocazione di
+ * {@link MerkleHasher#combineInto} sul primo figlio e sulla concatenazione
+ * dei figli rimanenti; l'ultimo nodo di un livello può avere meno figli degli
+ * altri e un nodo con un solo figlio viene ricalcolato da solo, come in
+ * {@link MerkleTree}. Con arity 2 si ottengono quindi gli stessi hash di
+ * {@link MerkleTree}.
+ *
+ * Gli hash di ogni livello sono memorizzati in modo contiguo in un unico
+ * array, in modo che i figli di un nodo possano essere combinati senza
+ * copiarli; il numero di foglie è quindi limitato dalla dimensione massima di
+ * un array di byte.
+ *
+ * @param <T>
+ *                il tipo di dati su cui l'albero è costruito.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public class KaryMerkleTree<T> {
+
+    /**
+     * Numero minimo di figli di un nodo interno.
+     */
+    public static final int MIN_ARITY = 2;
+
+    /**
+     * Numero massimo di figli di un nodo interno, limitato dal formato delle
+     * prove.
+     */
+    public static final int MAX_ARITY = 256;
+
+    /**
+     * Numero massimo di figli di un nodo interno.
+     */
+    private final int arity;
+
+    /**
+     * Numero di foglie dell'albero.
+     */
+    private final int width;
+
+    /**
+     * Algoritmo usato per calcolare gli hash.
+     */
+    private final MerkleHasher hasher;
+
+    /**
+     * Funnel usato per calcolare gli hash delle foglie.
+     */
+    private final Funnel<? super T> funnel;
+
+    /**
+     * Lunghezza in byte di un hash.
+     */
+    private final int hashLength;
+
+    /**
+     * Hash dei nodi di ogni livello, dalle foglie al root, memorizzati in
+     * modo contiguo.
+     */
+    private final byte[][] levels;
+
+    /**
+     * Indice che associa a ogni foglia la posizione della sua prima
+     * occorrenza.
+     */
+    private final Map<MerkleNode, Integer> leafIndex;
+
+    /**
+     * Costruisce un albero di Merkle con il numero di figli dato a partire da
+     * un oggetto HashLinkedList, usando l'algoritmo e il funnel della lista.
+     *
+     * @param hashList
+     *                     un oggetto HashLinkedList contenente i dati e i
+     *                     relativi hash.
+     * @param arity
+     *                     il numero massimo di figli di un nodo interno.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null, vuota o troppo
+     *                                      lunga o se arity non è compreso tra
+     *                                      {@link #MIN_ARITY} e
+     *                                      {@link #MAX_ARITY}.
+     */
+    public KaryMerkleTree(HashLinkedList<T> hashList, int arity) {
+        this(hashList, arity, (hashList != null) ? hashList.getHasher() : null,
+                (hashList != null) ? hashList.getFunnel() : null);
+    }
+
+    /**
+     * Costruisce un albero di Merkle con il numero di figli dato a partire da
+     * un oggetto HashLinkedList, calcolando gli hash delle foglie con
+     * l'algoritmo fornito sul contenuto scritto dal funnel. Se algoritmo e
+     * funnel coincidono con quelli della lista vengono usati direttamente gli
+     * hash presenti nella lista.
+     *
+     * @param hashList
+     *                     un oggetto HashLinkedList contenente i dati e i
+     *                     relativi hash.
+     * @param arity
+     *                     il numero massimo di figli di un nodo interno.
+     * @param hasher
+     *                     l'algoritmo con cui calcolare gli hash.
+     * @param funnel
+     *                     il funnel che descrive il contenuto dei dati.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null, vuota o troppo
+     *                                      lunga, se hasher o funnel sono null
+     *                                      o se arity non è compreso tra
+     *                                      {@link #MIN_ARITY} e
+     *                                      {@link #MAX_ARITY}.
+     */
+    public KaryMerkleTree(HashLinkedList<T> hashList, int arity, MerkleHasher hasher, Funnel<? super T> funnel) {
+
+        if(hashList == null)
+            throw new IllegalArgumentException("hashList passato al costruttore è null!");
+        if(hashList.getSize() == 0)
+            throw new IllegalArgumentException("hashList passato al costruttore è vuota!");
+        if(arity < MIN_ARITY || arity > MAX_ARITY)
+            throw new IllegalArgumentException("arity passato al costruttore non è valido!");
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato al costruttore è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato al costruttore è null!");
+
+        this.arity = arity;
+        this.width = hashList.getSize();
+        this.hasher = hasher;
+        this.funnel = funnel;
+        this.hashLength = hasher.getDigestLength();
+
+        if((long) this.width * this.hashLength > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("hashList passato al costruttore ha troppi elementi!");
+
+        this.levels = new byte[heightOf(this.width, arity) + 1][];
+        this.levels[0] = leafDigests(hashList);
+        for (int level = 1; level < this.levels.length; level++)
+            this.levels[level] = buildParentLevel(this.levels[level - 1]);
+
+        this.leafIndex = new HashMap<>();
+        for (int i = 0; i < this.width; i++)
+            this.leafIndex.putIfAbsent(new MerkleNode(getNodeDigest(0, i)), i);
+    }
+
+    /**
+     * Restituisce l'altezza di un albero con il numero di foglie e di figli
+     * dati, ovvero il numero di livelli sopra le foglie.
+     *
+     * @param width
+     *                  il numero di foglie, almeno 1.
+     * @param arity
+     *                  il numero massimo di figli di un nodo interno.
+     * @return l'altezza dell'albero, 0 se ha una sola foglia.
+     */
+    static int heightOf(int width, int arity) {
+        int height = 0;
+        for (int size = width; size > 1; size = (size - 1) / arity + 1)
+            height++;
+        return height;
+    }
+
+    /**
+     * Scrive in modo contiguo gli hash delle foglie, prendendoli dalla lista
+     * se usa lo stesso algoritmo e lo stesso funnel dell'albero e
+     * ricalcolandoli dai dati altrimenti.
+     */
+    private byte[] leafDigests(HashLinkedList<T> hashList) {
+        byte[] leaves = new byte[this.width * this.hashLength];
+
+        int offset = 0;
+        if(this.hasher.equals(hashList.getHasher()) && this.funnel.equals(hashList.getFunnel()))
+            for (byte[] digest : hashList.getAllDigests()) {
+                System.arraycopy(digest, 0, leaves, offset, this.hashLength);
+                offset += this.hashLength;
+            }
+        else
+            for (T data : hashList) {
+                this.hasher.dataDigestInto(data, this.funnel, leaves, offset);
+                offset += this.hashLength;
+            }
+
+        return leaves;
+    }
+
+    /**
+     * Calcola il livello superiore a quello dato, combinando ogni gruppo di
+     * al più arity nodi consecutivi con una sola invocazione dell'algoritmo.
+     */
+    private byte[] buildParentLevel(byte[] children) {
+        int childCount = children.length / this.hashLength;
+        int parentCount = (childCount - 1) / this.arity + 1;
+        byte[] parents = new byte[parentCount * this.hashLength];
+
+        for (int i = 0; i < parentCount; i++) {
+            int first = i * this.arity;
+            int groupSize = Math.min(this.arity, childCount - first);
+            int offset = first * this.hashLength;
+
+            this.hasher.combineInto(children, offset, this.hashLength, children, offset + this.hashLength,
+                    (groupSize - 1) * this.hashLength, parents, i * this.hashLength);
+        }
+
+        return parents;
+    }
+
+    /**
+     * Restituisce il numero massimo di figli di un nodo interno.
+     *
+     * @return il numero di figli.
+     */
+    public int getArity() {
+        return this.arity;
+    }
+
+    /**
+     * Restituisce il numero di foglie dell'albero.
+     *
+     * @return il numero di foglie.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Restituisce l'altezza dell'albero, ovvero il numero di hash da
+     * calcolare in sequenza per verificare una prova.
+     *
+     * @return l'altezza dell'albero.
+     */
+    public int getHeight() {
+        return this.levels.length - 1;
+    }
+
+    /**
+     * Restituisce l'algoritmo usato per calcolare gli hash dell'albero.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    public MerkleHasher getHasher() {
+        return this.hasher;
+    }
+
+    /**
+     * Restituisce il funnel usato per calcolare gli hash delle foglie.
+     *
+     * @return il funnel dei dati.
+     */
+    public Funnel<? super T> getFunnel() {
+        return this.funnel;
+    }
+
+    /**
+     * Restituisce il nodo radice dell'albero. Il nodo contiene solamente
+     * l'hash del root.
+     *
+     * @return il nodo radice.
+     */
+    public MerkleNode getRoot() {
+        return new MerkleNode(getNodeDigest(getHeight(), 0));
+    }
+
+    /**
+     * Restituisce il numero di nodi di un livello dell'albero.
+     *
+     * @param level
+     *                  il livello, 0 per le foglie.
+     * @return il numero di nodi del livello.
+     */
+    int levelSize(int level) {
+        return this.levels[level].length / this.hashLength;
+    }
+
+    /**
+     * Restituisce una copia dell'hash del nodo di un dato livello e
+     * posizione.
+     *
+     * @param level
+     *                  il livello del nodo, 0 per le foglie.
+     * @param index
+     *                  la posizione del nodo nel suo livello.
+     * @return l'hash del nodo.
+     */
+    byte[] getNodeDigest(int level, int index) {
+        byte[] digest = new byte[this.hashLength];
+        System.arraycopy(this.levels[level], index * this.hashLength, digest, 0, this.hashLength);
+        return digest;
+    }
+
+    /**
+     * Restituisce gli hash contigui di un livello dell'albero, senza
+     * copiarli; l'array non deve essere modificato.
+     *
+     * @param level
+     *                  il livello, 0 per le foglie.
+     * @return gli hash del livello.
+     */
+    byte[] getLevelDigests(int level) {
+        return this.levels[level];
+    }
+
+    /**
+     * Restituisce l'indice della prima foglia che contiene il dato fornito.
+     *
+     * @param data
+     *                 il dato da cercare.
+     * @return l'indice del dato nell'albero; -1 se il dato non è presente.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public int getIndexOfData(T data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a getIndexOfData() è null!");
+
+        Integer index = this.leafIndex.get(new MerkleNode(this.hasher.dataDigest(data, this.funnel)));
+        return (index != null) ? index : -1;
+    }
+
+    /**
+     * Restituisce true se il dato fornito è contenuto in una foglia
+     * dell'albero.
+     *
+     * @param data
+     *                 il dato da cercare.
+     * @return true se il dato è presente; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public boolean validateData(T data) {
+        return getIndexOfData(data) != -1;
+    }
+
+    /**
+     * Restituisce la prova di Merkle per la foglia di posizione data, con i
+     * fratelli del nodo e la sua posizione nel gruppo per ogni livello.
+     *
+     * @param index
+     *                  la posizione della foglia.
+     * @return la prova di Merkle per la foglia.
+     * @throws IllegalArgumentException
+     *                                      se la posizione non è valida.
+     */
+    public KaryMerkleProof getMerkleProofAt(int index) {
+
+        if(index < 0 || index >= this.width)
+            throw new IllegalArgumentException("index passato a getMerkleProofAt() non è valido!");
+
+        return KaryMerkleProof.generate(this, index);
+    }
+
+    /**
+     * Restituisce la prova di Merkle per la prima foglia che contiene il dato
+     * fornito.
+     *
+     * @param data
+     *                 il dato per cui generare la prova.
+     * @return la prova di Merkle per il dato.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o non è parte
+     *                                      dell'albero.
+     */
+    public KaryMerkleProof getMerkleProof(T data) {
+
+        int index = getIndexOfData(data);
+        if(index == -1)
+            throw new IllegalArgumentException("data passato a getMerkleProof() non è parte dell'albero!");
+
+        return getMerkleProofAt(index);
+    }
+}
@@ -0,0 +1,107 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Random;
+
+/**
+ * Confronta, al variare del numero di figli di un nodo, la dimensione delle
+ * prove di un KaryMerkleTree e il tempo necessario a verificarle. Con più
+ * figli l'albero è più basso e la verifica calcola meno hash in sequenza, ma
+ * ogni livello della prova contiene più fratelli e ogni hash è calcolato su
+ * più byte.
+ *
+ * Per ogni dimensione e numero di figli vengono generate le prove di foglie
+ * scelte a caso, sempre le stesse, e viene misurato il tempo medio di
+ * verifica a partire dall'hash della foglia, escludendo quindi il calcolo
+ * dell'hash del dato che non dipende dalla forma dell'albero. La riga con 2
+ * figli corrisponde a un MerkleTree binario.
+ *
+ * Il main può essere chiamato con le dimensioni da misurare come parametri di
+ * linea di comando. Se non è presente nessun parametro allora vengono usate
+ * 10^4 e 10^6 foglie.
+ *
+ * I risultati sono stampati sullo standard output in formato .csv (Comma
+ * Separated Values).
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public class KaryMerkleTreeBenchmark {
+
+    /**
+     * Dimensioni misurate se non viene passato nessun parametro.
+     */
+    private static final int[] DEFAULT_SIZES = { 10_000, 1_000_000 };
+
+    /**
+     * Numeri di figli confrontati.
+     */
+    private static final int[] ARITIES = { 2, 4, 8, 16, 32 };
+
+    /**
+     * Algoritmo degli hash, lo stesso per tutte le misure.
+     */
+    private static final MerkleHasher HASHER = MerkleHasher.SHA_256;
+
+    /**
+     * Numero di prove generate per ogni albero.
+     */
+    private static final int PROOFS = 1000;
+
+    /**
+     * Numero di verifiche di tutte le prove, di cui la prima di
+     * riscaldamento.
+     */
+    private static final int VERIFY_ROUNDS = 20;
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.println("algorithm,leaves,arity,height,buildTimeMs,proofBytes,siblingHashes,verifyNsPerProof");
+        for (int n : sizes) {
+            HashLinkedList<Long> list = new HashLinkedList<>(HASHER);
+            for (long i = 0; i < n; i++)
+                list.addAtTail(i * 111L);
+
+            for (int arity : ARITIES) {
+                System.gc();
+
+                long startTimeNano = System.nanoTime();
+                KaryMerkleTree<Long> tree = new KaryMerkleTree<>(list, arity);
+                long buildTimeNano = System.nanoTime() - startTimeNano;
+
+                // Stesse foglie per tutti i numeri di figli
+                Random random = new Random(42);
+                KaryMerkleProof[] proofs = new KaryMerkleProof[PROOFS];
+                byte[][] leaves = new byte[PROOFS][];
+                long proofBytes = 0;
+                long siblingHashes = 0;
+                for (int i = 0; i < PROOFS; i++) {
+                    int index = random.nextInt(n);
+                    proofs[i] = tree.getMerkleProofAt(index);
+                    leaves[i] = tree.getNodeDigest(0, index);
+                    proofBytes += proofs[i].getEncodedLength();
+                    siblingHashes += proofs[i].getSiblingCount();
+                }
+
+                long verifyTimeNano = 0;
+                for (int round = 0; round < VERIFY_ROUNDS; round++) {
+                    startTimeNano = System.nanoTime();
+                    for (int i = 0; i < PROOFS; i++)
+                        if (!proofs[i].proveValidityOfDigest(leaves[i]))
+                            throw new IllegalStateException("Prova non valida");
+                    if (round > 0)
+                        verifyTimeNano += System.nanoTime() - startTimeNano;
+                }
+
+                System.out.println(HASHER.getName() + "," + n + "," + arity + "," + tree.getHeight() + ","
+                        + (buildTimeNano / 1_000_000) + "," + (proofBytes / PROOFS) + ","
+                        + (siblingHashes / PROOFS) + ","
+                        + (verifyTimeNano / ((long) (VERIFY_ROUNDS - 1) * PROOFS)));
+            }
+        }
+    }
+}
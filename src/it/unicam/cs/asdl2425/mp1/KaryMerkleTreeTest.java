@@ -0,0 +1,198 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per {@link KaryMerkleTree} e {@link KaryMerkleProof}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testBinaryMatchesMerkleTree()}: Verifica che con 2 figli il root coincida con quello di
+ * {@link MerkleTree} per ogni algoritmo.</li>
+ *
+ * <li>{@link #testRootComputation()}: Verifica il root di un piccolo albero con 4 figli, calcolato a mano
+ * combinando i gruppi di foglie.</li>
+ *
+ * <li>{@link #testProofsForAllLeaves()}: Verifica, per diverse larghezze e numeri di figli, che le prove
+ * di tutte le foglie vengano accettate, con un livello per ogni livello dell'albero.</li>
+ *
+ * <li>{@link #testRejectsInvalidData()}: Verifica che le prove rifiutino dati diversi e hash modificati.</li>
+ *
+ * <li>{@link #testEncoding()}: Verifica la scrittura e la lettura del formato binario e la sua
+ * lunghezza.</li>
+ *
+ * <li>{@link #testFunnel()}: Verifica la ricerca e la validazione dei dati con un funnel.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per parametri e buffer
+ * non validi.</li>
+ * </ul>
+ */
+class KaryMerkleTreeTest {
+
+    private static HashLinkedList<Integer> buildList(MerkleHasher hasher, int width) {
+        return TestLists.of(hasher, width, i -> i * 13);
+    }
+
+    @Test
+    void testBinaryMatchesMerkleTree() {
+        for (MerkleHasher hasher : new MerkleHasher[] { MerkleHasher.MD5, MerkleHasher.SHA_256,
+                MerkleHasher.MURMUR3_128 })
+            for (int width = 1; width <= 40; width++) {
+                HashLinkedList<Integer> list = buildList(hasher, width);
+                KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(list, 2);
+
+                assertEquals(new MerkleTree<>(list).getRoot().getHash(), tree.getRoot().getHash(),
+                        hasher + ", " + width + " foglie");
+                assertEquals(MerkleTree.heightOf(width), tree.getHeight());
+            }
+    }
+
+    @Test
+    void testRootComputation() {
+        MerkleHasher hasher = MerkleHasher.SHA_256;
+        HashLinkedList<Integer> list = buildList(hasher, 5);
+        byte[][] leaves = list.getAllDigests();
+
+        byte[] rest = new byte[3 * 32];
+        for (int i = 0; i < 3; i++)
+            System.arraycopy(leaves[i + 1], 0, rest, i * 32, 32);
+        byte[] first = hasher.combine(leaves[0], rest);
+        byte[] second = hasher.combine(leaves[4], new byte[0]);
+        byte[] root = hasher.combine(first, second);
+
+        KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(list, 4);
+        assertEquals(2, tree.getHeight());
+        assertEquals(HashUtil.toHex(root), tree.getRoot().getHash());
+    }
+
+    @Test
+    void testProofsForAllLeaves() {
+        for (int arity : new int[] { 2, 3, 4, 8, 16, 256 })
+            for (int width = 1; width <= 70; width++) {
+                KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(buildList(MerkleHasher.MD5, width), arity);
+                assertEquals(arity, tree.getArity());
+
+                for (int index = 0; index < width; index++) {
+                    KaryMerkleProof proof = tree.getMerkleProofAt(index);
+                    String message = arity + " figli, " + width + " foglie, foglia " + index;
+
+                    assertTrue(proof.proveValidityOfData(index * 13), message);
+                    assertEquals(tree.getHeight(), proof.getLength(), message);
+                    assertEquals(index, proof.getLeafIndex(), message);
+                    assertEquals(arity, proof.getArity());
+                    assertTrue(proof.getSiblingCount() <= (arity - 1) * tree.getHeight(), message);
+                    assertEquals(tree.getRoot().getHash(), proof.getRootHash());
+                }
+            }
+
+        // 10^4 foglie con 16 figli richiedono 4 hash invece di 14
+        KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(buildList(MerkleHasher.SHA_256, 10_000), 16);
+        assertEquals(4, tree.getHeight());
+        assertEquals(4, tree.getMerkleProof(1234 * 13).getLength());
+    }
+
+    @Test
+    void testRejectsInvalidData() {
+        KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(buildList(MerkleHasher.SHA_256, 100), 8);
+        KaryMerkleProof proof = tree.getMerkleProofAt(42);
+
+        assertFalse(proof.proveValidityOfData(43 * 13));
+        assertFalse(proof.proveValidityOfData("42"));
+        assertFalse(proof.proveValidityOfDigest(new byte[16]));
+
+        // Prova con un hash di un fratello modificato
+        ByteBuffer encoded = proof.asByteBuffer();
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        bytes[bytes.length - 1] ^= 1;
+        assertFalse(KaryMerkleProof.fromByteBuffer(ByteBuffer.wrap(bytes)).proveValidityOfData(42 * 13));
+
+        // Prova di un'altra foglia con la stessa posizione nel gruppo
+        assertFalse(tree.getMerkleProofAt(50).proveValidityOfData(42 * 13));
+    }
+
+    @Test
+    void testEncoding() {
+        KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(buildList(MerkleHasher.SHA_256, 1000), 16);
+        KaryMerkleProof proof = tree.getMerkleProofAt(999);
+        assertEquals(5 + 32 + 2 * proof.getLength() + 32 * proof.getSiblingCount(), proof.getEncodedLength());
+
+        ByteBuffer buffer = ByteBuffer.allocate(proof.getEncodedLength() + 5);
+        buffer.put((byte) 1);
+        proof.writeTo(buffer);
+        buffer.flip().position(1);
+
+        KaryMerkleProof read = KaryMerkleProof.fromByteBuffer(buffer);
+        assertEquals(1 + proof.getEncodedLength(), buffer.position());
+        assertEquals(proof.asByteBuffer(), read.asByteBuffer());
+        assertSame(MerkleHasher.SHA_256, read.getHasher());
+        assertEquals(999, read.getLeafIndex());
+        assertTrue(read.proveValidityOfData(999 * 13));
+    }
+
+    @Test
+    void testFunnel() {
+        HashLinkedList<Long> list = new HashLinkedList<>(MerkleHasher.MURMUR3_128, Funnel.LONG);
+        for (long i = 0; i < 50; i++)
+            list.addAtTail(i << 40);
+
+        KaryMerkleTree<Long> tree = new KaryMerkleTree<>(list, 4);
+        assertSame(Funnel.LONG, tree.getFunnel());
+        assertEquals(17, tree.getIndexOfData(17L << 40));
+        assertTrue(tree.validateData(3L << 40));
+        assertFalse(tree.validateData(3L));
+
+        KaryMerkleProof proof = tree.getMerkleProof(17L << 40);
+        assertTrue(proof.proveValidityOfData(17L << 40, Funnel.LONG));
+        assertFalse(proof.proveValidityOfData(17L << 40));
+
+        // Lo stesso albero ricalcolato con un altro algoritmo
+        KaryMerkleTree<Long> sha = new KaryMerkleTree<>(list, 4, MerkleHasher.SHA_256, Funnel.LONG);
+        assertTrue(sha.getMerkleProof(17L << 40).proveValidityOfData(17L << 40, Funnel.LONG));
+        assertNotEquals(tree.getRoot().getHash(), sha.getRoot().getHash());
+    }
+
+    @Test
+    void testInvalidArguments() {
+        HashLinkedList<Integer> list = buildList(MerkleHasher.MD5, 10);
+
+        assertThrows(IllegalArgumentException.class, () -> new KaryMerkleTree<>(null, 4));
+        assertThrows(IllegalArgumentException.class, () -> new KaryMerkleTree<>(new HashLinkedList<Integer>(), 4));
+        assertThrows(IllegalArgumentException.class, () -> new KaryMerkleTree<>(list, 1));
+        assertThrows(IllegalArgumentException.class, () -> new KaryMerkleTree<>(list, 257));
+        assertThrows(IllegalArgumentException.class, () -> new KaryMerkleTree<>(list, 4, null, Funnel.HASH_CODE));
+        assertThrows(IllegalArgumentException.class, () -> new KaryMerkleTree<>(list, 4, MerkleHasher.MD5, null));
+
+        KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(list, 4);
+        assertThrows(IllegalArgumentException.class, () -> tree.getMerkleProofAt(-1));
+        assertThrows(IllegalArgumentException.class, () -> tree.getMerkleProofAt(10));
+        assertThrows(IllegalArgumentException.class, () -> tree.getMerkleProof(7));
+        assertThrows(IllegalArgumentException.class, () -> tree.getIndexOfData(null));
+
+        KaryMerkleProof proof = tree.getMerkleProofAt(9);
+        assertThrows(IllegalArgumentException.class, () -> proof.proveValidityOfData(null));
+        assertThrows(IllegalArgumentException.class, () -> proof.proveValidityOfData(9, null));
+        assertThrows(IllegalArgumentException.class, () -> proof.writeTo(null));
+        assertThrows(IllegalArgumentException.class, () -> KaryMerkleProof.fromByteBuffer(null));
+        assertThrows(IllegalArgumentException.class, () -> KaryMerkleProof.fromByteBuffer(ByteBuffer.allocate(3)));
+
+        ByteBuffer encoded = proof.asByteBuffer();
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+
+        // Versione, algoritmo, numero di figli, posizione e fratelli non validi
+        int firstLevel = 5 + 16;
+        for (int[] change : new int[][] { { 0, 9 }, { 2, 77 }, { 3, 0 }, { firstLevel, 3 }, { firstLevel + 1, 4 } }) {
+            byte[] copy = bytes.clone();
+            copy[change[0]] = (byte) change[1];
+            assertThrows(IllegalArgumentException.class, () -> KaryMerkleProof.fromByteBuffer(ByteBuffer.wrap(copy)),
+                    "Byte " + change[0]);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> KaryMerkleProof.fromByteBuffer(ByteBuffer.wrap(bytes, 0, bytes.length - 1)));
+    }
+}
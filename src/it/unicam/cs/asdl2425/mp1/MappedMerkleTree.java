@@ -0,0 +1,337 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Albero di Merkle in sola lettura memorizzato in un file e mappato in
+ * memoria. Il file contiene gli hash di tutti i livelli in forma binaria, a
+ * lunghezza fissa e in ordine di livello, quindi prove e confronti leggono gli
+ * hash dei fratelli direttamente dalla regione mappata, senza costruire
+ * oggetti {@link MerkleNode} e senza una fase di deserializzazione: l'apertura
+ * legge solamente l'intestazione e il sistema operativo carica le pagine del
+ * file quando vengono usate.
+ *
+ * Il formato del file è il seguente:
+ *
+ * <pre>
+ * offset  lunghezza  contenuto
+ * 0       4          "MKLT" in ASCII
+ * 4       1          versione del formato ({@link #VERSION})
+ * 5       1          identificativo dell'algoritmo di hash
+ *                    ({@link MerkleHasher#getId()})
+ * 6       1          lunghezza h di un hash in byte
+ * 7       1          riservato, sempre 0
+ * 8       4          numero di foglie w
+ * 12      4          altezza dell'albero
+ * 16      16         riservati, sempre 0
+ * 32      ...        hash dei livelli, dalle foglie al root: il livello l
+ *                    contiene ceil(w / 2^l) hash di h byte
+ * </pre>
+ *
+ * Tutti i valori su più byte sono in ordine big-endian. Le interrogazioni
+ * sono quelle di {@link FlatMerkleTree}; non essendoci un indice in memoria,
+ * la ricerca di un dato scorre le foglie del file e richiede tempo lineare
+ * nel numero di foglie.
+ *
+ * La scrittura del file procede dalle foglie verso il root: le foglie vengono
+ * scritte man mano che sono lette dal flusso, quindi il loro numero non deve
+ * essere noto in anticipo, e ogni livello viene poi calcolato leggendo il
+ * livello inferiore dal file mappato. La memoria usata non dipende quindi dal
+ * numero di foglie.
+ *
+ * Un albero aperto può essere interrogato da più thread contemporaneamente.
+ * La chiusura rilascia i riferimenti alla regione mappata, che viene liberata
+ * dal garbage collector; il file non va modificato finché l'albero è aperto.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ *
+ * @param <T>
+ *                il tipo di dati su cui l'albero è costruito.
+ */
+public class MappedMerkleTree<T> extends FlatMerkleTree<T> {
+
+    /**
+     * Versione del formato del file prodotto e accettato da questa classe.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * I primi 4 byte del file, "MKLT" in ASCII.
+     */
+    private static final int MAGIC = 0x4D4B4C54;
+
+    /**
+     * Lunghezza in byte dell'intestazione che precede gli hash.
+     */
+    private static final int HEADER_LENGTH = 32;
+
+    /**
+     * Lunghezza del buffer usato per scrivere le foglie nel file.
+     */
+    private static final int WRITE_BUFFER_LENGTH = 1 << 16;
+
+    private MappedMerkleTree(SegmentedBuffer buffer, int width, MerkleHasher hasher, Funnel<? super T> funnel) {
+        super(buffer, HEADER_LENGTH, width, hasher, funnel);
+    }
+
+    /**
+     * Scrive in un file l'albero di Merkle costruito sugli elementi di una
+     * HashLinkedList, usando direttamente gli hash presenti nella lista e il
+     * suo algoritmo di hash. Se il file esiste viene sovrascritto.
+     *
+     * @param file
+     *                     il file da scrivere.
+     * @param hashList
+     *                     la lista da cui prendere gli hash.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null o la lista è
+     *                                      vuota.
+     * @throws IOException
+     *                                      se la scrittura del file non
+     *                                      riesce.
+     */
+    public static void write(Path file, HashLinkedList<?> hashList) throws IOException {
+
+        if(hashList == null)
+            throw new IllegalArgumentException("hashList passato a write() è null!");
+
+        writeDigests(file, Arrays.asList(hashList.getAllDigests()).iterator(), hashList.getHasher());
+    }
+
+    /**
+     * Scrive in un file l'albero di Merkle costruito sui dati restituiti da un
+     * iteratore, calcolando gli hash delle foglie con l'algoritmo e il funnel
+     * dati. I dati vengono consumati uno alla volta e non vengono mantenuti in
+     * memoria. Se il file esiste viene sovrascritto.
+     *
+     * @param <T>
+     *                   il tipo dei dati.
+     * @param file
+     *                   il file da scrivere.
+     * @param data
+     *                   l'iteratore dei dati.
+     * @param hasher
+     *                   l'algoritmo di hash.
+     * @param funnel
+     *                   il funnel che descrive il contenuto dei dati.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null, l'iteratore
+     *                                      è vuoto o restituisce un dato null.
+     * @throws IOException
+     *                                      se la scrittura del file non
+     *                                      riesce.
+     */
+    public static <T> void write(Path file, Iterator<? extends T> data, MerkleHasher hasher,
+            Funnel<? super T> funnel) throws IOException {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a write() è null!");
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato a write() è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato a write() è null!");
+
+        writeDigests(file, new Iterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                return data.hasNext();
+            }
+
+            @Override
+            public byte[] next() {
+                T element = data.next();
+                if(element == null)
+                    throw new IllegalArgumentException("data passato a write() contiene un dato null!");
+                return hasher.dataDigest(element, funnel);
+            }
+        }, hasher);
+    }
+
+    /**
+     * Scrive in un file l'albero di Merkle le cui foglie hanno gli hash
+     * restituiti da un iteratore, già calcolati con l'algoritmo dato. Se il
+     * file esiste viene sovrascritto.
+     *
+     * @param file
+     *                        il file da scrivere.
+     * @param leafDigests
+     *                        l'iteratore degli hash delle foglie in forma
+     *                        binaria.
+     * @param hasher
+     *                        l'algoritmo con cui sono stati calcolati gli
+     *                        hash.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null, l'iteratore
+     *                                      è vuoto o restituisce un hash non
+     *                                      valido, oppure se l'algoritmo non è
+     *                                      uno di quelli disponibili.
+     * @throws IOException
+     *                                      se la scrittura del file non
+     *                                      riesce.
+     */
+    public static void writeDigests(Path file, Iterator<byte[]> leafDigests, MerkleHasher hasher)
+            throws IOException {
+
+        if(file == null)
+            throw new IllegalArgumentException("file passato a writeDigests() è null!");
+        if(leafDigests == null)
+            throw new IllegalArgumentException("leafDigests passato a writeDigests() è null!");
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato a writeDigests() è null!");
+        if(MerkleHasher.forId(hasher.getId()) != hasher)
+            throw new IllegalArgumentException("hasher passato a writeDigests() non è supportato dal formato!");
+
+        int hashLength = hasher.getDigestLength();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            int width = writeLeaves(channel, leafDigests, hashLength);
+            long[] offsets = levelOffsets(HEADER_LENGTH, width, hashLength);
+
+            // La mappatura estende il file fino alla lunghezza complessiva
+            SegmentedBuffer buffer = SegmentedBuffer.map(channel, FileChannel.MapMode.READ_WRITE,
+                    offsets[offsets.length - 1]);
+            buildLevels(buffer, offsets, width, hasher);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).put(VERSION).put(hasher.getId()).put((byte) hashLength).put((byte) 0)
+                    .putInt(width).putInt(MerkleTree.heightOf(width));
+            buffer.put(0, header.array(), 0, HEADER_LENGTH);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Scrive le foglie nel file dopo l'intestazione, man mano che vengono
+     * lette dall'iteratore.
+     *
+     * @return il numero di foglie scritte.
+     * @throws IllegalArgumentException
+     *                                      se non ci sono foglie, sono troppe
+     *                                      o un hash non è valido.
+     */
+    private static int writeLeaves(FileChannel channel, Iterator<byte[]> leafDigests, int hashLength)
+            throws IOException {
+        ByteBuffer pending = ByteBuffer.allocateDirect(WRITE_BUFFER_LENGTH - WRITE_BUFFER_LENGTH % hashLength);
+        long position = HEADER_LENGTH;
+        long count = 0;
+
+        while (leafDigests.hasNext()) {
+            byte[] digest = leafDigests.next();
+            if(digest == null || digest.length != hashLength)
+                throw new IllegalArgumentException("leafDigests contiene un hash non valido!");
+            if(++count > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("leafDigests contiene troppe foglie!");
+
+            pending.put(digest);
+            if(!pending.hasRemaining())
+                position = flush(channel, pending, position);
+        }
+        flush(channel, pending, position);
+
+        if(count == 0)
+            throw new IllegalArgumentException("leafDigests non contiene nessuna foglia!");
+
+        return (int) count;
+    }
+
+    /**
+     * Scrive nel file il contenuto del buffer a partire dalla posizione data
+     * e lo svuota.
+     *
+     * @return la posizione successiva all'ultimo byte scritto.
+     */
+    private static long flush(FileChannel channel, ByteBuffer pending, long position) throws IOException {
+        pending.flip();
+        while (pending.hasRemaining())
+            position += channel.write(pending, position);
+        pending.clear();
+        return position;
+    }
+
+    /**
+     * Apre in sola lettura un albero scritto in un file. Gli hash dei dati
+     * cercati vengono calcolati sul loro hashCode().
+     *
+     * @param <T>
+     *                 il tipo dei dati.
+     * @param file
+     *                 il file da aprire.
+     * @return l'albero contenuto nel file.
+     * @throws IllegalArgumentException
+     *                                      se il file è null o non contiene un
+     *                                      albero valido nel formato
+     *                                      {@link #VERSION}.
+     * @throws IOException
+     *                                      se la lettura del file non riesce.
+     */
+    public static <T> MappedMerkleTree<T> open(Path file) throws IOException {
+        return open(file, Funnel.HASH_CODE);
+    }
+
+    /**
+     * Apre in sola lettura un albero scritto in un file, calcolando gli hash
+     * dei dati cercati con il funnel dato, che deve essere quello usato per
+     * scrivere il file.
+     *
+     * @param <T>
+     *                   il tipo dei dati.
+     * @param file
+     *                   il file da aprire.
+     * @param funnel
+     *                   il funnel che descrive il contenuto dei dati.
+     * @return l'albero contenuto nel file.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null o il file
+     *                                      non contiene un albero valido nel
+     *                                      formato {@link #VERSION}.
+     * @throws IOException
+     *                                      se la lettura del file non riesce.
+     */
+    public static <T> MappedMerkleTree<T> open(Path file, Funnel<? super T> funnel) throws IOException {
+
+        if(file == null)
+            throw new IllegalArgumentException("file passato a open() è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato a open() è null!");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < HEADER_LENGTH)
+                throw new IllegalArgumentException("Il file non contiene un'intestazione completa!");
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0)
+                ;
+
+            if(header.getInt(0) != MAGIC)
+                throw new IllegalArgumentException("Il file non contiene un albero di Merkle!");
+            if(header.get(4) != VERSION)
+                throw new IllegalArgumentException("Versione del formato non supportata: " + header.get(4));
+
+            MerkleHasher hasher = MerkleHasher.forId(header.get(5));
+            if(hasher == null)
+                throw new IllegalArgumentException("Algoritmo di hash non supportato: " + header.get(5));
+            if(header.get(6) != hasher.getDigestLength())
+                throw new IllegalArgumentException("Lunghezza degli hash non supportata: " + header.get(6));
+
+            int width = header.getInt(8);
+            if(width < 1 || header.getInt(12) != MerkleTree.heightOf(width))
+                throw new IllegalArgumentException("Dimensioni dell'albero non valide!");
+
+            long[] offsets = levelOffsets(HEADER_LENGTH, width, hasher.getDigestLength());
+            if(size != offsets[offsets.length - 1])
+                throw new IllegalArgumentException("La lunghezza del file non corrisponde all'albero!");
+
+            // La mappatura resta valida anche dopo la chiusura del canale
+            SegmentedBuffer buffer = SegmentedBuffer.map(channel, FileChannel.MapMode.READ_ONLY, size);
+            return new MappedMerkleTree<>(buffer, width, hasher, funnel);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per {@link MappedMerkleTree}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testMatchesMerkleTree()}: Verifica, per diverse larghezze e algoritmi, che root, altezza
+ * e prove dell'albero su file coincidano con quelli di un MerkleTree costruito sugli stessi dati.</li>
+ *
+ * <li>{@link #testWritersProduceSameFile()}: Verifica che la scrittura da lista, da dati con funnel e
+ * da hash delle foglie produca lo stesso file.</li>
+ *
+ * <li>{@link #testSearchData()}: Verifica la ricerca dei dati e la generazione delle prove a partire
+ * dai dati, anche oltre il primo blocco di foglie letto.</li>
+ *
+ * <li>{@link #testFindInvalidDataIndices()}: Verifica il confronto con un altro albero su file e con
+ * un albero in memoria.</li>
+ *
+ * <li>{@link #testInvalidFiles()}: Verifica che vengano rifiutati file con intestazione non valida o
+ * con una lunghezza che non corrisponde all'albero.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per parametri non
+ * validi e per l'uso di un albero chiuso.</li>
+ * </ul>
+ */
+class MappedMerkleTreeTest {
+
+    @TempDir
+    Path dir;
+
+    private MappedMerkleTree<Integer> writeAndOpen(String name, HashLinkedList<Integer> list) throws IOException {
+        Path file = this.dir.resolve(name);
+        MappedMerkleTree.write(file, list);
+        return MappedMerkleTree.open(file);
+    }
+
+    @Test
+    void testMatchesMerkleTree() throws IOException {
+        for (MerkleHasher hasher : new MerkleHasher[] { MerkleHasher.MD5, MerkleHasher.SHA_256,
+                MerkleHasher.MURMUR3_128 })
+            for (int width : new int[] { 1, 2, 3, 5, 8, 13 }) {
+                HashLinkedList<Integer> list = TestLists.multiplesOf7(hasher, width);
+                MerkleTree<Integer> expected = new MerkleTree<>(list);
+
+                try (MappedMerkleTree<Integer> tree = writeAndOpen(hasher.getName() + width, list)) {
+                    assertEquals(width, tree.getWidth());
+                    assertEquals(expected.getHeight(), tree.getHeight());
+                    assertSame(hasher, tree.getHasher());
+                    assertArrayEquals(expected.getRoot().getDigest(), tree.getRoot().getDigest(),
+                            hasher + " con " + width + " foglie");
+                    assertTrue(tree.findInvalidDataIndices(expected).isEmpty());
+
+                    for (int i = 0; i < width; i++) {
+                        MerkleProof proof = tree.getMerkleProofAt(i);
+                        assertIterableEquals(expected.getMerkleProof(i * 7).getProofHashes(),
+                                proof.getProofHashes());
+                        assertTrue(proof.proveValidityOfData(i * 7));
+                    }
+                }
+            }
+    }
+
+    @Test
+    void testWritersProduceSameFile() throws IOException {
+        HashLinkedList<Integer> list = TestLists.multiplesOf7(MerkleHasher.SHA_256, 11);
+        Path fromList = this.dir.resolve("list");
+        Path fromData = this.dir.resolve("data");
+        Path fromDigests = this.dir.resolve("digests");
+
+        MappedMerkleTree.write(fromList, list);
+        MappedMerkleTree.write(fromData, IntStream.range(0, 11).map(i -> i * 7).iterator(),
+                MerkleHasher.SHA_256, Funnel.HASH_CODE);
+        MappedMerkleTree.writeDigests(fromDigests, Arrays.asList(list.getAllDigests()).iterator(),
+                MerkleHasher.SHA_256);
+
+        assertEquals(-1, Files.mismatch(fromList, fromData));
+        assertEquals(-1, Files.mismatch(fromList, fromDigests));
+
+        // Sovrascrittura di un file esistente più lungo
+        MappedMerkleTree.write(fromList, TestLists.multiplesOf7(MerkleHasher.SHA_256, 2));
+        try (MappedMerkleTree<Integer> tree = MappedMerkleTree.open(fromList)) {
+            assertEquals(2, tree.getWidth());
+        }
+    }
+
+    @Test
+    void testSearchData() throws IOException {
+        HashLinkedList<String> list = new HashLinkedList<>(MerkleHasher.MURMUR3_128, Funnel.STRING);
+        for (int i = 0; i < 5000; i++)
+            list.addAtTail("dato " + i);
+        Path file = this.dir.resolve("strings");
+        MappedMerkleTree.write(file, list);
+
+        try (MappedMerkleTree<String> tree = MappedMerkleTree.open(file, Funnel.STRING)) {
+            assertSame(Funnel.STRING, tree.getFunnel());
+            assertEquals(0, tree.getIndexOfData("dato 0"));
+            assertEquals(4999, tree.getIndexOfData("dato 4999"));
+            assertEquals(-1, tree.getIndexOfData("dato 5000"));
+            assertTrue(tree.validateData("dato 4242"));
+            assertFalse(tree.validateData("assente"));
+
+            MerkleProof proof = tree.getMerkleProof("dato 4500");
+            assertTrue(proof.proveValidityOfData("dato 4500", Funnel.STRING));
+            assertFalse(proof.proveValidityOfData("dato 4501", Funnel.STRING));
+            assertThrows(IllegalArgumentException.class, () -> tree.getMerkleProof("assente"));
+        }
+    }
+
+    @Test
+    void testFindInvalidDataIndices() throws IOException {
+        HashLinkedList<Integer> original = TestLists.multiplesOf7(MerkleHasher.MD5, 9);
+        HashLinkedList<Integer> modified = TestLists.of(MerkleHasher.MD5, 9, i -> i == 2 || i == 8 ? -1 : i * 7);
+
+        try (MappedMerkleTree<Integer> tree = writeAndOpen("original", original);
+                MappedMerkleTree<Integer> copy = writeAndOpen("copy", TestLists.multiplesOf7(MerkleHasher.MD5, 9));
+                MappedMerkleTree<Integer> other = writeAndOpen("modified", modified)) {
+            assertTrue(tree.validateTree(copy));
+            assertFalse(tree.validateTree(other));
+            assertEquals(Collections.emptySet(), tree.findInvalidDataIndices(copy));
+            assertEquals(Set.of(2, 8), tree.findInvalidDataIndices(other));
+            assertEquals(Set.of(2, 8), tree.findInvalidDataIndices(new MerkleTree<>(modified)));
+            assertEquals(new MerkleTree<>(original).findInvalidDataIndices(new MerkleTree<>(modified)),
+                    tree.findInvalidDataIndices(other));
+        }
+    }
+
+    @Test
+    void testInvalidFiles() throws IOException {
+        Path file = this.dir.resolve("tree");
+        MappedMerkleTree.write(file, TestLists.multiplesOf7(MerkleHasher.MD5, 4));
+        byte[] content = Files.readAllBytes(file);
+
+        Path corrupted = this.dir.resolve("corrupted");
+        for (int offset : new int[] { 0, 4, 5, 6, 8, 12 }) {
+            byte[] copy = content.clone();
+            copy[offset] ^= 0x40;
+            Files.write(corrupted, copy);
+            assertThrows(IllegalArgumentException.class, () -> MappedMerkleTree.open(corrupted),
+                    "Intestazione modificata in posizione " + offset);
+        }
+
+        Files.write(corrupted, Arrays.copyOf(content, content.length - 1));
+        assertThrows(IllegalArgumentException.class, () -> MappedMerkleTree.open(corrupted));
+        Files.write(corrupted, Arrays.copyOf(content, 20));
+        assertThrows(IllegalArgumentException.class, () -> MappedMerkleTree.open(corrupted));
+
+        // Larghezza coerente con l'altezza ma non con la lunghezza del file
+        byte[] wider = content.clone();
+        ByteBuffer.wrap(wider).putInt(8, 3);
+        Files.write(corrupted, wider);
+        assertThrows(IllegalArgumentException.class, () -> MappedMerkleTree.open(corrupted));
+    }
+
+    @Test
+    void testInvalidArguments() throws IOException {
+        Path file = this.dir.resolve("tree");
+        HashLinkedList<Integer> list = TestLists.multiplesOf7(MerkleHasher.MD5, 3);
+
+        assertThrows(IllegalArgumentException.class, () -> MappedMerkleTree.write(null, list));
+        assertThrows(IllegalArgumentException.class, () -> MappedMerkleTree.write(file, null));
+        assertThrows(IllegalArgumentException.class, () -> MappedMerkleTree.write(file, new HashLinkedList<>()));
+        assertThrows(IllegalArgumentException.class, () -> MappedMerkleTree.writeDigests(file,
+                Collections.singletonList(new byte[3]).iterator(), MerkleHasher.MD5));
+        assertThrows(IllegalArgumentException.class, () -> MappedMerkleTree.write(file,
+                Arrays.asList(1, null).iterator(), MerkleHasher.MD5, Funnel.HASH_CODE));
+        assertThrows(IllegalArgumentException.class, () -> MappedMerkleTree.open(file, null));
+
+        MappedMerkleTree.write(file, list);
+        MappedMerkleTree<Integer> tree = MappedMerkleTree.open(file);
+        assertThrows(IllegalArgumentException.class, () -> tree.getMerkleProofAt(3));
+        assertThrows(IllegalArgumentException.class, () -> tree.getMerkleProofAt(-1));
+        assertThrows(IllegalArgumentException.class, () -> tree.getIndexOfData(null));
+        assertThrows(IllegalArgumentException.class, () -> tree.validateTree(null));
+        assertThrows(IllegalArgumentException.class,
+                () -> tree.findInvalidDataIndices(new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.MD5, 4))));
+        assertThrows(IllegalArgumentException.class,
+                () -> tree.findInvalidDataIndices(new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.SHA_256, 3))));
+
+        byte[] root = tree.getRoot().getDigest();
+        tree.close();
+        assertArrayEquals(root, tree.getRoot().getDigest(), "Il root dovrebbe restare disponibile.");
+        assertThrows(IllegalStateException.class, () -> tree.getMerkleProofAt(0));
+        assertThrows(IllegalStateException.class, () -> tree.getIndexOfData(0));
+    }
+}
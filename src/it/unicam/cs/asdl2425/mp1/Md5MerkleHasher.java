@@ -0,0 +1,63 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Implementazione MD5 di {@link MerkleHasher}, che delega a {@link HashUtil}
+ * e produce quindi gli stessi hash delle versioni precedenti del package.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+final class Md5MerkleHasher implements MerkleHasher {
+
+    /**
+     * Sink di ciascun thread per il calcolo degli hash dei funnel.
+     */
+    private static final ThreadLocal<BufferedSink> SINK = ThreadLocal.withInitial(Md5MerkleHasher::newSink);
+
+    private static BufferedSink newSink() {
+        return new BufferedSink.MessageDigestSink("MD5", -1);
+    }
+
+    @Override
+    public String getName() {
+        return "MD5";
+    }
+
+    @Override
+    public byte getId() {
+        return 0;
+    }
+
+    @Override
+    public int getDigestLength() {
+        return HashUtil.MD5_LENGTH;
+    }
+
+    @Override
+    public void digestInto(byte[] input, int inOff, int inLen, byte[] out, int outOff) {
+        HashUtil.digestInto(input, inOff, inLen, out, outOff);
+    }
+
+    @Override
+    public void dataDigestInto(Object data, byte[] out, int outOff) {
+        HashUtil.dataDigestInto(data, out, outOff);
+    }
+
+    @Override
+    public <T> void dataDigestInto(T data, Funnel<? super T> funnel, byte[] out, int outOff) {
+        if(funnel == Funnel.HASH_CODE)
+            dataDigestInto(data, out, outOff);
+        else
+            BufferedSink.digest(SINK, Md5MerkleHasher::newSink, data, funnel, out, outOff);
+    }
+
+    @Override
+    public void combineInto(byte[] left, int leftOff, int leftLen, byte[] right, int rightOff, int rightLen,
+            byte[] out, int outOff) {
+        HashUtil.combineDigestsInto(left, leftOff, leftLen, right, rightOff, rightLen, out, outOff);
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,385 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Prova di consistenza tra due versioni di un albero di Merkle costruito su
+ * un log in sola aggiunta: dimostra che l'albero con n foglie ha come foglie
+ * le prime n foglie dell'albero con m foglie, conoscendo solamente i due
+ * root, senza trasmettere i dati.
+ *
+ * Il prefisso di n foglie viene scomposto nei sottoalberi completi e
+ * allineati corrispondenti ai bit di n, che hanno lo stesso hash nei due
+ * alberi. La prova contiene gli hash di questi sottoalberi e gli hash dei
+ * nodi del nuovo albero che coprono solamente foglie aggiunte, nell'ordine di
+ * una visita in profondità da sinistra verso destra che scende solamente nei
+ * nodi che contengono sia foglie del prefisso sia foglie aggiunte. La
+ * verifica ricalcola il root precedente dai soli sottoalberi del prefisso e
+ * il root nuovo da tutti gli hash, e li confronta con quelli attesi. La prova
+ * contiene al più un hash per livello per ciascuno dei due gruppi, quindi
+ * O(log m) hash; se n è una potenza di 2 il prefisso è un unico sottoalbero
+ * che coincide con il root precedente e il suo hash viene omesso.
+ *
+ * La prova è memorizzata direttamente nel suo formato binario:
+ *
+ * <pre>
+ * offset  lunghezza  contenuto
+ * 0       1          versione del formato ({@link #VERSION})
+ * 1       1          lunghezza h di un hash in byte
+ * 2       1          identificativo dell'algoritmo di hash
+ *                    ({@link MerkleHasher#getId()})
+ * 3       1          numero k di hash
+ * 4       4          numero di foglie n dell'albero precedente
+ * 8       4          numero di foglie m dell'albero nuovo
+ * 12      k * h      hash, nell'ordine della verifica
+ * </pre>
+ *
+ * Tutti i valori su più byte sono in ordine big-endian. Il numero di hash è
+ * determinato da n e m, quindi una prova con un numero di hash diverso viene
+ * rifiutata già durante la lettura.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public final class MerkleConsistencyProof {
+
+    /**
+     * Versione del formato binario prodotto e accettato da questa classe.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Lunghezza in byte dell'intestazione che precede gli hash.
+     */
+    private static final int HEADER_LENGTH = 12;
+
+    /**
+     * Hash vuoto, usato al posto del fratello mancante di un nodo.
+     */
+    private static final byte[] EMPTY_HASH = new byte[0];
+
+    /**
+     * La prova nel formato binario, dalla posizione 0 al limite.
+     */
+    private final ByteBuffer encoded;
+
+    private MerkleConsistencyProof(ByteBuffer encoded) {
+        this.encoded = encoded;
+    }
+
+    /**
+     * Genera la prova di consistenza tra il prefisso di oldWidth foglie di un
+     * albero e l'albero stesso.
+     *
+     * @param newTree
+     *                     l'albero nuovo, letto per livello e posizione.
+     * @param oldWidth
+     *                     il numero di foglie dell'albero precedente.
+     * @return la prova di consistenza.
+     * @throws IllegalArgumentException
+     *                                      se oldWidth non è compreso tra 1 e
+     *                                      la larghezza dell'albero.
+     */
+    static MerkleConsistencyProof generate(NodeSource newTree, int oldWidth) {
+        int newWidth = newTree.width();
+
+        if(oldWidth < 1 || oldWidth > newWidth)
+            throw new IllegalArgumentException("oldWidth passato a getConsistencyProof() non è valido!");
+
+        MerkleHasher hasher = newTree.hasher();
+        int hashLength = hasher.getDigestLength();
+        List<int[]> nodes = new ArrayList<>();
+        if(oldWidth < newWidth)
+            collectNodes(oldWidth, newWidth, MerkleTree.heightOf(newWidth), 0, nodes);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + nodes.size() * hashLength);
+        buffer.put(VERSION).put((byte) hashLength).put(hasher.getId()).put((byte) nodes.size()).putInt(oldWidth)
+                .putInt(newWidth);
+
+        byte[] digest = new byte[hashLength];
+        for (int[] node : nodes) {
+            newTree.read(node[0], node[1], digest, 0);
+            buffer.put(digest);
+        }
+
+        return new MerkleConsistencyProof(buffer.clear());
+    }
+
+    /**
+     * Raccoglie, nell'ordine della verifica, i nodi il cui hash fa parte della
+     * prova: i sottoalberi completi del prefisso e i nodi che coprono solamente
+     * foglie aggiunte. Si scende solamente nei nodi che contengono entrambi i
+     * tipi di foglie.
+     *
+     * @param oldWidth
+     *                     la lunghezza del prefisso.
+     * @param newWidth
+     *                     il numero di foglie dell'albero nuovo.
+     * @param level
+     *                     il livello del nodo corrente.
+     * @param index
+     *                     la posizione del nodo corrente nel suo livello.
+     * @param nodes
+     *                     la lista in cui aggiungere le coppie (livello,
+     *                     posizione) dei nodi.
+     */
+    private static void collectNodes(int oldWidth, int newWidth, int level, int index, List<int[]> nodes) {
+        long start = (long) index << level;
+        long end = start + (1L << level);
+
+        if(start >= oldWidth || end <= oldWidth) {
+            // Il sottoalbero del prefisso che coincide con il root precedente
+            // viene omesso
+            if(!(start == 0 && end == oldWidth))
+                nodes.add(new int[] { level, index });
+            return;
+        }
+
+        collectNodes(oldWidth, newWidth, level - 1, 2 * index, nodes);
+        if(((long) (2 * index + 1) << (level - 1)) < newWidth)
+            collectNodes(oldWidth, newWidth, level - 1, 2 * index + 1, nodes);
+    }
+
+    /**
+     * Legge una prova dalla posizione corrente di un buffer, avanzando la
+     * posizione alla fine della prova. La prova restituita condivide il
+     * contenuto del buffer, senza copiarlo.
+     *
+     * @param buffer
+     *                   il buffer da cui leggere la prova.
+     * @return la prova letta.
+     * @throws IllegalArgumentException
+     *                                      se il buffer è null o non contiene
+     *                                      una prova valida nel formato
+     *                                      {@link #VERSION} con un algoritmo
+     *                                      di hash disponibile.
+     */
+    public static MerkleConsistencyProof fromByteBuffer(ByteBuffer buffer) {
+
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer passato a fromByteBuffer() è null!");
+
+        int position = buffer.position();
+        if(buffer.limit() - position < HEADER_LENGTH)
+            throw new IllegalArgumentException("Il buffer non contiene un'intestazione completa!");
+        if(buffer.get(position) != VERSION)
+            throw new IllegalArgumentException("Versione del formato non supportata: " + buffer.get(position));
+        MerkleHasher hasher = MerkleHasher.forId(buffer.get(position + 2));
+        if(hasher == null)
+            throw new IllegalArgumentException("Algoritmo di hash non supportato: " + buffer.get(position + 2));
+        int hashLength = hasher.getDigestLength();
+        if(buffer.get(position + 1) != hashLength)
+            throw new IllegalArgumentException("Lunghezza degli hash non supportata: " + buffer.get(position + 1));
+
+        int oldWidth = buffer.getInt(position + 4);
+        int newWidth = buffer.getInt(position + 8);
+        if(oldWidth < 1 || oldWidth > newWidth)
+            throw new IllegalArgumentException("Numeri di foglie non validi: " + oldWidth + ", " + newWidth);
+
+        int count = buffer.get(position + 3) & 0xFF;
+        List<int[]> nodes = new ArrayList<>();
+        if(oldWidth < newWidth)
+            collectNodes(oldWidth, newWidth, MerkleTree.heightOf(newWidth), 0, nodes);
+        if(count != nodes.size())
+            throw new IllegalArgumentException("Numero di hash non valido: " + count);
+
+        int length = HEADER_LENGTH + count * hashLength;
+        if(buffer.limit() - position < length)
+            throw new IllegalArgumentException("Il buffer non contiene una prova completa!");
+
+        // Le viste create con slice sono sempre big-endian
+        ByteBuffer slice = buffer.slice(position, length);
+        buffer.position(position + length);
+
+        return new MerkleConsistencyProof(slice);
+    }
+
+    /**
+     * Restituisce l'algoritmo di hash con cui è stata costruita la prova.
+     *
+     * @return l'algoritmo di hash.
+     */
+    public MerkleHasher getHasher() {
+        return MerkleHasher.forId(this.encoded.get(2));
+    }
+
+    /**
+     * Restituisce il numero di foglie dell'albero precedente.
+     *
+     * @return la larghezza dell'albero precedente.
+     */
+    public int getOldWidth() {
+        return this.encoded.getInt(4);
+    }
+
+    /**
+     * Restituisce il numero di foglie dell'albero nuovo.
+     *
+     * @return la larghezza dell'albero nuovo.
+     */
+    public int getNewWidth() {
+        return this.encoded.getInt(8);
+    }
+
+    /**
+     * Restituisce il numero di hash contenuti nella prova.
+     *
+     * @return il numero di hash.
+     */
+    public int getLength() {
+        return this.encoded.get(3) & 0xFF;
+    }
+
+    /**
+     * Restituisce la lunghezza in byte del formato binario della prova.
+     *
+     * @return la lunghezza della prova codificata.
+     */
+    public int getEncodedLength() {
+        return this.encoded.limit();
+    }
+
+    /**
+     * Restituisce una vista in sola lettura del formato binario della prova,
+     * dalla posizione 0 al limite, senza copiarlo.
+     *
+     * @return il buffer contenente la prova.
+     */
+    public ByteBuffer asByteBuffer() {
+        return this.encoded.asReadOnlyBuffer();
+    }
+
+    /**
+     * Scrive il formato binario della prova nella posizione corrente di un
+     * buffer, avanzandone la posizione.
+     *
+     * @param buffer
+     *                   il buffer in cui scrivere.
+     * @throws IllegalArgumentException
+     *                                      se il buffer è null.
+     * @throws java.nio.BufferOverflowException
+     *                                              se il buffer non ha
+     *                                              abbastanza spazio.
+     */
+    public void writeTo(ByteBuffer buffer) {
+
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer passato a writeTo() è null!");
+
+        buffer.put(this.encoded.duplicate());
+    }
+
+    /**
+     * Verifica la prova rispetto ai root esadecimali delle due versioni, come
+     * restituiti da {@link MerkleNode#getHash()}.
+     *
+     * @param oldRootHash
+     *                        l'hash del root dell'albero precedente.
+     * @param newRootHash
+     *                        l'hash del root dell'albero nuovo.
+     * @return true se l'albero precedente è un prefisso dell'albero nuovo
+     *         secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se uno dei due hash è null.
+     */
+    public boolean verify(String oldRootHash, String newRootHash) {
+
+        if(oldRootHash == null)
+            throw new IllegalArgumentException("oldRootHash passato a verify() è null!");
+        if(newRootHash == null)
+            throw new IllegalArgumentException("newRootHash passato a verify() è null!");
+
+        return verify(HashUtil.fromHex(oldRootHash), HashUtil.fromHex(newRootHash));
+    }
+
+    /**
+     * Verifica la prova rispetto ai root delle due versioni in forma binaria.
+     *
+     * @param oldRoot
+     *                    l'hash del root dell'albero precedente.
+     * @param newRoot
+     *                    l'hash del root dell'albero nuovo.
+     * @return true se l'albero precedente è un prefisso dell'albero nuovo
+     *         secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se uno dei due hash è null.
+     */
+    public boolean verify(byte[] oldRoot, byte[] newRoot) {
+
+        if(oldRoot == null)
+            throw new IllegalArgumentException("oldRoot passato a verify() è null!");
+        if(newRoot == null)
+            throw new IllegalArgumentException("newRoot passato a verify() è null!");
+
+        MerkleHasher hasher = getHasher();
+        int hashLength = hasher.getDigestLength();
+        if(oldRoot.length != hashLength || newRoot.length != hashLength)
+            return false;
+
+        int oldWidth = getOldWidth();
+        int newWidth = getNewWidth();
+        if(oldWidth == newWidth)
+            return Arrays.equals(oldRoot, newRoot);
+
+        List<byte[]> hashes = new ArrayList<>(getLength());
+        for (int i = 0; i < getLength(); i++) {
+            byte[] digest = new byte[hashLength];
+            this.encoded.get(HEADER_LENGTH + i * hashLength, digest);
+            hashes.add(digest);
+        }
+
+        List<byte[]> prefix = new ArrayList<>();
+        byte[] computedNew = computeNew(hasher, oldWidth, newWidth, MerkleTree.heightOf(newWidth), 0,
+                hashes.iterator(), oldRoot, prefix);
+        byte[] computedOld = computeOld(hasher, oldWidth, MerkleTree.heightOf(oldWidth), 0, prefix.iterator());
+
+        return Arrays.equals(computedOld, oldRoot) && Arrays.equals(computedNew, newRoot);
+    }
+
+    /**
+     * Ricalcola l'hash di un nodo dell'albero nuovo a partire dagli hash della
+     * prova, nello stesso ordine della generazione, raccogliendo gli hash dei
+     * sottoalberi del prefisso.
+     */
+    private static byte[] computeNew(MerkleHasher hasher, int oldWidth, int newWidth, int level, int index,
+            Iterator<byte[]> hashes, byte[] oldRoot, List<byte[]> prefix) {
+        long start = (long) index << level;
+        long end = start + (1L << level);
+
+        if(start >= oldWidth)
+            return hashes.next();
+        if(end <= oldWidth) {
+            byte[] subtree = (start == 0 && end == oldWidth) ? oldRoot : hashes.next();
+            prefix.add(subtree);
+            return subtree;
+        }
+
+        byte[] left = computeNew(hasher, oldWidth, newWidth, level - 1, 2 * index, hashes, oldRoot, prefix);
+        if(((long) (2 * index + 1) << (level - 1)) >= newWidth)
+            return hasher.combine(left, EMPTY_HASH);
+
+        byte[] right = computeNew(hasher, oldWidth, newWidth, level - 1, 2 * index + 1, hashes, oldRoot, prefix);
+        return hasher.combine(left, right);
+    }
+
+    /**
+     * Ricalcola l'hash di un nodo dell'albero precedente a partire dagli hash
+     * dei sottoalberi completi del prefisso, in ordine da sinistra verso
+     * destra.
+     */
+    private static byte[] computeOld(MerkleHasher hasher, int oldWidth, int level, int index,
+            Iterator<byte[]> prefix) {
+        long start = (long) index << level;
+        if(start + (1L << level) <= oldWidth)
+            return prefix.next();
+
+        byte[] left = computeOld(hasher, oldWidth, level - 1, 2 * index, prefix);
+        if(((long) (2 * index + 1) << (level - 1)) >= oldWidth)
+            return hasher.combine(left, EMPTY_HASH);
+
+        return hasher.combine(left, computeOld(hasher, oldWidth, level - 1, 2 * index + 1, prefix));
+    }
+}
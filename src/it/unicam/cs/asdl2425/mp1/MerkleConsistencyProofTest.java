@@ -0,0 +1,148 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per {@link MerkleConsistencyProof}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testValidProofs()}: Verifica, per tutte le coppie di larghezze fino a 40, che la prova
+ * tra un prefisso e l'albero completo venga accettata e contenga O(log m) hash.</li>
+ *
+ * <li>{@link #testRejectsInconsistentTrees()}: Verifica che la prova venga rifiutata se una foglia del
+ * prefisso è stata modificata o se i root sono scambiati o errati.</li>
+ *
+ * <li>{@link #testEncoding()}: Verifica la scrittura e la lettura del formato binario e la sua
+ * lunghezza.</li>
+ *
+ * <li>{@link #testFlatTrees()}: Verifica che un albero fuori dallo heap generi le stesse prove.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per larghezze, root e
+ * buffer non validi.</li>
+ * </ul>
+ */
+class MerkleConsistencyProofTest {
+
+    private static HashLinkedList<Integer> buildList(MerkleHasher hasher, int width, int modified) {
+        return TestLists.of(hasher, width, i -> i == modified ? -1 : i * 11);
+    }
+
+    private static MerkleTree<Integer> buildTree(MerkleHasher hasher, int width) {
+        return new MerkleTree<>(buildList(hasher, width, -1));
+    }
+
+    @Test
+    void testValidProofs() {
+        for (MerkleHasher hasher : new MerkleHasher[] { MerkleHasher.MD5, MerkleHasher.SHA_256 }) {
+            MerkleTree<?>[] trees = new MerkleTree<?>[41];
+            for (int width = 1; width <= 40; width++)
+                trees[width] = buildTree(hasher, width);
+
+            for (int newWidth = 1; newWidth <= 40; newWidth++)
+                for (int oldWidth = 1; oldWidth <= newWidth; oldWidth++) {
+                    MerkleConsistencyProof proof = trees[newWidth].getConsistencyProof(oldWidth);
+                    String message = hasher + ", " + oldWidth + " -> " + newWidth;
+
+                    assertEquals(oldWidth, proof.getOldWidth());
+                    assertEquals(newWidth, proof.getNewWidth());
+                    assertSame(hasher, proof.getHasher());
+                    assertTrue(proof.verify(trees[oldWidth].getRoot().getHash(), trees[newWidth].getRoot().getHash()),
+                            message);
+                    assertTrue(proof.getLength() <= 2 * MerkleTree.heightOf(newWidth), message);
+                }
+        }
+
+        // Prefisso potenza di 2: il root precedente non viene ripetuto
+        assertEquals(1, buildTree(MerkleHasher.MD5, 16).getConsistencyProof(8).getLength());
+        assertEquals(0, buildTree(MerkleHasher.MD5, 16).getConsistencyProof(16).getLength());
+    }
+
+    @Test
+    void testRejectsInconsistentTrees() {
+        for (int newWidth = 2; newWidth <= 24; newWidth++)
+            for (int oldWidth = 1; oldWidth < newWidth; oldWidth++) {
+                MerkleTree<Integer> newTree = buildTree(MerkleHasher.MD5, newWidth);
+                MerkleConsistencyProof proof = newTree.getConsistencyProof(oldWidth);
+                String newRoot = newTree.getRoot().getHash();
+                String oldRoot = buildTree(MerkleHasher.MD5, oldWidth).getRoot().getHash();
+
+                for (int modified = 0; modified < oldWidth; modified++) {
+                    String forkedRoot = new MerkleTree<>(buildList(MerkleHasher.MD5, oldWidth, modified)).getRoot()
+                            .getHash();
+                    assertFalse(proof.verify(forkedRoot, newRoot),
+                            oldWidth + " -> " + newWidth + ", foglia " + modified);
+                }
+
+                assertFalse(proof.verify(newRoot, oldRoot));
+                assertFalse(proof.verify(oldRoot, oldRoot));
+                assertFalse(proof.verify(new byte[16], HashUtil.fromHex(newRoot)));
+                assertFalse(proof.verify(new byte[3], HashUtil.fromHex(newRoot)));
+            }
+
+        // Prova per un albero con foglie aggiunte diverse
+        MerkleTree<Integer> other = new MerkleTree<>(buildList(MerkleHasher.MD5, 10, 7));
+        assertFalse(other.getConsistencyProof(5).verify(buildTree(MerkleHasher.MD5, 5).getRoot().getHash(),
+                buildTree(MerkleHasher.MD5, 10).getRoot().getHash()));
+    }
+
+    @Test
+    void testEncoding() {
+        MerkleTree<Integer> tree = buildTree(MerkleHasher.SHA_256, 1000);
+        MerkleConsistencyProof proof = tree.getConsistencyProof(777);
+        assertEquals(12 + proof.getLength() * 32, proof.getEncodedLength());
+
+        ByteBuffer buffer = ByteBuffer.allocate(proof.getEncodedLength() + 5);
+        buffer.put((byte) 1);
+        proof.writeTo(buffer);
+        buffer.flip().position(1);
+
+        MerkleConsistencyProof read = MerkleConsistencyProof.fromByteBuffer(buffer);
+        assertEquals(1 + proof.getEncodedLength(), buffer.position());
+        assertEquals(proof.asByteBuffer(), read.asByteBuffer());
+        assertTrue(read.verify(buildTree(MerkleHasher.SHA_256, 777).getRoot().getHash(), tree.getRoot().getHash()));
+    }
+
+    @Test
+    void testFlatTrees() {
+        MerkleTree<Integer> tree = buildTree(MerkleHasher.MURMUR3_128, 300);
+
+        try (OffHeapMerkleTree<Integer> flat = new OffHeapMerkleTree<>(buildList(MerkleHasher.MURMUR3_128, 300, -1))) {
+            for (int oldWidth : new int[] { 1, 150, 256, 299, 300 })
+                assertEquals(tree.getConsistencyProof(oldWidth).asByteBuffer(),
+                        flat.getConsistencyProof(oldWidth).asByteBuffer());
+        }
+    }
+
+    @Test
+    void testInvalidArguments() {
+        MerkleTree<Integer> tree = buildTree(MerkleHasher.MD5, 10);
+        assertThrows(IllegalArgumentException.class, () -> tree.getConsistencyProof(0));
+        assertThrows(IllegalArgumentException.class, () -> tree.getConsistencyProof(11));
+
+        MerkleConsistencyProof proof = tree.getConsistencyProof(3);
+        assertThrows(IllegalArgumentException.class, () -> proof.verify((String) null, "00"));
+        assertThrows(IllegalArgumentException.class, () -> proof.verify(new byte[16], null));
+
+        assertThrows(IllegalArgumentException.class, () -> MerkleConsistencyProof.fromByteBuffer(null));
+        assertThrows(IllegalArgumentException.class, () -> MerkleConsistencyProof.fromByteBuffer(ByteBuffer.allocate(5)));
+
+        ByteBuffer encoded = proof.asByteBuffer();
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+
+        // Versione, algoritmo, numero di hash e larghezze non validi
+        for (int[] change : new int[][] { { 0, 9 }, { 2, 77 }, { 3, 1 }, { 7, 0 }, { 11, 2 } }) {
+            byte[] copy = bytes.clone();
+            copy[change[0]] = (byte) change[1];
+            assertThrows(IllegalArgumentException.class, () -> MerkleConsistencyProof.fromByteBuffer(ByteBuffer.wrap(copy)),
+                    "Byte " + change[0]);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> MerkleConsistencyProof.fromByteBuffer(ByteBuffer.wrap(bytes, 0, bytes.length - 1)));
+    }
+}
@@ -0,0 +1,236 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Strategia di calcolo degli hash usata dalle strutture di Merkle del
+ * package: definisce come viene calcolato l'hash di una foglia a partire dal
+ * dato e come vengono combinati gli hash di due nodi fratelli.
+ *
+ * <p>
+ * Sono disponibili tre implementazioni:
+ * <ul>
+ * <li>{@link #MD5}: l'algoritmo originale, che produce gli stessi hash di
+ * {@link HashUtil} ed è quindi compatibile con i root già calcolati;</li>
+ * <li>{@link #SHA_256}: SHA-256 con separazione tra foglie e nodi interni,
+ * da usare quando serve resistenza alle collisioni;</li>
+ * <li>{@link #MURMUR3_128}: MurmurHash3 a 128 bit, non crittografico, molto
+ * più veloce e adatto a confronti e deduplicazioni interne.</li>
+ * </ul>
+ *
+ * <p>
+ * Per default l'hash di una foglia è calcolato sui 4 byte big-endian di
+ * {@code data.hashCode()}, come in {@link HashUtil#dataToHash(Object)}; con un
+ * {@link Funnel} viene invece calcolato sul contenuto effettivo del dato. Gli
+ * hash di lunghezza 0 rappresentano un fratello mancante: in quel caso l'hash
+ * del padre viene ricalcolato a partire dall'unico figlio.
+ *
+ * <p>
+ * Le implementazioni devono essere thread-safe e i metodi con suffisso Into
+ * non devono allocare oggetti per chiamata; l'array di output può coincidere
+ * con quelli di input.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public interface MerkleHasher {
+
+    /**
+     * Hash MD5 compatibile con {@link HashUtil}: i nodi interni sono l'MD5
+     * della concatenazione delle rappresentazioni esadecimali dei figli.
+     */
+    MerkleHasher MD5 = new Md5MerkleHasher();
+
+    /**
+     * Hash SHA-256 con prefisso 0x00 per le foglie e 0x01 per i nodi interni,
+     * che combinano la concatenazione binaria dei figli.
+     */
+    MerkleHasher SHA_256 = new Sha256MerkleHasher();
+
+    /**
+     * Hash non crittografico MurmurHash3 x64 a 128 bit, con seme 0, applicato
+     * ai dati delle foglie e alla concatenazione binaria dei figli.
+     */
+    MerkleHasher MURMUR3_128 = new Murmur3MerkleHasher();
+
+    /**
+     * Restituisce il nome dell'algoritmo.
+     *
+     * @return il nome dell'algoritmo.
+     */
+    String getName();
+
+    /**
+     * Restituisce l'identificativo dell'algoritmo usato nei formati binari,
+     * univoco tra le implementazioni disponibili.
+     *
+     * @return l'identificativo dell'algoritmo.
+     */
+    byte getId();
+
+    /**
+     * Restituisce la lunghezza in byte degli hash prodotti.
+     *
+     * @return la lunghezza di un hash.
+     */
+    int getDigestLength();
+
+    /**
+     * Calcola l'hash di una porzione di un array di byte come contenuto di
+     * una foglia e lo scrive nell'array fornito.
+     *
+     * @param input
+     *                   l'array di byte di cui calcolare l'hash.
+     * @param inOff
+     *                   la posizione del primo byte da considerare.
+     * @param inLen
+     *                   il numero di byte da considerare.
+     * @param out
+     *                   l'array in cui scrivere l'hash.
+     * @param outOff
+     *                   la posizione di out da cui scrivere l'hash.
+     */
+    void digestInto(byte[] input, int inOff, int inLen, byte[] out, int outOff);
+
+    /**
+     * Calcola l'hash della foglia che contiene il dato fornito e lo scrive
+     * nell'array fornito.
+     *
+     * @param data
+     *                   il dato da hashare.
+     * @param out
+     *                   l'array in cui scrivere l'hash.
+     * @param outOff
+     *                   la posizione di out da cui scrivere l'hash.
+     */
+    void dataDigestInto(Object data, byte[] out, int outOff);
+
+    /**
+     * Calcola l'hash del padre di due nodi a partire dai loro hash contenuti
+     * in porzioni di array e lo scrive nell'array fornito. Una porzione di
+     * lunghezza 0 rappresenta un fratello mancante.
+     *
+     * @param left
+     *                     l'array contenente l'hash del figlio sinistro.
+     * @param leftOff
+     *                     la posizione dell'hash sinistro.
+     * @param leftLen
+     *                     la lunghezza dell'hash sinistro.
+     * @param right
+     *                     l'array contenente l'hash del figlio destro.
+     * @param rightOff
+     *                     la posizione dell'hash destro.
+     * @param rightLen
+     *                     la lunghezza dell'hash destro.
+     * @param out
+     *                     l'array in cui scrivere l'hash.
+     * @param outOff
+     *                     la posizione di out da cui scrivere l'hash.
+     */
+    void combineInto(byte[] left, int leftOff, int leftLen, byte[] right, int rightOff, int rightLen,
+            byte[] out, int outOff);
+
+    /**
+     * Calcola l'hash della foglia che contiene il dato fornito.
+     *
+     * @param data
+     *                 il dato da hashare.
+     * @return l'hash come array di byte.
+     */
+    default byte[] dataDigest(Object data) {
+        byte[] digest = new byte[getDigestLength()];
+        dataDigestInto(data, digest, 0);
+        return digest;
+    }
+
+    /**
+     * Calcola l'hash della foglia che contiene il dato fornito a partire dal
+     * contenuto scritto dal funnel, e lo scrive nell'array fornito. Con
+     * {@link Funnel#HASH_CODE} il risultato coincide con quello di
+     * {@link #dataDigestInto(Object, byte[], int)}.
+     *
+     * <p>
+     * L'implementazione predefinita accumula il contenuto in un array e ne
+     * calcola l'hash con {@link #digestInto(byte[], int, int, byte[], int)};
+     * le implementazioni disponibili lo passano invece all'algoritmo man
+     * mano che viene scritto, senza allocazioni.
+     *
+     * @param <T>
+     *                   il tipo del dato.
+     * @param data
+     *                   il dato da hashare.
+     * @param funnel
+     *                   il funnel che descrive il contenuto del dato.
+     * @param out
+     *                   l'array in cui scrivere l'hash.
+     * @param outOff
+     *                   la posizione di out da cui scrivere l'hash.
+     */
+    default <T> void dataDigestInto(T data, Funnel<? super T> funnel, byte[] out, int outOff) {
+        if(funnel == Funnel.HASH_CODE)
+            dataDigestInto(data, out, outOff);
+        else
+            BufferedSink.digest(new BufferedSink.ArraySink(this), data, funnel, out, outOff);
+    }
+
+    /**
+     * Calcola l'hash della foglia che contiene il dato fornito a partire dal
+     * contenuto scritto dal funnel.
+     *
+     * @param <T>
+     *                   il tipo del dato.
+     * @param data
+     *                   il dato da hashare.
+     * @param funnel
+     *                   il funnel che descrive il contenuto del dato.
+     * @return l'hash come array di byte.
+     */
+    default <T> byte[] dataDigest(T data, Funnel<? super T> funnel) {
+        byte[] digest = new byte[getDigestLength()];
+        dataDigestInto(data, funnel, digest, 0);
+        return digest;
+    }
+
+    /**
+     * Calcola l'hash del padre di due nodi a partire dai loro hash.
+     *
+     * @param left
+     *                  l'hash del figlio sinistro.
+     * @param right
+     *                  l'hash del figlio destro, di lunghezza 0 se mancante.
+     * @return l'hash del padre come array di byte.
+     */
+    default byte[] combine(byte[] left, byte[] right) {
+        byte[] digest = new byte[getDigestLength()];
+        combineInto(left, 0, left.length, right, 0, right.length, digest, 0);
+        return digest;
+    }
+
+    /**
+     * Calcola l'hash del padre di due nodi e lo scrive nell'array fornito.
+     *
+     * @param left
+     *                   l'hash del figlio sinistro.
+     * @param right
+     *                   l'hash del figlio destro, di lunghezza 0 se mancante.
+     * @param out
+     *                   l'array in cui scrivere l'hash.
+     * @param outOff
+     *                   la posizione di out da cui scrivere l'hash.
+     */
+    default void combineInto(byte[] left, byte[] right, byte[] out, int outOff) {
+        combineInto(left, 0, left.length, right, 0, right.length, out, outOff);
+    }
+
+    /**
+     * Restituisce l'implementazione disponibile con l'identificativo dato.
+     *
+     * @param id
+     *               l'identificativo dell'algoritmo.
+     * @return l'implementazione con quell'identificativo, null se non
+     *         esiste.
+     */
+    static MerkleHasher forId(byte id) {
+        for (MerkleHasher hasher : new MerkleHasher[] { MD5, SHA_256, MURMUR3_128 })
+            if(hasher.getId() == id)
+                return hasher;
+        return null;
+    }
+}
@@ -0,0 +1,140 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Confronta le prestazioni degli algoritmi di hash disponibili per le
+ * strutture di Merkle. Per ogni algoritmo e per ogni dimensione vengono
+ * misurati il tempo di inserimento degli elementi in una HashLinkedList, che
+ * calcola gli hash delle foglie, e il tempo di costruzione del MerkleTree, che
+ * calcola gli hash dei nodi interni. Viene misurato anche il tempo di
+ * inserimento con {@link Funnel#LONG}, che calcola l'hash delle foglie sul
+ * valore degli elementi invece che sul loro hashCode(). Viene misurata infine
+ * la velocità del solo algoritmo su blocchi di 4 KiB, indipendente dalla
+ * struttura dell'albero.
+ *
+ * Il main può essere chiamato con le dimensioni da misurare come parametri di
+ * linea di comando. Se non è presente nessun parametro allora vengono usate
+ * 10^4 e 10^6 foglie.
+ *
+ * I risultati sono stampati sullo standard output in formato .csv (Comma
+ * Separated Values).
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public class MerkleHasherBenchmark {
+
+    /**
+     * Dimensioni misurate se non viene passato nessun parametro.
+     */
+    private static final int[] DEFAULT_SIZES = { 10_000, 1_000_000 };
+
+    /**
+     * Algoritmi confrontati.
+     */
+    private static final MerkleHasher[] HASHERS = { MerkleHasher.MD5, MerkleHasher.SHA_256,
+            MerkleHasher.MURMUR3_128 };
+
+    /**
+     * Numero di costruzioni di riscaldamento eseguite per ogni algoritmo
+     * prima delle misure.
+     */
+    private static final int WARMUP_ROUNDS = 3;
+
+    /**
+     * Dimensione dei blocchi usati per misurare la velocità dell'algoritmo.
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    /**
+     * Numero di byte hashati per misurare la velocità dell'algoritmo.
+     */
+    private static final long THROUGHPUT_BYTES = 256L << 20;
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        for (MerkleHasher hasher : HASHERS)
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                new MerkleTree<>(buildList(hasher, 10_000));
+                new MerkleTree<>(buildList(hasher, 10_000), hasher, Funnel.LONG);
+            }
+
+        System.out.println("algorithm,digestBytes,leaves,listTimeMs,funnelListTimeMs,buildTimeMs,nsPerLeaf,blockMBPerSec");
+        for (MerkleHasher hasher : HASHERS) {
+            long blockMBPerSec = blockThroughput(hasher);
+
+            for (int n : sizes) {
+                System.gc();
+
+                long startTimeNano = System.nanoTime();
+                HashLinkedList<Long> list = buildList(hasher, n);
+                long listTimeNano = System.nanoTime() - startTimeNano;
+
+                startTimeNano = System.nanoTime();
+                HashLinkedList<Long> funnelList = new HashLinkedList<>(hasher, Funnel.LONG);
+                for (long i = 0; i < n; i++)
+                    funnelList.addAtTail(i * 111L);
+                long funnelListTimeNano = System.nanoTime() - startTimeNano;
+                funnelList = null;
+
+                startTimeNano = System.nanoTime();
+                MerkleTree<Long> tree = new MerkleTree<>(list);
+                long buildTimeNano = System.nanoTime() - startTimeNano;
+
+                // Il root viene usato per evitare che la costruzione venga eliminata
+                if (tree.getRoot() == null)
+                    throw new IllegalStateException("Root null");
+
+                System.out.println(hasher.getName() + "," + hasher.getDigestLength() + "," + n + ","
+                        + (listTimeNano / 1_000_000) + "," + (funnelListTimeNano / 1_000_000) + ","
+                        + (buildTimeNano / 1_000_000) + ","
+                        + ((listTimeNano + buildTimeNano) / n) + "," + blockMBPerSec);
+            }
+        }
+    }
+
+    /**
+     * Crea una HashLinkedList con n elementi distinti e l'algoritmo dato.
+     *
+     * @param hasher
+     *                   l'algoritmo di hash della lista
+     * @param n
+     *                   numero di elementi della lista
+     * @return la lista creata
+     */
+    private static HashLinkedList<Long> buildList(MerkleHasher hasher, int n) {
+        HashLinkedList<Long> list = new HashLinkedList<>(hasher);
+        for (long i = 0; i < n; i++)
+            list.addAtTail(i * 111L);
+        return list;
+    }
+
+    /**
+     * Misura la velocità dell'algoritmo sull'hash di blocchi di dati, in MB
+     * al secondo.
+     *
+     * @param hasher
+     *                   l'algoritmo da misurare
+     * @return i MB hashati al secondo
+     */
+    private static long blockThroughput(MerkleHasher hasher) {
+        byte[] block = new byte[BLOCK_SIZE];
+        for (int i = 0; i < BLOCK_SIZE; i++)
+            block[i] = (byte) i;
+        byte[] digest = new byte[hasher.getDigestLength()];
+
+        long startTimeNano = System.nanoTime();
+        for (long hashed = 0; hashed < THROUGHPUT_BYTES; hashed += BLOCK_SIZE) {
+            hasher.digestInto(block, 0, BLOCK_SIZE, digest, 0);
+            // Il blocco successivo dipende dall'hash precedente
+            block[0] = digest[0];
+        }
+        long elapsedTimeNano = System.nanoTime() - startTimeNano;
+
+        return (THROUGHPUT_BYTES >> 20) * 1_000_000_000L / Math.max(1, elapsedTimeNano);
+    }
+}
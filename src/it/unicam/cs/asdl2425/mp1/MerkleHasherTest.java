@@ -0,0 +1,200 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per l'interfaccia {@link MerkleHasher} e per le sue
+ * implementazioni. Questa classe verifica che ogni algoritmo venga usato in
+ * modo coerente da tutte le strutture di Merkle del package.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testMd5CompatibleWithHashUtil()}: Verifica che l'algoritmo MD5 produca gli stessi
+ * hash di HashUtil e che un albero costruito senza specificare l'algoritmo usi MD5.</li>
+ *
+ * <li>{@link #testKnownVectors()}: Verifica gli hash di SHA-256 e MurmurHash3 su valori noti,
+ * compresa la separazione tra foglie e nodi interni di SHA-256.</li>
+ *
+ * <li>{@link #testTreesWithEachHasher()}: Verifica, per ogni algoritmo, che root, prove,
+ * prove multiple, Merkle Mountain Range e calcolo su flusso siano coerenti tra loro.</li>
+ *
+ * <li>{@link #testRehashWithDifferentHasher()}: Verifica che un albero costruito con un algoritmo
+ * diverso da quello della lista coincida con un albero costruito su una lista con quell'algoritmo.</li>
+ *
+ * <li>{@link #testCompactProofWithHasher()}: Verifica che la prova compatta memorizzi
+ * l'algoritmo e che venga riletta e verificata con lo stesso algoritmo.</li>
+ *
+ * <li>{@link #testRejectedCallsKeepState()}: Verifica, per ogni algoritmo, che le chiamate rifiutate
+ * per porzioni di array non valide non alterino gli hash calcolati successivamente.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per algoritmi null
+ * e che gli identificativi non assegnati non corrispondano a nessun algoritmo.</li>
+ * </ul>
+ */
+class MerkleHasherTest {
+
+    private static final MerkleHasher[] HASHERS = { MerkleHasher.MD5, MerkleHasher.SHA_256,
+            MerkleHasher.MURMUR3_128 };
+
+    @Test
+    void testMd5CompatibleWithHashUtil() {
+        MerkleHasher md5 = MerkleHasher.MD5;
+        byte[] left = HashUtil.dataToDigest(1);
+        byte[] right = HashUtil.dataToDigest(2);
+
+        assertArrayEquals(HashUtil.dataToDigest("Alice"), md5.dataDigest("Alice"));
+        assertArrayEquals(HashUtil.combineDigests(left, right), md5.combine(left, right));
+        assertArrayEquals(HashUtil.combineDigests(left, new byte[0]), md5.combine(left, new byte[0]));
+
+        MerkleTree<Integer> tree = new MerkleTree<>(TestLists.multiplesOf7(md5, 11));
+        assertSame(md5, tree.getHasher(), "L'algoritmo predefinito dovrebbe essere MD5.");
+        assertEquals(new MerkleTree<>(TestLists.multiplesOf7(md5, 11), md5).getRoot().getHash(),
+                tree.getRoot().getHash());
+        assertEquals(StreamingMerkleRoot.rootOf(TestLists.multiplesOf7(md5, 11).iterator()), tree.getRoot().getHash(),
+                "Il root MD5 dovrebbe coincidere con quello calcolato prima dell'introduzione degli algoritmi.");
+    }
+
+    @Test
+    void testKnownVectors() throws NoSuchAlgorithmException {
+        byte[] fox = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+        byte[] digest = new byte[16];
+        MerkleHasher.MURMUR3_128.digestInto(fox, 0, fox.length, digest, 0);
+        assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", HashUtil.toHex(digest));
+
+        MerkleHasher.MURMUR3_128.digestInto(new byte[0], 0, 0, digest, 0);
+        assertEquals("00000000000000000000000000000000", HashUtil.toHex(digest));
+
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        byte[] left = MerkleHasher.SHA_256.dataDigest(1);
+        byte[] right = MerkleHasher.SHA_256.dataDigest(2);
+
+        sha256.update((byte) 0x00);
+        assertArrayEquals(sha256.digest(new byte[] { 0, 0, 0, 1 }), left,
+                "Le foglie dovrebbero avere il prefisso 0x00.");
+        sha256.update((byte) 0x01);
+        sha256.update(left);
+        assertArrayEquals(sha256.digest(right), MerkleHasher.SHA_256.combine(left, right),
+                "I nodi interni dovrebbero avere il prefisso 0x01.");
+    }
+
+    @Test
+    void testTreesWithEachHasher() {
+        for (MerkleHasher hasher : HASHERS) {
+            HashLinkedList<Integer> list = TestLists.multiplesOf7(hasher, 13);
+            MerkleTree<Integer> tree = new MerkleTree<>(list);
+            String root = tree.getRoot().getHash();
+
+            assertSame(hasher, tree.getHasher());
+            assertEquals(2 * hasher.getDigestLength(), root.length(), "Il root dovrebbe avere la lunghezza dell'algoritmo.");
+
+            for (int i = 0; i < 13; i++) {
+                MerkleProof proof = tree.getMerkleProof(i * 7);
+                assertSame(hasher, proof.getHasher());
+                assertTrue(proof.proveValidityOfData(i * 7), "La prova dovrebbe essere valida con " + hasher);
+                assertFalse(proof.proveValidityOfData(i * 7 + 1), "La prova non dovrebbe validare altri dati.");
+            }
+
+            MerkleMultiProof multiProof = tree.getMerkleMultiProof(new int[] { 0, 5, 12 });
+            assertTrue(multiProof.proveValidityOfData(List.of(0, 35, 84)));
+
+            MerkleMountainRange<Integer> mmr = new MerkleMountainRange<>(hasher);
+            StreamingMerkleRoot<Integer> calculator = new StreamingMerkleRoot<>(hasher);
+            for (Integer element : list) {
+                mmr.add(element);
+                calculator.add(element);
+            }
+            assertEquals(root, mmr.getRoot().getHash(), "Il root dell'MMR dovrebbe coincidere.");
+            assertEquals(root, calculator.getRootHash(), "Il root calcolato sul flusso dovrebbe coincidere.");
+            assertTrue(mmr.getMerkleProofAt(6).proveValidityOfData(42));
+        }
+
+        assertNotEquals(new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.MD5, 13)).getRoot().getHash(),
+                new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.MURMUR3_128, 13)).getRoot().getHash(),
+                "Algoritmi diversi dovrebbero produrre root diversi.");
+    }
+
+    @Test
+    void testRehashWithDifferentHasher() {
+        MerkleTree<Integer> rehashed = new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.MD5, 9),
+                MerkleHasher.SHA_256);
+        MerkleTree<Integer> expected = new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.SHA_256, 9));
+
+        assertSame(MerkleHasher.SHA_256, rehashed.getHasher());
+        assertEquals(expected.getRoot().getHash(), rehashed.getRoot().getHash());
+        assertEquals(4, rehashed.getIndexOfData(28), "L'indice dovrebbe usare gli hash ricalcolati.");
+        assertTrue(rehashed.validateData(56));
+    }
+
+    @Test
+    void testCompactProofWithHasher() {
+        MerkleTree<Integer> tree = new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.SHA_256, 10));
+        CompactMerkleProof compact = new CompactMerkleProof(tree.getMerkleProof(49));
+
+        assertSame(MerkleHasher.SHA_256, compact.getHasher());
+        assertEquals(20 + (compact.getLength() + 1) * 32, compact.getEncodedLength());
+
+        ByteBuffer buffer = ByteBuffer.allocate(compact.getEncodedLength());
+        compact.writeTo(buffer);
+        buffer.flip();
+        assertEquals(MerkleHasher.SHA_256.getId(), buffer.get(3), "Il byte 3 dovrebbe contenere l'algoritmo.");
+        assertTrue(CompactMerkleProof.verify(buffer, 49));
+        assertTrue(CompactMerkleProof.fromByteBuffer(buffer).toMerkleProof().proveValidityOfData(49));
+
+        ByteBuffer unknown = compact.asByteBuffer();
+        ByteBuffer copy = ByteBuffer.allocate(unknown.remaining()).put(unknown);
+        copy.put(3, (byte) 99).flip();
+        assertThrows(IllegalArgumentException.class, () -> CompactMerkleProof.fromByteBuffer(copy));
+
+        copy.put(3, MerkleHasher.MURMUR3_128.getId());
+        assertThrows(IllegalArgumentException.class, () -> CompactMerkleProof.fromByteBuffer(copy),
+                "La lunghezza degli hash dovrebbe corrispondere all'algoritmo.");
+    }
+
+    @Test
+    void testRejectedCallsKeepState() {
+        for (MerkleHasher hasher : HASHERS) {
+            byte[] data = hasher.dataDigest(42, Funnel.HASH_CODE);
+            byte[] input = { 1, 2, 3 };
+            byte[] left = new byte[hasher.getDigestLength()];
+            hasher.digestInto(input, 0, 3, left, 0);
+            byte[] combined = hasher.combine(left, data);
+
+            assertThrows(RuntimeException.class, () -> hasher.dataDigestInto(7, new byte[10], 0));
+            assertArrayEquals(data, hasher.dataDigest(42, Funnel.HASH_CODE), hasher.toString());
+
+            byte[] again = new byte[hasher.getDigestLength()];
+            assertThrows(RuntimeException.class, () -> hasher.digestInto(input, 1, 3, again, 0));
+            hasher.digestInto(input, 0, 3, again, 0);
+            assertArrayEquals(left, again, hasher.toString());
+
+            assertThrows(RuntimeException.class, () -> hasher.combineInto(left, 0, left.length, data, 4,
+                    data.length, new byte[hasher.getDigestLength()], 0));
+            assertThrows(RuntimeException.class, () -> hasher.combineInto(left, 0, left.length, data, 0,
+                    data.length, new byte[hasher.getDigestLength()], 1));
+            assertArrayEquals(combined, hasher.combine(left, data), hasher.toString());
+        }
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new HashLinkedList<Integer>((MerkleHasher) null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.MD5, 2), null));
+        assertThrows(IllegalArgumentException.class, () -> new MerkleProof("root", 1, null));
+        assertThrows(IllegalArgumentException.class, () -> new StreamingMerkleRoot<Integer>(null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new StreamingMerkleRoot<Integer>(MerkleHasher.SHA_256).addDigest(new byte[16]));
+
+        for (MerkleHasher hasher : HASHERS)
+            assertSame(hasher, MerkleHasher.forId(hasher.getId()));
+        assertNull(MerkleHasher.forId((byte) 99));
+    }
+}
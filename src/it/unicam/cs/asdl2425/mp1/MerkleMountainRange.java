@@ -0,0 +1,448 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+
+/**
+ * Un Merkle Mountain Range è un accumulatore di hash ottimizzato per
+ * l'inserimento in coda: ogni nuovo elemento viene aggiunto con un numero
+ * ammortizzato costante di combinazioni di hash, senza ricostruire l'albero.
+ *
+ * Per ogni livello vengono memorizzati solamente i nodi completi, ovvero
+ * quelli i cui sottoalberi contengono tutte le foglie previste; al livello l
+ * ci sono quindi width / 2^l nodi. I nodi incompleti, che si trovano sul
+ * cammino dall'ultima foglia al root, vengono ricalcolati a partire dai picchi
+ * (le radici dei sottoalberi completi) quando sono richiesti il root o una
+ * prova.
+ *
+ * Il root calcolato coincide con quello di un {@link MerkleTree} costruito
+ * sugli stessi dati nello stesso ordine, compresi i nodi senza fratello il cui
+ * hash viene ricalcolato a partire dall'unico figlio, e le prove generate sono
+ * normali oggetti {@link MerkleProof}.
+ *
+ * Gli hash sono memorizzati in forma binaria in un array per livello, in
+ * modo contiguo, quindi ogni foglia occupa in media lo spazio di circa due
+ * hash (32 byte con MD5).
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ *
+ * @param <T>
+ *                il tipo di dati su cui l'accumulatore è costruito.
+ */
+public class MerkleMountainRange<T> {
+
+    /**
+     * Capacità iniziale, in numero di hash, dell'array di un livello.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Hash dei nodi completi, divisi per livello: il livello 0 contiene le
+     * foglie e il livello l contiene i width / 2^l nodi completi.
+     */
+    private byte[][] levels;
+
+    /**
+     * Numero di foglie inserite.
+     */
+    private int width;
+
+    /**
+     * Hash del root, calcolato solamente quando richiesto e invalidato a ogni
+     * inserimento.
+     */
+    private byte[] rootHash;
+
+    /**
+     * Algoritmo di hash usato per le foglie e per i nodi.
+     */
+    private final MerkleHasher hasher;
+
+    /**
+     * Funnel usato per calcolare gli hash delle foglie.
+     */
+    private final Funnel<? super T> funnel;
+
+    /**
+     * Lunghezza in byte di un hash.
+     */
+    private final int hashLength;
+
+    /**
+     * Costruisce un Merkle Mountain Range vuoto i cui hash sono calcolati con
+     * MD5.
+     */
+    public MerkleMountainRange() {
+        this(MerkleHasher.MD5);
+    }
+
+    /**
+     * Costruisce un Merkle Mountain Range vuoto i cui hash sono calcolati con
+     * l'algoritmo dato, usando {@link Funnel#HASH_CODE} per le foglie.
+     *
+     * @param hasher
+     *                   l'algoritmo di hash.
+     * @throws IllegalArgumentException
+     *                                      se l'algoritmo è null.
+     */
+    public MerkleMountainRange(MerkleHasher hasher) {
+        this(hasher, Funnel.HASH_CODE);
+    }
+
+    /**
+     * Costruisce un Merkle Mountain Range vuoto i cui hash sono calcolati con
+     * l'algoritmo dato, calcolando gli hash delle foglie sul contenuto scritto
+     * dal funnel.
+     *
+     * @param hasher
+     *                   l'algoritmo di hash.
+     * @param funnel
+     *                   il funnel che descrive il contenuto dei dati.
+     * @throws IllegalArgumentException
+     *                                      se l'algoritmo o il funnel sono
+     *                                      null.
+     */
+    public MerkleMountainRange(MerkleHasher hasher, Funnel<? super T> funnel) {
+
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato al costruttore è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato al costruttore è null!");
+
+        this.hasher = hasher;
+        this.funnel = funnel;
+        this.hashLength = hasher.getDigestLength();
+        this.levels = new byte[1][];
+        this.levels[0] = new byte[INITIAL_CAPACITY * this.hashLength];
+        this.width = 0;
+        this.rootHash = null;
+    }
+
+    /**
+     * Costruisce un Merkle Mountain Range contenente gli elementi di una
+     * HashLinkedList, usando direttamente gli hash presenti nella lista, il
+     * suo algoritmo di hash e il suo funnel per gli elementi aggiunti in
+     * seguito.
+     *
+     * @param hashList
+     *                     la lista da cui prendere gli hash.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null.
+     */
+    public MerkleMountainRange(HashLinkedList<T> hashList) {
+        this(hasherOf(hashList), hashList.getFunnel());
+
+        for (byte[] digest : hashList.getAllDigests())
+            appendDigest(digest, 0);
+    }
+
+    /**
+     * Restituisce l'algoritmo di hash di una lista, controllando che la lista
+     * non sia null.
+     */
+    private static MerkleHasher hasherOf(HashLinkedList<?> hashList) {
+
+        if(hashList == null)
+            throw new IllegalArgumentException("hashList passato al costruttore è null!");
+
+        return hashList.getHasher();
+    }
+
+    /**
+     * Restituisce l'algoritmo di hash usato per le foglie e per i nodi.
+     *
+     * @return l'algoritmo di hash.
+     */
+    public MerkleHasher getHasher() {
+        return this.hasher;
+    }
+
+    /**
+     * Restituisce il funnel usato per calcolare gli hash delle foglie.
+     *
+     * @return il funnel dei dati.
+     */
+    public Funnel<? super T> getFunnel() {
+        return this.funnel;
+    }
+
+    /**
+     * Aggiunge un elemento in coda, combinando gli hash dei soli nodi che
+     * diventano completi con il nuovo elemento. In media viene eseguita meno
+     * di una combinazione per elemento.
+     *
+     * @param data
+     *                 l'elemento da aggiungere.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public void add(T data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a add() è null!");
+
+        // L'hash del dato viene calcolato direttamente nell'array delle foglie
+        ensureCapacity(0, this.width + 1);
+        this.hasher.dataDigestInto(data, this.funnel, this.levels[0], this.width * this.hashLength);
+        completeLevels();
+    }
+
+    /**
+     * Aggiunge in coda una foglia con l'hash dato.
+     *
+     * @param digest
+     *                   array contenente l'hash.
+     * @param offset
+     *                   posizione dell'hash nell'array.
+     */
+    private void appendDigest(byte[] digest, int offset) {
+        ensureCapacity(0, this.width + 1);
+        System.arraycopy(digest, offset, this.levels[0], this.width * this.hashLength, this.hashLength);
+        completeLevels();
+    }
+
+    /**
+     * Registra l'ultima foglia scritta nell'array delle foglie e calcola i
+     * nodi che diventano completi, risalendo finché il nodo appena completato
+     * è il secondo figlio del padre.
+     */
+    private void completeLevels() {
+        int index = this.width++;
+        this.rootHash = null;
+
+        for (int level = 0; index % 2 == 1; level++) {
+            int parent = index / 2;
+            ensureLevel(level + 1);
+            ensureCapacity(level + 1, parent + 1);
+
+            byte[] children = this.levels[level];
+            this.hasher.combineInto(children, (index - 1) * this.hashLength, this.hashLength,
+                    children, index * this.hashLength, this.hashLength,
+                    this.levels[level + 1], parent * this.hashLength);
+
+            index = parent;
+        }
+    }
+
+    /**
+     * Aggiunge i livelli mancanti fino a quello dato.
+     *
+     * @param level
+     *                  il livello che deve esistere.
+     */
+    private void ensureLevel(int level) {
+        if(level < this.levels.length)
+            return;
+
+        int oldLength = this.levels.length;
+        this.levels = Arrays.copyOf(this.levels, level + 1);
+        for (int l = oldLength; l <= level; l++)
+            this.levels[l] = new byte[INITIAL_CAPACITY * this.hashLength];
+    }
+
+    /**
+     * Garantisce che l'array di un livello possa contenere il numero di hash
+     * dato, raddoppiandone la capacità se necessario.
+     *
+     * @param level
+     *                     il livello da controllare.
+     * @param capacity
+     *                     il numero di hash da poter contenere.
+     */
+    private void ensureCapacity(int level, int capacity) {
+        byte[] digests = this.levels[level];
+        if((long) capacity * this.hashLength <= digests.length)
+            return;
+
+        long newLength = Math.max((long) capacity * this.hashLength, 2L * digests.length);
+        if(newLength > Integer.MAX_VALUE - 8)
+            newLength = (long) capacity * this.hashLength;
+        if(newLength > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Numero massimo di elementi raggiunto");
+
+        this.levels[level] = Arrays.copyOf(digests, (int) newLength);
+    }
+
+    /**
+     * Restituisce il numero di elementi inseriti.
+     *
+     * @return il numero di foglie.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Restituisce l'altezza dell'albero di Merkle corrispondente agli
+     * elementi inseriti.
+     *
+     * @return l'altezza dell'albero; 0 se non ci sono elementi.
+     */
+    public int getHeight() {
+        return (this.width == 0) ? 0 : MerkleTree.heightOf(this.width);
+    }
+
+    /**
+     * Restituisce un nodo con l'hash del root dell'albero di Merkle
+     * corrispondente agli elementi inseriti, uguale al root di un
+     * {@link MerkleTree} costruito sugli stessi elementi. Il nodo restituito
+     * non ha figli.
+     *
+     * @return il nodo con l'hash del root; null se non ci sono elementi.
+     */
+    public MerkleNode getRoot() {
+        if(this.width == 0)
+            return null;
+
+        if(this.rootHash == null) {
+            byte[][] spine = computeSpine();
+            this.rootHash = spine[spine.length - 1];
+        }
+        return new MerkleNode(this.rootHash);
+    }
+
+    /**
+     * Calcola gli hash dei nodi sul cammino dall'ultima foglia al root, uno
+     * per livello. L'ultimo nodo del livello l ha posizione (width - 1) / 2^l;
+     * se è completo il suo hash è già memorizzato, altrimenti viene calcolato
+     * combinando il nodo del livello inferiore con il fratello sinistro, se
+     * presente, oppure ricalcolando l'hash a partire dall'unico figlio.
+     *
+     * @return gli hash dei nodi del cammino, dalla foglia al root.
+     */
+    private byte[][] computeSpine() {
+        int height = getHeight();
+        byte[][] spine = new byte[height + 1][];
+
+        int last = this.width - 1;
+        spine[0] = Arrays.copyOfRange(this.levels[0], last * this.hashLength, (last + 1) * this.hashLength);
+
+        for (int level = 1; level <= height; level++) {
+            int childIndex = last >> (level - 1);
+            int index = last >> level;
+
+            if(index < (this.width >> level))
+                // Il nodo è completo, quindi già calcolato
+                spine[level] = Arrays.copyOfRange(this.levels[level], index * this.hashLength, (index + 1) * this.hashLength);
+            else if(childIndex % 2 == 1)
+                // Il figlio incompleto è il secondo, il primo è completo
+                spine[level] = combineStored(level - 1, childIndex - 1, spine[level - 1]);
+            else
+                // Il figlio incompleto non ha fratello
+                spine[level] = this.hasher.combine(spine[level - 1], new byte[0]);
+        }
+
+        return spine;
+    }
+
+    /**
+     * Combina l'hash memorizzato di un nodo completo con l'hash dato, posto
+     * alla sua destra.
+     *
+     * @param level
+     *                  il livello del nodo completo.
+     * @param index
+     *                  la posizione del nodo completo.
+     * @param right
+     *                  l'hash da porre a destra.
+     * @return l'hash combinato.
+     */
+    private byte[] combineStored(int level, int index, byte[] right) {
+        byte[] result = new byte[this.hashLength];
+        this.hasher.combineInto(this.levels[level], index * this.hashLength, this.hashLength,
+                right, 0, right.length, result, 0);
+        return result;
+    }
+
+    /**
+     * Restituisce l'indice della prima occorrenza di un dato tra gli elementi
+     * inseriti. La ricerca scorre le foglie, quindi richiede tempo lineare nel
+     * numero di elementi.
+     *
+     * @param data
+     *                 il dato da cercare.
+     * @return l'indice del dato; -1 se il dato non è presente.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public int getIndexOfData(T data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a getIndexOfData() è null!");
+
+        byte[] dataHash = this.hasher.dataDigest(data, this.funnel);
+        byte[] leaves = this.levels[0];
+        for (int i = 0; i < this.width; i++)
+            if(Arrays.equals(leaves, i * this.hashLength, (i + 1) * this.hashLength, dataHash, 0, this.hashLength))
+                return i;
+
+        return -1;
+    }
+
+    /**
+     * Restituisce la prova di Merkle per la prima occorrenza di un dato, valida
+     * per il root attuale.
+     *
+     * @param data
+     *                 il dato per cui generare la prova.
+     * @return la prova di Merkle per il dato.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o non è presente.
+     */
+    public MerkleProof getMerkleProof(T data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a getMerkleProof() è null!");
+
+        int index = getIndexOfData(data);
+        if(index == -1)
+            throw new IllegalArgumentException("data passato a getMerkleProof() non è presente!");
+
+        return getMerkleProofAt(index);
+    }
+
+    /**
+     * Restituisce la prova di Merkle per l'elemento di posizione data, valida
+     * per il root attuale e uguale a quella generata da un {@link MerkleTree}
+     * costruito sugli stessi elementi. Ogni fratello è preso dai nodi completi
+     * o, se incompleto, dal cammino dall'ultima foglia al root.
+     *
+     * @param index
+     *                  la posizione dell'elemento.
+     * @return la prova di Merkle per l'elemento.
+     * @throws IllegalArgumentException
+     *                                      se l'indice non è compreso tra 0 e
+     *                                      il numero di elementi escluso.
+     */
+    public MerkleProof getMerkleProofAt(int index) {
+
+        if(index < 0 || index >= this.width)
+            throw new IllegalArgumentException("index passato a getMerkleProofAt() non è una posizione valida!");
+
+        byte[][] spine = computeSpine();
+        int height = spine.length - 1;
+        this.rootHash = spine[height];
+
+        MerkleProof proof = new MerkleProof(this.rootHash, height, this.hasher);
+        int last = this.width - 1;
+
+        for (int level = 0; level < height; level++) {
+            int sibling = index ^ 1;
+
+            byte[] hash;
+            if(sibling > (last >> level))
+                // Fratello mancante
+                hash = new byte[0];
+            else if(sibling < (this.width >> level))
+                // Fratello completo
+                hash = Arrays.copyOfRange(this.levels[level], sibling * this.hashLength, (sibling + 1) * this.hashLength);
+            else
+                // Fratello incompleto, quindi ultimo nodo del livello
+                hash = spine[level];
+
+            proof.addHash(hash, sibling < index);
+            index /= 2;
+        }
+
+        return proof;
+    }
+}
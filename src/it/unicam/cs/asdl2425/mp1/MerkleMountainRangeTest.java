@@ -0,0 +1,144 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link MerkleMountainRange}. Questa classe
+ * verifica che l'accumulatore produca gli stessi root e prove di un
+ * {@link MerkleTree} costruito sugli stessi dati.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testEmpty()}: Verifica che un accumulatore vuoto non abbia root e abbia
+ * larghezza e altezza 0.</li>
+ *
+ * <li>{@link #testRootMatchesMerkleTree()}: Verifica, aggiungendo un elemento alla volta, che il
+ * root coincida a ogni passo con quello di un MerkleTree costruito sugli stessi dati.</li>
+ *
+ * <li>{@link #testConstructorFromHashLinkedList()}: Verifica che l'accumulatore costruito a partire
+ * da una HashLinkedList abbia lo stesso root del MerkleTree costruito sulla stessa lista.</li>
+ *
+ * <li>{@link #testMerkleProofs()}: Verifica che le prove generate per ogni elemento siano valide,
+ * abbiano la lunghezza delle prove del MerkleTree e non validino dati diversi.</li>
+ *
+ * <li>{@link #testFunnel()}: Verifica che gli elementi aggiunti e cercati usino il funnel della lista
+ * o quello passato al costruttore, come il MerkleTree.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per dati null,
+ * posizioni non valide e dati non presenti.</li>
+ * </ul>
+ */
+class MerkleMountainRangeTest {
+
+    @Test
+    void testEmpty() {
+        MerkleMountainRange<String> mmr = new MerkleMountainRange<>();
+
+        assertNull(mmr.getRoot(), "Un accumulatore vuoto non dovrebbe avere root.");
+        assertEquals(0, mmr.getWidth(), "La larghezza dovrebbe essere 0.");
+        assertEquals(0, mmr.getHeight(), "L'altezza dovrebbe essere 0.");
+        assertEquals(-1, mmr.getIndexOfData("Alice paga Bob"), "Nessun dato dovrebbe essere presente.");
+    }
+
+    @Test
+    void testRootMatchesMerkleTree() {
+        MerkleMountainRange<Long> mmr = new MerkleMountainRange<>();
+        HashLinkedList<Long> list = new HashLinkedList<>();
+
+        for (long i = 0; i < 70; i++) {
+            mmr.add(i * 111L);
+            list.addAtTail(i * 111L);
+
+            MerkleTree<Long> tree = new MerkleTree<>(list);
+            assertEquals(tree.getRoot(), mmr.getRoot(),
+                    "Il root dovrebbe coincidere con quello del MerkleTree per " + (i + 1) + " elementi.");
+            assertEquals(tree.getHeight(), mmr.getHeight(), "L'altezza dovrebbe coincidere.");
+            assertEquals(list.getSize(), mmr.getWidth(), "La larghezza dovrebbe coincidere.");
+        }
+    }
+
+    @Test
+    void testConstructorFromHashLinkedList() {
+        HashLinkedList<String> list = new HashLinkedList<>();
+        list.addAtTail("Alice paga Bob");
+        list.addAtTail("Bob paga Charlie");
+        list.addAtTail("Charlie paga Diana");
+        list.addAtTail("Diana paga Alice");
+        list.addAtTail("Alice paga Charlie");
+
+        MerkleMountainRange<String> mmr = new MerkleMountainRange<>(list);
+
+        assertEquals(new MerkleTree<>(list).getRoot(), mmr.getRoot(),
+                "Il root dovrebbe coincidere con quello del MerkleTree.");
+        assertEquals(2, mmr.getIndexOfData("Charlie paga Diana"), "Il dato dovrebbe essere in posizione 2.");
+    }
+
+    @Test
+    void testMerkleProofs() {
+        for (int n : new int[] { 1, 2, 7, 8, 13, 33 }) {
+            MerkleMountainRange<Integer> mmr = new MerkleMountainRange<>();
+            HashLinkedList<Integer> list = new HashLinkedList<>();
+            for (int i = 0; i < n; i++) {
+                mmr.add(i);
+                list.addAtTail(i);
+            }
+            MerkleTree<Integer> tree = new MerkleTree<>(list);
+
+            for (int i = 0; i < n; i++) {
+                MerkleProof proof = mmr.getMerkleProofAt(i);
+                assertEquals(tree.getMerkleProof(i).getLength(), proof.getLength(),
+                        "La prova dovrebbe avere la lunghezza di quella del MerkleTree.");
+                assertTrue(proof.proveValidityOfData(i), "La prova dovrebbe essere valida per il dato.");
+                assertFalse(proof.proveValidityOfData(i + n), "La prova non dovrebbe validare altri dati.");
+            }
+            assertTrue(mmr.getMerkleProof(n - 1).proveValidityOfData(n - 1),
+                    "La prova per dato dovrebbe essere valida.");
+        }
+    }
+
+    @Test
+    void testFunnel() {
+        HashLinkedList<String> list = new HashLinkedList<>(MerkleHasher.SHA_256, Funnel.STRING);
+        list.addAtTail("a");
+        list.addAtTail("b");
+        list.addAtTail("c");
+
+        MerkleMountainRange<String> fromList = new MerkleMountainRange<>(list);
+        MerkleMountainRange<String> empty = new MerkleMountainRange<>(MerkleHasher.SHA_256, Funnel.STRING);
+        for (String data : list)
+            empty.add(data);
+        assertSame(Funnel.STRING, fromList.getFunnel());
+
+        for (String data : new String[] { "d", "e", "f" }) {
+            list.addAtTail(data);
+            fromList.add(data);
+            empty.add(data);
+
+            MerkleTree<String> tree = new MerkleTree<>(list);
+            assertEquals(tree.getRoot(), fromList.getRoot(), "Il root dovrebbe coincidere dopo add().");
+            assertEquals(tree.getRoot(), empty.getRoot(), "Il root dovrebbe coincidere dopo add().");
+        }
+
+        assertEquals(1, fromList.getIndexOfData("b"), "Il dato dovrebbe essere in posizione 1.");
+        assertEquals(4, empty.getIndexOfData("e"), "Il dato dovrebbe essere in posizione 4.");
+        assertTrue(fromList.getMerkleProof("e").proveValidityOfData("e", Funnel.STRING),
+                "La prova dovrebbe validare il dato con il funnel dell'accumulatore.");
+    }
+
+    @Test
+    void testInvalidArguments() {
+        MerkleMountainRange<String> mmr = new MerkleMountainRange<>();
+        mmr.add("Alice paga Bob");
+
+        assertThrows(IllegalArgumentException.class, () -> new MerkleMountainRange<String>((HashLinkedList<String>) null));
+        assertThrows(IllegalArgumentException.class, () -> new MerkleMountainRange<String>((MerkleHasher) null));
+        assertThrows(IllegalArgumentException.class, () -> new MerkleMountainRange<String>(MerkleHasher.MD5, null));
+        assertThrows(IllegalArgumentException.class, () -> mmr.add(null));
+        assertThrows(IllegalArgumentException.class, () -> mmr.getMerkleProofAt(1));
+        assertThrows(IllegalArgumentException.class, () -> mmr.getMerkleProofAt(-1));
+        assertThrows(IllegalArgumentException.class, () -> mmr.getMerkleProof("Bob paga Charlie"));
+        assertThrows(IllegalArgumentException.class, () -> mmr.getIndexOfData(null));
+    }
+}
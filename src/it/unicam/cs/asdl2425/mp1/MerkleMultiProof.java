@@ -0,0 +1,342 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Una prova di Merkle per un insieme di foglie di uno stesso albero di Merkle.
+ * Al posto di una prova per ogni foglia, contiene solamente gli hash dei nodi
+ * necessari a ricalcolare il root che non possono essere ricavati dalle foglie
+ * stesse: i fratelli condivisi da più foglie compaiono una sola volta e i
+ * nodi i cui due figli sono ricalcolabili non compaiono affatto.
+ *
+ * La verifica procede livello per livello dalle foglie verso il root,
+ * calcolando ogni antenato comune una sola volta. Le posizioni dei nodi e la
+ * larghezza dell'albero permettono di sapere, a ogni livello, quale nodo è il
+ * fratello di quale e quali nodi non hanno fratello, quindi per questi ultimi
+ * non serve memorizzare nessun hash.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public class MerkleMultiProof {
+
+    /**
+     * Hash vuoto, usato al posto del fratello mancante di un nodo.
+     */
+    private static final byte[] EMPTY_HASH = new byte[0];
+
+    /**
+     * L'hash della radice dell'albero di Merkle per il quale la prova è stata
+     * costruita, in forma binaria.
+     */
+    private final byte[] rootHash;
+
+    /**
+     * Numero di foglie dell'albero di Merkle.
+     */
+    private final int width;
+
+    /**
+     * Posizioni delle foglie provate, ordinate e distinte.
+     */
+    private final int[] indices;
+
+    /**
+     * Hash dei fratelli necessari alla verifica, contigui e nell'ordine in
+     * cui vengono utilizzati: livello per livello dalle foglie al root e, in
+     * ogni livello, da sinistra verso destra.
+     */
+    private final byte[] siblings;
+
+    /**
+     * Algoritmo degli hash dell'albero di Merkle.
+     */
+    private final MerkleHasher hasher;
+
+    /**
+     * Lunghezza in byte di un hash.
+     */
+    private final int hashLength;
+
+    /**
+     * Costruisce una prova multipla per le foglie di posizione data di un
+     * albero di Merkle.
+     *
+     * @param rootHash
+     *                     l'hash della radice dell'albero in forma binaria.
+     * @param width
+     *                     il numero di foglie dell'albero.
+     * @param indices
+     *                     le posizioni delle foglie provate, ordinate e
+     *                     distinte.
+     * @param siblings
+     *                     gli hash dei fratelli contigui, nell'ordine in cui
+     *                     vengono utilizzati dalla verifica.
+     * @param hasher
+     *                     l'algoritmo degli hash dell'albero.
+     * @throws IllegalArgumentException
+     *                                      se uno dei parametri è null, la
+     *                                      larghezza non è positiva, le
+     *                                      posizioni non sono ordinate,
+     *                                      distinte e comprese nell'albero o
+     *                                      gli hash dei fratelli non hanno una
+     *                                      lunghezza multipla di quella di un
+     *                                      hash.
+     */
+    public MerkleMultiProof(byte[] rootHash, int width, int[] indices, byte[] siblings, MerkleHasher hasher) {
+
+        if(rootHash == null)
+            throw new IllegalArgumentException("rootHash passato al costruttore è null!");
+        if(indices == null)
+            throw new IllegalArgumentException("indices passato al costruttore è null!");
+        if(siblings == null)
+            throw new IllegalArgumentException("siblings passato al costruttore è null!");
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato al costruttore è null!");
+        if(width < 1)
+            throw new IllegalArgumentException("width passato al costruttore non è positivo!");
+        if(indices.length == 0)
+            throw new IllegalArgumentException("indices passato al costruttore è vuoto!");
+        if(siblings.length % hasher.getDigestLength() != 0)
+            throw new IllegalArgumentException("siblings passato al costruttore non contiene hash completi!");
+
+        for (int i = 0; i < indices.length; i++)
+            if(indices[i] < 0 || indices[i] >= width || (i > 0 && indices[i] <= indices[i - 1]))
+                throw new IllegalArgumentException("indices passato al costruttore non è ordinato o contiene posizioni non valide!");
+
+        this.rootHash = rootHash.clone();
+        this.width = width;
+        this.indices = indices.clone();
+        this.siblings = siblings.clone();
+        this.hasher = hasher;
+        this.hashLength = hasher.getDigestLength();
+    }
+
+    /**
+     * Costruisce una prova multipla per le foglie di posizione data di un
+     * albero di Merkle i cui hash sono calcolati con MD5.
+     *
+     * @param rootHash
+     *                     l'hash della radice dell'albero in forma binaria.
+     * @param width
+     *                     il numero di foglie dell'albero.
+     * @param indices
+     *                     le posizioni delle foglie provate, ordinate e
+     *                     distinte.
+     * @param siblings
+     *                     gli hash dei fratelli contigui, nell'ordine in cui
+     *                     vengono utilizzati dalla verifica.
+     * @throws IllegalArgumentException
+     *                                      se i parametri non sono validi.
+     * @see #MerkleMultiProof(byte[], int, int[], byte[], MerkleHasher)
+     */
+    public MerkleMultiProof(byte[] rootHash, int width, int[] indices, byte[] siblings) {
+        this(rootHash, width, indices, siblings, MerkleHasher.MD5);
+    }
+
+    /**
+     * Restituisce l'algoritmo degli hash dell'albero per il quale la prova è
+     * stata costruita.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    public MerkleHasher getHasher() {
+        return this.hasher;
+    }
+
+    /**
+     * Restituisce l'hash esadecimale della radice dell'albero di Merkle per il
+     * quale la prova è stata costruita.
+     *
+     * @return l'hash della radice.
+     */
+    public String getRootHash() {
+        return HashUtil.toHex(this.rootHash);
+    }
+
+    /**
+     * Restituisce il numero di foglie dell'albero di Merkle per il quale la
+     * prova è stata costruita.
+     *
+     * @return la larghezza dell'albero.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Restituisce le posizioni delle foglie provate, in ordine crescente. I
+     * dati da validare vanno forniti in questo stesso ordine.
+     *
+     * @return una copia delle posizioni delle foglie provate.
+     */
+    public int[] getIndices() {
+        return this.indices.clone();
+    }
+
+    /**
+     * Restituisce il numero di hash di fratelli contenuti nella prova.
+     *
+     * @return il numero di hash della prova.
+     */
+    public int getSiblingCount() {
+        return this.siblings.length / this.hashLength;
+    }
+
+    /**
+     * Valida un insieme di dati per questa prova. L'i-esimo dato viene
+     * considerato come il contenuto della foglia di posizione
+     * {@code getIndices()[i]}.
+     *
+     * @param data
+     *                 i dati da validare, nell'ordine delle posizioni.
+     * @return true se i dati sono validi secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null, contiene un dato
+     *                                      null o non ha un dato per ogni
+     *                                      posizione.
+     */
+    public boolean proveValidityOfData(List<?> data) {
+        return proveValidityOfData(data, Funnel.HASH_CODE);
+    }
+
+    /**
+     * Valida un insieme di dati per questa prova, calcolando l'hash di ogni
+     * dato a partire dal contenuto scritto dal funnel. Va usato per le prove
+     * di alberi costruiti con un funnel diverso da {@link Funnel#HASH_CODE}.
+     *
+     * @param <T>
+     *                   il tipo dei dati.
+     * @param data
+     *                   i dati da validare, nell'ordine delle posizioni.
+     * @param funnel
+     *                   il funnel con cui è stato costruito l'albero.
+     * @return true se i dati sono validi secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se la lista o il funnel sono null,
+     *                                      se la lista contiene un dato null o
+     *                                      non ha un dato per ogni posizione.
+     */
+    public <T> boolean proveValidityOfData(List<? extends T> data, Funnel<? super T> funnel) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a proveValidityOfData() è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato a proveValidityOfData() è null!");
+        if(data.size() != this.indices.length)
+            throw new IllegalArgumentException("data passato a proveValidityOfData() non ha un dato per ogni posizione!");
+
+        // Hash delle foglie contigui, ricalcolati poi sul posto livello per livello
+        byte[] hashes = new byte[this.indices.length * this.hashLength];
+        int i = 0;
+        for (T element : data) {
+            if(element == null)
+                throw new IllegalArgumentException("data passato a proveValidityOfData() contiene un dato null!");
+            this.hasher.dataDigestInto(element, funnel, hashes, i * this.hashLength);
+            i++;
+        }
+
+        return computeRoot(hashes);
+    }
+
+    /**
+     * Valida un insieme di hash di foglie per questa prova. L'i-esimo hash
+     * viene considerato come l'hash della foglia di posizione
+     * {@code getIndices()[i]}.
+     *
+     * @param leafHashes
+     *                       gli hash in forma binaria delle foglie,
+     *                       nell'ordine delle posizioni.
+     * @return true se gli hash sono validi secondo la prova; false
+     *         altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se l'array è null, contiene un hash
+     *                                      null o non ha un hash per ogni
+     *                                      posizione.
+     */
+    public boolean proveValidityOfDigests(byte[][] leafHashes) {
+
+        if(leafHashes == null)
+            throw new IllegalArgumentException("leafHashes passato a proveValidityOfDigests() è null!");
+        if(leafHashes.length != this.indices.length)
+            throw new IllegalArgumentException("leafHashes passato a proveValidityOfDigests() non ha un hash per ogni posizione!");
+
+        byte[] hashes = new byte[this.indices.length * this.hashLength];
+        for (int i = 0; i < leafHashes.length; i++) {
+            if(leafHashes[i] == null)
+                throw new IllegalArgumentException("leafHashes passato a proveValidityOfDigests() contiene un hash null!");
+            if(leafHashes[i].length != this.hashLength)
+                // Un hash di lunghezza diversa non può comparire nell'albero
+                return false;
+            System.arraycopy(leafHashes[i], 0, hashes, i * this.hashLength, this.hashLength);
+        }
+
+        return computeRoot(hashes);
+    }
+
+    /**
+     * Ricalcola il root a partire dagli hash delle foglie provate e lo
+     * confronta con quello della prova. A ogni livello i nodi noti sono
+     * ordinati per posizione: due nodi noti fratelli vengono combinati tra
+     * loro, gli altri con il successivo hash della prova o, se non hanno
+     * fratello, da soli. Gli hash dei padri vengono scritti sul posto
+     * nell'array dei nodi noti, quindi ogni antenato viene calcolato una sola
+     * volta e senza allocazioni.
+     *
+     * @param hashes
+     *                   gli hash delle foglie provate, contigui; viene
+     *                   modificato.
+     * @return true se il root calcolato coincide con quello della prova e
+     *         tutti gli hash della prova sono stati utilizzati, false
+     *         altrimenti.
+     */
+    private boolean computeRoot(byte[] hashes) {
+        int[] positions = this.indices.clone();
+        int count = positions.length;
+        int height = MerkleTree.heightOf(this.width);
+        int used = 0; // Hash della prova utilizzati
+
+        for (int level = 0; level < height; level++) {
+            int levelSize = ((this.width - 1) >> level) + 1;
+            int parents = 0;
+
+            for (int i = 0; i < count; i++) {
+                int position = positions[i];
+                int out = parents * this.hashLength;
+
+                if(position % 2 == 1) {
+                    // Fratello sinistro non noto, preso dalla prova
+                    if(used + this.hashLength > this.siblings.length)
+                        return false;
+                    this.hasher.combineInto(this.siblings, used, this.hashLength,
+                            hashes, i * this.hashLength, this.hashLength, hashes, out);
+                    used += this.hashLength;
+                }
+                else if(position + 1 >= levelSize)
+                    // Nodo senza fratello
+                    this.hasher.combineInto(hashes, i * this.hashLength, this.hashLength,
+                            EMPTY_HASH, 0, 0, hashes, out);
+                else if(i + 1 < count && positions[i + 1] == position + 1) {
+                    // Fratello destro noto
+                    this.hasher.combineInto(hashes, i * this.hashLength, this.hashLength,
+                            hashes, (i + 1) * this.hashLength, this.hashLength, hashes, out);
+                    i++;
+                }
+                else {
+                    // Fratello destro non noto, preso dalla prova
+                    if(used + this.hashLength > this.siblings.length)
+                        return false;
+                    this.hasher.combineInto(hashes, i * this.hashLength, this.hashLength,
+                            this.siblings, used, this.hashLength, hashes, out);
+                    used += this.hashLength;
+                }
+
+                positions[parents++] = position / 2;
+            }
+            count = parents;
+        }
+
+        return used == this.siblings.length
+                && Arrays.equals(hashes, 0, this.hashLength, this.rootHash, 0, this.rootHash.length);
+    }
+}
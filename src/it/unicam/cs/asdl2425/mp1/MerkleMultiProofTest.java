@@ -0,0 +1,162 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link MerkleMultiProof} e per la sua
+ * generazione da parte di {@link MerkleTree}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testRandomSubsetsAreValid()}: Verifica che le prove multiple generate per insiemi
+ * casuali di foglie di alberi di diverse larghezze siano valide per i dati e per i loro hash.</li>
+ *
+ * <li>{@link #testSharedSiblingsAreDeduplicated()}: Verifica che per foglie adiacenti la prova
+ * contenga meno hash delle singole prove e che per tutte le foglie non ne contenga nessuno.</li>
+ *
+ * <li>{@link #testInvalidData()}: Verifica che la prova venga respinta per dati modificati, in
+ * ordine diverso o per una prova a cui è stato tolto un hash.</li>
+ *
+ * <li>{@link #testFunnel()}: Verifica che la prova di un albero costruito con un funnel validi i dati
+ * con lo stesso funnel e non con gli hash di hashCode().</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per posizioni o dati
+ * non validi, sia nella generazione che nella verifica.</li>
+ * </ul>
+ */
+class MerkleMultiProofTest {
+
+    /**
+     * Crea un albero di Merkle con i dati 0, 1, ..., n - 1.
+     */
+    private static MerkleTree<Integer> buildTree(int n) {
+        HashLinkedList<Integer> list = new HashLinkedList<>();
+        for (int i = 0; i < n; i++)
+            list.addAtTail(i);
+        return new MerkleTree<>(list);
+    }
+
+    /**
+     * Restituisce i dati delle foglie nelle posizioni date, dato che la foglia
+     * i contiene il dato i.
+     */
+    private static List<Integer> dataAt(int[] indices) {
+        List<Integer> data = new ArrayList<>();
+        for (int index : indices)
+            data.add(index);
+        return data;
+    }
+
+    @Test
+    void testRandomSubsetsAreValid() {
+        Random random = new Random(7);
+        for (int n : new int[] { 1, 2, 5, 13, 64, 100 }) {
+            MerkleTree<Integer> tree = buildTree(n);
+
+            for (int round = 0; round < 20; round++) {
+                int[] indices = new int[1 + random.nextInt(n)];
+                for (int i = 0; i < indices.length; i++)
+                    indices[i] = random.nextInt(n);
+
+                MerkleMultiProof proof = tree.getMerkleMultiProof(indices);
+                assertEquals(tree.getRoot().getHash(), proof.getRootHash(), "Il root dovrebbe coincidere.");
+                assertEquals(n, proof.getWidth(), "La larghezza dovrebbe coincidere.");
+                assertTrue(proof.proveValidityOfData(dataAt(proof.getIndices())),
+                        "La prova dovrebbe essere valida per i dati delle foglie.");
+
+                byte[][] digests = new byte[proof.getIndices().length][];
+                for (int i = 0; i < digests.length; i++)
+                    digests[i] = HashUtil.dataToDigest(proof.getIndices()[i]);
+                assertTrue(proof.proveValidityOfDigests(digests),
+                        "La prova dovrebbe essere valida per gli hash delle foglie.");
+            }
+        }
+    }
+
+    @Test
+    void testSharedSiblingsAreDeduplicated() {
+        MerkleTree<Integer> tree = buildTree(1000);
+
+        int[] range = new int[200];
+        int singleProofHashes = 0;
+        for (int i = 0; i < range.length; i++) {
+            range[i] = 300 + i;
+            singleProofHashes += tree.getMerkleProof(range[i]).getLength();
+        }
+
+        MerkleMultiProof proof = tree.getMerkleMultiProof(range);
+        assertTrue(proof.getSiblingCount() <= 2 * tree.getHeight(),
+                "Per foglie adiacenti servono al più due hash per livello.");
+        assertTrue(proof.getSiblingCount() * 50 < singleProofHashes,
+                "La prova multipla dovrebbe essere molto più piccola delle singole prove.");
+        assertTrue(proof.proveValidityOfData(dataAt(range)), "La prova dovrebbe essere valida.");
+
+        int[] all = new int[1000];
+        Arrays.setAll(all, i -> i);
+        assertEquals(0, tree.getMerkleMultiProof(all).getSiblingCount(),
+                "Per tutte le foglie la prova non dovrebbe contenere hash.");
+
+        assertEquals(Arrays.asList(3, 7), Arrays.asList(
+                tree.getMerkleMultiProof(Arrays.asList(7, 3, 7)).getIndices()[0],
+                tree.getMerkleMultiProof(Arrays.asList(7, 3, 7)).getIndices()[1]),
+                "Le posizioni dovrebbero essere ordinate e senza ripetizioni.");
+    }
+
+    @Test
+    void testInvalidData() {
+        MerkleTree<Integer> tree = buildTree(13);
+        int[] indices = { 2, 3, 8, 12 };
+        MerkleMultiProof proof = tree.getMerkleMultiProof(indices);
+
+        assertFalse(proof.proveValidityOfData(Arrays.asList(2, 3, 8, 11)),
+                "La prova non dovrebbe essere valida per un dato modificato.");
+        assertFalse(proof.proveValidityOfData(Arrays.asList(3, 2, 8, 12)),
+                "La prova non dovrebbe essere valida per dati in ordine diverso.");
+
+        byte[] siblings = new byte[(proof.getSiblingCount() - 1) * HashUtil.MD5_LENGTH];
+        MerkleMultiProof truncated = new MerkleMultiProof(tree.getRoot().getDigest(), 13, indices, siblings);
+        assertFalse(truncated.proveValidityOfData(dataAt(indices)),
+                "Una prova a cui manca un hash non dovrebbe essere valida.");
+    }
+
+    @Test
+    void testFunnel() {
+        HashLinkedList<String> list = new HashLinkedList<>(MerkleHasher.SHA_256, Funnel.STRING);
+        for (int i = 0; i < 13; i++)
+            list.addAtTail("Transazione " + i);
+        MerkleTree<String> stringTree = new MerkleTree<>(list);
+        int[] indices = { 1, 4, 5, 12 };
+        MerkleMultiProof proof = stringTree.getMerkleMultiProof(indices);
+        List<String> data = List.of("Transazione 1", "Transazione 4", "Transazione 5", "Transazione 12");
+
+        assertTrue(proof.proveValidityOfData(data, Funnel.STRING), "La prova dovrebbe essere valida con il funnel.");
+        assertFalse(proof.proveValidityOfData(data), "La prova non dovrebbe essere valida con hashCode().");
+        assertFalse(proof.proveValidityOfData(List.of("Transazione 1", "Transazione 4", "Transazione 6",
+                "Transazione 12"), Funnel.STRING), "La prova non dovrebbe validare dati modificati.");
+        assertThrows(IllegalArgumentException.class, () -> proof.proveValidityOfData(data, null));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        MerkleTree<Integer> tree = buildTree(13);
+
+        assertThrows(IllegalArgumentException.class, () -> tree.getMerkleMultiProof((int[]) null));
+        assertThrows(IllegalArgumentException.class, () -> tree.getMerkleMultiProof(new int[0]));
+        assertThrows(IllegalArgumentException.class, () -> tree.getMerkleMultiProof(new int[] { 0, 13 }));
+        assertThrows(IllegalArgumentException.class, () -> tree.getMerkleMultiProof(Arrays.asList(1, 99)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MerkleMultiProof(new byte[16], 13, new int[] { 3, 2 }, new byte[0]));
+
+        MerkleMultiProof proof = tree.getMerkleMultiProof(new int[] { 1, 2 });
+        assertThrows(IllegalArgumentException.class, () -> proof.proveValidityOfData(null));
+        assertThrows(IllegalArgumentException.class, () -> proof.proveValidityOfData(Arrays.asList(1)));
+        assertThrows(IllegalArgumentException.class, () -> proof.proveValidityOfData(Arrays.asList(1, null)));
+    }
+}
@@ -1,12 +1,18 @@
 package it.unicam.cs.asdl2425.mp1;
 
+import java.util.Arrays;
+
 /**
  * Rappresenta un nodo di un albero di Merkle.
  * 
  * @author Luca Tesei, Marco Caputo (template), Francesco Palozzi francesco.palozzi@studenti.unicam.it (implementazione)
  */
 public class MerkleNode {
-    private final String hash; // Hash associato al nodo.
+    private final byte[] digest; // Hash associato al nodo in forma binaria,
+                                 // null se l'hash fornito non è esadecimale.
+
+    private String hash; // Rappresentazione testuale dell'hash, calcolata
+                         // solamente quando richiesta.
 
     private final MerkleNode left; // Figlio sinistro del nodo.
 
@@ -35,20 +41,63 @@ public class MerkleNode {
      *                  il figlio destro.
      */
     public MerkleNode(String hash, MerkleNode left, MerkleNode right) {
-        this.hash = hash;
+        this.digest = HashUtil.fromHex(hash);
+        // Se l'hash non è esadecimale viene mantenuto così com'è
+        this.hash = (this.digest == null) ? hash : null;
         this.left = left;
         this.right = right;
     }
 
     /**
-     * Restituisce l'hash associato al nodo.
+     * Costruisce un nodo Merkle foglia a partire da un hash in forma binaria.
+     *
+     * @param digest
+     *                   l'hash associato al nodo.
+     */
+    public MerkleNode(byte[] digest) {
+        this(digest, null, null);
+    }
+
+    /**
+     * Costruisce un nodo Merkle con un hash in forma binaria e due figli.
+     * L'array fornito non viene copiato e non deve essere modificato.
+     *
+     * @param digest
+     *                   l'hash associato al nodo.
+     * @param left
+     *                   il figlio sinistro.
+     * @param right
+     *                   il figlio destro.
+     */
+    public MerkleNode(byte[] digest, MerkleNode left, MerkleNode right) {
+        this.digest = digest;
+        this.hash = null;
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Restituisce l'hash associato al nodo. La rappresentazione esadecimale
+     * viene calcolata alla prima richiesta.
      *
      * @return l'hash associato al nodo.
      */
     public String getHash() {
+        if (hash == null && digest != null)
+            hash = HashUtil.toHex(digest);
         return hash;
     }
 
+    /**
+     * Restituisce l'hash associato al nodo in forma binaria, senza copiarlo.
+     *
+     * @return l'hash in forma binaria, null se il nodo è stato costruito con
+     *         un hash non esadecimale.
+     */
+    byte[] getDigest() {
+        return digest;
+    }
+
     /**
      * Restituisce il figlio sinistro del nodo.
      *
@@ -80,7 +129,7 @@ public class MerkleNode {
 
     @Override
     public String toString() {
-        return hash;
+        return getHash();
     }
 
     @Override
@@ -89,15 +138,26 @@ public class MerkleNode {
         if(this == obj)
             return true;
 
-        // Se l'oggetto passato è un MerkleNode, allora controlla se hanno lo stesso hash
-        // Altrimenti ritorna false
-        return (obj instanceof MerkleNode)? this.hash.equals( ((MerkleNode) obj).getHash() ) : false;
+        // Se l'oggetto passato non è un MerkleNode allora ritorna false
+        if(!(obj instanceof MerkleNode))
+            return false;
+
+        MerkleNode other = (MerkleNode) obj;
+
+        // Se entrambi hanno l'hash in forma binaria si confrontano i byte,
+        // altrimenti si confrontano le rappresentazioni testuali
+        if(this.digest != null && other.digest != null)
+            return Arrays.equals(this.digest, other.digest);
+
+        return this.getHash().equals(other.getHash());
     }
 
     @Override
     public int hashCode() {
-        
-        long temp = this.hash.hashCode();
+
+        // Hash di forma diversa non sono mai uguali, quindi possono usare
+        // funzioni di hashCode diverse
+        long temp = (this.digest != null) ? Arrays.hashCode(this.digest) : this.hash.hashCode();
         
         return 31 + (int) (temp ^ (temp >>> 32));
     }
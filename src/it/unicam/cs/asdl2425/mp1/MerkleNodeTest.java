@@ -25,6 +25,9 @@ import static org.junit.jupiter.api.Assertions.*;
  * 
  * <li>{@link #testHashCode()}: Controlla che due nodi con lo stesso hash abbiano lo stesso valore di {@code hashCode}.</li>
  * 
+ * <li>{@link #testDigestNodeEqualsHexNode()}: Verifica che un nodo costruito con un hash in forma
+ * binaria sia uguale a quello costruito con la sua rappresentazione esadecimale.</li>
+ * 
  * <li>{@link #testNotEqualsWithNull()}: Verifica che un nodo non sia uguale a {@code null}.</li>
  * 
  * <li>{@link #testNotEqualsWithDifferentType()}: Verifica che un nodo non sia uguale a un oggetto di tipo diverso.</li>
@@ -97,6 +100,20 @@ class MerkleNodeTest {
                 "Due nodi con lo stesso hash dovrebbero avere lo stesso hashCode.");
     }
 
+    @Test
+    void testDigestNodeEqualsHexNode() {
+        byte[] digest = HashUtil.dataToDigest("Alice paga Bob");
+        MerkleNode binaryNode = new MerkleNode(digest);
+        MerkleNode hexNode = new MerkleNode(HashUtil.dataToHash("Alice paga Bob"));
+
+        assertEquals(HashUtil.dataToHash("Alice paga Bob"), binaryNode.getHash(),
+                "La rappresentazione esadecimale dell'hash non è corretta.");
+        assertEquals(hexNode, binaryNode,
+                "Due nodi con lo stesso hash dovrebbero essere uguali.");
+        assertEquals(hexNode.hashCode(), binaryNode.hashCode(),
+                "Due nodi con lo stesso hash dovrebbero avere lo stesso hashCode.");
+    }
+
     @Test
     void testNotEqualsWithNull() {
         MerkleNode node = new MerkleNode("hash123");
@@ -1,5 +1,7 @@
 package it.unicam.cs.asdl2425.mp1;
 
+import java.util.Arrays;
+
 /**
  * Una classe che rappresenta una prova di Merkle per un determinato albero di
  * Merkle ed un suo elemento o branch. Oggetti di questa classe rappresentano un
@@ -14,15 +16,17 @@ public class MerkleProof {
 
     /**
      * La prova di Merkle, rappresentata come una lista concatenata di oggetti
-     * MerkleProofHash.
+     * MerkleProofHash. La lista non calcola gli hash dei suoi elementi, dato
+     * che la verifica usa solamente gli hash contenuti negli step.
      */
     private final HashLinkedList<MerkleProofHash> proof;
 
     /**
      * L'hash della radice dell'albero di Merkle per il quale la prova è stata
-     * costruita.
+     * costruita, in forma binaria. È null se l'hash fornito non è una stringa
+     * esadecimale, nel qual caso nessuna verifica può avere successo.
      */
-    private final String rootHash;
+    private final byte[] rootHash;
 
     /**
      * Lunghezza massima della prova, dato dal numero di hash che la compongono
@@ -31,6 +35,12 @@ public class MerkleProof {
      */
     private final int length;
 
+    /**
+     * Algoritmo con cui sono stati calcolati gli hash dell'albero di Merkle
+     * per il quale la prova è stata costruita.
+     */
+    private final MerkleHasher hasher;
+
     /**
      * Costruisce una nuova prova di Merkle per un dato albero di Merkle,
      * specificando la radice dell'albero e la lunghezza massima della prova. La
@@ -43,11 +53,65 @@ public class MerkleProof {
      *                     la lunghezza massima della prova.
      */
     public MerkleProof(String rootHash, int length) {
+        this(rootHash, length, MerkleHasher.MD5);
+    }
+
+    /**
+     * Costruisce una nuova prova di Merkle per un albero di Merkle i cui hash
+     * sono stati calcolati con l'algoritmo fornito.
+     *
+     * @param rootHash
+     *                     l'hash della radice dell'albero di Merkle.
+     * @param length
+     *                     la lunghezza massima della prova.
+     * @param hasher
+     *                     l'algoritmo degli hash dell'albero.
+     */
+    public MerkleProof(String rootHash, int length, MerkleHasher hasher) {
         if (rootHash == null)
             throw new IllegalArgumentException("The root hash is null");
-        this.proof = new HashLinkedList<>();
+        if (hasher == null)
+            throw new IllegalArgumentException("The hasher is null");
+        this.proof = new HashLinkedList<>(hasher, Funnel.HASH_CODE, true);
+        this.rootHash = HashUtil.fromHex(rootHash);
+        this.length = length;
+        this.hasher = hasher;
+    }
+
+    /**
+     * Costruisce una nuova prova di Merkle a partire dall'hash in forma
+     * binaria della radice dell'albero di Merkle.
+     *
+     * @param rootHash
+     *                     l'hash della radice dell'albero di Merkle.
+     * @param length
+     *                     la lunghezza massima della prova.
+     */
+    public MerkleProof(byte[] rootHash, int length) {
+        this(rootHash, length, MerkleHasher.MD5);
+    }
+
+    /**
+     * Costruisce una nuova prova di Merkle a partire dall'hash in forma
+     * binaria della radice di un albero di Merkle i cui hash sono stati
+     * calcolati con l'algoritmo fornito.
+     *
+     * @param rootHash
+     *                     l'hash della radice dell'albero di Merkle.
+     * @param length
+     *                     la lunghezza massima della prova.
+     * @param hasher
+     *                     l'algoritmo degli hash dell'albero.
+     */
+    public MerkleProof(byte[] rootHash, int length, MerkleHasher hasher) {
+        if (rootHash == null)
+            throw new IllegalArgumentException("The root hash is null");
+        if (hasher == null)
+            throw new IllegalArgumentException("The hasher is null");
+        this.proof = new HashLinkedList<>(hasher, Funnel.HASH_CODE, true);
         this.rootHash = rootHash;
         this.length = length;
+        this.hasher = hasher;
     }
 
     /**
@@ -60,6 +124,46 @@ public class MerkleProof {
         return length;
     }
 
+    /**
+     * Restituisce l'algoritmo degli hash dell'albero per il quale la prova è
+     * stata costruita.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    public MerkleHasher getHasher() {
+        return hasher;
+    }
+
+    /**
+     * Restituisce gli step della prova in ordine, senza copiarli.
+     *
+     * @return la lista degli step della prova.
+     */
+    HashLinkedList<MerkleProofHash> getProofHashes() {
+        return proof;
+    }
+
+    /**
+     * Restituisce l'hash della radice in forma binaria, senza copiarlo.
+     *
+     * @return l'hash della radice, null se l'hash fornito non è esadecimale.
+     */
+    byte[] getRootDigest() {
+        return rootHash;
+    }
+
+    /**
+     * Controlla se la prova è stata costruita per il root con l'hash dato.
+     *
+     * @param rootHash
+     *                     l'hash del root in forma binaria.
+     * @return true se l'hash coincide con quello del root della prova, false
+     *         altrimenti.
+     */
+    boolean hasRootHash(byte[] rootHash) {
+        return Arrays.equals(this.rootHash, rootHash);
+    }
+
     /**
      * Aggiunge un hash alla prova di Merkle, specificando se esso dovrebbe
      * essere concatenato a sinistra o a destra durante la verifica della prova.
@@ -75,13 +179,40 @@ public class MerkleProof {
      * @return true se l'hash è stato aggiunto con successo, false altrimenti.
      */
     public boolean addHash(String hash, boolean isLeft) {
+        return addProofHash(new MerkleProofHash(hash, isLeft));
+    }
+
+    /**
+     * Aggiunge un hash in forma binaria alla prova di Merkle, specificando se
+     * esso dovrebbe essere concatenato a sinistra o a destra durante la
+     * verifica della prova. Un hash vuoto rappresenta un fratello mancante.
+     *
+     * @param hash
+     *                   l'hash da aggiungere alla prova.
+     * @param isLeft
+     *                   true se l'hash dovrebbe essere concatenato a sinistra,
+     *                   false altrimenti.
+     * @return true se l'hash è stato aggiunto con successo, false altrimenti.
+     */
+    public boolean addHash(byte[] hash, boolean isLeft) {
+        return addProofHash(new MerkleProofHash(hash, isLeft));
+    }
+
+    /**
+     * Aggiunge uno step alla prova di Merkle se non è ancora completa.
+     *
+     * @param proofHash
+     *                      lo step da aggiungere.
+     * @return true se lo step è stato aggiunto con successo, false altrimenti.
+     */
+    private boolean addProofHash(MerkleProofHash proofHash) {
 
         // La lista ha raggiunto la sua dimensione massima
         if(this.proof.getSize() == length)
             return false;
             
         // Aggiungi nodo alla lista
-        this.proof.addAtTail(new MerkleProofHash(hash, isLeft));
+        this.proof.addAtTail(proofHash);
         return true;
     }
 
@@ -91,9 +222,16 @@ public class MerkleProof {
      */
     public static class MerkleProofHash {
         /**
-         * L'hash dell'oggetto.
+         * L'hash dell'oggetto in forma binaria, null se l'hash fornito non è
+         * una stringa esadecimale.
+         */
+        private final byte[] digest;
+
+        /**
+         * Rappresentazione testuale dell'hash, calcolata solamente quando
+         * richiesta.
          */
-        private final String hash;
+        private String hash;
 
         /**
          * Indica se l'hash dell'oggetto dovrebbe essere concatenato a sinistra
@@ -105,7 +243,18 @@ public class MerkleProof {
             if (hash == null)
                 throw new IllegalArgumentException("The hash cannot be null");
 
-            this.hash = hash;
+            this.digest = HashUtil.fromHex(hash);
+            // Se l'hash non è esadecimale viene mantenuto così com'è
+            this.hash = (this.digest == null) ? hash : null;
+            this.isLeft = isLeft;
+        }
+
+        public MerkleProofHash(byte[] digest, boolean isLeft) {
+            if (digest == null)
+                throw new IllegalArgumentException("The hash cannot be null");
+
+            this.digest = digest;
+            this.hash = null;
             this.isLeft = isLeft;
         }
 
@@ -115,9 +264,20 @@ public class MerkleProof {
          * @return l'hash dell'oggetto MerkleProofHash.
          */
         public String getHash() {
+            if (hash == null)
+                hash = HashUtil.toHex(digest);
             return hash;
         }
 
+        /**
+         * Restituisce l'hash dell'oggetto in forma binaria, senza copiarlo.
+         *
+         * @return l'hash in forma binaria, null se l'hash non è esadecimale.
+         */
+        byte[] getDigest() {
+            return digest;
+        }
+
         /**
          * Restituisce true se, durante la verifica della prova, l'hash
          * dell'oggetto dovrebbe essere concatenato a sinistra, false
@@ -142,20 +302,26 @@ public class MerkleProof {
             
             MerkleProofHash mph = (MerkleProofHash) obj;
 
-            // Controlla se hanno lo stesso hash e lo stesso flag isLeft
-            return mph.getHash().equals(this.hash) && mph.isLeft() == this.isLeft;
+            if(mph.isLeft() != this.isLeft)
+                return false;
+
+            // Controlla se hanno lo stesso hash
+            if(mph.digest != null && this.digest != null)
+                return Arrays.equals(mph.digest, this.digest);
 
+            return mph.getHash().equals(this.getHash());
         }
 
         @Override
         public String toString() {
-            return hash + (isLeft ? "L" : "R");
+            return getHash() + (isLeft ? "L" : "R");
         }
 
         @Override
         public int hashCode() {
             
-            long temp = this.toString().hashCode();
+            long temp = (this.digest != null) ? Arrays.hashCode(this.digest) : this.hash.hashCode();
+            temp = 31 * temp + (isLeft ? 1 : 0);
 
             return  31 + (int) (temp ^ (temp >>> 32));
         }
@@ -179,8 +345,41 @@ public class MerkleProof {
         if(data == null)
             throw new IllegalArgumentException("data passato in proveValidityOfData() è null!");
         
+        // Hash del dato calcolato nell'array di lavoro del thread
+        byte[] dataHash = HashUtil.scratchDigest(hasher.getDigestLength());
+        hasher.dataDigestInto(data, dataHash, 0);
+
         // Controlla se l'hash calcolato è uguale al rootHash
-        return computeHash(HashUtil.dataToHash(data)).equals(this.rootHash);
+        return computeHash(dataHash);
+    }
+
+    /**
+     * Valida un dato elemento per questa prova di Merkle, calcolando l'hash
+     * del dato a partire dal contenuto scritto dal funnel. Va usato per le
+     * prove di alberi costruiti con un funnel diverso da
+     * {@link Funnel#HASH_CODE}.
+     *
+     * @param <T>
+     *                   il tipo del dato.
+     * @param data
+     *                   l'elemento da validare.
+     * @param funnel
+     *                   il funnel con cui è stato costruito l'albero.
+     * @return true se il dato è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il dato o il funnel sono null.
+     */
+    public <T> boolean proveValidityOfData(T data, Funnel<? super T> funnel) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato in proveValidityOfData() è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato in proveValidityOfData() è null!");
+
+        byte[] dataHash = HashUtil.scratchDigest(hasher.getDigestLength());
+        hasher.dataDigestInto(data, funnel, dataHash, 0);
+
+        return computeHash(dataHash);
     }
 
     /**
@@ -201,37 +400,52 @@ public class MerkleProof {
         if(branch == null)
             throw new IllegalArgumentException("branch passato in proveValidityOfBranch() è null!");
 
+        // Un branch con hash non esadecimale non può essere valido
+        if(branch.getDigest() == null)
+            return false;
+
         // Controlla se l'hash calcolato è uguale al rootHash
-        return computeHash(branch.getHash()).equals(this.rootHash);
+        return computeHash(branch.getDigest());
     }
 
     /**
-     * Calcola l'hash combinato dato un valore hash iniziale.
+     * Calcola l'hash combinato dato un valore hash iniziale e lo confronta con
+     * l'hash della radice.
      * Il calcolo viene eseguito combinando l'hash passato con l'hash del primo oggetto MerkleProofHash nel proof
      * in un nuovo hash, il risultato con il successivo e così via fino
-     * all'ultimo oggetto.
+     * all'ultimo oggetto. Gli hash intermedi sono calcolati nell'array di
+     * lavoro del thread, quindi senza allocazioni per step.
      * 
      * @param hash
-     *              hash del merkleNode per cui fare la prova
+     *              hash in forma binaria del merkleNode per cui fare la prova
      * 
-     * @return l'hash stringa calcolato attraverso la combinazione degli hash
+     * @return true se l'hash calcolato attraverso la combinazione degli hash
+     *         coincide con quello della radice, false altrimenti
      */
-    private String computeHash(String hash){
-        // Stringa hash calcolata
-        String calculatedHash = hash;
+    private boolean computeHash(byte[] hash){
+        // Hash calcolato, inizialmente quello passato
+        byte[] calculatedHash = hash;
+        // Array in cui vengono calcolati gli hash intermedi
+        byte[] scratch = HashUtil.scratchDigest(hasher.getDigestLength());
         
         // Iterazione nodi nella lista proof
         for (MerkleProofHash merkleProofHash : this.proof) {
             // Calcolo hash combinando l'ultimo hash calcolato con il successivo hash del seguente nodo MerkleProofHash
 
+            if(merkleProofHash.getDigest() == null)
+                // Un hash non esadecimale non può comparire in una prova valida
+                return false;
+
             if(merkleProofHash.isLeft())
                 // Calcola nuovo hash combinando hash calcolato a destra del prossimo hash nella lista proof
-                calculatedHash = HashUtil.computeMD5( (merkleProofHash.getHash() + calculatedHash).getBytes() );
+                hasher.combineInto(merkleProofHash.getDigest(), calculatedHash, scratch, 0);
             else 
                 // Calcola nuovo hash combinando hash calcolato a sinistra del prossimo hash nella lista proof
-                calculatedHash = HashUtil.computeMD5( (calculatedHash + merkleProofHash.getHash()).getBytes() );
+                hasher.combineInto(calculatedHash, merkleProofHash.getDigest(), scratch, 0);
+
+            calculatedHash = scratch;
         }
 
-        return calculatedHash;
+        return Arrays.equals(calculatedHash, this.rootHash);
     }
 }
@@ -0,0 +1,270 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Classe di utilità per verificare in parallelo grandi quantità di prove di
+ * Merkle rispetto a uno stesso root.
+ *
+ * Le coppie (prova, dato) vengono divise in intervalli verificati in
+ * parallelo su un ForkJoinPool, passato dal chiamante oppure condiviso tra
+ * tutte le chiamate con lo stesso numero di thread. Ogni verifica usa gli array di lavoro del
+ * thread che la esegue, quindi non alloca oggetti per step della prova. Gli
+ * intervalli sono allineati a multipli di 64, in modo che ogni task scriva i
+ * risultati in parole distinte dell'array da cui viene costruito il BitSet.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public class MerkleProofBatchVerifier {
+
+    /**
+     * Numero di bit in una parola del BitSet.
+     */
+    private static final int WORD_SIZE = Long.SIZE;
+
+    /**
+     * Numero massimo di prove verificate sequenzialmente da un task, multiplo
+     * di WORD_SIZE.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 1024;
+
+    /**
+     * Verifica le prove di Merkle fornite, ciascuna con il dato nella stessa
+     * posizione, rispetto al root dato. Una coppia è valida se la prova è
+     * stata costruita per il root dato e il dato è valido secondo la prova;
+     * una coppia in cui la prova o il dato sono null è considerata non valida.
+     *
+     * @param rootHash
+     *                        l'hash in forma binaria del root atteso.
+     * @param proofs
+     *                        le prove da verificare.
+     * @param data
+     *                        i dati da verificare, uno per prova.
+     * @param parallelism
+     *                        il numero di thread da usare per la verifica.
+     * @return un BitSet in cui il bit i vale 1 se e solo se la coppia di
+     *         posizione i è valida.
+     * @throws IllegalArgumentException
+     *                                      se rootHash, proofs o data sono
+     *                                      null, se le liste hanno dimensioni
+     *                                      diverse o se parallelism non è
+     *                                      positivo.
+     */
+    public static BitSet verifyAll(byte[] rootHash, List<MerkleProof> proofs, List<?> data, int parallelism) {
+        return verifyAll(rootHash, proofs, data, Funnel.HASH_CODE, parallelism);
+    }
+
+    /**
+     * Verifica le prove di Merkle fornite, ciascuna con il dato nella stessa
+     * posizione, rispetto al root dato, calcolando l'hash di ogni dato a
+     * partire dal contenuto scritto dal funnel. Va usato per le prove di
+     * alberi costruiti con un funnel diverso da {@link Funnel#HASH_CODE}.
+     *
+     * @param <T>
+     *                        il tipo dei dati.
+     * @param rootHash
+     *                        l'hash in forma binaria del root atteso.
+     * @param proofs
+     *                        le prove da verificare.
+     * @param data
+     *                        i dati da verificare, uno per prova.
+     * @param funnel
+     *                        il funnel con cui è stato costruito l'albero.
+     * @param parallelism
+     *                        il numero di thread da usare per la verifica.
+     * @return un BitSet in cui il bit i vale 1 se e solo se la coppia di
+     *         posizione i è valida.
+     * @throws IllegalArgumentException
+     *                                      se rootHash, proofs, data o funnel
+     *                                      sono null, se le liste hanno
+     *                                      dimensioni diverse o se parallelism
+     *                                      non è positivo.
+     */
+    public static <T> BitSet verifyAll(byte[] rootHash, List<MerkleProof> proofs, List<? extends T> data,
+            Funnel<? super T> funnel, int parallelism) {
+
+        if(parallelism < 1)
+            throw new IllegalArgumentException("parallelism passato a verifyAll() non è positivo!");
+
+        return verifyAll(rootHash, proofs, data, funnel, SharedPools.withParallelism(parallelism));
+    }
+
+    /**
+     * Verifica le prove di Merkle fornite, ciascuna con il dato nella stessa
+     * posizione, rispetto al root dato, come
+     * {@link #verifyAll(byte[], List, List, Funnel, int)}, eseguendo le
+     * verifiche sul pool dato, che non viene chiuso. Conviene quando le
+     * verifiche vengono ripetute su molti gruppi di prove.
+     *
+     * @param <T>
+     *                   il tipo dei dati.
+     * @param rootHash
+     *                   l'hash in forma binaria del root atteso.
+     * @param proofs
+     *                   le prove da verificare.
+     * @param data
+     *                   i dati da verificare, uno per prova.
+     * @param funnel
+     *                   il funnel con cui è stato costruito l'albero.
+     * @param pool
+     *                   il pool su cui eseguire le verifiche.
+     * @return un BitSet in cui il bit i vale 1 se e solo se la coppia di
+     *         posizione i è valida.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null o se le
+     *                                      liste hanno dimensioni diverse.
+     */
+    public static <T> BitSet verifyAll(byte[] rootHash, List<MerkleProof> proofs, List<? extends T> data,
+            Funnel<? super T> funnel, ForkJoinPool pool) {
+
+        if(rootHash == null)
+            throw new IllegalArgumentException("rootHash passato a verifyAll() è null!");
+        if(proofs == null)
+            throw new IllegalArgumentException("proofs passato a verifyAll() è null!");
+        if(data == null)
+            throw new IllegalArgumentException("data passato a verifyAll() è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato a verifyAll() è null!");
+        if(pool == null)
+            throw new IllegalArgumentException("pool passato a verifyAll() è null!");
+        if(proofs.size() != data.size())
+            throw new IllegalArgumentException("proofs e data passati a verifyAll() hanno dimensioni diverse!");
+
+        // L'accesso per posizione deve essere in tempo costante
+        List<MerkleProof> proofList = (proofs instanceof RandomAccess) ? proofs : new ArrayList<>(proofs);
+        List<? extends T> dataList = (data instanceof RandomAccess) ? data : new ArrayList<>(data);
+
+        int size = proofList.size();
+        long[] words = new long[(size + WORD_SIZE - 1) / WORD_SIZE];
+
+        pool.invoke(new VerificationTask<T>(rootHash, proofList, dataList, funnel, words, 0, size));
+
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Verifica le prove di Merkle fornite rispetto al root dato, con tanti
+     * thread quanti i processori disponibili.
+     *
+     * @param rootHash
+     *                     l'hash esadecimale del root atteso.
+     * @param proofs
+     *                     le prove da verificare.
+     * @param data
+     *                     i dati da verificare, uno per prova.
+     * @return un BitSet in cui il bit i vale 1 se e solo se la coppia di
+     *         posizione i è valida.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null, se rootHash
+     *                                      non è esadecimale o se le liste
+     *                                      hanno dimensioni diverse.
+     * @see #verifyAll(byte[], List, List, int)
+     */
+    public static BitSet verifyAll(String rootHash, List<MerkleProof> proofs, List<?> data) {
+
+        if(rootHash == null)
+            throw new IllegalArgumentException("rootHash passato a verifyAll() è null!");
+        byte[] digest = HashUtil.fromHex(rootHash);
+        if(digest == null)
+            throw new IllegalArgumentException("rootHash passato a verifyAll() non è esadecimale!");
+
+        return verifyAll(digest, proofs, data, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Verifica le prove di Merkle fornite rispetto al root dato, con tanti
+     * thread quanti i processori disponibili, calcolando l'hash di ogni dato
+     * a partire dal contenuto scritto dal funnel.
+     *
+     * @param <T>
+     *                     il tipo dei dati.
+     * @param rootHash
+     *                     l'hash esadecimale del root atteso.
+     * @param proofs
+     *                     le prove da verificare.
+     * @param data
+     *                     i dati da verificare, uno per prova.
+     * @param funnel
+     *                     il funnel con cui è stato costruito l'albero.
+     * @return un BitSet in cui il bit i vale 1 se e solo se la coppia di
+     *         posizione i è valida.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null, se rootHash
+     *                                      non è esadecimale o se le liste
+     *                                      hanno dimensioni diverse.
+     * @see #verifyAll(byte[], List, List, Funnel, int)
+     */
+    public static <T> BitSet verifyAll(String rootHash, List<MerkleProof> proofs, List<? extends T> data,
+            Funnel<? super T> funnel) {
+
+        if(rootHash == null)
+            throw new IllegalArgumentException("rootHash passato a verifyAll() è null!");
+        byte[] digest = HashUtil.fromHex(rootHash);
+        if(digest == null)
+            throw new IllegalArgumentException("rootHash passato a verifyAll() non è esadecimale!");
+
+        return verifyAll(digest, proofs, data, funnel, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Task che verifica le coppie di un intervallo, dividendolo in due metà
+     * allineate a WORD_SIZE finché è più grande della soglia sequenziale.
+     */
+    private static class VerificationTask<T> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] rootHash; // Root atteso
+
+        private final List<MerkleProof> proofs; // Prove da verificare
+
+        private final List<? extends T> data; // Dati da verificare
+
+        private final Funnel<? super T> funnel; // Funnel dei dati
+
+        private final long[] words; // Parole del BitSet dei risultati
+
+        private final int from, to; // Intervallo [from, to) da verificare,
+                                    // con from multiplo di WORD_SIZE
+
+        VerificationTask(byte[] rootHash, List<MerkleProof> proofs, List<? extends T> data, Funnel<? super T> funnel,
+                long[] words, int from, int to) {
+            this.rootHash = rootHash;
+            this.proofs = proofs;
+            this.data = data;
+            this.funnel = funnel;
+            this.words = words;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= SEQUENTIAL_THRESHOLD) {
+                for (int i = from; i < to; i++)
+                    if(isValid(proofs.get(i), data.get(i)))
+                        words[i / WORD_SIZE] |= 1L << (i % WORD_SIZE);
+                return;
+            }
+
+            // Punto di divisione allineato a una parola
+            int middle = (((from + to) >>> 1) / WORD_SIZE) * WORD_SIZE;
+            invokeAll(new VerificationTask<T>(rootHash, proofs, data, funnel, words, from, middle),
+                    new VerificationTask<T>(rootHash, proofs, data, funnel, words, middle, to));
+        }
+
+        /**
+         * Verifica una singola coppia.
+         */
+        private boolean isValid(MerkleProof proof, T element) {
+            return proof != null && element != null
+                    && proof.hasRootHash(rootHash)
+                    && proof.proveValidityOfData(element, funnel);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link MerkleProofBatchVerifier}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testMixedValidAndInvalidPairs()}: Verifica, su più intervalli di quelli verificati
+ * sequenzialmente, che il BitSet contenga esattamente le coppie valide, escludendo dati
+ * modificati, prove per un altro root e coppie con elementi null.</li>
+ *
+ * <li>{@link #testResultIndependentOfParallelism()}: Verifica che il risultato non dipenda dal
+ * numero di thread, né dal pool su cui viene eseguito, né dal tipo di lista fornita.</li>
+ *
+ * <li>{@link #testFunnel()}: Verifica che le prove di un albero costruito con un funnel siano valide
+ * con lo stesso funnel.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per parametri null,
+ * liste di dimensioni diverse, root non esadecimale e parallelismo non positivo.</li>
+ * </ul>
+ */
+class MerkleProofBatchVerifierTest {
+
+    private static final int SIZE = 3000;
+
+    /**
+     * Crea un albero di Merkle con i dati 0, 1, ..., SIZE - 1.
+     */
+    private static MerkleTree<Integer> buildTree() {
+        HashLinkedList<Integer> list = new HashLinkedList<>();
+        for (int i = 0; i < SIZE; i++)
+            list.addAtTail(i);
+        return new MerkleTree<>(list);
+    }
+
+    @Test
+    void testMixedValidAndInvalidPairs() {
+        MerkleTree<Integer> tree = buildTree();
+        HashLinkedList<Integer> otherList = new HashLinkedList<>();
+        otherList.addAtTail(-1);
+        otherList.addAtTail(5);
+        MerkleTree<Integer> otherTree = new MerkleTree<>(otherList);
+
+        List<MerkleProof> proofs = new ArrayList<>();
+        List<Integer> data = new ArrayList<>();
+        BitSet expected = new BitSet();
+        for (int i = 0; i < SIZE; i++) {
+            if(i % 7 == 3) {
+                // Dato modificato
+                proofs.add(tree.getMerkleProof(i));
+                data.add(i + 1);
+            } else if(i % 11 == 5) {
+                // Prova valida per il dato ma per un altro root
+                proofs.add(otherTree.getMerkleProof(5));
+                data.add(5);
+            } else if(i == 1500) {
+                proofs.add(null);
+                data.add(i);
+            } else {
+                proofs.add(tree.getMerkleProof(i));
+                data.add(i);
+                expected.set(i);
+            }
+        }
+
+        BitSet result = MerkleProofBatchVerifier.verifyAll(tree.getRoot().getHash(), proofs, data);
+        assertEquals(expected, result, "Il BitSet dovrebbe contenere esattamente le coppie valide.");
+    }
+
+    @Test
+    void testResultIndependentOfParallelism() {
+        MerkleTree<Integer> tree = buildTree();
+        List<MerkleProof> proofs = new LinkedList<>();
+        List<Integer> data = new LinkedList<>();
+        for (int i = 0; i < SIZE; i++) {
+            proofs.add(tree.getMerkleProof(i));
+            data.add(i % 5 == 0 ? -i - 1 : i);
+        }
+
+        BitSet sequential = MerkleProofBatchVerifier.verifyAll(tree.getRoot().getDigest(), proofs, data, 1);
+        BitSet parallel = MerkleProofBatchVerifier.verifyAll(tree.getRoot().getDigest(), proofs, data, 4);
+
+        assertEquals(sequential, parallel, "Il risultato non dovrebbe dipendere dal parallelismo.");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        for (int round = 0; round < 3; round++)
+            assertEquals(sequential, MerkleProofBatchVerifier.verifyAll(tree.getRoot().getDigest(), proofs, data,
+                    Funnel.HASH_CODE, pool), "Il risultato non dovrebbe dipendere dal pool.");
+        assertFalse(pool.isShutdown(), "Il pool non dovrebbe essere chiuso dalla verifica.");
+        pool.shutdown();
+        assertEquals(SIZE - SIZE / 5, parallel.cardinality(), "Solo i dati non modificati dovrebbero essere validi.");
+        assertFalse(parallel.get(0), "Il dato modificato non dovrebbe essere valido.");
+        assertTrue(parallel.get(SIZE - 1), "L'ultimo dato dovrebbe essere valido.");
+    }
+
+    @Test
+    void testFunnel() {
+        HashLinkedList<String> list = new HashLinkedList<>(MerkleHasher.SHA_256, Funnel.STRING);
+        for (int i = 0; i < 13; i++)
+            list.addAtTail("Transazione " + i);
+        MerkleTree<String> stringTree = new MerkleTree<>(list);
+        List<MerkleProof> proofs = new ArrayList<>();
+        List<String> data = new ArrayList<>();
+        for (int i = 0; i < 13; i++) {
+            proofs.add(stringTree.getMerkleProof("Transazione " + i));
+            data.add("Transazione " + ((i == 4) ? 5 : i));
+        }
+
+        BitSet expected = new BitSet();
+        expected.set(0, 13);
+        expected.clear(4);
+        byte[] root = HashUtil.fromHex(stringTree.getRoot().getHash());
+        assertEquals(expected, MerkleProofBatchVerifier.verifyAll(root, proofs, data, Funnel.STRING, 2),
+                "Dovrebbero essere valide tutte le coppie tranne quella modificata.");
+        assertEquals(expected,
+                MerkleProofBatchVerifier.verifyAll(stringTree.getRoot().getHash(), proofs, data, Funnel.STRING),
+                "Il risultato dovrebbe coincidere con il root esadecimale.");
+        assertTrue(MerkleProofBatchVerifier.verifyAll(root, proofs, data, 2).isEmpty(),
+                "Nessuna coppia dovrebbe essere valida con hashCode().");
+        assertThrows(IllegalArgumentException.class,
+                () -> MerkleProofBatchVerifier.verifyAll(root, proofs, data, null, 2));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        byte[] root = new byte[HashUtil.MD5_LENGTH];
+        List<MerkleProof> proofs = new ArrayList<>();
+        List<Integer> data = new ArrayList<>();
+        data.add(1);
+
+        assertThrows(IllegalArgumentException.class, () -> MerkleProofBatchVerifier.verifyAll((byte[]) null, proofs, data, 1));
+        assertThrows(IllegalArgumentException.class, () -> MerkleProofBatchVerifier.verifyAll(root, null, data, 1));
+        assertThrows(IllegalArgumentException.class, () -> MerkleProofBatchVerifier.verifyAll(root, proofs, null, 1));
+        assertThrows(IllegalArgumentException.class, () -> MerkleProofBatchVerifier.verifyAll(root, proofs, data, 1));
+        assertThrows(IllegalArgumentException.class, () -> MerkleProofBatchVerifier.verifyAll(root, proofs, new ArrayList<>(), 0));
+        assertThrows(IllegalArgumentException.class, () -> MerkleProofBatchVerifier.verifyAll("root", proofs, new ArrayList<>()));
+        List<Integer> empty = new ArrayList<>();
+        assertThrows(IllegalArgumentException.class,
+                () -> MerkleProofBatchVerifier.verifyAll(root, proofs, empty, Funnel.HASH_CODE, null));
+
+        assertTrue(MerkleProofBatchVerifier.verifyAll(root, proofs, new ArrayList<>(), 1).isEmpty(),
+                "Per liste vuote il risultato dovrebbe essere vuoto.");
+    }
+}
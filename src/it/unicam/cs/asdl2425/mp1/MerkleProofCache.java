@@ -0,0 +1,483 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache limitata delle prove di Merkle generate da un {@link MerkleTree}, da
+ * usare al posto di {@link MerkleTree#getMerkleProof(Object)} quando poche
+ * foglie ricevono la maggior parte delle richieste. Le prove vengono
+ * memorizzate per hash della foglia, quindi una richiesta trovata in cache
+ * calcola solamente l'hash del dato e restituisce la stessa prova, senza
+ * cercare la foglia né costruire di nuovo la prova.
+ *
+ * La politica di rimozione è W-TinyLFU: le nuove prove entrano in una piccola
+ * finestra LRU, pari all'1% della capacità, e quando ne escono vengono
+ * ammesse nella parte principale, anch'essa LRU, solamente se la frequenza
+ * stimata della loro foglia supera quella della prova che dovrebbero
+ * sostituire. Le frequenze sono stimate con un Count-Min Sketch a contatori
+ * di 4 bit, dimezzati periodicamente in modo che le richieste vecchie pesino
+ * sempre meno. Una sequenza di richieste a foglie diverse, ognuna chiesta una
+ * sola volta, non può quindi rimuovere le prove delle foglie più richieste.
+ *
+ * Gli aggiornamenti dell'albero vanno eseguiti attraverso la cache, che
+ * rimuove esattamente le prove delle foglie sostituite. Tutte le altre prove
+ * contengono l'hash del root precedente, quindi non sono più valide: restano
+ * in cache con la frequenza della foglia e vengono ricostruite alla
+ * richiesta successiva, contata come un miss. Lo stesso avviene se l'albero
+ * viene aggiornato direttamente.
+ *
+ * Come MerkleTree, la cache non è sincronizzata.
+ *
+ * @param <T>
+ *                il tipo di dati su cui l'albero è costruito.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public class MerkleProofCache<T> {
+
+    /**
+     * Prova in cache, collegata alle altre prove della stessa regione in
+     * ordine dalla meno recente alla più recente.
+     */
+    private static final class Entry {
+
+        private final MerkleNode leaf;
+
+        private int index;
+
+        private MerkleProof proof;
+
+        private boolean inMain;
+
+        private Entry previous;
+
+        private Entry next;
+
+        private Entry(MerkleNode leaf, int index, MerkleProof proof) {
+            this.leaf = leaf;
+            this.index = index;
+            this.proof = proof;
+        }
+    }
+
+    /**
+     * Count-Min Sketch con 4 righe di contatori di 4 bit, 16 per ogni long.
+     * Dopo un numero di incrementi pari a 10 volte la capacità della cache
+     * tutti i contatori vengono dimezzati.
+     */
+    private static final class FrequencySketch {
+
+        /**
+         * Semi delle funzioni di hash delle righe.
+         */
+        private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+                0xcbf29ce484222325L };
+
+        /**
+         * Maschera che azzera il bit più alto di ogni contatore dopo lo
+         * scorrimento a destra.
+         */
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        /**
+         * Valore massimo di un contatore.
+         */
+        private static final int MAX_COUNT = 15;
+
+        private final long[] table;
+
+        private final int sampleSize;
+
+        private int additions;
+
+        private FrequencySketch(int maximumSize) {
+            int counters = Math.min(Math.max(8, maximumSize), 1 << 24);
+            this.table = new long[Integer.highestOneBit(counters - 1) << 1];
+            this.sampleSize = (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Restituisce l'hash di una riga: i bit bassi scelgono il long e i 4
+         * bit più alti il contatore all'interno del long.
+         */
+        private static long spread(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            return h + (h >>> 32);
+        }
+
+        private int count(long h) {
+            return (int) (this.table[(int) h & (this.table.length - 1)] >>> ((h >>> 60) << 2)) & MAX_COUNT;
+        }
+
+        private int frequency(MerkleNode leaf) {
+            int hash = leaf.hashCode();
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < SEEDS.length; row++)
+                frequency = Math.min(frequency, count(spread(hash, row)));
+            return frequency;
+        }
+
+        private void increment(MerkleNode leaf) {
+            int hash = leaf.hashCode();
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; row++) {
+                long h = spread(hash, row);
+                if(count(h) < MAX_COUNT) {
+                    this.table[(int) h & (this.table.length - 1)] += 1L << ((h >>> 60) << 2);
+                    added = true;
+                }
+            }
+
+            if(added && ++this.additions == this.sampleSize) {
+                for (int i = 0; i < this.table.length; i++)
+                    this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+                this.additions /= 2;
+            }
+        }
+    }
+
+    /**
+     * Albero da cui vengono generate le prove.
+     */
+    private final MerkleTree<T> tree;
+
+    /**
+     * Numero massimo di prove in cache.
+     */
+    private final int maximumSize;
+
+    /**
+     * Numero massimo di prove nella finestra.
+     */
+    private final int windowSize;
+
+    /**
+     * Prove in cache, per hash della foglia.
+     */
+    private final Map<MerkleNode, Entry> entries = new HashMap<>();
+
+    /**
+     * Elemento sentinella della lista della finestra.
+     */
+    private final Entry window = new Entry(null, -1, null);
+
+    /**
+     * Elemento sentinella della lista della parte principale.
+     */
+    private final Entry main = new Entry(null, -1, null);
+
+    /**
+     * Numero di prove nella parte principale.
+     */
+    private int mainCount;
+
+    /**
+     * Frequenze stimate delle foglie richieste.
+     */
+    private final FrequencySketch sketch;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    private long invalidationCount;
+
+    /**
+     * Costruisce una cache vuota per le prove di un albero.
+     *
+     * @param tree
+     *                        l'albero da cui generare le prove.
+     * @param maximumSize
+     *                        il numero massimo di prove in cache, almeno 1.
+     * @throws IllegalArgumentException
+     *                                      se l'albero è null o la capacità
+     *                                      non è positiva.
+     */
+    public MerkleProofCache(MerkleTree<T> tree, int maximumSize) {
+
+        if(tree == null)
+            throw new IllegalArgumentException("tree passato al costruttore è null!");
+        if(maximumSize < 1)
+            throw new IllegalArgumentException("maximumSize passato al costruttore non è positivo!");
+
+        this.tree = tree;
+        this.maximumSize = maximumSize;
+        this.windowSize = Math.max(1, maximumSize / 100);
+        this.sketch = new FrequencySketch(maximumSize);
+        this.window.previous = this.window.next = this.window;
+        this.main.previous = this.main.next = this.main;
+    }
+
+    /**
+     * Restituisce l'albero da cui vengono generate le prove.
+     *
+     * @return l'albero della cache.
+     */
+    public MerkleTree<T> getTree() {
+        return this.tree;
+    }
+
+    /**
+     * Restituisce il numero massimo di prove in cache.
+     *
+     * @return la capacità della cache.
+     */
+    public int getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    /**
+     * Restituisce il numero di prove in cache.
+     *
+     * @return il numero di prove in cache.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Restituisce la prova di Merkle della prima occorrenza di un dato,
+     * uguale a quella di {@link MerkleTree#getMerkleProof(Object)}. La prova
+     * restituita è completa, quindi non può essere modificata, e viene
+     * condivisa tra le richieste dello stesso dato finché l'albero non cambia.
+     *
+     * @param data
+     *                 il dato per cui generare la prova.
+     * @return la prova di Merkle per il dato.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o non è parte
+     *                                      dell'albero.
+     */
+    public MerkleProof getMerkleProof(T data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a getMerkleProof() è null!");
+
+        MerkleNode leaf = new MerkleNode(this.tree.getHasher().dataDigest(data, this.tree.getFunnel()));
+        this.sketch.increment(leaf);
+
+        Entry entry = this.entries.get(leaf);
+        if(entry != null) {
+            moveToTail(entry);
+            if(entry.proof.hasRootHash(this.tree.getRoot().getDigest())) {
+                this.hitCount++;
+                return entry.proof;
+            }
+        }
+
+        // Prova assente o costruita per un root precedente
+        this.missCount++;
+        int index = this.tree.getIndexOfLeaf(leaf);
+        if(index < 0) {
+            if(entry != null) {
+                remove(entry);
+                this.invalidationCount++;
+            }
+            throw new IllegalArgumentException("data passato a getMerkleProof() non è parte dell'albero!");
+        }
+
+        MerkleProof proof = this.tree.getMerkleProofAt(index);
+        if(entry != null) {
+            entry.index = index;
+            entry.proof = proof;
+        }
+        else
+            admit(new Entry(leaf, index, proof));
+
+        return proof;
+    }
+
+    /**
+     * Sostituisce il dato di una foglia dell'albero, rimuovendo la prova della
+     * foglia sostituita.
+     *
+     * @param index
+     *                    la posizione della foglia da aggiornare.
+     * @param newData
+     *                    il nuovo dato della foglia.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o l'indice non è
+     *                                      compreso tra 0 e la larghezza
+     *                                      dell'albero esclusa.
+     */
+    public void updateLeaf(int index, T newData) {
+
+        if(newData == null)
+            throw new IllegalArgumentException("newData passato a updateLeaf() è null!");
+        if(index < 0 || index >= this.tree.getWidth())
+            throw new IllegalArgumentException("index passato a updateLeaf() non è una posizione valida!");
+
+        MerkleNode old = new MerkleNode(this.tree.getNodeDigest(0, index));
+        this.tree.updateLeaf(index, newData);
+        invalidate(old, index);
+    }
+
+    /**
+     * Sostituisce i dati di più foglie dell'albero con
+     * {@link MerkleTree#updateLeaves(Map)}, rimuovendo le prove delle foglie
+     * sostituite.
+     *
+     * @param updates
+     *                    mappa che associa alla posizione di ogni foglia da
+     *                    aggiornare il suo nuovo dato.
+     * @throws IllegalArgumentException
+     *                                      se la mappa è null, contiene un
+     *                                      dato null o una posizione non
+     *                                      compresa tra 0 e la larghezza
+     *                                      dell'albero esclusa.
+     */
+    public void updateLeaves(Map<Integer, T> updates) {
+
+        if(updates == null)
+            throw new IllegalArgumentException("updates passato a updateLeaves() è null!");
+
+        // Foglie sostituite, lette prima dell'aggiornamento; le posizioni non
+        // valide vengono rifiutate dall'albero senza modificarlo
+        Map<Integer, MerkleNode> replaced = new HashMap<>();
+        for (Integer index : updates.keySet())
+            if(index != null && index >= 0 && index < this.tree.getWidth())
+                replaced.put(index, new MerkleNode(this.tree.getNodeDigest(0, index)));
+
+        this.tree.updateLeaves(updates);
+        for (Map.Entry<Integer, MerkleNode> entry : replaced.entrySet())
+            invalidate(entry.getValue(), entry.getKey());
+    }
+
+    /**
+     * Rimuove tutte le prove dalla cache, mantenendo le frequenze delle
+     * foglie.
+     */
+    public void invalidateAll() {
+        this.invalidationCount += this.entries.size();
+        this.entries.clear();
+        this.window.previous = this.window.next = this.window;
+        this.main.previous = this.main.next = this.main;
+        this.mainCount = 0;
+    }
+
+    /**
+     * Restituisce il numero di richieste a cui è stata restituita una prova
+     * in cache.
+     *
+     * @return il numero di hit.
+     */
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * Restituisce il numero di richieste per cui la prova è stata generata
+     * dall'albero, perché assente o costruita per un root precedente.
+     *
+     * @return il numero di miss.
+     */
+    public long getMissCount() {
+        return this.missCount;
+    }
+
+    /**
+     * Restituisce la frazione delle richieste a cui è stata restituita una
+     * prova in cache.
+     *
+     * @return la frazione di hit, 0 se non ci sono state richieste.
+     */
+    public double getHitRate() {
+        long requests = this.hitCount + this.missCount;
+        return (requests == 0) ? 0 : (double) this.hitCount / requests;
+    }
+
+    /**
+     * Restituisce il numero di prove rimosse, o non ammesse, per mancanza di
+     * spazio.
+     *
+     * @return il numero di rimozioni per capacità.
+     */
+    public long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     * Restituisce il numero di prove rimosse perché la loro foglia è stata
+     * sostituita o per una chiamata a {@link #invalidateAll()}.
+     *
+     * @return il numero di invalidazioni.
+     */
+    public long getInvalidationCount() {
+        return this.invalidationCount;
+    }
+
+    /**
+     * Rimuove la prova della foglia sostituita nella posizione data, se era
+     * quella della sua prima occorrenza.
+     *
+     * @param old
+     *                  la foglia sostituita.
+     * @param index
+     *                  la posizione della foglia.
+     */
+    private void invalidate(MerkleNode old, int index) {
+        Entry entry = this.entries.get(old);
+        if(entry != null && entry.index == index
+                && !old.equals(new MerkleNode(this.tree.getNodeDigest(0, index)))) {
+            remove(entry);
+            this.invalidationCount++;
+        }
+    }
+
+    /**
+     * Inserisce una nuova prova nella finestra. La prova meno recente della
+     * finestra, se questa supera la sua capacità, passa nella parte
+     * principale; se anche questa è piena resta solamente la più frequente
+     * tra la prova e la meno recente della parte principale.
+     *
+     * @param entry
+     *                  la nuova prova.
+     */
+    private void admit(Entry entry) {
+        this.entries.put(entry.leaf, entry);
+        link(this.window, entry);
+        if(this.entries.size() - this.mainCount <= this.windowSize)
+            return;
+
+        Entry candidate = this.window.next;
+        unlink(candidate);
+        candidate.inMain = true;
+        link(this.main, candidate);
+        this.mainCount++;
+        if(this.entries.size() <= this.maximumSize)
+            return;
+
+        Entry victim = this.main.next;
+        if(victim == candidate || this.sketch.frequency(candidate.leaf) <= this.sketch.frequency(victim.leaf))
+            victim = candidate;
+        remove(victim);
+        this.evictionCount++;
+    }
+
+    private void moveToTail(Entry entry) {
+        unlink(entry);
+        link(entry.inMain ? this.main : this.window, entry);
+    }
+
+    private void remove(Entry entry) {
+        this.entries.remove(entry.leaf);
+        unlink(entry);
+        if(entry.inMain)
+            this.mainCount--;
+    }
+
+    private static void link(Entry list, Entry entry) {
+        entry.previous = list.previous;
+        entry.next = list;
+        list.previous.next = entry;
+        list.previous = entry;
+    }
+
+    private static void unlink(Entry entry) {
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+    }
+}
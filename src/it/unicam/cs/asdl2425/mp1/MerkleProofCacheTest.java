@@ -0,0 +1,151 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per {@link MerkleProofCache}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testProofsMatchMerkleTree()}: Verifica che le prove coincidano con quelle dell'albero e
+ * che le richieste ripetute vengano servite dalla cache.</li>
+ *
+ * <li>{@link #testInvalidationOnUpdate()}: Verifica che un aggiornamento rimuova solamente le prove
+ * delle foglie sostituite e che le altre vengano ricostruite per il nuovo root.</li>
+ *
+ * <li>{@link #testFrequencyAwareEviction()}: Verifica che le foglie richieste una sola volta, alternate
+ * a quelle più richieste, non ne rimuovano le prove.</li>
+ *
+ * <li>{@link #testDirectTreeUpdate()}: Verifica che le prove restino corrette se l'albero viene
+ * aggiornato senza passare dalla cache.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per parametri non
+ * validi.</li>
+ * </ul>
+ */
+class MerkleProofCacheTest {
+
+    @Test
+    void testProofsMatchMerkleTree() {
+        MerkleTree<Integer> tree = new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.SHA_256, 37));
+        MerkleProofCache<Integer> cache = new MerkleProofCache<>(tree, 100);
+
+        for (int round = 0; round < 3; round++)
+            for (int i = 0; i < 37; i++) {
+                MerkleProof proof = cache.getMerkleProof(i * 7);
+                assertIterableEquals(tree.getMerkleProof(i * 7).getProofHashes(), proof.getProofHashes());
+                assertTrue(proof.proveValidityOfData(i * 7));
+            }
+
+        assertSame(cache.getMerkleProof(0), cache.getMerkleProof(0));
+        assertEquals(37, cache.size());
+        assertEquals(37, cache.getMissCount());
+        assertEquals(2 * 37 + 2, cache.getHitCount());
+        assertEquals((2 * 37 + 2) / (3.0 * 37 + 2), cache.getHitRate(), 1e-9);
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    void testInvalidationOnUpdate() {
+        MerkleTree<Integer> tree = new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.SHA_256, 16));
+        MerkleProofCache<Integer> cache = new MerkleProofCache<>(tree, 10);
+        for (int i = 0; i < 8; i++)
+            cache.getMerkleProof(i * 7);
+
+        cache.updateLeaf(3, -1);
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(7, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> cache.getMerkleProof(21));
+
+        // Le altre prove vengono ricostruite una volta per il nuovo root
+        long misses = cache.getMissCount();
+        MerkleProof proof = cache.getMerkleProof(35);
+        assertEquals(misses + 1, cache.getMissCount());
+        assertTrue(proof.proveValidityOfData(35));
+        assertIterableEquals(tree.getMerkleProof(35).getProofHashes(), proof.getProofHashes());
+        assertSame(proof, cache.getMerkleProof(35));
+
+        // Lo stesso dato riscritto non invalida la prova
+        cache.updateLeaves(Map.of(0, 0, 9, 42));
+        assertEquals(1, cache.getInvalidationCount());
+
+        // Dato ripetuto: la prova segue la prima occorrenza rimasta
+        cache.updateLeaves(Map.of(12, 7));
+        assertIterableEquals(tree.getMerkleProof(7).getProofHashes(), cache.getMerkleProof(7).getProofHashes());
+        cache.updateLeaf(1, -2);
+        assertEquals(2, cache.getInvalidationCount());
+        assertIterableEquals(tree.getMerkleProof(7).getProofHashes(), cache.getMerkleProof(7).getProofHashes());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(9, cache.getInvalidationCount());
+    }
+
+    @Test
+    void testFrequencyAwareEviction() {
+        int hot = 10;
+        MerkleTree<Integer> tree = new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.SHA_256, 3000));
+        MerkleProofCache<Integer> cache = new MerkleProofCache<>(tree, 15);
+
+        // Tra due richieste della stessa foglia calda vengono chieste 19
+        // foglie diverse, quindi una cache LRU di 15 prove non la troverebbe
+        // mai; ogni foglia fredda viene richiesta una sola volta
+        long hotRequests = 0;
+        long hotHits = 0;
+        for (int i = hot; i < 3000; i++) {
+            cache.getMerkleProof(i * 7);
+            long hits = cache.getHitCount();
+            cache.getMerkleProof((i % hot) * 7);
+            if(i >= 1000) {
+                hotRequests++;
+                if(cache.getHitCount() > hits)
+                    hotHits++;
+            }
+        }
+
+        assertTrue(hotHits >= 0.95 * hotRequests, "Hit: " + hotHits + " su " + hotRequests);
+        assertTrue(cache.size() <= 15);
+        assertTrue(cache.getEvictionCount() >= 3000 - 15 - hot);
+    }
+
+    @Test
+    void testDirectTreeUpdate() {
+        MerkleTree<Integer> tree = new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.SHA_256, 16));
+        MerkleProofCache<Integer> cache = new MerkleProofCache<>(tree, 10);
+        cache.getMerkleProof(14);
+        cache.getMerkleProof(21);
+
+        tree.updateLeaf(3, -1);
+        tree.updateLeaf(5, 14);
+        assertThrows(IllegalArgumentException.class, () -> cache.getMerkleProof(21));
+        assertEquals(1, cache.size());
+        assertIterableEquals(tree.getMerkleProof(14).getProofHashes(), cache.getMerkleProof(14).getProofHashes());
+        assertTrue(cache.getMerkleProof(14).proveValidityOfData(14));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new MerkleProofCache<Integer>(null, 10));
+        MerkleTree<Integer> tree = new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.SHA_256, 4));
+        assertThrows(IllegalArgumentException.class, () -> new MerkleProofCache<>(tree, 0));
+
+        MerkleProofCache<Integer> cache = new MerkleProofCache<>(tree, 1);
+        assertThrows(IllegalArgumentException.class, () -> cache.getMerkleProof(null));
+        assertThrows(IllegalArgumentException.class, () -> cache.getMerkleProof(1));
+        assertThrows(IllegalArgumentException.class, () -> cache.updateLeaf(4, 1));
+        assertThrows(IllegalArgumentException.class, () -> cache.updateLeaf(0, null));
+        assertThrows(IllegalArgumentException.class, () -> cache.updateLeaves(null));
+        assertThrows(IllegalArgumentException.class, () -> cache.updateLeaves(Map.of(-1, 1)));
+        assertEquals(0, cache.getHitRate());
+
+        // Con capacità 1 resta solamente l'ultima prova
+        cache.getMerkleProof(0);
+        cache.getMerkleProof(7);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+}
@@ -1,6 +1,8 @@
 package it.unicam.cs.asdl2425.mp1;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Un Merkle Tree, noto anche come hash tree binario, è una struttura dati per
@@ -17,22 +19,87 @@ import java.util.*;
  */
 public class MerkleTree<T> {
     /**
-     * Nodo radice dell'albero.
+     * Nodo radice dell'albero, sostituito a ogni aggiornamento delle foglie.
      */
-    private final MerkleNode root;
+    private MerkleNode root;
 
     /**
      * Larghezza dell'albero, ovvero il numero di nodi nell'ultimo livello.
      */
     private final int width;
 
+    /**
+     * Algoritmo usato per calcolare gli hash delle foglie e dei nodi interni.
+     */
+    private final MerkleHasher hasher;
+
+    /**
+     * Funnel che descrive il contenuto dei dati di cui calcolare gli hash.
+     */
+    private final Funnel<? super T> funnel;
+
+    /**
+     * Hash vuoto, usato al posto del fratello mancante di un nodo quando
+     * l'hash del padre viene ricalcolato a partire da un solo figlio.
+     */
+    private static final byte[] EMPTY_HASH = new byte[0];
+
+    /**
+     * Nodi dell'albero divisi per livello: il livello 0 contiene le foglie e
+     * l'ultimo livello contiene solamente il root. Il padre del nodo di
+     * posizione i si trova in posizione i/2 del livello superiore, quindi gli
+     * array fungono anche da collegamenti verso il padre.
+     */
+    private final MerkleNode[][] levels;
+
+    /**
+     * Indice che associa a ogni foglia la posizione della sua prima
+     * occorrenza nell'ultimo livello dell'albero.
+     */
+    private final Map<MerkleNode, Integer> leafIndex;
+
+    /**
+     * Indice che associa a ogni nodo interno la posizione della sua prima
+     * occorrenza, considerando i livelli dal root verso le foglie.
+     */
+    private final Map<MerkleNode, NodePosition> branchIndex;
+
+    /**
+     * Numero di occorrenze ulteriori rispetto alla prima delle foglie ripetute.
+     * Contiene solamente le foglie presenti più volte, quindi è vuoto se tutti
+     * i dati sono distinti.
+     */
+    private final Map<MerkleNode, Integer> leafDuplicates;
+
+    /**
+     * Numero di occorrenze ulteriori rispetto alla prima dei nodi interni
+     * ripetuti, come per le foglie.
+     */
+    private final Map<MerkleNode, Integer> branchDuplicates;
+
+    /**
+     * Posizione di un nodo nell'albero, data dal livello (0 per le foglie) e
+     * dalla posizione del nodo all'interno del livello.
+     */
+    private static final class NodePosition {
+        final int level;
+
+        final int index;
+
+        NodePosition(int level, int index) {
+            this.level = level;
+            this.index = index;
+        }
+    }
+
     /**
      * Costruisce un albero di Merkle a partire da un oggetto HashLinkedList,
      * utilizzando direttamente gli hash presenti nella lista per costruire le
      * foglie. Si noti che gli hash dei nodi intermedi dovrebbero essere
      * ottenuti da quelli inferiori concatenando hash adiacenti due a due e
      * applicando direttamente la funzione di hash MD5 al risultato della
-     * concatenazione in bytes.
+     * concatenazione in bytes. L'albero usa lo stesso algoritmo di hash della
+     * lista, MD5 se non diversamente specificato alla sua costruzione.
      *
      * @param hashList
      *                     un oggetto HashLinkedList contenente i dati e i
@@ -41,64 +108,367 @@ public class MerkleTree<T> {
      *                                      se la lista è null o vuota.
      */
     public MerkleTree(HashLinkedList<T> hashList) {
-        
+        this(hashList, (hashList != null) ? hashList.getHasher() : null,
+                (hashList != null) ? hashList.getFunnel() : null);
+    }
+
+    /**
+     * Costruisce un albero di Merkle a partire da un oggetto HashLinkedList,
+     * calcolando gli hash con l'algoritmo fornito. Se l'algoritmo coincide con
+     * quello della lista vengono usati direttamente gli hash presenti nella
+     * lista, altrimenti gli hash delle foglie vengono ricalcolati a partire
+     * dai dati.
+     *
+     * @param hashList
+     *                     un oggetto HashLinkedList contenente i dati e i
+     *                     relativi hash.
+     * @param hasher
+     *                     l'algoritmo con cui calcolare gli hash.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota o se
+     *                                      hasher è null.
+     */
+    public MerkleTree(HashLinkedList<T> hashList, MerkleHasher hasher) {
+        this(hashList, hasher, (hashList != null) ? hashList.getFunnel() : null);
+    }
+
+    /**
+     * Costruisce un albero di Merkle a partire da un oggetto HashLinkedList,
+     * calcolando gli hash delle foglie con l'algoritmo fornito sul contenuto
+     * scritto dal funnel. Se algoritmo e funnel coincidono con quelli della
+     * lista vengono usati direttamente gli hash presenti nella lista,
+     * altrimenti gli hash delle foglie vengono ricalcolati a partire dai dati.
+     * Le ricerche per dato dell'albero usano lo stesso funnel.
+     *
+     * @param hashList
+     *                     un oggetto HashLinkedList contenente i dati e i
+     *                     relativi hash.
+     * @param hasher
+     *                     l'algoritmo con cui calcolare gli hash.
+     * @param funnel
+     *                     il funnel che descrive il contenuto dei dati.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota o se
+     *                                      hasher o funnel sono null.
+     */
+    public MerkleTree(HashLinkedList<T> hashList, MerkleHasher hasher, Funnel<? super T> funnel) {
+
         if(hashList == null)
             throw new IllegalArgumentException("hashList passato al costruttore è null!");
         if(hashList.getSize() == 0)
             throw new IllegalArgumentException("hashList passato al costruttore è vuota!");
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato al costruttore è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato al costruttore è null!");
 
-        // Lista contenete i nodi di un certo livello
-        List<MerkleNode> nodesLayer = new LinkedList<>();
+        // Array preallocati per tutti i livelli, calcolati dal basso verso
+        // l'alto in un'unica passata
+        this.hasher = hasher;
+        this.funnel = funnel;
+        this.levels = allocateLevels(hashList, hasher, funnel);
 
-        // Generazione ultimo livello, nodi foglia
-        for (String hash : hashList.getAllHashes()) 
-            nodesLayer.add( new MerkleNode(hash) );
+        for (int level = 1; level < this.levels.length; level++)
+            buildParentLayer(this.levels, level, 0, this.levels[level].length, hasher);
 
-        MerkleNode parentNode; // Nodo combinato dei due figli
-        String parentHash; // Hash combinato dei due figli del nodo
-        int nodesCurrentLevel = nodesLayer.size(); // Numero di nodi nel livello corrente
+        this.root = this.levels[this.levels.length - 1][0];
+        this.width = hashList.getSize();
+        this.leafDuplicates = new HashMap<>();
+        this.branchDuplicates = new HashMap<>();
+        this.leafIndex = buildLeafIndex(this.levels[0], this.leafDuplicates);
+        this.branchIndex = buildBranchIndex(this.levels, this.branchDuplicates);
+    }
 
-        while (nodesCurrentLevel > 1) {
-            // Ancora non si è arrivati al root
+    /**
+     * Costruisce un albero di Merkle a partire da un oggetto HashLinkedList
+     * come {@link #MerkleTree(HashLinkedList)}, calcolando però i livelli in
+     * parallelo sul ForkJoinPool condiviso con il numero di thread dato, che
+     * viene creato una sola volta e riusato dalle costruzioni successive.
+     * L'intervallo delle foglie viene diviso in
+     * sottoalberi allineati, i cui root vengono calcolati in parallelo e poi
+     * combinati verso l'alto. Ogni sottoalbero viene costruito sequenzialmente
+     * e ha 2^k foglie, dove 2^k è la più piccola potenza di 2 non minore di
+     * sequentialCutoff, quindi almeno sequentialCutoff foglie; solamente
+     * l'ultimo sottoalbero può averne meno. L'albero ottenuto è identico a
+     * quello costruito sequenzialmente, compresi i nodi senza fratello il cui
+     * hash viene ricalcolato a partire dall'unico figlio.
+     *
+     * @param hashList
+     *                             un oggetto HashLinkedList contenente i dati
+     *                             e i relativi hash.
+     * @param parallelism
+     *                             il numero di thread da usare per la
+     *                             costruzione.
+     * @param sequentialCutoff
+     *                             il numero minimo di foglie di un
+     *                             sottoalbero costruito sequenzialmente.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota, oppure
+     *                                      se parallelism o sequentialCutoff
+     *                                      non sono positivi.
+     */
+    public MerkleTree(HashLinkedList<T> hashList, int parallelism, int sequentialCutoff) {
+        this(hashList, sharedPool(parallelism), sequentialCutoff);
+    }
 
-            while (nodesCurrentLevel > 0) {
-                // Iterazione per la creazione dei nodi del livello superiore
+    /**
+     * Costruisce un albero di Merkle come
+     * {@link #MerkleTree(HashLinkedList, int, int)}, calcolando i livelli sul
+     * pool dato, che non viene chiuso e può essere riusato per costruire altri
+     * alberi.
+     *
+     * @param hashList
+     *                             un oggetto HashLinkedList contenente i dati
+     *                             e i relativi hash.
+     * @param pool
+     *                             il pool su cui costruire l'albero.
+     * @param sequentialCutoff
+     *                             il numero minimo di foglie di un
+     *                             sottoalbero costruito sequenzialmente.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota, se il
+     *                                      pool è null oppure se
+     *                                      sequentialCutoff non è positivo.
+     */
+    public MerkleTree(HashLinkedList<T> hashList, ForkJoinPool pool, int sequentialCutoff) {
+
+        if(hashList == null)
+            throw new IllegalArgumentException("hashList passato al costruttore è null!");
+        if(hashList.getSize() == 0)
+            throw new IllegalArgumentException("hashList passato al costruttore è vuota!");
+        if(pool == null)
+            throw new IllegalArgumentException("pool passato al costruttore è null!");
+        if(sequentialCutoff < 1)
+            throw new IllegalArgumentException("sequentialCutoff passato al costruttore non è positivo!");
 
-                if(nodesCurrentLevel > 1){
-                    // Abbiamo due nodi per combinare gli hash
-                    // Creazione hash combinato 
-                    parentHash = HashUtil.computeMD5((nodesLayer.get(0).getHash() + nodesLayer.get(1).getHash()).getBytes());
+        this.hasher = hashList.getHasher();
+        this.funnel = hashList.getFunnel();
+        this.levels = allocateLevels(hashList, this.hasher, this.funnel);
+        int height = this.levels.length - 1;
 
-                    // Creazione nodo padre e rimozione dei suoi nodi figli
-                    parentNode = new MerkleNode(parentHash, nodesLayer.remove(0), nodesLayer.remove(0));
+        // Livello dei sottoalberi costruiti sequenzialmente, ovvero il più
+        // piccolo livello con almeno sequentialCutoff foglie per sottoalbero
+        int cutoffLevel = Math.min(heightOf(sequentialCutoff), height);
 
-                    // Aggiunta nodo padre
-                    nodesLayer.add(parentNode);
+        pool.invoke(new SubtreeTask(this.levels, this.hasher, height, 0, cutoffLevel));
 
-                    // Togli due nodi al livello corrente
-                    nodesCurrentLevel-=2;
-                }
-                else{
-                    // in questo caso l'hash combinato è il nuovo hash calcolato dall'hash del seguente nodo
-                    parentHash = HashUtil.computeMD5( nodesLayer.get(0).getHash().getBytes() );
-                    
-                    // Creazione nodo padre e rimozione figlio
-                    parentNode = new MerkleNode(parentHash, nodesLayer.remove(0), null);
-                    
-                    // Aggiunta nodo padre
-                    nodesLayer.add(parentNode);
-
-                    // Togli un nodo al livello corrente
-                    nodesCurrentLevel--;
+        this.root = this.levels[height][0];
+        this.width = hashList.getSize();
+        this.leafDuplicates = new HashMap<>();
+        this.branchDuplicates = new HashMap<>();
+        this.leafIndex = buildLeafIndex(this.levels[0], this.leafDuplicates);
+        this.branchIndex = buildBranchIndex(this.levels, this.branchDuplicates);
+    }
+
+    private static ForkJoinPool sharedPool(int parallelism) {
+        if(parallelism < 1)
+            throw new IllegalArgumentException("parallelism passato al costruttore non è positivo!");
+        return SharedPools.withParallelism(parallelism);
+    }
+
+    /**
+     * Alloca gli array di tutti i livelli dell'albero, dove il livello 0
+     * contiene le foglie create a partire dagli hash della lista e il livello
+     * l contiene ceil(width / 2^l) nodi, ancora da calcolare. Se la lista usa
+     * un algoritmo o un funnel diverso da quelli dati gli hash delle foglie
+     * vengono ricalcolati dai dati.
+     *
+     * @param hashList
+     *                     la lista da cui prendere gli hash.
+     * @param hasher
+     *                     l'algoritmo degli hash dell'albero.
+     * @param funnel
+     *                     il funnel dei dati dell'albero.
+     * @return gli array dei livelli, dalle foglie al root.
+     */
+    private static <E> MerkleNode[][] allocateLevels(HashLinkedList<E> hashList, MerkleHasher hasher,
+            Funnel<? super E> funnel) {
+        byte[][] digests;
+        if(hasher.equals(hashList.getHasher()) && funnel.equals(hashList.getFunnel()))
+            digests = hashList.getAllDigests();
+        else {
+            digests = new byte[hashList.getSize()][];
+            int i = 0;
+            for (E data : hashList)
+                digests[i++] = hasher.dataDigest(data, funnel);
+        }
+
+        MerkleNode[][] levels = new MerkleNode[heightOf(digests.length) + 1][];
+
+        levels[0] = new MerkleNode[digests.length];
+        for (int i = 0; i < digests.length; i++)
+            levels[0][i] = new MerkleNode(digests[i]);
+
+        for (int level = 1; level < levels.length; level++)
+            levels[level] = new MerkleNode[(levels[level - 1].length + 1) / 2];
+
+        return levels;
+    }
+
+    /**
+     * Costruisce l'indice che associa a ogni foglia la posizione della sua
+     * prima occorrenza nell'ultimo livello, contando le occorrenze ulteriori
+     * delle foglie ripetute.
+     *
+     * @param leaves
+     *                       le foglie dell'albero.
+     * @param duplicates
+     *                       la mappa in cui contare le occorrenze ulteriori.
+     * @return l'indice delle foglie.
+     */
+    private static Map<MerkleNode, Integer> buildLeafIndex(MerkleNode[] leaves, Map<MerkleNode, Integer> duplicates) {
+        Map<MerkleNode, Integer> index = new HashMap<>(Math.max(16, (int) (leaves.length / 0.75f) + 1));
+
+        for (int i = 0; i < leaves.length; i++)
+            if(index.putIfAbsent(leaves[i], i) != null)
+                duplicates.merge(leaves[i], 1, Integer::sum);
+
+        return index;
+    }
+
+    /**
+     * Costruisce l'indice che associa a ogni nodo interno la posizione della
+     * sua prima occorrenza, visitando i livelli dal root verso le foglie e
+     * contando le occorrenze ulteriori dei nodi ripetuti.
+     *
+     * @param levels
+     *                       gli array dei livelli dell'albero.
+     * @param duplicates
+     *                       la mappa in cui contare le occorrenze ulteriori.
+     * @return l'indice dei nodi interni.
+     */
+    private static Map<MerkleNode, NodePosition> buildBranchIndex(MerkleNode[][] levels, Map<MerkleNode, Integer> duplicates) {
+        int internalNodes = 0;
+        for (int level = 1; level < levels.length; level++)
+            internalNodes += levels[level].length;
+
+        Map<MerkleNode, NodePosition> index = new HashMap<>(Math.max(16, (int) (internalNodes / 0.75f) + 1));
+
+        for (int level = levels.length - 1; level > 0; level--)
+            for (int i = 0; i < levels[level].length; i++)
+                if(index.putIfAbsent(levels[level][i], new NodePosition(level, i)) != null)
+                    duplicates.merge(levels[level][i], 1, Integer::sum);
+
+        return index;
+    }
+
+    /**
+     * Restituisce l'altezza di un albero con il numero di foglie dato, ovvero
+     * il logaritmo in base 2 arrotondato per eccesso, calcolato senza
+     * approssimazioni in virgola mobile.
+     *
+     * @param width
+     *                  il numero di foglie, almeno 1.
+     * @return l'altezza dell'albero.
+     */
+    static int heightOf(int width) {
+        return 32 - Integer.numberOfLeadingZeros(width - 1);
+    }
+
+    /**
+     * Calcola i nodi di posizione [from, to) di un livello a partire da quelli
+     * del livello inferiore. Due nodi adiacenti vengono combinati concatenando
+     * i loro hash; l'eventuale ultimo nodo senza fratello viene combinato da
+     * solo, ricalcolando l'hash a partire dal suo. Gli hash vengono combinati
+     * direttamente dalla loro forma binaria.
+     *
+     * @param levels
+     *                   gli array dei livelli dell'albero
+     * @param level
+     *                   il livello da calcolare, almeno 1
+     * @param from
+     *                   posizione del primo nodo da calcolare
+     * @param to
+     *                   posizione successiva all'ultimo nodo da calcolare
+     * @param hasher
+     *                   l'algoritmo degli hash
+     */
+    private static void buildParentLayer(MerkleNode[][] levels, int level, int from, int to, MerkleHasher hasher) {
+
+        MerkleNode[] children = levels[level - 1]; // Nodi del livello inferiore
+        MerkleNode[] parents = levels[level]; // Nodi del livello da calcolare
+
+        for (int i = from; i < to; i++) {
+            if(2 * i + 1 < children.length)
+                // Abbiamo due nodi per combinare gli hash
+                parents[i] = combine(children[2 * i], children[2 * i + 1], hasher);
+            else
+                // in questo caso l'hash combinato è il nuovo hash calcolato dall'hash dell'unico nodo
+                parents[i] = combine(children[2 * i], null, hasher);
+        }
+    }
+
+    /**
+     * Crea il nodo padre di due nodi, combinando i loro hash. Se il figlio
+     * destro è null l'hash del padre viene ricalcolato a partire solamente da
+     * quello del figlio sinistro.
+     *
+     * @param left
+     *                  il figlio sinistro.
+     * @param right
+     *                   il figlio destro, null se mancante.
+     * @param hasher
+     *                   l'algoritmo degli hash.
+     * @return il nodo padre.
+     */
+    private static MerkleNode combine(MerkleNode left, MerkleNode right, MerkleHasher hasher) {
+        byte[] rightHash = (right != null) ? right.getDigest() : EMPTY_HASH;
+        return new MerkleNode(hasher.combine(left.getDigest(), rightHash), left, right);
+    }
+
+    /**
+     * Task che calcola il nodo di un dato livello e posizione dell'albero,
+     * scrivendo nei relativi array di livello tutti i nodi del suo
+     * sottoalbero. Al di sopra del livello di cutoff i due sottoalberi figli
+     * vengono calcolati in parallelo; dal livello di cutoff in giù il
+     * sottoalbero viene costruito sequenzialmente, livello per livello.
+     */
+    private static class SubtreeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final MerkleNode[][] levels; // Livelli dell'albero, condivisi
+
+        private final MerkleHasher hasher; // Algoritmo degli hash
+
+        private final int level; // Livello del nodo da calcolare
+
+        private final int index; // Posizione del nodo nel suo livello
+
+        private final int cutoffLevel; // Livello dei sottoalberi sequenziali
+
+        SubtreeTask(MerkleNode[][] levels, MerkleHasher hasher, int level, int index, int cutoffLevel) {
+            this.levels = levels;
+            this.hasher = hasher;
+            this.level = level;
+            this.index = index;
+            this.cutoffLevel = cutoffLevel;
+        }
+
+        @Override
+        protected void compute() {
+
+            if(level <= cutoffLevel) {
+                // Ogni livello l del sottoalbero occupa le posizioni
+                // [index * 2^(level - l), (index + 1) * 2^(level - l))
+                for (int l = 1; l <= level; l++) {
+                    long from = (long) index << (level - l);
+                    long to = Math.min((long) (index + 1) << (level - l), levels[l].length);
+                    buildParentLayer(levels, l, (int) from, (int) to, hasher);
                 }
+                return;
             }
 
-            // Quantità di nodi al livello corrente
-            nodesCurrentLevel = nodesLayer.size();
-        }
+            SubtreeTask leftTask = new SubtreeTask(levels, hasher, level - 1, 2 * index, cutoffLevel);
 
-        this.root = nodesLayer.get(0);
-        this.width = hashList.getSize();
+            // Il figlio destro esiste solo se è presente nel livello inferiore
+            if(2 * index + 1 < levels[level - 1].length)
+                invokeAll(leftTask, new SubtreeTask(levels, hasher, level - 1, 2 * index + 1, cutoffLevel));
+            else
+                leftTask.compute();
+
+            buildParentLayer(levels, level, index, index + 1, hasher);
+        }
     }
 
     /**
@@ -110,6 +480,26 @@ public class MerkleTree<T> {
         return root;
     }
 
+    /**
+     * Restituisce l'algoritmo usato per calcolare gli hash dell'albero.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    public MerkleHasher getHasher() {
+        return this.hasher;
+    }
+
+    /**
+     * Restituisce il funnel usato per calcolare gli hash delle foglie. Le
+     * prove dell'albero vanno verificate con lo stesso funnel, tramite
+     * {@link MerkleProof#proveValidityOfData(Object, Funnel)}.
+     *
+     * @return il funnel dei dati.
+     */
+    public Funnel<? super T> getFunnel() {
+        return this.funnel;
+    }
+
     /**
      * Restituisce la larghezza dell'albero.
      *
@@ -126,8 +516,47 @@ public class MerkleTree<T> {
      */
     public int getHeight() {
 
-        // Altezza = log_2(nodi foglia)
-        return (int) Math.ceil(Math.log(this.width) / Math.log(2));
+        // Altezza = log_2(nodi foglia), arrotondato per eccesso
+        return heightOf(this.width);
+    }
+
+    /**
+     * Restituisce l'hash in forma binaria del nodo di un dato livello e
+     * posizione, dove il livello 0 contiene le foglie.
+     *
+     * @param level
+     *                  il livello del nodo.
+     * @param index
+     *                  la posizione del nodo nel suo livello.
+     * @return l'hash del nodo, da non modificare.
+     */
+    byte[] getNodeDigest(int level, int index) {
+        return this.levels[level][index].getDigest();
+    }
+
+    /**
+     * Restituisce la posizione della prima occorrenza di una foglia, senza
+     * ricalcolare l'hash del dato.
+     *
+     * @param leaf
+     *                 il nodo foglia da cercare.
+     * @return la posizione della prima occorrenza, -1 se la foglia non è
+     *         presente.
+     */
+    int getIndexOfLeaf(MerkleNode leaf) {
+        Integer index = this.leafIndex.get(leaf);
+        return (index != null) ? index : -1;
+    }
+
+    /**
+     * Restituisce la prova di Merkle per la foglia di posizione data.
+     *
+     * @param index
+     *                  la posizione valida della foglia.
+     * @return la prova di Merkle per la foglia.
+     */
+    MerkleProof getMerkleProofAt(int index) {
+        return merkleProofGenerator(0, index);
     }
 
     /**
@@ -156,13 +585,33 @@ public class MerkleTree<T> {
         
         if(branch == null)
             throw new IllegalArgumentException("branch passato a getIndexOfData() è null!");
-        if(!(validateBranch(branch)))
+        NodePosition position = findPosition(branch);
+        if(position == null)
             throw new IllegalArgumentException("branch passato a getIndexOfData() non è parte dell'albero!");
         if(data == null)
             throw new IllegalArgumentException("data passato a getIndexOfData() è null!");
 
-        // trova indice di data dal branch
-        return getIndex(branch, HashUtil.dataToHash(data), 0);
+        // Intervallo [first, last) delle foglie coperte dal branch
+        int first = position.index << position.level;
+        int last = (int) Math.min((long) (position.index + 1) << position.level, this.width);
+
+        // Prima occorrenza del dato nell'albero
+        MerkleNode dataNode = new MerkleNode(this.hasher.dataDigest(data, this.funnel));
+        Integer index = this.leafIndex.get(dataNode);
+
+        if(index == null || index >= last)
+            // Dato non presente nell'albero o presente solo dopo il branch
+            return -1;
+        if(index >= first)
+            return index - first;
+
+        // La prima occorrenza precede il branch, ma il dato potrebbe essere
+        // ripetuto al suo interno: si cercano solamente le foglie del branch
+        for (int i = first; i < last; i++)
+            if(this.levels[0][i].equals(dataNode))
+                return i - first;
+
+        return -1;
     }
 
     /**
@@ -184,42 +633,10 @@ public class MerkleTree<T> {
         if(data == null)
             throw new IllegalArgumentException("data passato a getIndexOfData() è null!");
         
-        // Trova indice di data dal nodo root
-        return getIndexOfData(this.root, data);
-    }
-
-    /**
-     * Trova l'indice di un dato elemento.
-     * Ricerca ricorsivamente tra tutte le foglie, se la foglia controllata non corrisponde al dato
-     * allora viene incrementato l'indice. Se la foglia corrisponde al dato, allora viene salvato l'indice
-     * 
-     * @param node
-     *              Nodo in cui si sta cercando, root dell'albero in cui cercare
-     * @param dataHash
-     *              Hash da cercare nei nodi foglia
-     * @param nodesOnLeft
-     *              Nodi alla sinistra del nodo node nel livello attuale
-     * 
-     * @return l'indice del dato nell'albero; -1 se il dato non è presente.
-     */
-    private int getIndex(MerkleNode node, String dataHash, int nodesOnLeft){
-        // Casi base
-        if(node == null)
-            return -1;
-        if(node.isLeaf() && node.getHash().equals(dataHash)) 
-            // Nodo trovato
-            return nodesOnLeft;
-        
-
-        // Caso ricorsivo
-        // Cerca indice di dataHash nel sotto albero sinistro
-        int index = getIndex(node.getLeft(), dataHash, nodesOnLeft*2);
-        if(index > -1)
-            // L'hash cercato si trova nel sotto albero sinistro, quindi ritorna il suo indice
-            return index;
+        // Cerca la foglia del dato nell'indice delle foglie
+        Integer index = this.leafIndex.get(new MerkleNode(this.hasher.dataDigest(data, this.funnel)));
 
-        // Cerca indice di dataHash nel sotto albero destro
-        return getIndex(node.getRight(), dataHash, nodesOnLeft*2+1);
+        return (index != null) ? index : -1;
     }
 
     /**
@@ -250,40 +667,30 @@ public class MerkleTree<T> {
      * @return true se il sottoalbero di Merkle è valido; false altrimenti.
      */
     public boolean validateBranch(MerkleNode branch) {
-        
-        // Creazione lista contenente i nodi in cui cercare partendo dal root
-        List<MerkleNode> list = new LinkedList<>();
-        list.add(this.root);
-
-
-        while(!list.isEmpty()) {
-            // Finchè la lista list ha qualche nodo allora bisogna controllare se un hash corrisponde a
-            // quello del branch
 
-            if(list.get(0).equals(branch))
-                // Branch trovato 
-                return true;
+        // Il branch è valido se la sua posizione è presente negli indici
+        return findPosition(branch) != null;
+    }
 
-            
-            if(!list.get(0).isLeaf()) {
-                // Aggiunta figli del nodo corrente alla lista, e rimozione del nodo
-                if(list.get(0).getLeft() != null && list.get(0).getRight() != null){
-                    // Figlio destro e sinistro
-                    list.add( list.get(0).getLeft() );
-                    list.add( list.remove(0).getRight() );
-                }
+    /**
+     * Restituisce la posizione nell'albero del primo nodo con lo stesso hash
+     * del nodo fornito, considerando i livelli dal root verso le foglie e
+     * ciascun livello da sinistra a destra. La ricerca avviene in tempo
+     * costante attraverso gli indici dei nodi interni e delle foglie.
+     *
+     * @param node
+     *                 il nodo da cercare.
+     * @return la posizione del nodo; null se nessun nodo dell'albero ha lo
+     *         stesso hash.
+     */
+    private NodePosition findPosition(MerkleNode node) {
 
-                else
-                    // Solo figlio sinistro
-                    list.add( list.remove(0).getLeft() );
-            }
-            else
-                // Rimozione foglia
-                list.remove(0);
-        }
+        NodePosition position = this.branchIndex.get(node);
+        if(position != null)
+            return position;
 
-        // Branch non trovato
-        return false;
+        Integer leaf = this.leafIndex.get(node);
+        return (leaf != null) ? new NodePosition(0, leaf) : null;
     }
 
     /**
@@ -319,7 +726,9 @@ public class MerkleTree<T> {
      * da sinistra a destra (e quindi l'ordine degli elementi forniti alla
      * costruzione). Se l'albero fornito ha una struttura diversa, possibilmente
      * a causa di una quantità diversa di elementi con cui è stato costruito e,
-     * quindi, non rappresenta gli stessi dati, viene lanciata un'eccezione.
+     * quindi, non rappresenta gli stessi dati, viene lanciata un'eccezione;
+     * per confrontare alberi di larghezze diverse si usa
+     * {@link #diff(MerkleTree)}.
      *
      * @param otherTree
      *                      l'altro Merkle Tree.
@@ -343,6 +752,45 @@ public class MerkleTree<T> {
         return invalidDataSet;
     }
 
+    /**
+     * Restituisce la prova di consistenza tra l'albero costruito sulle prime
+     * oldWidth foglie di questo albero e questo albero, che permette di
+     * verificare, conoscendo solamente i due root, che il primo è un prefisso
+     * del secondo (vedi {@link MerkleConsistencyProof}).
+     *
+     * @param oldWidth
+     *                     il numero di foglie dell'albero precedente.
+     * @return la prova di consistenza.
+     * @throws IllegalArgumentException
+     *                                      se oldWidth non è compreso tra 1 e
+     *                                      la larghezza di questo albero.
+     */
+    public MerkleConsistencyProof getConsistencyProof(int oldWidth) {
+        return MerkleConsistencyProof.generate(NodeSource.of(this), oldWidth);
+    }
+
+    /**
+     * Confronta questo albero, considerato la versione precedente, con una
+     * versione successiva che può avere una larghezza diversa. Le foglie
+     * aggiunte o rimosse in fondo vengono riportate come intervallo, mentre
+     * nel prefisso comune vengono trovate le foglie modificate scendendo
+     * solamente nei sottoalberi diversi (vedi {@link MerkleTreeDiff}).
+     *
+     * @param otherTree
+     *                      la versione successiva dell'albero.
+     * @return le differenze tra i due alberi.
+     * @throws IllegalArgumentException
+     *                                      se l'altro albero è null o usa un
+     *                                      algoritmo di hash diverso.
+     */
+    public MerkleTreeDiff diff(MerkleTree<T> otherTree) {
+
+        if(otherTree == null)
+            throw new IllegalArgumentException("otherTree passato a diff() è null!");
+
+        return MerkleTreeDiff.between(NodeSource.of(this), NodeSource.of(otherTree));
+    }
+
     /**
      * Trova ricorsivamente gli indici degli elementi di dati non validi in un
      * dato Merkle Tree, secondo questo Merkle Tree.
@@ -406,16 +854,47 @@ public class MerkleTree<T> {
         
         if(data == null)
             throw new IllegalArgumentException("data passato a getMerkleProof è null!");
-        if(!this.validateData(data))
+
+        int index = this.getIndexOfData(data);
+        if(index == -1)
             throw new IllegalArgumentException("data passato a getMerkleProof non è parte dell'albero!");
 
-        // Lista dei nodi. [Foglia -> ... -> Root]
-        List<MerkleNode> path = new ArrayList<>();
-        // Generazione path
-        getPathToRoot(this.root, HashUtil.dataToHash(data), path);
+        // Generazione MerkleProof risalendo dalla foglia al root
+        return merkleProofGenerator(0, index);
+    }
+
+    /**
+     * Genera la prova di Merkle per il nodo di un dato livello e posizione,
+     * risalendo fino al root attraverso gli array dei livelli. Per ogni
+     * livello il fratello del nodo corrente si trova nella posizione adiacente
+     * (a destra se la posizione è pari, a sinistra se è dispari); se il
+     * fratello destro non esiste viene usato l'hash vuoto.
+     *
+     * @param level
+     *                  il livello del nodo per cui generare la prova
+     * @param index
+     *                  la posizione del nodo nel suo livello
+     *
+     * @return MerkleProof per il nodo indicato
+     */
+    private MerkleProof merkleProofGenerator(int level, int index) {
+
+        int height = this.levels.length - 1;
+        MerkleProof merkleProof = new MerkleProof(this.root.getDigest(), height - level, this.hasher);
+
+        for (int l = level; l < height; l++, index /= 2) {
+            MerkleNode[] nodes = this.levels[l];
+
+            if(index % 2 == 0)
+                // Il nodo corrente è un figlio sinistro, quindi il fratello si trova a destra
+                // se il fratello non esiste allora il suo hash è quello vuoto
+                merkleProof.addHash( (index + 1 < nodes.length)? nodes[index + 1].getDigest() : EMPTY_HASH, false);
+            else
+                // Il nodo corrente è un figlio destro, quindi il fratello si trova a sinistra
+                merkleProof.addHash( nodes[index - 1].getDigest(), true);
+        }
 
-        // Generazione MerkleProof
-        return merkleProofGenerator(path, this.getHeight());
+        return merkleProof;
     }
 
     /**
@@ -441,57 +920,327 @@ public class MerkleTree<T> {
         
         if(branch == null)
             throw new IllegalArgumentException("branch passato a getMerkleProof null!");
-        if(!this.validateBranch(branch))
+        NodePosition position = findPosition(branch);
+        if(position == null)
             throw new IllegalArgumentException("branch passato a getMerkleProof non è parte dell'albero!");
-        
-        // Lista dei nodi. [Branch -> ... -> Root]
-        List<MerkleNode> path = new ArrayList<>();
-        // Generazione path
-        getPathToRoot(this.root, branch.getHash(), path);
-        
-        // Generazione MerkleProof
-        return merkleProofGenerator(path, path.size()-1);
+
+        // Generazione MerkleProof risalendo dal branch al root
+        return merkleProofGenerator(position.level, position.index);
     }
 
     /**
-     * Genera la prova di Merkle per un dato nodo
-     * 
-     * @param path
-     *              Lista della path dal nodo per cui bisogna fare la MerkleProof
-     *              fino al root
-     * @param size
-     *              Dimensione della MerkleProof
-     * 
-     * @return MerkleProof per il nodo iniziale della lista path
+     * Restituisce una prova di Merkle multipla per le foglie di posizione
+     * data. La prova contiene solamente gli hash dei fratelli che non possono
+     * essere ricalcolati a partire dalle foglie provate, ciascuno una sola
+     * volta, quindi per foglie adiacenti è molto più piccola dell'insieme
+     * delle singole prove.
+     *
+     * @param indices
+     *                    le posizioni delle foglie da provare, in qualunque
+     *                    ordine e anche ripetute.
+     * @return la prova di Merkle multipla per le foglie.
+     * @throws IllegalArgumentException
+     *                                      se l'array è null, vuoto o contiene
+     *                                      una posizione non compresa tra 0 e
+     *                                      la larghezza dell'albero esclusa.
      */
-    private MerkleProof merkleProofGenerator(List<MerkleNode> path, int size) {
+    public MerkleMultiProof getMerkleMultiProof(int[] indices) {
+
+        if(indices == null)
+            throw new IllegalArgumentException("indices passato a getMerkleMultiProof() è null!");
+        if(indices.length == 0)
+            throw new IllegalArgumentException("indices passato a getMerkleMultiProof() è vuoto!");
 
-        MerkleProof merkleProof = new MerkleProof(this.root.getHash(), size);
+        // Posizioni ordinate e senza ripetizioni
+        int[] positions = indices.clone();
+        Arrays.sort(positions);
+        int count = 0;
+        for (int position : positions) {
+            if(position < 0 || position >= this.width)
+                throw new IllegalArgumentException("indices passato a getMerkleMultiProof() contiene una posizione non valida!");
+            if(count == 0 || positions[count - 1] != position)
+                positions[count++] = position;
+        }
+        int[] leaves = Arrays.copyOf(positions, count);
+
+        // Fratelli non ricalcolabili, livello per livello come nella verifica
+        List<MerkleNode> siblings = new ArrayList<>();
+        for (int level = 0; level < this.levels.length - 1; level++) {
+            MerkleNode[] nodes = this.levels[level];
+            int parents = 0;
 
-        // Nodo figlio e nodo padre
-        MerkleNode child = null, parent = null;
+            for (int i = 0; i < count; i++) {
+                int position = positions[i];
 
-        for (MerkleNode merkleNode : path) {
-            if(parent == null){
-                // Nodo foglia per cui creare il proof
-                parent = merkleNode;
-                continue;
+                if(position % 2 == 1)
+                    // Il fratello sinistro non è noto, altrimenti sarebbe già stato combinato
+                    siblings.add(nodes[position - 1]);
+                else if(position + 1 < nodes.length) {
+                    if(i + 1 < count && positions[i + 1] == position + 1)
+                        // Il fratello destro è noto
+                        i++;
+                    else
+                        siblings.add(nodes[position + 1]);
+                }
+
+                positions[parents++] = position / 2;
             }
+            count = parents;
+        }
 
-            child = parent;      // Children
-            parent = merkleNode; // Parent
+        int hashLength = this.hasher.getDigestLength();
+        byte[] siblingHashes = new byte[siblings.size() * hashLength];
+        for (int i = 0; i < siblings.size(); i++)
+            System.arraycopy(siblings.get(i).getDigest(), 0, siblingHashes, i * hashLength, hashLength);
 
-            if(parent.getLeft() == child)
-                // Il figlio sinistro del parent corrisponde al nodo precedente visitato
-                // Quindi il fratello si trova a destra, se il fratello è null allora il suo hash è la stringa vuota
-                merkleProof.addHash( (parent.getRight() != null)? parent.getRight().getHash() : "", false);
+        return new MerkleMultiProof(this.root.getDigest(), this.width, leaves, siblingHashes, this.hasher);
+    }
+
+    /**
+     * Restituisce una prova di Merkle multipla per la prima occorrenza di
+     * ciascuno dei dati forniti. I dati vanno poi validati nell'ordine delle
+     * posizioni restituite da {@link MerkleMultiProof#getIndices()}.
+     *
+     * @param data
+     *                 i dati da provare.
+     * @return la prova di Merkle multipla per i dati.
+     * @throws IllegalArgumentException
+     *                                      se la collezione è null, vuota,
+     *                                      contiene un dato null o un dato non
+     *                                      presente nell'albero.
+     */
+    public MerkleMultiProof getMerkleMultiProof(Collection<? extends T> data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a getMerkleMultiProof() è null!");
+
+        int[] indices = new int[data.size()];
+        int i = 0;
+        for (T element : data) {
+            if(element == null)
+                throw new IllegalArgumentException("data passato a getMerkleMultiProof() contiene un dato null!");
+            indices[i] = getIndexOfData(element);
+            if(indices[i] == -1)
+                throw new IllegalArgumentException("data passato a getMerkleMultiProof() contiene un dato non presente!");
+            i++;
+        }
+
+        return getMerkleMultiProof(indices);
+    }
+
+    /**
+     * Sostituisce il dato di una foglia, ricalcolando solamente gli hash dei
+     * nodi sul cammino dalla foglia al root. I nodi sostituiti non vengono
+     * modificati, quindi i riferimenti ottenuti in precedenza (ad esempio il
+     * vecchio root) restano validi per il vecchio contenuto dell'albero.
+     *
+     * @param index
+     *                    la posizione della foglia da aggiornare.
+     * @param newData
+     *                    il nuovo dato della foglia.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o l'indice non è
+     *                                      compreso tra 0 e la larghezza
+     *                                      dell'albero esclusa.
+     */
+    public void updateLeaf(int index, T newData) {
+
+        if(newData == null)
+            throw new IllegalArgumentException("newData passato a updateLeaf() è null!");
+        if(index < 0 || index >= this.width)
+            throw new IllegalArgumentException("index passato a updateLeaf() non è una posizione valida!");
+
+        replaceLeaf(index, new MerkleNode(this.hasher.dataDigest(newData, this.funnel)));
+
+        // Ricalcolo dei nodi sul cammino dalla foglia al root
+        for (int level = 1; level < this.levels.length; level++) {
+            index /= 2;
+            replaceBranch(level, index, combineChildren(level, index));
+        }
+
+        this.root = this.levels[this.levels.length - 1][0];
+    }
+
+    /**
+     * Sostituisce i dati di più foglie, ricalcolando solamente gli hash dei
+     * nodi sui cammini dalle foglie al root. Ogni antenato comune a più
+     * foglie aggiornate viene ricalcolato una sola volta, procedendo livello
+     * per livello dalle foglie verso il root. Se la mappa è vuota l'albero non
+     * viene modificato.
+     *
+     * @param updates
+     *                    mappa che associa alla posizione di ogni foglia da
+     *                    aggiornare il suo nuovo dato.
+     * @throws IllegalArgumentException
+     *                                      se la mappa è null, contiene un
+     *                                      dato null o una posizione non
+     *                                      compresa tra 0 e la larghezza
+     *                                      dell'albero esclusa.
+     */
+    public void updateLeaves(Map<Integer, T> updates) {
+
+        if(updates == null)
+            throw new IllegalArgumentException("updates passato a updateLeaves() è null!");
+
+        // Controllo di tutti gli aggiornamenti prima di modificare l'albero
+        int[] positions = new int[updates.size()];
+        int count = 0;
+        for (Map.Entry<Integer, T> entry : updates.entrySet()) {
+            Integer index = entry.getKey();
+            if(index == null || index < 0 || index >= this.width)
+                throw new IllegalArgumentException("updates passato a updateLeaves() contiene una posizione non valida!");
+            if(entry.getValue() == null)
+                throw new IllegalArgumentException("updates passato a updateLeaves() contiene un dato null!");
+            positions[count++] = index;
+        }
+
+        if(count == 0)
+            return;
+
+        Arrays.sort(positions);
+        for (int index : positions)
+            replaceLeaf(index, new MerkleNode(this.hasher.dataDigest(updates.get(index), this.funnel)));
+
+        // A ogni livello le posizioni dei padri sono ordinate, quindi quelle
+        // condivise da più figli sono adiacenti e vengono calcolate una volta
+        for (int level = 1; level < this.levels.length; level++) {
+            int parents = 0;
+            for (int i = 0; i < count; i++) {
+                int parent = positions[i] / 2;
+                if(parents == 0 || positions[parents - 1] != parent)
+                    positions[parents++] = parent;
+            }
+            count = parents;
+
+            for (int i = 0; i < count; i++)
+                replaceBranch(level, positions[i], combineChildren(level, positions[i]));
+        }
+
+        this.root = this.levels[this.levels.length - 1][0];
+    }
+
+    /**
+     * Calcola il nodo di un livello a partire dai figli presenti attualmente
+     * nel livello inferiore.
+     *
+     * @param level
+     *                  il livello del nodo, almeno 1.
+     * @param index
+     *                  la posizione del nodo nel suo livello.
+     * @return il nuovo nodo.
+     */
+    private MerkleNode combineChildren(int level, int index) {
+        MerkleNode[] children = this.levels[level - 1];
+        MerkleNode right = (2 * index + 1 < children.length) ? children[2 * index + 1] : null;
+        return combine(children[2 * index], right, this.hasher);
+    }
+
+    /**
+     * Sostituisce la foglia di posizione index aggiornando l'indice delle
+     * foglie. Se la foglia sostituita era la prima occorrenza di un hash
+     * ripetuto, l'occorrenza successiva viene cercata nelle foglie seguenti;
+     * se i dati sono distinti l'aggiornamento avviene in tempo costante.
+     *
+     * @param index
+     *                  la posizione della foglia.
+     * @param node
+     *                  la nuova foglia.
+     */
+    private void replaceLeaf(int index, MerkleNode node) {
+        MerkleNode[] leaves = this.levels[0];
+        MerkleNode old = leaves[index];
+        leaves[index] = node;
+
+        // Rimozione della vecchia foglia dall'indice
+        Integer extra = this.leafDuplicates.get(old);
+        if(extra == null)
+            this.leafIndex.remove(old);
+        else {
+            if(extra == 1)
+                this.leafDuplicates.remove(old);
             else
-                // Il figlio destro del parent corrisponde al nodo precedente visitato
-                // Quindi il fratello si trova a sinistra
-                merkleProof.addHash( parent.getLeft().getHash(), true);
+                this.leafDuplicates.put(old, extra - 1);
+
+            if(this.leafIndex.get(old) == index) {
+                // Ricerca dell'occorrenza successiva, che esiste sicuramente
+                int next = index + 1;
+                while (!leaves[next].equals(old))
+                    next++;
+                this.leafIndex.put(old, next);
+            }
         }
-        
-        return merkleProof;
+
+        // Inserimento della nuova foglia nell'indice
+        Integer first = this.leafIndex.putIfAbsent(node, index);
+        if(first != null) {
+            this.leafDuplicates.merge(node, 1, Integer::sum);
+            if(index < first)
+                this.leafIndex.put(node, index);
+        }
+    }
+
+    /**
+     * Sostituisce il nodo interno di posizione index del livello dato,
+     * aggiornando l'indice dei nodi interni come per le foglie. Le occorrenze
+     * sono ordinate dal root verso le foglie e, in ogni livello, da sinistra
+     * verso destra.
+     *
+     * @param level
+     *                  il livello del nodo, almeno 1.
+     * @param index
+     *                  la posizione del nodo nel suo livello.
+     * @param node
+     *                  il nuovo nodo.
+     */
+    private void replaceBranch(int level, int index, MerkleNode node) {
+        MerkleNode old = this.levels[level][index];
+        this.levels[level][index] = node;
+
+        // Rimozione del vecchio nodo dall'indice
+        Integer extra = this.branchDuplicates.get(old);
+        if(extra == null)
+            this.branchIndex.remove(old);
+        else {
+            if(extra == 1)
+                this.branchDuplicates.remove(old);
+            else
+                this.branchDuplicates.put(old, extra - 1);
+
+            NodePosition first = this.branchIndex.get(old);
+            if(first.level == level && first.index == index)
+                this.branchIndex.put(old, nextBranchOccurrence(old, level, index));
+        }
+
+        // Inserimento del nuovo nodo nell'indice
+        NodePosition position = new NodePosition(level, index);
+        NodePosition first = this.branchIndex.putIfAbsent(node, position);
+        if(first != null) {
+            this.branchDuplicates.merge(node, 1, Integer::sum);
+            if(level > first.level || (level == first.level && index < first.index))
+                this.branchIndex.put(node, position);
+        }
+    }
+
+    /**
+     * Cerca l'occorrenza di un nodo interno successiva alla posizione data,
+     * proseguendo nel livello e poi nei livelli inferiori.
+     *
+     * @param node
+     *                  il nodo da cercare, presente in almeno un'altra
+     *                  posizione successiva.
+     * @param level
+     *                  il livello da cui iniziare la ricerca.
+     * @param index
+     *                  la posizione dopo la quale iniziare la ricerca.
+     * @return la posizione dell'occorrenza successiva.
+     */
+    private NodePosition nextBranchOccurrence(MerkleNode node, int level, int index) {
+        for (int l = level; l > 0; l--)
+            for (int i = (l == level) ? index + 1 : 0; i < this.levels[l].length; i++)
+                if(this.levels[l][i].equals(node))
+                    return new NodePosition(l, i);
+
+        throw new IllegalStateException("Occorrenza successiva di un nodo ripetuto non trovata");
     }
 
     /**
@@ -507,10 +1256,26 @@ public class MerkleTree<T> {
      *                  La lista dal nodo che contiene dataHash fino al root
      */
     public void getPathToRoot(MerkleNode currentNode, String dataHash, List<MerkleNode> path) {
+        getPathToRoot(currentNode, new MerkleNode(dataHash), path);
+    }
+
+    /**
+     * Metodo ricorsivo che restituisce il cammino da un nodo con lo stesso
+     * hash del nodo target al dato nodo. Se l'hash di target non è presente
+     * nell'albero come hash di un discendente, viene restituita una lista vuota.
+     * 
+     * @param currentNode
+     *                  Il nodo corrente da cui iniziare la ricerca
+     * @param target
+     *                  Il nodo con l'hash da cercare
+     * @param path
+     *                  La lista dal nodo che contiene l'hash di target fino al root
+     */
+    private void getPathToRoot(MerkleNode currentNode, MerkleNode target, List<MerkleNode> path) {
 
         // Caso base 
-        if(currentNode.getHash().equals(dataHash)){
-            // hash nodo foglia uguale a hash da cercare
+        if(currentNode.equals(target)){
+            // hash nodo uguale a hash da cercare
             path.add(currentNode);
             return;
         }
@@ -520,7 +1285,7 @@ public class MerkleTree<T> {
 
         // Caso ricorsivo
         // Aggiungi la strada sinistra
-        getPathToRoot(currentNode.getLeft(), dataHash, path);
+        getPathToRoot(currentNode.getLeft(), target, path);
         if(!path.isEmpty()){
             // La lista non è più vuota, quindi la path è a sinistra
             path.add(currentNode);
@@ -530,10 +1295,10 @@ public class MerkleTree<T> {
 
         if(currentNode.getRight() != null)
             // Aggiungi la strada destra
-            getPathToRoot(currentNode.getRight(), dataHash, path);
+            getPathToRoot(currentNode.getRight(), target, path);
             
         if(!path.isEmpty())
             // La lista non è più vuota, quindi la path è a destra
             path.add(currentNode);
     }
-}
\ No newline at end of file
+}
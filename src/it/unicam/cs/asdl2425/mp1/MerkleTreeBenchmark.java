@@ -0,0 +1,144 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Misura il tempo di costruzione e la memoria allocata per foglia di un
+ * MerkleTree costruito a partire da HashLinkedList di dimensione crescente.
+ * Per ogni dimensione la lista viene generata prima della misurazione, in modo
+ * che vengano considerati solo il tempo e le allocazioni del costruttore.
+ *
+ * Il main può essere chiamato con le dimensioni da misurare come parametri di
+ * linea di comando. Se non è presente nessun parametro allora vengono usate
+ * 10^4, 10^6 e 10^7 foglie. Per 10^7 foglie è necessario avviare la JVM con
+ * un heap adeguato (ad esempio -Xmx6g).
+ *
+ * Per confronto viene misurato anche il tempo della costruzione parallela, con
+ * tanti thread quanti i processori disponibili, e il tempo necessario ad
+ * aggiungere gli stessi elementi uno alla volta a un MerkleMountainRange.
+ * Per l'OffHeapMerkleTree vengono misurati il tempo di costruzione e i byte
+ * allocati nello heap per foglia, che escludono la memoria diretta degli
+ * hash.
+ *
+ * I risultati sono stampati sullo standard output in formato .csv (Comma
+ * Separated Values).
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public class MerkleTreeBenchmark {
+
+    /**
+     * Dimensioni misurate se non viene passato nessun parametro.
+     */
+    private static final int[] DEFAULT_SIZES = { 10_000, 1_000_000, 10_000_000 };
+
+    /**
+     * Numero di costruzioni di riscaldamento eseguite prima di ogni misura,
+     * per dare modo al JIT di compilare il codice di costruzione.
+     */
+    private static final int WARMUP_ROUNDS = 3;
+
+    /**
+     * Numero massimo di foglie dei sottoalberi costruiti sequenzialmente nella
+     * costruzione parallela.
+     */
+    private static final int SEQUENTIAL_CUTOFF = 4096;
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        // Riscaldamento su una lista piccola
+        HashLinkedList<Long> warmupList = buildList(10_000);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            new MerkleTree<>(warmupList);
+            new OffHeapMerkleTree<>(warmupList).close();
+        }
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("leaves,buildTimeMs,nsPerLeaf,bytesPerLeaf,parallelBuildTimeMs,mmrAppendTimeMs,offHeapBuildTimeMs,offHeapBytesPerLeaf");
+        for (int n : sizes) {
+            HashLinkedList<Long> list = buildList(n);
+            System.gc();
+
+            long startBytes = allocatedBytes();
+            long startTimeNano = System.nanoTime();
+            MerkleTree<Long> tree = new MerkleTree<>(list);
+            long elapsedTimeNano = System.nanoTime() - startTimeNano;
+            long bytes = allocatedBytes() - startBytes;
+
+            // Il root viene usato per evitare che la costruzione venga eliminata
+            if (tree.getRoot() == null)
+                throw new IllegalStateException("Root null");
+
+            tree = null;
+            System.gc();
+
+            startTimeNano = System.nanoTime();
+            tree = new MerkleTree<>(list, parallelism, SEQUENTIAL_CUTOFF);
+            long parallelTimeNano = System.nanoTime() - startTimeNano;
+
+            tree = null;
+            System.gc();
+
+            startTimeNano = System.nanoTime();
+            MerkleMountainRange<Long> mmr = new MerkleMountainRange<>();
+            for (long i = 0; i < n; i++)
+                mmr.add(i * 111L);
+            if (mmr.getRoot() == null)
+                throw new IllegalStateException("Root null");
+            long mmrTimeNano = System.nanoTime() - startTimeNano;
+
+            mmr = null;
+            System.gc();
+
+            startBytes = allocatedBytes();
+            startTimeNano = System.nanoTime();
+            long offHeapTimeNano;
+            long offHeapBytes;
+            try (OffHeapMerkleTree<Long> offHeapTree = new OffHeapMerkleTree<>(list)) {
+                offHeapTimeNano = System.nanoTime() - startTimeNano;
+                offHeapBytes = allocatedBytes() - startBytes;
+                if (offHeapTree.getRoot() == null)
+                    throw new IllegalStateException("Root null");
+            }
+
+            System.out.println(n + "," + (elapsedTimeNano / 1_000_000) + ","
+                    + (elapsedTimeNano / n) + "," + (bytes / n) + ","
+                    + (parallelTimeNano / 1_000_000) + "," + (mmrTimeNano / 1_000_000) + ","
+                    + (offHeapTimeNano / 1_000_000) + "," + (offHeapBytes / n));
+        }
+    }
+
+    /**
+     * Crea una HashLinkedList con n elementi distinti.
+     *
+     * @param n
+     *              numero di elementi della lista
+     * @return la lista creata
+     */
+    private static HashLinkedList<Long> buildList(int n) {
+        HashLinkedList<Long> list = new HashLinkedList<>();
+        for (long i = 0; i < n; i++)
+            list.addAtTail(i * 111L);
+        return list;
+    }
+
+    /**
+     * Restituisce il numero di byte allocati finora dal thread corrente, se la
+     * JVM lo supporta; altrimenti restituisce 0.
+     *
+     * @return i byte allocati dal thread corrente
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+        return 0;
+    }
+}
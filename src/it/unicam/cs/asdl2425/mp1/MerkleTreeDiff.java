@@ -0,0 +1,168 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Differenze tra una versione precedente e una versione successiva di un
+ * albero di Merkle, anche di larghezze diverse. Le foglie delle due versioni
+ * vengono divise in un prefisso comune, lungo quanto la versione più corta,
+ * in cui sono riportati gli indici delle foglie modificate, e in un suffisso
+ * presente solamente in una delle due versioni, riportato come intervallo di
+ * foglie aggiunte o rimosse.
+ *
+ * Il prefisso comune viene scomposto nei sottoalberi completi e allineati
+ * corrispondenti ai bit della sua lunghezza, al più uno per livello: questi
+ * sottoalberi hanno la stessa struttura nelle due versioni, quindi i loro
+ * root si possono confrontare con O(log n) confronti, indipendentemente dal
+ * nodo che li contiene nei due alberi. Si scende poi solamente nei
+ * sottoalberi diversi, come in {@link MerkleTree#findInvalidDataIndices}, e
+ * le foglie del suffisso non vengono lette.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public final class MerkleTreeDiff {
+
+    /**
+     * Numero di foglie della versione precedente.
+     */
+    private final int oldWidth;
+
+    /**
+     * Numero di foglie della versione successiva.
+     */
+    private final int newWidth;
+
+    /**
+     * Indici delle foglie del prefisso comune con hash diversi.
+     */
+    private final SortedSet<Integer> modifiedIndices;
+
+    private MerkleTreeDiff(int oldWidth, int newWidth, SortedSet<Integer> modifiedIndices) {
+        this.oldWidth = oldWidth;
+        this.newWidth = newWidth;
+        this.modifiedIndices = Collections.unmodifiableSortedSet(modifiedIndices);
+    }
+
+    /**
+     * Calcola le differenze tra due versioni di un albero, lette per livello e
+     * posizione.
+     *
+     * @param oldTree
+     *                    la versione precedente.
+     * @param newTree
+     *                    la versione successiva.
+     * @return le differenze tra le due versioni.
+     * @throws IllegalArgumentException
+     *                                      se le due versioni usano algoritmi
+     *                                      di hash diversi.
+     */
+    static MerkleTreeDiff between(NodeSource oldTree, NodeSource newTree) {
+
+        if(!oldTree.hasher().equals(newTree.hasher()))
+            throw new IllegalArgumentException("otherTree usa un algoritmo di hash diverso!");
+
+        int commonWidth = Math.min(oldTree.width(), newTree.width());
+        int hashLength = oldTree.hasher().getDigestLength();
+        byte[] oldDigest = new byte[hashLength];
+        byte[] newDigest = new byte[hashLength];
+        SortedSet<Integer> modifiedIndices = new TreeSet<>();
+
+        // Un sottoalbero completo di 2^level foglie per ogni bit della
+        // lunghezza del prefisso, da sinistra verso destra
+        int start = 0;
+        for (int level = Integer.SIZE - 2; level >= 0; level--)
+            if((commonWidth & (1 << level)) != 0) {
+                compareSubtree(oldTree, newTree, level, start >> level, oldDigest, newDigest, modifiedIndices);
+                start += 1 << level;
+            }
+
+        return new MerkleTreeDiff(oldTree.width(), newTree.width(), modifiedIndices);
+    }
+
+    /**
+     * Confronta il nodo di un dato livello e posizione nelle due versioni e,
+     * se sono diversi, scende nei figli. Il nodo è il root di un sottoalbero
+     * completo, quindi i figli esistono sempre in entrambe le versioni.
+     */
+    private static void compareSubtree(NodeSource oldTree, NodeSource newTree, int level, int index,
+            byte[] oldDigest, byte[] newDigest, SortedSet<Integer> modifiedIndices) {
+        oldTree.read(level, index, oldDigest, 0);
+        newTree.read(level, index, newDigest, 0);
+        if(Arrays.equals(oldDigest, newDigest))
+            return;
+
+        if(level == 0) {
+            modifiedIndices.add(index);
+            return;
+        }
+
+        compareSubtree(oldTree, newTree, level - 1, 2 * index, oldDigest, newDigest, modifiedIndices);
+        compareSubtree(oldTree, newTree, level - 1, 2 * index + 1, oldDigest, newDigest, modifiedIndices);
+    }
+
+    /**
+     * Restituisce il numero di foglie comuni alle due versioni, ovvero la
+     * larghezza della versione più corta.
+     *
+     * @return la lunghezza del prefisso comune.
+     */
+    public int getCommonWidth() {
+        return Math.min(this.oldWidth, this.newWidth);
+    }
+
+    /**
+     * Restituisce gli indici, in ordine crescente, delle foglie del prefisso
+     * comune che hanno hash diversi nelle due versioni.
+     *
+     * @return l'insieme non modificabile degli indici delle foglie modificate.
+     */
+    public SortedSet<Integer> getModifiedIndices() {
+        return this.modifiedIndices;
+    }
+
+    /**
+     * Restituisce il numero di foglie aggiunte in fondo alla versione
+     * successiva, che occupano gli indici da {@link #getCommonWidth()} incluso
+     * alla larghezza della versione successiva esclusa.
+     *
+     * @return il numero di foglie aggiunte, 0 se la versione successiva non è
+     *         più lunga.
+     */
+    public int getAppendedCount() {
+        return Math.max(0, this.newWidth - this.oldWidth);
+    }
+
+    /**
+     * Restituisce il numero di foglie rimosse dalla fine della versione
+     * precedente, che occupavano gli indici da {@link #getCommonWidth()}
+     * incluso alla larghezza della versione precedente esclusa.
+     *
+     * @return il numero di foglie rimosse, 0 se la versione successiva non è
+     *         più corta.
+     */
+    public int getRemovedCount() {
+        return Math.max(0, this.oldWidth - this.newWidth);
+    }
+
+    /**
+     * Restituisce true se le due versioni hanno le stesse foglie.
+     *
+     * @return true se non ci sono differenze; false altrimenti.
+     */
+    public boolean isEmpty() {
+        return this.oldWidth == this.newWidth && this.modifiedIndices.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("Modificate: ").append(this.modifiedIndices);
+        if(getAppendedCount() > 0)
+            result.append(", aggiunte: [").append(getCommonWidth()).append(", ").append(this.newWidth).append(')');
+        if(getRemovedCount() > 0)
+            result.append(", rimosse: [").append(getCommonWidth()).append(", ").append(this.oldWidth).append(')');
+        return result.toString();
+    }
+}
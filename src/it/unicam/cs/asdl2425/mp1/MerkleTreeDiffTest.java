@@ -0,0 +1,140 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per {@link MerkleTreeDiff}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testMatchesLeafComparison()}: Verifica, per molte coppie di larghezze e foglie
+ * modificate, che il diff coincida con il confronto diretto delle foglie.</li>
+ *
+ * <li>{@link #testSameWidth()}: Verifica che con la stessa larghezza il diff coincida con
+ * {@link MerkleTree#findInvalidDataIndices}.</li>
+ *
+ * <li>{@link #testLogarithmicComparisons()}: Verifica che un prefisso invariato venga riconosciuto con
+ * al più un confronto per bit della sua lunghezza, senza leggere il suffisso.</li>
+ *
+ * <li>{@link #testFlatTrees()}: Verifica il diff tra alberi nello heap e fuori dallo heap.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per alberi null o con
+ * algoritmi diversi.</li>
+ * </ul>
+ */
+class MerkleTreeDiffTest {
+
+    private static HashLinkedList<Integer> buildList(int width, Set<Integer> modified) {
+        return TestLists.of(MerkleHasher.MD5, width, i -> modified.contains(i) ? -i - 1 : i * 5);
+    }
+
+    private static MerkleTree<Integer> buildTree(int width, Set<Integer> modified) {
+        return new MerkleTree<>(buildList(width, modified));
+    }
+
+    @Test
+    void testMatchesLeafComparison() {
+        int[][] modifications = { {}, { 0 }, { 2, 5 }, { 7, 8, 9 }, { 1, 3, 11, 16 } };
+
+        for (int oldWidth = 1; oldWidth <= 18; oldWidth++)
+            for (int newWidth = 1; newWidth <= 18; newWidth++)
+                for (int[] modification : modifications) {
+                    Set<Integer> modified = new TreeSet<>();
+                    for (int index : modification)
+                        modified.add(index);
+
+                    MerkleTreeDiff diff = buildTree(oldWidth, Set.of()).diff(buildTree(newWidth, modified));
+
+                    Set<Integer> expected = new TreeSet<>();
+                    for (int index : modified)
+                        if(index < Math.min(oldWidth, newWidth))
+                            expected.add(index);
+
+                    String message = oldWidth + " -> " + newWidth + ", " + modified;
+                    assertEquals(expected, diff.getModifiedIndices(), message);
+                    assertEquals(Math.min(oldWidth, newWidth), diff.getCommonWidth(), message);
+                    assertEquals(Math.max(0, newWidth - oldWidth), diff.getAppendedCount(), message);
+                    assertEquals(Math.max(0, oldWidth - newWidth), diff.getRemovedCount(), message);
+                    assertEquals(oldWidth == newWidth && expected.isEmpty(), diff.isEmpty(), message);
+                }
+    }
+
+    @Test
+    void testSameWidth() {
+        MerkleTree<Integer> tree = buildTree(100, Set.of());
+        MerkleTree<Integer> other = buildTree(100, Set.of(0, 33, 99));
+
+        assertEquals(tree.findInvalidDataIndices(other), tree.diff(other).getModifiedIndices());
+        assertTrue(tree.diff(buildTree(100, Set.of())).isEmpty());
+        assertEquals("Modificate: [0, 33, 99]", tree.diff(other).toString());
+        assertEquals("Modificate: [4], rimosse: [50, 100)", tree.diff(buildTree(50, Set.of(4))).toString());
+    }
+
+    @Test
+    void testLogarithmicComparisons() {
+        int oldWidth = 1000;
+        MerkleTree<Integer> oldTree = buildTree(oldWidth, Set.of());
+        MerkleTree<Integer> newTree = buildTree(1 << 14, Set.of());
+        int[] reads = new int[1];
+
+        NodeSource counting = new NodeSource() {
+            NodeSource tree = NodeSource.of(newTree);
+
+            public int width() {
+                return this.tree.width();
+            }
+
+            public MerkleHasher hasher() {
+                return this.tree.hasher();
+            }
+
+            public void read(int level, int index, byte[] dst, int off) {
+                assertTrue((index + 1) << level <= oldWidth, "Letto un nodo fuori dal prefisso comune");
+                reads[0]++;
+                this.tree.read(level, index, dst, off);
+            }
+        };
+
+        MerkleTreeDiff diff = MerkleTreeDiff.between(NodeSource.of(oldTree), counting);
+        assertTrue(diff.getModifiedIndices().isEmpty());
+        assertEquals((1 << 14) - oldWidth, diff.getAppendedCount());
+        assertEquals(Integer.bitCount(oldWidth), reads[0]);
+    }
+
+    @Test
+    void testFlatTrees() {
+        MerkleTree<Integer> heap = buildTree(40, Set.of());
+
+        try (OffHeapMerkleTree<Integer> longer = new OffHeapMerkleTree<>(buildList(57, Set.of(12, 39, 50)));
+                OffHeapMerkleTree<Integer> shorter = new OffHeapMerkleTree<>(buildList(21, Set.of()))) {
+            MerkleTreeDiff diff = heap.diff(new MerkleTree<>(buildList(57, Set.of(12, 39, 50))));
+            assertEquals(Set.of(12, 39), diff.getModifiedIndices());
+            assertEquals(17, diff.getAppendedCount());
+
+            MerkleTreeDiff flat = longer.diff(shorter);
+            assertEquals(Set.of(12), flat.getModifiedIndices());
+            assertEquals(36, flat.getRemovedCount());
+            assertEquals(Set.of(12, 39), longer.diff(heap).getModifiedIndices());
+        }
+    }
+
+    @Test
+    void testInvalidArguments() {
+        MerkleTree<Integer> tree = buildTree(4, Set.of());
+        HashLinkedList<Integer> sha = new HashLinkedList<>(MerkleHasher.SHA_256);
+        sha.addAtTail(0);
+
+        assertThrows(IllegalArgumentException.class, () -> tree.diff(null));
+        assertThrows(IllegalArgumentException.class, () -> tree.diff(new MerkleTree<>(sha)));
+
+        try (OffHeapMerkleTree<Integer> flat = new OffHeapMerkleTree<>(buildList(4, Set.of()))) {
+            assertThrows(IllegalArgumentException.class, () -> flat.diff((FlatMerkleTree<Integer>) null));
+            assertThrows(IllegalArgumentException.class, () -> flat.diff((MerkleTree<Integer>) null));
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Classe di utilità per confrontare due alberi di Merkle che si trovano in
+ * processi diversi, scambiando gli hash dei sottoalberi su un canale NIO,
+ * ad esempio un SocketChannel, invece dell'intero insieme dei dati.
+ *
+ * I due lati eseguono lo stesso protocollo, uno come iniziatore e l'altro
+ * come risponditore. Dopo un'intestazione con cui si controlla che i due
+ * alberi abbiano la stessa struttura e lo stesso algoritmo, gli alberi
+ * vengono visitati un livello alla volta a partire dal root: l'iniziatore
+ * invia gli hash dei nodi del livello corrente, raggruppati in blocchi di al
+ * più {@link #DEFAULT_BATCH_SIZE} nodi, e il risponditore risponde con una
+ * maschera di bit che indica quali nodi sono diversi. Entrambi i lati scendono
+ * solamente nei figli dei nodi diversi, quindi il numero di scambi è pari al
+ * numero di blocchi inviati, al più uno per livello se i nodi diversi sono
+ * pochi, e i byte scambiati dipendono dal numero di foglie diverse e non dal
+ * numero totale di foglie.
+ *
+ * Al termine entrambi i lati ottengono lo stesso insieme di indici delle
+ * foglie diverse, come {@link MerkleTree#findInvalidDataIndices}. Il canale
+ * deve essere bloccante e non viene chiuso.
+ *
+ * Il formato dei messaggi è il seguente, con valori in ordine big-endian:
+ *
+ * <pre>
+ * intestazione:  "MKSY" (4 byte), versione (1), identificativo dell'algoritmo
+ *                (1), lunghezza h di un hash (1), riservato (1), numero di
+ *                foglie (4); inviata prima dall'iniziatore e poi dal
+ *                risponditore
+ * blocco:        numero n di nodi (4), n hash di h byte
+ * risposta:      ceil(n / 8) byte, il bit i % 8 del byte i / 8 vale 1 se il
+ *                nodo i del blocco è diverso
+ * </pre>
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public class MerkleTreeSync {
+
+    /**
+     * Versione del protocollo.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Numero massimo predefinito di nodi inviati in un blocco.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    /**
+     * I primi 4 byte dell'intestazione, "MKSY" in ASCII.
+     */
+    private static final int MAGIC = 0x4D4B5359;
+
+    /**
+     * Lunghezza in byte dell'intestazione.
+     */
+    private static final int HEADER_LENGTH = 12;
+
+    /**
+     * Confronta un albero con quello di un altro processo, collegato al canale
+     * dato, che esegue {@link #respond(MerkleTree, ByteChannel)}.
+     *
+     * @param tree
+     *                    l'albero locale.
+     * @param channel
+     *                    il canale bloccante collegato all'altro processo.
+     * @return l'insieme degli indici delle foglie diverse.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null, il canale
+     *                                      non è bloccante o l'altro albero ha
+     *                                      una struttura o un algoritmo
+     *                                      diversi.
+     * @throws IOException
+     *                                      se la comunicazione non riesce o
+     *                                      l'altro processo non rispetta il
+     *                                      protocollo.
+     */
+    public static Set<Integer> initiate(MerkleTree<?> tree, ByteChannel channel) throws IOException {
+        return sync(NodeSource.of(tree), channel, true, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Confronta un albero con quello di un altro processo, collegato al canale
+     * dato, che esegue {@link #initiate(MerkleTree, ByteChannel)}.
+     *
+     * @param tree
+     *                    l'albero locale.
+     * @param channel
+     *                    il canale bloccante collegato all'altro processo.
+     * @return l'insieme degli indici delle foglie diverse.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null, il canale
+     *                                      non è bloccante o l'altro albero ha
+     *                                      una struttura o un algoritmo
+     *                                      diversi.
+     * @throws IOException
+     *                                      se la comunicazione non riesce o
+     *                                      l'altro processo non rispetta il
+     *                                      protocollo.
+     */
+    public static Set<Integer> respond(MerkleTree<?> tree, ByteChannel channel) throws IOException {
+        return sync(NodeSource.of(tree), channel, false, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Confronta un albero fuori dallo heap con quello di un altro processo,
+     * come {@link #initiate(MerkleTree, ByteChannel)}.
+     *
+     * @param tree
+     *                    l'albero locale.
+     * @param channel
+     *                    il canale bloccante collegato all'altro processo.
+     * @return l'insieme degli indici delle foglie diverse.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null, il canale
+     *                                      non è bloccante o l'altro albero ha
+     *                                      una struttura o un algoritmo
+     *                                      diversi.
+     * @throws IOException
+     *                                      se la comunicazione non riesce o
+     *                                      l'altro processo non rispetta il
+     *                                      protocollo.
+     */
+    public static Set<Integer> initiate(FlatMerkleTree<?> tree, ByteChannel channel) throws IOException {
+        return sync(NodeSource.of(tree), channel, true, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Confronta un albero fuori dallo heap con quello di un altro processo,
+     * come {@link #respond(MerkleTree, ByteChannel)}.
+     *
+     * @param tree
+     *                    l'albero locale.
+     * @param channel
+     *                    il canale bloccante collegato all'altro processo.
+     * @return l'insieme degli indici delle foglie diverse.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null, il canale
+     *                                      non è bloccante o l'altro albero ha
+     *                                      una struttura o un algoritmo
+     *                                      diversi.
+     * @throws IOException
+     *                                      se la comunicazione non riesce o
+     *                                      l'altro processo non rispetta il
+     *                                      protocollo.
+     */
+    public static Set<Integer> respond(FlatMerkleTree<?> tree, ByteChannel channel) throws IOException {
+        return sync(NodeSource.of(tree), channel, false, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Esegue il protocollo su un canale, da uno dei due lati.
+     *
+     * @param tree
+     *                      l'albero locale.
+     * @param channel
+     *                      il canale collegato all'altro processo.
+     * @param initiator
+     *                      true per il lato iniziatore, false per il
+     *                      risponditore.
+     * @param batchSize
+     *                      il numero massimo di nodi di un blocco; deve
+     *                      coincidere sui due lati.
+     * @return l'insieme degli indici delle foglie diverse.
+     */
+    static Set<Integer> sync(NodeSource tree, ByteChannel channel, boolean initiator, int batchSize)
+            throws IOException {
+
+        if(channel == null)
+            throw new IllegalArgumentException("channel passato alla sincronizzazione è null!");
+        if(channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking())
+            throw new IllegalArgumentException("channel passato alla sincronizzazione non è bloccante!");
+        if(batchSize < 1)
+            throw new IllegalArgumentException("batchSize passato alla sincronizzazione non è positivo!");
+
+        exchangeHeaders(tree, channel, initiator);
+
+        int width = tree.width();
+        int hashLength = tree.hasher().getDigestLength();
+        Set<Integer> invalidIndices = new HashSet<>();
+
+        ByteBuffer batch = ByteBuffer.allocate(Integer.BYTES + batchSize * hashLength);
+        ByteBuffer mask = ByteBuffer.allocate((batchSize + 7) / 8);
+        byte[] mine = new byte[hashLength];
+
+        // Nodi da confrontare nel livello corrente, inizialmente il solo root
+        int[] frontier = { 0 };
+        int frontierSize = 1;
+
+        for (int level = MerkleTree.heightOf(width); frontierSize > 0; level--) {
+            int childCount = (level > 0) ? FlatMerkleTree.levelSize(width, level - 1) : 0;
+            int[] next = new int[(level > 0) ? Math.min(2 * frontierSize, childCount) : 0];
+            int nextSize = 0;
+
+            for (int start = 0; start < frontierSize; start += batchSize) {
+                int count = Math.min(batchSize, frontierSize - start);
+                batch.clear();
+                mask.clear().limit((count + 7) / 8);
+
+                if(initiator) {
+                    batch.putInt(count);
+                    for (int i = 0; i < count; i++) {
+                        tree.read(level, frontier[start + i], mine, 0);
+                        batch.put(mine);
+                    }
+                    writeFully(channel, batch.flip());
+                    readFully(channel, mask);
+                }
+                else {
+                    readFully(channel, batch.limit(Integer.BYTES));
+                    if(batch.getInt(0) != count)
+                        throw new IOException("Blocco di " + batch.getInt(0) + " nodi invece di " + count + "!");
+                    readFully(channel, batch.limit(Integer.BYTES + count * hashLength));
+
+                    for (int i = 0; i < count; i++) {
+                        tree.read(level, frontier[start + i], mine, 0);
+                        int offset = Integer.BYTES + i * hashLength;
+                        if(!Arrays.equals(mine, 0, hashLength, batch.array(), offset, offset + hashLength))
+                            mask.put(i / 8, (byte) (mask.get(i / 8) | 1 << (i % 8)));
+                    }
+                    writeFully(channel, mask);
+                }
+
+                // Discesa nei figli dei nodi diversi, uguale sui due lati
+                for (int i = 0; i < count; i++) {
+                    if((mask.get(i / 8) & 1 << (i % 8)) == 0)
+                        continue;
+
+                    int node = frontier[start + i];
+                    if(level == 0)
+                        invalidIndices.add(node);
+                    else {
+                        next[nextSize++] = 2 * node;
+                        if(2 * node + 1 < childCount)
+                            next[nextSize++] = 2 * node + 1;
+                    }
+                }
+
+                // La maschera viene azzerata per il blocco successivo
+                Arrays.fill(mask.array(), (byte) 0);
+            }
+
+            frontier = next;
+            frontierSize = nextSize;
+        }
+
+        return invalidIndices;
+    }
+
+    /**
+     * Scambia le intestazioni, prima dall'iniziatore e poi dal risponditore,
+     * e controlla che i due alberi siano confrontabili. Il risponditore invia
+     * la propria intestazione anche se gli alberi non sono confrontabili, in
+     * modo che entrambi i lati se ne accorgano.
+     */
+    private static void exchangeHeaders(NodeSource tree, ByteChannel channel, boolean initiator) throws IOException {
+        MerkleHasher hasher = tree.hasher();
+        ByteBuffer local = ByteBuffer.allocate(HEADER_LENGTH);
+        local.putInt(MAGIC).put(VERSION).put(hasher.getId()).put((byte) hasher.getDigestLength()).put((byte) 0)
+                .putInt(tree.width()).flip();
+        ByteBuffer remote = ByteBuffer.allocate(HEADER_LENGTH);
+
+        if(initiator) {
+            writeFully(channel, local);
+            readFully(channel, remote);
+        }
+        else {
+            readFully(channel, remote);
+            writeFully(channel, local);
+        }
+
+        if(remote.getInt(0) != MAGIC)
+            throw new IOException("L'altro processo non esegue il protocollo di sincronizzazione!");
+        if(remote.get(4) != VERSION)
+            throw new IOException("Versione del protocollo non supportata: " + remote.get(4));
+        if(remote.get(5) != hasher.getId() || remote.get(6) != (byte) hasher.getDigestLength())
+            throw new IllegalArgumentException("L'altro albero usa un algoritmo di hash diverso!");
+        if(remote.getInt(8) != tree.width())
+            throw new IllegalArgumentException("La struttura dell'altro albero non corrisponde alla struttura di questo albero");
+    }
+
+    /**
+     * Scrive sul canale tutti i byte rimanenti del buffer.
+     */
+    private static void writeFully(ByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * Legge dal canale fino a riempire il buffer.
+     *
+     * @throws EOFException
+     *                          se il canale viene chiuso prima.
+     */
+    private static void readFully(ByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            if(channel.read(buffer) < 0)
+                throw new EOFException("Il canale è stato chiuso durante la sincronizzazione!");
+    }
+}
@@ -0,0 +1,227 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per {@link MerkleTreeSync}. I due lati del protocollo
+ * vengono eseguiti in thread diversi, collegati da una connessione TCP
+ * sull'interfaccia di loopback.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testMatchesFindInvalidDataIndices()}: Verifica, per diverse larghezze e foglie
+ * modificate, che entrambi i lati ottengano gli stessi indici di
+ * {@link MerkleTree#findInvalidDataIndices}, anche con blocchi più piccoli del livello.</li>
+ *
+ * <li>{@link #testFlatTrees()}: Verifica la sincronizzazione tra un albero nello heap e un albero fuori
+ * dallo heap.</li>
+ *
+ * <li>{@link #testTrafficDependsOnDifferences()}: Verifica che i byte scambiati per una sola foglia
+ * diversa siano molto meno degli hash di tutte le foglie.</li>
+ *
+ * <li>{@link #testIncompatibleTrees()}: Verifica che entrambi i lati rifiutino alberi con larghezza o
+ * algoritmo diversi.</li>
+ *
+ * <li>{@link #testProtocolErrors()}: Verifica che vengano segnalati un'intestazione non valida e la
+ * chiusura anticipata del canale.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per parametri non
+ * validi.</li>
+ * </ul>
+ */
+class MerkleTreeSyncTest {
+
+    /**
+     * Lato della sincronizzazione eseguito in un thread.
+     */
+    private interface Side {
+        Set<Integer> run(ByteChannel channel) throws IOException;
+    }
+
+    private ServerSocketChannel server;
+
+    private SocketChannel initiatorChannel;
+
+    private SocketChannel responderChannel;
+
+    @BeforeEach
+    void connect() throws IOException {
+        this.server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        this.initiatorChannel = SocketChannel.open(this.server.getLocalAddress());
+        this.responderChannel = this.server.accept();
+    }
+
+    @AfterEach
+    void disconnect() throws IOException {
+        this.initiatorChannel.close();
+        this.responderChannel.close();
+        this.server.close();
+    }
+
+    private static MerkleTree<Integer> buildTree(MerkleHasher hasher, int width, Set<Integer> modified) {
+        HashLinkedList<Integer> list = new HashLinkedList<>(hasher);
+        for (int i = 0; i < width; i++)
+            list.addAtTail(modified.contains(i) ? -i - 1 : i * 3);
+        return new MerkleTree<>(list);
+    }
+
+    /**
+     * Esegue il risponditore in un altro thread e l'iniziatore in questo,
+     * restituendo i risultati dei due lati.
+     */
+    private Set<?>[] run(Side initiator, Side responder) throws Exception {
+        CompletableFuture<Set<Integer>> response = CompletableFuture.supplyAsync(() -> {
+            try {
+                return responder.run(this.responderChannel);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+
+        Set<Integer> initiated = initiator.run(this.initiatorChannel);
+        return new Set<?>[] { initiated, response.get(10, TimeUnit.SECONDS) };
+    }
+
+    @Test
+    void testMatchesFindInvalidDataIndices() throws Exception {
+        int[][] cases = { { 1 }, { 1, 0 }, { 2 }, { 5, 4 }, { 9, 0, 8 }, { 64 }, { 1000, 3, 500, 999 },
+                { 37, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 20, 30, 36 } };
+
+        for (int[] testCase : cases)
+            for (int batchSize : new int[] { MerkleTreeSync.DEFAULT_BATCH_SIZE, 1, 3 }) {
+                int width = testCase[0];
+                Set<Integer> modified = new HashSet<>();
+                for (int i = 1; i < testCase.length; i++)
+                    modified.add(testCase[i]);
+
+                MerkleTree<Integer> local = buildTree(MerkleHasher.MD5, width, Collections.emptySet());
+                MerkleTree<Integer> remote = buildTree(MerkleHasher.MD5, width, modified);
+
+                Set<?>[] results = run(
+                        channel -> MerkleTreeSync.sync(NodeSource.of(local), channel, true, batchSize),
+                        channel -> MerkleTreeSync.sync(NodeSource.of(remote), channel, false, batchSize));
+
+                assertEquals(modified, results[0], width + " foglie, blocchi di " + batchSize);
+                assertEquals(modified, results[1]);
+                assertEquals(local.findInvalidDataIndices(remote), results[0]);
+            }
+    }
+
+    @Test
+    void testFlatTrees() throws Exception {
+        MerkleTree<Integer> heap = buildTree(MerkleHasher.SHA_256, 100, Set.of(42, 77));
+        HashLinkedList<Integer> list = new HashLinkedList<>(MerkleHasher.SHA_256);
+        for (int i = 0; i < 100; i++)
+            list.addAtTail(i * 3);
+
+        try (OffHeapMerkleTree<Integer> offHeap = new OffHeapMerkleTree<>(list)) {
+            Set<?>[] results = run(channel -> MerkleTreeSync.initiate(offHeap, channel),
+                    channel -> MerkleTreeSync.respond(heap, channel));
+
+            assertEquals(Set.of(42, 77), results[0]);
+            assertEquals(Set.of(42, 77), results[1]);
+        }
+    }
+
+    @Test
+    void testTrafficDependsOnDifferences() throws Exception {
+        int width = 1 << 14;
+        MerkleTree<Integer> local = buildTree(MerkleHasher.MD5, width, Collections.emptySet());
+        MerkleTree<Integer> remote = buildTree(MerkleHasher.MD5, width, Set.of(12345));
+        long[] written = new long[1];
+
+        // Canale che conta i byte scritti dall'iniziatore
+        ByteChannel counting = new ByteChannel() {
+            public int read(ByteBuffer dst) throws IOException {
+                return MerkleTreeSyncTest.this.initiatorChannel.read(dst);
+            }
+
+            public int write(ByteBuffer src) throws IOException {
+                int count = MerkleTreeSyncTest.this.initiatorChannel.write(src);
+                written[0] += count;
+                return count;
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        };
+
+        Set<?>[] results = run(channel -> MerkleTreeSync.initiate(local, counting),
+                channel -> MerkleTreeSync.respond(remote, channel));
+
+        assertEquals(Set.of(12345), results[0]);
+        assertTrue(written[0] < 100L * local.getHasher().getDigestLength(),
+                "Byte inviati: " + written[0]);
+    }
+
+    @Test
+    void testIncompatibleTrees() throws Exception {
+        MerkleTree<Integer> local = buildTree(MerkleHasher.MD5, 8, Collections.emptySet());
+
+        for (MerkleTree<Integer> remote : List.of(buildTree(MerkleHasher.MD5, 9, Collections.emptySet()),
+                buildTree(MerkleHasher.SHA_256, 8, Collections.emptySet()))) {
+            CompletableFuture<Set<Integer>> response = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return MerkleTreeSync.respond(remote, this.responderChannel);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            });
+
+            assertThrows(IllegalArgumentException.class, () -> MerkleTreeSync.initiate(local, this.initiatorChannel));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> response.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        }
+    }
+
+    @Test
+    void testProtocolErrors() throws Exception {
+        MerkleTree<Integer> tree = buildTree(MerkleHasher.MD5, 8, Collections.emptySet());
+
+        this.initiatorChannel.write(ByteBuffer.wrap(new byte[12]));
+        assertThrows(IOException.class, () -> MerkleTreeSync.respond(tree, this.responderChannel));
+
+        this.initiatorChannel.write(ByteBuffer.wrap(new byte[] { 0x4D, 0x4B }));
+        this.initiatorChannel.shutdownOutput();
+        assertThrows(EOFException.class, () -> MerkleTreeSync.respond(tree, this.responderChannel));
+    }
+
+    @Test
+    void testInvalidArguments() throws IOException {
+        MerkleTree<Integer> tree = buildTree(MerkleHasher.MD5, 4, Collections.emptySet());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> MerkleTreeSync.initiate((MerkleTree<?>) null, this.initiatorChannel));
+        assertThrows(IllegalArgumentException.class,
+                () -> MerkleTreeSync.respond((FlatMerkleTree<?>) null, this.responderChannel));
+        assertThrows(IllegalArgumentException.class, () -> MerkleTreeSync.initiate(tree, null));
+
+        this.initiatorChannel.configureBlocking(false);
+        assertThrows(IllegalArgumentException.class, () -> MerkleTreeSync.initiate(tree, this.initiatorChannel));
+    }
+}
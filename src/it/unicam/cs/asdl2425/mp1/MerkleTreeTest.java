@@ -4,10 +4,16 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -26,6 +32,16 @@ import static org.junit.jupiter.api.Assertions.*;
  * <li>{@link #testConstructorWithValidHashList3()}: Verifica la corretta costruzione di un MerkleTree
  * con una lista di hash valida di 1 elemento.</li>
  * 
+ * <li>{@link #testConstructorRootWithOddWidth()}: Verifica che il root di un MerkleTree
+ * con un numero dispari di foglie coincida con quello calcolato a mano, ricalcolando
+ * l'hash dei nodi senza fratello.</li>
+ * 
+ * <li>{@link #testParallelConstructorMatchesSequential()}: Verifica che la costruzione parallela
+ * produca lo stesso root di quella sequenziale per diverse larghezze e soglie sequenziali.</li>
+ * 
+ * <li>{@link #testParallelConstructorInvalidArguments()}: Verifica che la costruzione parallela
+ * lanci un'eccezione per parallelismo o soglia sequenziale non positivi.</li>
+ * 
  * <li>{@link #testConstructorWithEmptyHashList()}: Verifica che venga lanciata un'eccezione
  * per una lista vuota.</li>
  * 
@@ -42,12 +58,19 @@ import static org.junit.jupiter.api.Assertions.*;
  * {@link #testGetIndexOfData4()}: Verificano che l'indice di un dato venga calcolato correttamente
  * o restituisca -1 per dati non presenti.</li>
  * 
+ * <li>{@link #testGetIndexOfDataDuplicates()}: Verifica che per un dato ripetuto venga
+ * restituito l'indice della sua prima occorrenza.</li>
+ * 
  * <li>{@link #testGetIndexOfDataInBranch()}, {@link #testGetIndexOfDataInBranchNotPresent()}: Verificano
  * il calcolo dell'indice relativo di un dato in un branch dell'albero.</li>
  * 
  * <li>{@link #testValidateBranch1()}, {@link #testValidateBranch2()}, {@link #testValidateBranch3()},
  * {@link #testValidateBranch4()}: Verificano che i branch dell'albero siano validati correttamente.</li>
  * 
+ * <li>{@link #testBranchOperationsOnEveryNode()}: Verifica, per ogni nodo di un albero con 13 foglie,
+ * che il nodo sia un branch valido, che la sua prova di Merkle abbia la lunghezza attesa e sia valida
+ * e che l'indice di ogni sua foglia sia calcolato rispetto al branch.</li>
+ * 
  * <li>{@link #testValidateTree1()}, {@link #testValidateTree2()}, {@link #testValidateTree3()},
  * {@link #testValidateTree4()}: Verificano la validità di un MerkleTree rispetto a un altro,
  * sia in caso di alberi identici che diversi.</li>
@@ -60,6 +83,9 @@ import static org.junit.jupiter.api.Assertions.*;
  * {@link #testGetMerkleProofData3()}, {@link #testGetMerkleProofData4()}: Verificano che le prove
  * di Merkle siano generate correttamente per diversi dati nell'albero.</li>
  * 
+ * <li>{@link #testGetMerkleProofAllLeaves()}: Verifica che le prove di Merkle generate per ogni
+ * foglia di alberi di diverse larghezze siano valide.</li>
+ * 
  * <li>{@link #testGetMerkleProofDataNotPresent()}: Verifica che venga lanciata un'eccezione
  * per la richiesta di una prova di Merkle per un dato non presente.</li>
  * 
@@ -75,6 +101,15 @@ import static org.junit.jupiter.api.Assertions.*;
  * <li>{@link #testVerifyProofBranchInvalid()}: Verifica che una prova di Merkle per un branch non valido
  * venga respinta.</li>
  * 
+ * <li>{@link #testUpdateLeafMatchesRebuild()}: Verifica che l'aggiornamento di una foglia produca
+ * lo stesso root di un albero ricostruito e aggiorni l'indice dei dati.</li>
+ * 
+ * <li>{@link #testUpdateLeavesMatchesRebuild()}: Verifica che aggiornamenti multipli, anche con dati
+ * ripetuti, producano lo stesso albero di una ricostruzione, confrontando root, indici e prove.</li>
+ * 
+ * <li>{@link #testUpdateLeavesInvalidArguments()}: Verifica che vengano lanciate eccezioni per
+ * aggiornamenti con posizioni non valide o dati null, senza modificare l'albero.</li>
+ * 
  * <li>{@link #testSingleLeafTree()}: Verifica il comportamento del MerkleTree per un singolo elemento,
  * controllando larghezza, altezza e validità dei dati.</li>
  * </ul>
@@ -161,6 +196,61 @@ class MerkleTreeTest {
                 "La larghezza dell'albero dovrebbe essere 1.");
     }
 
+    @Test
+    void testConstructorRootWithOddWidth() {
+        HashLinkedList<String> oddList = new HashLinkedList<>();
+        oddList.addAtTail("Alice paga Bob");
+        oddList.addAtTail("Bob paga Charlie");
+        oddList.addAtTail("Charlie paga Diana");
+        MerkleTree<String> oddTree = new MerkleTree<>(oddList);
+
+        String left = HashUtil.computeMD5((HashUtil.dataToHash("Alice paga Bob")
+                + HashUtil.dataToHash("Bob paga Charlie")).getBytes());
+        String right = HashUtil.computeMD5(HashUtil.dataToHash("Charlie paga Diana").getBytes());
+        String expectedRoot = HashUtil.computeMD5((left + right).getBytes());
+
+        assertEquals(expectedRoot, oddTree.getRoot().getHash(),
+                "Il root dell'albero con 3 foglie non è corretto.");
+        assertNull(oddTree.getRoot().getRight().getRight(),
+                "Il nodo senza fratello dovrebbe avere solo il figlio sinistro.");
+    }
+
+    @Test
+    void testParallelConstructorMatchesSequential() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        for (int width : new int[] { 1, 2, 3, 13, 64, 100, 1000 }) {
+            HashLinkedList<Integer> list = new HashLinkedList<>();
+            for (int i = 0; i < width; i++) list.addAtTail(i);
+            MerkleTree<Integer> sequential = new MerkleTree<>(list);
+
+            for (int cutoff : new int[] { 1, 3, 16, 2000 }) {
+                MerkleTree<Integer> parallel = new MerkleTree<>(list, 4, cutoff);
+                assertEquals(sequential.getRoot().getHash(), parallel.getRoot().getHash(),
+                        "Il root parallelo dovrebbe coincidere con quello sequenziale (larghezza "
+                                + width + ", soglia " + cutoff + ").");
+                assertEquals(width, parallel.getWidth(),
+                        "La larghezza dell'albero parallelo non è corretta.");
+                assertEquals(sequential.getRoot().getHash(), new MerkleTree<>(list, pool, cutoff).getRoot().getHash(),
+                        "Il root costruito sul pool dato dovrebbe coincidere con quello sequenziale.");
+            }
+        }
+        assertFalse(pool.isShutdown(), "Il pool non dovrebbe essere chiuso dalla costruzione.");
+        pool.shutdown();
+    }
+
+    @Test
+    void testParallelConstructorInvalidArguments() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new MerkleTree<>(hashList1, 0, 16),
+                "Dovrebbe lanciare IllegalArgumentException per un parallelismo non positivo.");
+        assertThrows(IllegalArgumentException.class,
+                () -> new MerkleTree<>(hashList1, 2, 0),
+                "Dovrebbe lanciare IllegalArgumentException per una soglia non positiva.");
+        assertThrows(IllegalArgumentException.class,
+                () -> new MerkleTree<>(hashList1, (ForkJoinPool) null, 16),
+                "Dovrebbe lanciare IllegalArgumentException per un pool null.");
+    }
+
     @Test
     void testConstructorWithEmptyHashList() {
         HashLinkedList<String> emptyList = new HashLinkedList<>();
@@ -256,6 +346,19 @@ class MerkleTreeTest {
         assertEquals(-1, index, "Un dato non presente dovrebbe restituire -1.");
     }
 
+    @Test
+    void testGetIndexOfDataDuplicates() {
+        HashLinkedList<Long> duplicatesList = new HashLinkedList<>();
+        duplicatesList.addAtTail(1L);
+        duplicatesList.addAtTail(0L);
+        duplicatesList.addAtTail(2L);
+        duplicatesList.addAtTail(0L);
+        MerkleTree<Long> duplicatesTree = new MerkleTree<>(duplicatesList);
+
+        assertEquals(1, duplicatesTree.getIndexOfData(0L),
+                "L'indice di un dato ripetuto dovrebbe essere quello della prima occorrenza.");
+    }
+
     @Test
     void testGetIndexOfDataInBranch() {
         HashLinkedList<String> branchList = new HashLinkedList<>();
@@ -477,6 +580,25 @@ class MerkleTreeTest {
         assertEquals(0, proof.getLength(), "La prova di Merkle dovrebbe avere dimensione 0.");
     }
 
+    @Test
+    void testGetMerkleProofAllLeaves() {
+        for (int width : new int[] { 1, 2, 5, 13, 64, 100 }) {
+            HashLinkedList<Integer> list = new HashLinkedList<>();
+            for (int i = 0; i < width; i++) list.addAtTail(i);
+            MerkleTree<Integer> tree = new MerkleTree<>(list);
+
+            for (int i = 0; i < width; i++) {
+                MerkleProof proof = tree.getMerkleProof(i);
+                assertEquals(tree.getHeight(), proof.getLength(),
+                        "La prova di Merkle dovrebbe avere lunghezza pari all'altezza.");
+                assertTrue(proof.proveValidityOfData(i),
+                        "La prova di Merkle del dato " + i + " dovrebbe essere valida.");
+                assertEquals(i, tree.getIndexOfData(i),
+                        "L'indice del dato " + i + " non è corretto.");
+            }
+        }
+    }
+
     @Test
     void testGetMerkleProofDataNotPresent() {
         assertThrows(IllegalArgumentException.class, () -> merkleTree1.getMerkleProof("Dato non presente"),
@@ -604,4 +726,119 @@ class MerkleTreeTest {
         assertTrue(singleTree.validateData("Alice paga Bob"),
                 "Il dato dovrebbe essere valido.");
     }
+
+    @Test
+    void testBranchOperationsOnEveryNode() {
+        // Visita per livelli, dal root verso le foglie
+        List<MerkleNode> level = List.of(merkleTree2.getRoot());
+        int depth = 0;
+        while (!level.isEmpty()) {
+            List<MerkleNode> next = new ArrayList<>();
+            for (MerkleNode node : level) {
+                assertTrue(merkleTree2.validateBranch(node),
+                        "Ogni nodo dell'albero dovrebbe essere un branch valido.");
+
+                MerkleProof proof = merkleTree2.getMerkleProof(node);
+                assertEquals(depth, proof.getLength(),
+                        "La prova dovrebbe avere lunghezza pari alla profondità del nodo.");
+                assertTrue(proof.proveValidityOfBranch(node),
+                        "La prova generata per il branch dovrebbe essere valida.");
+
+                if (node.getLeft() != null)
+                    next.add(node.getLeft());
+                if (node.getRight() != null)
+                    next.add(node.getRight());
+            }
+            level = next;
+            depth++;
+        }
+
+        // Le foglie del figlio destro del root sono quelle da 8 a 12
+        MerkleNode right = merkleTree2.getRoot().getRight();
+        for (int i = 0; i < 5; i++)
+            assertEquals(i, merkleTree2.getIndexOfData(right, (i + 9) * 111L),
+                    "L'indice dovrebbe essere relativo alla prima foglia del branch.");
+        assertEquals(-1, merkleTree2.getIndexOfData(right, 111L),
+                "Un dato fuori dal branch non dovrebbe essere trovato.");
+    }
+
+    @Test
+    void testUpdateLeafMatchesRebuild() {
+        MerkleNode oldRoot = merkleTree2.getRoot();
+        merkleTree2.updateLeaf(12, 5000L);
+
+        HashLinkedList<Long> expectedList = new HashLinkedList<>();
+        for (int i = 1; i <= 12; i++) expectedList.addAtTail(111L * i);
+        expectedList.addAtTail(5000L);
+        MerkleTree<Long> expected = new MerkleTree<>(expectedList);
+
+        assertEquals(expected.getRoot(), merkleTree2.getRoot(),
+                "Il root dovrebbe coincidere con quello dell'albero ricostruito.");
+        assertNotEquals(oldRoot, merkleTree2.getRoot(), "Il root dovrebbe essere cambiato.");
+        assertEquals(12, merkleTree2.getIndexOfData(5000L), "Il nuovo dato dovrebbe essere in posizione 12.");
+        assertFalse(merkleTree2.validateData(1443L), "Il dato sostituito non dovrebbe essere valido.");
+        assertFalse(merkleTree2.validateBranch(oldRoot), "Il vecchio root non dovrebbe essere un branch valido.");
+        assertTrue(merkleTree2.getMerkleProof(5000L).proveValidityOfData(5000L),
+                "La prova per il nuovo dato dovrebbe essere valida.");
+    }
+
+    @Test
+    void testUpdateLeavesMatchesRebuild() {
+        Long[] values = new Long[37];
+        HashLinkedList<Long> list = new HashLinkedList<>();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (i % 5);
+            list.addAtTail(values[i]);
+        }
+        MerkleTree<Long> tree = new MerkleTree<>(list);
+
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            Map<Integer, Long> updates = new HashMap<>();
+            for (int k = 0; k < 1 + random.nextInt(8); k++) {
+                int index = random.nextInt(values.length);
+                values[index] = (long) random.nextInt(7);
+                updates.put(index, values[index]);
+            }
+            tree.updateLeaves(updates);
+
+            HashLinkedList<Long> expectedList = new HashLinkedList<>();
+            for (Long value : values) expectedList.addAtTail(value);
+            MerkleTree<Long> expected = new MerkleTree<>(expectedList);
+
+            assertEquals(expected.getRoot(), tree.getRoot(),
+                    "Il root dovrebbe coincidere con quello dell'albero ricostruito.");
+            for (long value = 0; value < 7; value++) {
+                assertEquals(expected.getIndexOfData(value), tree.getIndexOfData(value),
+                        "L'indice della prima occorrenza dovrebbe coincidere.");
+                assertEquals(expected.getIndexOfData(tree.getRoot().getRight(), value),
+                        tree.getIndexOfData(tree.getRoot().getRight(), value),
+                        "L'indice nel branch dovrebbe coincidere.");
+            }
+            MerkleNode branch = tree.getRoot().getLeft().getRight();
+            assertTrue(tree.validateBranch(branch), "Il branch dovrebbe essere valido.");
+            assertEquals(expected.getMerkleProof(branch).getLength(), tree.getMerkleProof(branch).getLength(),
+                    "Le prove del branch dovrebbero avere la stessa lunghezza.");
+            assertTrue(tree.getMerkleProof(branch).proveValidityOfBranch(branch),
+                    "La prova del branch dovrebbe essere valida.");
+        }
+    }
+
+    @Test
+    void testUpdateLeavesInvalidArguments() {
+        MerkleNode root = merkleTree2.getRoot();
+
+        assertThrows(IllegalArgumentException.class, () -> merkleTree2.updateLeaf(13, 1L));
+        assertThrows(IllegalArgumentException.class, () -> merkleTree2.updateLeaf(-1, 1L));
+        assertThrows(IllegalArgumentException.class, () -> merkleTree2.updateLeaf(0, null));
+        assertThrows(IllegalArgumentException.class, () -> merkleTree2.updateLeaves(null));
+
+        Map<Integer, Long> updates = new HashMap<>();
+        updates.put(0, 1L);
+        updates.put(20, 2L);
+        assertThrows(IllegalArgumentException.class, () -> merkleTree2.updateLeaves(updates));
+
+        assertEquals(root, merkleTree2.getRoot(), "L'albero non dovrebbe essere stato modificato.");
+        assertEquals(0, merkleTree2.getIndexOfData(111L), "Il primo dato non dovrebbe essere stato modificato.");
+    }
 }
@@ -0,0 +1,265 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Implementazione di {@link MerkleHasher} basata su MurmurHash3 x64 a 128
+ * bit con seme 0. L'hash di 16 byte è composto dalle due metà del risultato
+ * in ordine little-endian, come nell'implementazione di riferimento. Non è un
+ * hash crittografico: è adatto a confronti e deduplicazioni tra dati non
+ * forniti da terzi, dove conta la velocità.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+final class Murmur3MerkleHasher implements MerkleHasher {
+
+    /**
+     * Lunghezza in byte di un hash.
+     */
+    private static final int DIGEST_LENGTH = 16;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * Buffer di ciascun thread per la concatenazione degli hash dei figli e
+     * per la codifica degli int.
+     */
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[2 * DIGEST_LENGTH]);
+
+    /**
+     * Sink di ciascun thread per il calcolo degli hash dei funnel.
+     */
+    private static final ThreadLocal<BufferedSink> SINK = ThreadLocal.withInitial(Murmur3Sink::new);
+
+    @Override
+    public String getName() {
+        return "Murmur3-128";
+    }
+
+    @Override
+    public byte getId() {
+        return 2;
+    }
+
+    @Override
+    public int getDigestLength() {
+        return DIGEST_LENGTH;
+    }
+
+    @Override
+    public void digestInto(byte[] input, int inOff, int inLen, byte[] out, int outOff) {
+        hash(input, inOff, inLen, out, outOff);
+    }
+
+    @Override
+    public void dataDigestInto(Object data, byte[] out, int outOff) {
+        byte[] buffer = BUFFER.get();
+        int value = data.hashCode();
+
+        buffer[0] = (byte) (value >> 24);
+        buffer[1] = (byte) (value >> 16);
+        buffer[2] = (byte) (value >> 8);
+        buffer[3] = (byte) value;
+
+        hash(buffer, 0, 4, out, outOff);
+    }
+
+    @Override
+    public <T> void dataDigestInto(T data, Funnel<? super T> funnel, byte[] out, int outOff) {
+        if(funnel == Funnel.HASH_CODE)
+            dataDigestInto(data, out, outOff);
+        else
+            BufferedSink.digest(SINK, Murmur3Sink::new, data, funnel, out, outOff);
+    }
+
+    @Override
+    public void combineInto(byte[] left, int leftOff, int leftLen, byte[] right, int rightOff, int rightLen,
+            byte[] out, int outOff) {
+        byte[] buffer = BUFFER.get();
+        if(buffer.length < leftLen + rightLen) {
+            buffer = new byte[leftLen + rightLen];
+            BUFFER.set(buffer);
+        }
+
+        // Gli input vengono copiati completamente prima di scrivere l'output
+        System.arraycopy(left, leftOff, buffer, 0, leftLen);
+        System.arraycopy(right, rightOff, buffer, leftLen, rightLen);
+        hash(buffer, 0, leftLen + rightLen, out, outOff);
+    }
+
+    /**
+     * Calcola MurmurHash3 x64 a 128 bit di una porzione di un array.
+     */
+    private static void hash(byte[] data, int off, int len, byte[] out, int outOff) {
+        long h1 = 0;
+        long h2 = 0;
+        int blocks = len / 16;
+
+        // Blocchi da 16 byte
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLongLE(data, off + i * 16);
+            long k2 = getLongLE(data, off + i * 16 + 8);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        finish(h1, h2, data, off + blocks * 16, len & 15, len, out, outOff);
+    }
+
+    /**
+     * Elabora i byte rimanenti, meno di 16, e completa il calcolo dell'hash.
+     *
+     * @param h1
+     *                   prima metà dello stato.
+     * @param h2
+     *                   seconda metà dello stato.
+     * @param data
+     *                   l'array contenente i byte rimanenti.
+     * @param tail
+     *                   la posizione dei byte rimanenti.
+     * @param tailLen
+     *                   il numero di byte rimanenti.
+     * @param len
+     *                   il numero complessivo di byte hashati.
+     * @param out
+     *                   l'array in cui scrivere l'hash.
+     * @param outOff
+     *                   la posizione di out da cui scrivere l'hash.
+     */
+    @SuppressWarnings("fallthrough")
+    private static void finish(long h1, long h2, byte[] data, int tail, int tailLen, long len, byte[] out,
+            int outOff) {
+        long k1 = 0;
+        long k2 = 0;
+        // Il fall-through è voluto: ogni caso aggiunge un byte della coda e
+        // prosegue con quelli precedenti
+        switch (tailLen) {
+            case 15: k2 ^= (long) (data[tail + 14] & 0xff) << 48;
+            case 14: k2 ^= (long) (data[tail + 13] & 0xff) << 40;
+            case 13: k2 ^= (long) (data[tail + 12] & 0xff) << 32;
+            case 12: k2 ^= (long) (data[tail + 11] & 0xff) << 24;
+            case 11: k2 ^= (long) (data[tail + 10] & 0xff) << 16;
+            case 10: k2 ^= (long) (data[tail + 9] & 0xff) << 8;
+            case 9:  k2 ^= (long) (data[tail + 8] & 0xff);
+                     h2 ^= mixK2(k2);
+            case 8:  k1 ^= (long) (data[tail + 7] & 0xff) << 56;
+            case 7:  k1 ^= (long) (data[tail + 6] & 0xff) << 48;
+            case 6:  k1 ^= (long) (data[tail + 5] & 0xff) << 40;
+            case 5:  k1 ^= (long) (data[tail + 4] & 0xff) << 32;
+            case 4:  k1 ^= (long) (data[tail + 3] & 0xff) << 24;
+            case 3:  k1 ^= (long) (data[tail + 2] & 0xff) << 16;
+            case 2:  k1 ^= (long) (data[tail + 1] & 0xff) << 8;
+            case 1:  k1 ^= (long) (data[tail] & 0xff);
+                     h1 ^= mixK1(k1);
+            default:
+        }
+
+        // Finalizzazione
+        h1 ^= len;
+        h2 ^= len;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        putLongLE(h1, out, outOff);
+        putLongLE(h2, out, outOff + 8);
+    }
+
+    /**
+     * Sink che calcola MurmurHash3 man mano che riceve i byte, elaborando
+     * quattro blocchi da 16 byte alla volta.
+     */
+    private static final class Murmur3Sink extends BufferedSink {
+
+        private long h1, h2; // Stato dell'hash
+
+        private long length; // Numero di byte elaborati
+
+        @Override
+        protected void begin() {
+            this.h1 = 0;
+            this.h2 = 0;
+            this.length = 0;
+        }
+
+        @Override
+        protected void processBlock(byte[] block) {
+            for (int off = 0; off < BLOCK_LENGTH; off += 16)
+                mixBlock(block, off);
+            this.length += BLOCK_LENGTH;
+        }
+
+        @Override
+        protected void finish(byte[] block, int length, byte[] out, int outOff) {
+            int blocks = length / 16;
+            for (int i = 0; i < blocks; i++)
+                mixBlock(block, i * 16);
+
+            Murmur3MerkleHasher.finish(this.h1, this.h2, block, blocks * 16, length & 15, this.length + length,
+                    out, outOff);
+        }
+
+        private void mixBlock(byte[] data, int off) {
+            this.h1 ^= mixK1(getLongLE(data, off));
+            this.h1 = Long.rotateLeft(this.h1, 27);
+            this.h1 += this.h2;
+            this.h1 = this.h1 * 5 + 0x52dce729;
+
+            this.h2 ^= mixK2(getLongLE(data, off + 8));
+            this.h2 = Long.rotateLeft(this.h2, 31);
+            this.h2 += this.h1;
+            this.h2 = this.h2 * 5 + 0x38495ab5;
+        }
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLongLE(byte[] data, int off) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--)
+            value = (value << 8) | (data[off + i] & 0xff);
+        return value;
+    }
+
+    private static void putLongLE(long value, byte[] out, int off) {
+        for (int i = 0; i < 8; i++) {
+            out[off + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,99 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Lettore degli hash dei nodi di un albero di Merkle per livello e posizione,
+ * insieme alla struttura dell'albero. Permette di confrontare alberi con
+ * rappresentazioni diverse, nello heap o fuori dallo heap, senza costruire
+ * oggetti per i nodi.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+interface NodeSource {
+
+    /**
+     * Restituisce il numero di foglie dell'albero.
+     *
+     * @return la larghezza dell'albero.
+     */
+    int width();
+
+    /**
+     * Restituisce l'algoritmo degli hash dell'albero.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    MerkleHasher hasher();
+
+    /**
+     * Copia l'hash del nodo di un dato livello e posizione nell'array fornito.
+     *
+     * @param level
+     *                  il livello del nodo, 0 per le foglie.
+     * @param index
+     *                  la posizione del nodo nel suo livello.
+     * @param dst
+     *                  l'array in cui copiare l'hash.
+     * @param off
+     *                  la posizione di dst da cui copiare.
+     */
+    void read(int level, int index, byte[] dst, int off);
+
+    /**
+     * Adatta un albero nello heap alla lettura degli hash per livello.
+     *
+     * @param tree
+     *                 l'albero da leggere.
+     * @return il lettore degli hash dell'albero.
+     * @throws IllegalArgumentException
+     *                                      se l'albero è null.
+     */
+    static NodeSource of(MerkleTree<?> tree) {
+
+        if(tree == null)
+            throw new IllegalArgumentException("tree passato a of() è null!");
+
+        return new NodeSource() {
+            public int width() {
+                return tree.getWidth();
+            }
+
+            public MerkleHasher hasher() {
+                return tree.getHasher();
+            }
+
+            public void read(int level, int index, byte[] dst, int off) {
+                byte[] digest = tree.getNodeDigest(level, index);
+                System.arraycopy(digest, 0, dst, off, digest.length);
+            }
+        };
+    }
+
+    /**
+     * Adatta un albero fuori dallo heap alla lettura degli hash per livello.
+     *
+     * @param tree
+     *                 l'albero da leggere.
+     * @return il lettore degli hash dell'albero.
+     * @throws IllegalArgumentException
+     *                                      se l'albero è null.
+     */
+    static NodeSource of(FlatMerkleTree<?> tree) {
+
+        if(tree == null)
+            throw new IllegalArgumentException("tree passato a of() è null!");
+
+        return new NodeSource() {
+            public int width() {
+                return tree.getWidth();
+            }
+
+            public MerkleHasher hasher() {
+                return tree.getHasher();
+            }
+
+            public void read(int level, int index, byte[] dst, int off) {
+                tree.readDigest(level, index, dst, off);
+            }
+        };
+    }
+}
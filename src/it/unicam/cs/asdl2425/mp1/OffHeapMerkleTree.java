@@ -0,0 +1,229 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+
+/**
+ * Albero di Merkle in sola lettura che mantiene gli hash di tutti i livelli in
+ * memoria diretta, fuori dallo heap, invece che in milioni di oggetti
+ * {@link MerkleNode}. Lo heap contiene solamente pochi ByteBuffer da al più
+ * 1 GiB e l'indice delle foglie, un unico array di int: il garbage collector
+ * non deve quindi visitare né copiare i nodi dell'albero, indipendentemente
+ * dal numero di foglie.
+ *
+ * L'albero offre le stesse interrogazioni di {@link MerkleTree} per root,
+ * ricerca dei dati, prove e confronto con un altro albero (vedi
+ * {@link FlatMerkleTree}). La ricerca di un dato usa un indice a
+ * indirizzamento aperto che associa all'hash di ogni foglia la posizione
+ * della sua prima occorrenza, quindi richiede tempo costante in media come
+ * in MerkleTree.
+ *
+ * L'albero va chiuso quando non serve più. Java 17 non permette di liberare
+ * esplicitamente la memoria diretta: la chiusura rilascia i riferimenti alla
+ * memoria, che viene restituita quando il garbage collector raccoglie i
+ * ByteBuffer, e impedisce ogni accesso successivo agli hash. La memoria
+ * diretta disponibile è limitata dall'opzione -XX:MaxDirectMemorySize.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ *
+ * @param <T>
+ *                il tipo di dati su cui l'albero è costruito.
+ */
+public class OffHeapMerkleTree<T> extends FlatMerkleTree<T> {
+
+    /**
+     * Numero massimo di posizioni dell'indice delle foglie. Gli alberi con
+     * almeno altrettante foglie non hanno un indice e le ricerche scorrono le
+     * foglie.
+     */
+    private static final int MAX_INDEX_CAPACITY = 1 << 30;
+
+    /**
+     * Indice delle foglie a indirizzamento aperto con scansione lineare: ogni
+     * posizione occupata contiene l'indice della prima occorrenza di una
+     * foglia più uno, 0 se la posizione è libera. Null dopo la chiusura o se
+     * l'albero è troppo grande.
+     */
+    private volatile int[] leafIndex;
+
+    /**
+     * Costruisce un albero fuori dallo heap a partire da un oggetto
+     * HashLinkedList, utilizzando direttamente gli hash presenti nella lista,
+     * il suo algoritmo di hash e il suo funnel.
+     *
+     * @param hashList
+     *                     un oggetto HashLinkedList contenente i dati e i
+     *                     relativi hash.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota.
+     * @throws OutOfMemoryError
+     *                                      se la memoria diretta non è
+     *                                      sufficiente.
+     */
+    public OffHeapMerkleTree(HashLinkedList<T> hashList) {
+        this(hashList, (hashList != null) ? hashList.getHasher() : null,
+                (hashList != null) ? hashList.getFunnel() : null);
+    }
+
+    /**
+     * Costruisce un albero fuori dallo heap a partire da un oggetto
+     * HashLinkedList, calcolando gli hash delle foglie con l'algoritmo e il
+     * funnel forniti come {@link MerkleTree#MerkleTree(HashLinkedList,
+     * MerkleHasher, Funnel)}. Se algoritmo e funnel coincidono con quelli
+     * della lista vengono usati direttamente gli hash presenti nella lista,
+     * altrimenti gli hash delle foglie vengono ricalcolati a partire dai dati.
+     *
+     * @param hashList
+     *                     un oggetto HashLinkedList contenente i dati e i
+     *                     relativi hash.
+     * @param hasher
+     *                     l'algoritmo con cui calcolare gli hash.
+     * @param funnel
+     *                     il funnel che descrive il contenuto dei dati.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota o se
+     *                                      hasher o funnel sono null.
+     * @throws OutOfMemoryError
+     *                                      se la memoria diretta non è
+     *                                      sufficiente.
+     */
+    public OffHeapMerkleTree(HashLinkedList<T> hashList, MerkleHasher hasher, Funnel<? super T> funnel) {
+        super(storeLevels(hashList, hasher, funnel), 0, hashList.getSize(), hasher, funnel);
+        this.leafIndex = buildLeafIndex();
+    }
+
+    /**
+     * Alloca la memoria diretta per tutti i livelli, vi scrive gli hash delle
+     * foglie e calcola i livelli interni.
+     *
+     * @return la memoria che contiene gli hash dell'albero.
+     * @throws IllegalArgumentException
+     *                                      se un parametro è null o la lista è
+     *                                      vuota.
+     */
+    private static <E> SegmentedBuffer storeLevels(HashLinkedList<E> hashList, MerkleHasher hasher,
+            Funnel<? super E> funnel) {
+
+        if(hashList == null)
+            throw new IllegalArgumentException("hashList passato al costruttore è null!");
+        if(hashList.getSize() == 0)
+            throw new IllegalArgumentException("hashList passato al costruttore è vuota!");
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato al costruttore è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato al costruttore è null!");
+
+        int width = hashList.getSize();
+        int hashLength = hasher.getDigestLength();
+        long[] offsets = levelOffsets(0, width, hashLength);
+        SegmentedBuffer buffer = SegmentedBuffer.allocateDirect(offsets[offsets.length - 1]);
+
+        long position = 0;
+        if(hasher.equals(hashList.getHasher()) && funnel.equals(hashList.getFunnel()))
+            for (byte[] digest : hashList.getAllDigests()) {
+                buffer.put(position, digest, 0, hashLength);
+                position += hashLength;
+            }
+        else {
+            // Gli hash vengono ricalcolati in un unico array di appoggio
+            byte[] digest = new byte[hashLength];
+            for (E data : hashList) {
+                hasher.dataDigestInto(data, funnel, digest, 0);
+                buffer.put(position, digest, 0, hashLength);
+                position += hashLength;
+            }
+        }
+
+        buildLevels(buffer, offsets, width, hasher);
+        return buffer;
+    }
+
+    /**
+     * Costruisce l'indice delle foglie, inserendo solamente la prima
+     * occorrenza delle foglie ripetute. La capacità è la più piccola potenza
+     * di 2 pari almeno al doppio delle foglie, per mantenere brevi le
+     * sequenze di posizioni occupate.
+     *
+     * @return l'indice delle foglie; null se l'albero ha troppe foglie.
+     */
+    private int[] buildLeafIndex() {
+        int width = getWidth();
+        if(width >= MAX_INDEX_CAPACITY / 2)
+            return null;
+
+        int[] index = new int[Integer.highestOneBit(width * 2 - 1) << 1];
+        byte[] digest = new byte[getHasher().getDigestLength()];
+        byte[] other = new byte[digest.length];
+
+        for (int i = 0; i < width; i++) {
+            readDigest(0, i, digest, 0);
+            int slot = findSlot(index, digest, other);
+            if(index[slot] == 0)
+                index[slot] = i + 1;
+        }
+
+        return index;
+    }
+
+    /**
+     * Cerca nell'indice la posizione della foglia con l'hash dato, oppure la
+     * prima posizione libera se nessuna foglia indicizzata ha quell'hash. Le
+     * posizioni di partenza sono ricavate dai primi 4 byte dell'hash, mescolati
+     * per distribuire anche hash con prefissi simili.
+     *
+     * @param index
+     *                   l'indice delle foglie.
+     * @param digest
+     *                   l'hash da cercare.
+     * @param other
+     *                   array di appoggio per gli hash delle foglie lette.
+     * @return la posizione della foglia o la posizione libera.
+     */
+    private int findSlot(int[] index, byte[] digest, byte[] other) {
+        int mask = index.length - 1;
+        int key = 0;
+        for (int i = 0; i < 4 && i < digest.length; i++)
+            key = key << 8 | (digest[i] & 0xFF);
+        key *= 0x9E3779B9;
+        int slot = (key ^ key >>> 16) & mask;
+
+        while (index[slot] != 0) {
+            readDigest(0, index[slot] - 1, other, 0);
+            if(Arrays.equals(digest, other))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Restituisce l'indice della prima foglia con l'hash dato, usando
+     * l'indice delle foglie.
+     *
+     * @param digest
+     *                   l'hash da cercare.
+     * @return l'indice della foglia; -1 se nessuna foglia ha l'hash dato.
+     * @throws IllegalStateException
+     *                                   se l'albero è stato chiuso.
+     */
+    @Override
+    int indexOfLeaf(byte[] digest) {
+        int[] index = this.leafIndex;
+        if(index == null)
+            return super.indexOfLeaf(digest);
+
+        int slot = findSlot(index, digest, new byte[digest.length]);
+        return index[slot] - 1;
+    }
+
+    /**
+     * Chiude l'albero, rilasciando i riferimenti alla memoria diretta e
+     * all'indice delle foglie. Le chiamate successive ai metodi che leggono
+     * gli hash lanciano IllegalStateException.
+     */
+    @Override
+    public void close() {
+        super.close();
+        this.leafIndex = null;
+    }
+}
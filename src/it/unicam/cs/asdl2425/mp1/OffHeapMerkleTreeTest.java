@@ -0,0 +1,156 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per {@link OffHeapMerkleTree}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testMatchesMerkleTree()}: Verifica, per diverse larghezze e algoritmi, che root, altezza,
+ * ricerche e prove coincidano con quelle di un MerkleTree costruito sulla stessa lista.</li>
+ *
+ * <li>{@link #testRehashedLeaves()}: Verifica che con un algoritmo o un funnel diversi da quelli della
+ * lista gli hash delle foglie vengano ricalcolati come in MerkleTree.</li>
+ *
+ * <li>{@link #testDuplicateLeaves()}: Verifica che la ricerca di un dato ripetuto restituisca la sua
+ * prima occorrenza.</li>
+ *
+ * <li>{@link #testFindInvalidDataIndices()}: Verifica il confronto con un albero nello heap, con un
+ * altro albero fuori dallo heap e con un albero su file.</li>
+ *
+ * <li>{@link #testClose()}: Verifica che dopo la chiusura gli accessi agli hash lancino
+ * IllegalStateException, mentre root e larghezza restano disponibili.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per parametri non
+ * validi.</li>
+ * </ul>
+ */
+class OffHeapMerkleTreeTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testMatchesMerkleTree() {
+        for (MerkleHasher hasher : new MerkleHasher[] { MerkleHasher.MD5, MerkleHasher.SHA_256,
+                MerkleHasher.MURMUR3_128 })
+            for (int width : new int[] { 1, 2, 3, 7, 16, 1000 }) {
+                HashLinkedList<Integer> list = TestLists.multiplesOf7(hasher, width);
+                MerkleTree<Integer> expected = new MerkleTree<>(list);
+
+                try (OffHeapMerkleTree<Integer> tree = new OffHeapMerkleTree<>(list)) {
+                    assertEquals(width, tree.getWidth());
+                    assertEquals(expected.getHeight(), tree.getHeight());
+                    assertSame(hasher, tree.getHasher());
+                    assertEquals(expected.getRoot(), tree.getRoot(), hasher + " con " + width + " foglie");
+
+                    for (int i = 0; i < width; i++) {
+                        assertEquals(i, tree.getIndexOfData(i * 7));
+                        MerkleProof proof = tree.getMerkleProof(i * 7);
+                        assertIterableEquals(expected.getMerkleProof(i * 7).getProofHashes(),
+                                proof.getProofHashes());
+                        assertTrue(proof.proveValidityOfData(i * 7));
+                    }
+                    assertEquals(-1, tree.getIndexOfData(-1));
+                    assertFalse(tree.validateData(width * 7));
+                }
+            }
+    }
+
+    @Test
+    void testRehashedLeaves() {
+        HashLinkedList<String> list = new HashLinkedList<>();
+        list.addAtTail("Aa");
+        list.addAtTail("BB");
+        list.addAtTail("C");
+
+        try (OffHeapMerkleTree<String> tree = new OffHeapMerkleTree<>(list, MerkleHasher.SHA_256, Funnel.STRING)) {
+            assertEquals(new MerkleTree<>(list, MerkleHasher.SHA_256, Funnel.STRING).getRoot(), tree.getRoot());
+            assertSame(Funnel.STRING, tree.getFunnel());
+            assertEquals(1, tree.getIndexOfData("BB"), "Dati con lo stesso hashCode dovrebbero essere distinti.");
+            assertTrue(tree.getMerkleProof("BB").proveValidityOfData("BB", Funnel.STRING));
+        }
+    }
+
+    @Test
+    void testDuplicateLeaves() {
+        HashLinkedList<String> list = new HashLinkedList<>(MerkleHasher.MURMUR3_128);
+        for (String data : new String[] { "a", "b", "a", "c", "b", "a" })
+            list.addAtTail(data);
+
+        try (OffHeapMerkleTree<String> tree = new OffHeapMerkleTree<>(list)) {
+            assertEquals(0, tree.getIndexOfData("a"));
+            assertEquals(1, tree.getIndexOfData("b"));
+            assertEquals(3, tree.getIndexOfData("c"));
+            assertEquals(new MerkleTree<>(list).getRoot(), tree.getRoot());
+        }
+    }
+
+    @Test
+    void testFindInvalidDataIndices() throws IOException {
+        HashLinkedList<Integer> original = TestLists.multiplesOf7(MerkleHasher.SHA_256, 10);
+        HashLinkedList<Integer> modified = TestLists.of(MerkleHasher.SHA_256, 10, i -> i == 0 || i == 9 ? -1 : i * 7);
+
+        Path file = this.dir.resolve("modified");
+        MappedMerkleTree.write(file, modified);
+
+        try (OffHeapMerkleTree<Integer> tree = new OffHeapMerkleTree<>(original);
+                OffHeapMerkleTree<Integer> copy = new OffHeapMerkleTree<>(
+                        TestLists.multiplesOf7(MerkleHasher.SHA_256, 10));
+                OffHeapMerkleTree<Integer> other = new OffHeapMerkleTree<>(modified);
+                MappedMerkleTree<Integer> mapped = MappedMerkleTree.open(file)) {
+            assertTrue(tree.validateTree(copy));
+            assertFalse(tree.validateTree(other));
+            assertTrue(tree.findInvalidDataIndices(copy).isEmpty());
+            assertTrue(tree.findInvalidDataIndices(new MerkleTree<>(original)).isEmpty());
+            assertEquals(Set.of(0, 9), tree.findInvalidDataIndices(other));
+            assertEquals(Set.of(0, 9), tree.findInvalidDataIndices(new MerkleTree<>(modified)));
+            assertEquals(Set.of(0, 9), tree.findInvalidDataIndices(mapped));
+            assertTrue(other.validateTree(mapped));
+        }
+    }
+
+    @Test
+    void testClose() {
+        OffHeapMerkleTree<Integer> tree = new OffHeapMerkleTree<>(TestLists.multiplesOf7(MerkleHasher.MD5, 5));
+        MerkleNode root = tree.getRoot();
+        tree.close();
+        tree.close();
+
+        assertEquals(root, tree.getRoot());
+        assertEquals(5, tree.getWidth());
+        assertThrows(IllegalStateException.class, () -> tree.getIndexOfData(7));
+        assertThrows(IllegalStateException.class, () -> tree.getMerkleProofAt(0));
+        assertThrows(IllegalStateException.class,
+                () -> tree.findInvalidDataIndices(new MerkleTree<>(TestLists.multiplesOf7(MerkleHasher.MD5, 5))));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        HashLinkedList<Integer> list = TestLists.multiplesOf7(MerkleHasher.MD5, 3);
+
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapMerkleTree<Integer>(null));
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapMerkleTree<>(new HashLinkedList<Integer>()));
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapMerkleTree<>(list, null, Funnel.HASH_CODE));
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapMerkleTree<>(list, MerkleHasher.MD5, null));
+
+        try (OffHeapMerkleTree<Integer> tree = new OffHeapMerkleTree<>(list)) {
+            assertThrows(IllegalArgumentException.class, () -> tree.getIndexOfData(null));
+            assertThrows(IllegalArgumentException.class, () -> tree.getMerkleProofAt(3));
+            assertThrows(IllegalArgumentException.class, () -> tree.getMerkleProof(100));
+            assertThrows(IllegalArgumentException.class,
+                    () -> tree.findInvalidDataIndices((MerkleTree<Integer>) null));
+            assertThrows(IllegalArgumentException.class,
+                    () -> tree.findInvalidDataIndices(
+                            new OffHeapMerkleTree<>(TestLists.multiplesOf7(MerkleHasher.MD5, 4))));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Operazioni sugli alberi di MerkleNode immutabili, i cui nodi vengono
+ * condivisi tra più root invece di essere modificati. Un albero ha la forma
+ * di un {@link MerkleTree} con le stesse foglie: il figlio sinistro di un nodo
+ * di livello l contiene 2^(l-1) foglie e un nodo senza fratello ha solamente
+ * il figlio sinistro. Usate da {@link VersionedMerkleTree} per le versioni e
+ * da {@link ConcurrentMerkleTree} per gli snapshot.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+final class PersistentNodes {
+
+    /**
+     * Hash vuoto, usato al posto del fratello mancante di un nodo.
+     */
+    private static final byte[] EMPTY_HASH = new byte[0];
+
+    private PersistentNodes() {
+    }
+
+    /**
+     * Restituisce la copia di un nodo in cui sono state sostituite le foglie
+     * nelle posizioni date, condividendo i sottoalberi che non ne contengono.
+     *
+     * @param hasher
+     *                      l'algoritmo usato per calcolare gli hash.
+     * @param node
+     *                      il nodo da copiare.
+     * @param level
+     *                      il livello del nodo, 0 per le foglie.
+     * @param first
+     *                      la posizione della prima foglia del nodo.
+     * @param positions
+     *                      le posizioni ordinate delle foglie da sostituire.
+     * @param digests
+     *                      gli hash delle nuove foglie, nello stesso ordine.
+     * @param from
+     *                      la prima posizione contenuta nel nodo.
+     * @param to
+     *                      la posizione successiva all'ultima contenuta nel
+     *                      nodo, maggiore di from.
+     * @return il nuovo nodo.
+     */
+    static MerkleNode copyPath(MerkleHasher hasher, MerkleNode node, int level, int first, int[] positions,
+            byte[][] digests, int from, int to) {
+        if(level == 0)
+            return new MerkleNode(digests[from]);
+
+        int middle = first + (1 << (level - 1));
+        int split = from;
+        while (split < to && positions[split] < middle)
+            split++;
+
+        MerkleNode left = node.getLeft();
+        MerkleNode right = node.getRight();
+        if(split > from)
+            left = copyPath(hasher, left, level - 1, first, positions, digests, from, split);
+        if(split < to)
+            right = copyPath(hasher, right, level - 1, middle, positions, digests, split, to);
+
+        byte[] rightHash = (right != null) ? right.getDigest() : EMPTY_HASH;
+        return new MerkleNode(hasher.combine(left.getDigest(), rightHash), left, right);
+    }
+
+    /**
+     * Restituisce la prova di Merkle per la foglia di posizione data
+     * dell'albero di un root, scendendo dal root fino alla foglia.
+     *
+     * @param root
+     *                   il root dell'albero.
+     * @param height
+     *                   l'altezza dell'albero.
+     * @param index
+     *                   la posizione valida della foglia.
+     * @param hasher
+     *                   l'algoritmo usato per calcolare gli hash.
+     * @return la prova di Merkle per la foglia.
+     */
+    static MerkleProof proofOf(MerkleNode root, int height, int index, MerkleHasher hasher) {
+
+        // Fratelli dei nodi sul cammino, dal root verso la foglia
+        MerkleNode[] siblings = new MerkleNode[height];
+        MerkleNode node = root;
+        for (int level = height; level > 0; level--) {
+            boolean isRight = ((index >> (level - 1)) & 1) != 0;
+            siblings[level - 1] = isRight ? node.getLeft() : node.getRight();
+            node = isRight ? node.getRight() : node.getLeft();
+        }
+
+        MerkleProof proof = new MerkleProof(root.getDigest(), height, hasher);
+        for (int level = 0; level < height; level++) {
+            boolean isLeft = ((index >> level) & 1) != 0;
+            MerkleNode sibling = siblings[level];
+            proof.addHash((sibling != null) ? sibling.getDigest() : EMPTY_HASH, isLeft);
+        }
+
+        return proof;
+    }
+}
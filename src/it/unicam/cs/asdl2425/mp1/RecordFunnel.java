@@ -0,0 +1,183 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+
+/**
+ * Funnel di un tipo record, che scrive le componenti del record una dopo
+ * l'altra nell'ordine della dichiarazione. Gli accessori delle componenti e
+ * i funnel dei loro tipi vengono risolti una sola volta alla costruzione, che
+ * avviene al più una volta per ogni tipo grazie a una cache per classe.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ *
+ * @param <R>
+ *                il tipo record.
+ */
+final class RecordFunnel<R extends Record> implements Funnel<R> {
+
+    /**
+     * Funnel già costruiti, uno per ogni tipo record.
+     */
+    private static final ClassValue<RecordFunnel<?>> CACHE = new ClassValue<>() {
+        @Override
+        protected RecordFunnel<?> computeValue(Class<?> type) {
+            return new RecordFunnel<>(type.asSubclass(Record.class));
+        }
+    };
+
+    /**
+     * Tipo descritto dal funnel.
+     */
+    private final Class<R> type;
+
+    /**
+     * Accessori delle componenti, di tipo (Object)Object.
+     */
+    private final MethodHandle[] accessors;
+
+    /**
+     * Funnel delle componenti, nella stessa posizione del relativo accessore.
+     */
+    private final Funnel<Object>[] components;
+
+    /**
+     * Restituisce il funnel del tipo record dato, costruendolo se necessario.
+     *
+     * @param type
+     *                 la classe del record.
+     * @return il funnel del record.
+     * @throws IllegalArgumentException
+     *                                      se il tipo ha una componente non
+     *                                      supportata o non accessibile.
+     */
+    @SuppressWarnings("unchecked")
+    static <R extends Record> RecordFunnel<R> of(Class<R> type) {
+        return (RecordFunnel<R>) CACHE.get(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RecordFunnel(Class<R> type) {
+
+        if(!type.isRecord())
+            throw new IllegalArgumentException(type.getName() + " non è un record!");
+
+        RecordComponent[] recordComponents = type.getRecordComponents();
+        this.type = type;
+        this.accessors = new MethodHandle[recordComponents.length];
+        this.components = (Funnel<Object>[]) new Funnel<?>[recordComponents.length];
+
+        MethodType erased = MethodType.methodType(Object.class, Object.class);
+        for (int i = 0; i < recordComponents.length; i++) {
+            Method accessor = recordComponents[i].getAccessor();
+            try {
+                accessor.setAccessible(true);
+                this.accessors[i] = MethodHandles.lookup().unreflect(accessor).asType(erased);
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new IllegalArgumentException("La componente " + recordComponents[i].getName() + " di "
+                        + type.getName() + " non è accessibile!", e);
+            }
+            this.components[i] = componentFunnel(type, recordComponents[i]);
+        }
+    }
+
+    /**
+     * Restituisce il funnel di una componente in base al suo tipo.
+     *
+     * @param owner
+     *                      il record che contiene la componente.
+     * @param component
+     *                      la componente.
+     * @return il funnel della componente.
+     * @throws IllegalArgumentException
+     *                                      se il tipo della componente non è
+     *                                      supportato.
+     */
+    private static Funnel<Object> componentFunnel(Class<?> owner, RecordComponent component) {
+        Class<?> type = component.getType();
+
+        // I tipi primitivi non possono valere null
+        if(type.isPrimitive())
+            return erase(primitiveFunnel(type));
+
+        Funnel<?> funnel;
+        if(primitiveFunnel(type) != null)
+            funnel = primitiveFunnel(type);
+        else if(CharSequence.class.isAssignableFrom(type))
+            funnel = (CharSequence value, Sink into) -> into.putInt(value.length()).putString(value);
+        else if(type == byte[].class)
+            funnel = (byte[] value, Sink into) -> into.putInt(value.length).putBytes(value);
+        else if(type.isEnum())
+            funnel = (Enum<?> value, Sink into) -> into.putInt(value.name().length()).putString(value.name());
+        else if(type.isRecord()) {
+            Class<? extends Record> recordType = type.asSubclass(Record.class);
+            // Il funnel viene cercato a ogni uso per ammettere record ricorsivi
+            funnel = (Record value, Sink into) -> erase(of(recordType)).funnel(value, into);
+        }
+        else
+            throw new IllegalArgumentException("La componente " + component.getName() + " di " + owner.getName()
+                    + " ha un tipo non supportato: " + type.getName());
+
+        Funnel<Object> nonNull = erase(funnel);
+        return (value, into) -> {
+            if(value == null)
+                into.putByte((byte) 0);
+            else
+                nonNull.funnel(value, into.putByte((byte) 1));
+        };
+    }
+
+    /**
+     * Restituisce il funnel di un tipo primitivo o del relativo wrapper.
+     *
+     * @param type
+     *                 il tipo.
+     * @return il funnel del tipo, null se non è primitivo né un wrapper.
+     */
+    private static Funnel<?> primitiveFunnel(Class<?> type) {
+        if(type == int.class || type == Integer.class)
+            return Funnel.INTEGER;
+        if(type == long.class || type == Long.class)
+            return Funnel.LONG;
+        if(type == boolean.class || type == Boolean.class)
+            return Funnel.BOOLEAN;
+        if(type == double.class || type == Double.class)
+            return Funnel.DOUBLE;
+        if(type == float.class || type == Float.class)
+            return Funnel.FLOAT;
+        if(type == short.class || type == Short.class)
+            return Funnel.SHORT;
+        if(type == char.class || type == Character.class)
+            return Funnel.CHARACTER;
+        if(type == byte.class || type == Byte.class)
+            return Funnel.BYTE;
+        return null;
+    }
+
+    /**
+     * Restituisce un funnel come funnel di Object; la correttezza del tipo è
+     * garantita dal tipo della componente.
+     */
+    @SuppressWarnings("unchecked")
+    private static Funnel<Object> erase(Funnel<?> funnel) {
+        return (Funnel<Object>) funnel;
+    }
+
+    @Override
+    public void funnel(R from, Sink into) {
+        for (int i = 0; i < this.accessors.length; i++) {
+            Object value;
+            try {
+                value = (Object) this.accessors[i].invokeExact((Object) from);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Errore nella lettura di una componente di " + this.type.getName(), e);
+            }
+            this.components[i].funnel(value, into);
+        }
+    }
+}
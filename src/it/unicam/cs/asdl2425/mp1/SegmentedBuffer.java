@@ -0,0 +1,163 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequenza di byte indirizzata con posizioni long, composta da più ByteBuffer
+ * contigui. Serve a superare il limite di 2 GiB di un singolo ByteBuffer, ad
+ * esempio per mappare in memoria file con centinaia di milioni di hash.
+ *
+ * Tutti i segmenti tranne l'ultimo hanno lunghezza {@link #SEGMENT_LENGTH},
+ * che è una potenza di 2: il segmento e la posizione al suo interno si
+ * ottengono quindi con uno shift e una maschera.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+final class SegmentedBuffer {
+
+    /**
+     * Logaritmo in base 2 della lunghezza di un segmento.
+     */
+    private static final int SEGMENT_SHIFT = 30;
+
+    /**
+     * Lunghezza di un segmento, 1 GiB.
+     */
+    static final long SEGMENT_LENGTH = 1L << SEGMENT_SHIFT;
+
+    /**
+     * Segmenti, ciascuno con posizione 0 e limite pari alla sua lunghezza.
+     */
+    private final ByteBuffer[] segments;
+
+    /**
+     * Lunghezza complessiva in byte.
+     */
+    private final long length;
+
+    private SegmentedBuffer(ByteBuffer[] segments, long length) {
+        this.segments = segments;
+        this.length = length;
+    }
+
+    /**
+     * Mappa in memoria i primi length byte di un file, estendendo il file se
+     * necessario e la modalità lo permette.
+     *
+     * @param channel
+     *                    il canale del file.
+     * @param mode
+     *                    la modalità di mappatura.
+     * @param length
+     *                    il numero di byte da mappare.
+     * @return il buffer mappato.
+     * @throws IOException
+     *                         se la mappatura non riesce.
+     */
+    static SegmentedBuffer map(FileChannel channel, FileChannel.MapMode mode, long length) throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[segmentCount(length)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = i * SEGMENT_LENGTH;
+            segments[i] = channel.map(mode, start, Math.min(SEGMENT_LENGTH, length - start));
+        }
+        return new SegmentedBuffer(segments, length);
+    }
+
+    /**
+     * Alloca length byte di memoria fuori dallo heap, inizialmente a zero. La
+     * memoria allocata è limitata dall'opzione -XX:MaxDirectMemorySize della
+     * JVM e viene restituita quando i segmenti vengono raccolti dal garbage
+     * collector.
+     *
+     * @param length
+     *                   il numero di byte da allocare.
+     * @return il buffer allocato.
+     * @throws OutOfMemoryError
+     *                              se la memoria disponibile non è
+     *                              sufficiente.
+     */
+    static SegmentedBuffer allocateDirect(long length) {
+        ByteBuffer[] segments = new ByteBuffer[segmentCount(length)];
+        for (int i = 0; i < segments.length; i++)
+            segments[i] = ByteBuffer.allocateDirect((int) Math.min(SEGMENT_LENGTH, length - i * SEGMENT_LENGTH));
+        return new SegmentedBuffer(segments, length);
+    }
+
+    /**
+     * Restituisce il numero di segmenti necessari per una data lunghezza.
+     */
+    private static int segmentCount(long length) {
+        return (int) ((length + SEGMENT_LENGTH - 1) >>> SEGMENT_SHIFT);
+    }
+
+    /**
+     * Restituisce la lunghezza complessiva in byte.
+     *
+     * @return la lunghezza del buffer.
+     */
+    long length() {
+        return this.length;
+    }
+
+    /**
+     * Copia len byte a partire dalla posizione data nell'array fornito.
+     *
+     * @param position
+     *                     la posizione del primo byte da leggere.
+     * @param dst
+     *                     l'array in cui copiare i byte.
+     * @param off
+     *                     la posizione di dst da cui copiare.
+     * @param len
+     *                     il numero di byte da copiare.
+     */
+    void get(long position, byte[] dst, int off, int len) {
+        while (len > 0) {
+            ByteBuffer segment = this.segments[(int) (position >>> SEGMENT_SHIFT)];
+            int index = (int) (position & (SEGMENT_LENGTH - 1));
+            int count = Math.min(len, segment.limit() - index);
+
+            segment.get(index, dst, off, count);
+            position += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Copia len byte dall'array fornito a partire dalla posizione data.
+     *
+     * @param position
+     *                     la posizione del primo byte da scrivere.
+     * @param src
+     *                     l'array da cui copiare i byte.
+     * @param off
+     *                     la posizione di src da cui copiare.
+     * @param len
+     *                     il numero di byte da copiare.
+     */
+    void put(long position, byte[] src, int off, int len) {
+        while (len > 0) {
+            ByteBuffer segment = this.segments[(int) (position >>> SEGMENT_SHIFT)];
+            int index = (int) (position & (SEGMENT_LENGTH - 1));
+            int count = Math.min(len, segment.limit() - index);
+
+            segment.put(index, src, off, count);
+            position += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Scrive su disco le modifiche ai segmenti mappati da un file.
+     */
+    void force() {
+        for (ByteBuffer segment : this.segments)
+            if(segment instanceof MappedByteBuffer)
+                ((MappedByteBuffer) segment).force();
+    }
+}
@@ -0,0 +1,161 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Implementazione SHA-256 di {@link MerkleHasher}. Come in RFC 6962, l'hash di
+ * una foglia è calcolato sul contenuto preceduto dal byte 0x00 e l'hash di un
+ * nodo interno sulla concatenazione binaria dei figli preceduta dal byte
+ * 0x01, in modo che un nodo interno non possa essere scambiato per una foglia.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+final class Sha256MerkleHasher implements MerkleHasher {
+
+    /**
+     * Lunghezza in byte di un hash SHA-256.
+     */
+    private static final int DIGEST_LENGTH = 32;
+
+    /**
+     * Prefisso del contenuto delle foglie.
+     */
+    private static final byte LEAF_PREFIX = 0x00;
+
+    /**
+     * Prefisso della concatenazione dei figli dei nodi interni.
+     */
+    private static final byte NODE_PREFIX = 0x01;
+
+    /**
+     * Stato di lavoro di ciascun thread.
+     */
+    private static final ThreadLocal<Engine> ENGINE = ThreadLocal.withInitial(Engine::new);
+
+    /**
+     * Sink di ciascun thread per il calcolo degli hash dei funnel.
+     */
+    private static final ThreadLocal<BufferedSink> SINK = ThreadLocal.withInitial(Sha256MerkleHasher::newSink);
+
+    private static BufferedSink newSink() {
+        return new BufferedSink.MessageDigestSink("SHA-256", LEAF_PREFIX);
+    }
+
+    /**
+     * Stato riusabile per il calcolo degli hash da parte di un singolo thread.
+     */
+    private static final class Engine {
+        final MessageDigest md; // Digest SHA-256 riusato tra le chiamate
+
+        final byte[] intBytes = new byte[4]; // Buffer per la codifica di un int
+
+        Engine() {
+            try {
+                this.md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("SHA-256 algorithm not found", e);
+            }
+        }
+
+        /**
+         * Completa il calcolo dell'hash scrivendolo in out a partire da off.
+         */
+        void finish(byte[] out, int off) {
+            try {
+                md.digest(out, off, DIGEST_LENGTH);
+            } catch (DigestException e) {
+                md.reset();
+                throw new IllegalArgumentException("Spazio insufficiente per l'hash nell'array di output", e);
+            }
+        }
+    }
+
+    /**
+     * Verifica che la porzione di array data sia valida. I controlli
+     * precedono il calcolo, in modo che un errore non lasci byte già
+     * elaborati nel MessageDigest del thread.
+     */
+    private static void checkRange(byte[] array, int off, int len) {
+        if(array == null || off < 0 || len < 0 || off > array.length - len)
+            throw new IllegalArgumentException("Porzione di array non valida!");
+    }
+
+    /**
+     * Verifica che out abbia spazio per un hash a partire da off, prima di
+     * iniziare il calcolo.
+     */
+    private static void checkOutput(byte[] out, int off) {
+        if(out == null || off < 0 || off > out.length - DIGEST_LENGTH)
+            throw new IllegalArgumentException("Spazio insufficiente per l'hash nell'array di output");
+    }
+
+    @Override
+    public String getName() {
+        return "SHA-256";
+    }
+
+    @Override
+    public byte getId() {
+        return 1;
+    }
+
+    @Override
+    public int getDigestLength() {
+        return DIGEST_LENGTH;
+    }
+
+    @Override
+    public void digestInto(byte[] input, int inOff, int inLen, byte[] out, int outOff) {
+        checkRange(input, inOff, inLen);
+        checkOutput(out, outOff);
+        Engine engine = ENGINE.get();
+        engine.md.update(LEAF_PREFIX);
+        engine.md.update(input, inOff, inLen);
+        engine.finish(out, outOff);
+    }
+
+    @Override
+    public void dataDigestInto(Object data, byte[] out, int outOff) {
+        checkOutput(out, outOff);
+        Engine engine = ENGINE.get();
+        int value = data.hashCode();
+        byte[] intBytes = engine.intBytes;
+
+        intBytes[0] = (byte) (value >> 24);
+        intBytes[1] = (byte) (value >> 16);
+        intBytes[2] = (byte) (value >> 8);
+        intBytes[3] = (byte) value;
+
+        engine.md.update(LEAF_PREFIX);
+        engine.md.update(intBytes, 0, 4);
+        engine.finish(out, outOff);
+    }
+
+    @Override
+    public <T> void dataDigestInto(T data, Funnel<? super T> funnel, byte[] out, int outOff) {
+        if(funnel == Funnel.HASH_CODE)
+            dataDigestInto(data, out, outOff);
+        else
+            BufferedSink.digest(SINK, Sha256MerkleHasher::newSink, data, funnel, out, outOff);
+    }
+
+    @Override
+    public void combineInto(byte[] left, int leftOff, int leftLen, byte[] right, int rightOff, int rightLen,
+            byte[] out, int outOff) {
+        checkRange(left, leftOff, leftLen);
+        checkRange(right, rightOff, rightLen);
+        checkOutput(out, outOff);
+        Engine engine = ENGINE.get();
+        engine.md.update(NODE_PREFIX);
+        engine.md.update(left, leftOff, leftLen);
+        engine.md.update(right, rightOff, rightLen);
+        engine.finish(out, outOff);
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
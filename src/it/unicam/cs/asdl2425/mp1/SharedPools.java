@@ -0,0 +1,37 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Pool condivisi dai metodi che ricevono il numero di thread da usare invece
+ * di un ForkJoinPool. Per ogni numero di thread viene creato un solo pool,
+ * alla prima richiesta, che viene poi riusato da tutte le chiamate
+ * successive. I thread dei pool non impediscono la terminazione della JVM e
+ * vengono rilasciati quando restano inattivi.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+final class SharedPools {
+
+    /**
+     * Pool creati finora, indicizzati per numero di thread.
+     */
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private SharedPools() {
+    }
+
+    /**
+     * Restituisce il pool condiviso con il numero di thread dato, creandolo
+     * se non esiste ancora.
+     *
+     * @param parallelism
+     *                        il numero di thread del pool, positivo.
+     * @return il pool condiviso.
+     */
+    static ForkJoinPool withParallelism(int parallelism) {
+        return POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+}
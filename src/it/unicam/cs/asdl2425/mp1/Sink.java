@@ -0,0 +1,177 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Destinazione dei byte che descrivono il contenuto di un dato, usata da un
+ * {@link Funnel} per passare i campi di un oggetto direttamente al calcolo
+ * dell'hash di una foglia, senza costruire un array di byte intermedio.
+ *
+ * <p>
+ * Tutti i valori su più byte vengono scritti in ordine big-endian e le
+ * stringhe in UTF-8, quindi la sequenza di byte prodotta non dipende dalla
+ * piattaforma. I metodi restituiscono la sink stessa, in modo da poter
+ * concatenare le chiamate.
+ *
+ * <p>
+ * Le implementazioni devono definire solamente la scrittura di un byte e di
+ * una porzione di array; le altre operazioni hanno un'implementazione
+ * predefinita basata su queste due.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public interface Sink {
+
+    /**
+     * Scrive un byte.
+     *
+     * @param value
+     *                  il byte da scrivere.
+     * @return questa sink.
+     */
+    Sink putByte(byte value);
+
+    /**
+     * Scrive una porzione di un array di byte.
+     *
+     * @param bytes
+     *                   l'array da cui leggere i byte.
+     * @param off
+     *                   la posizione del primo byte da scrivere.
+     * @param len
+     *                   il numero di byte da scrivere.
+     * @return questa sink.
+     */
+    Sink putBytes(byte[] bytes, int off, int len);
+
+    /**
+     * Scrive tutti i byte di un array.
+     *
+     * @param bytes
+     *                  l'array da scrivere.
+     * @return questa sink.
+     */
+    default Sink putBytes(byte[] bytes) {
+        return putBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Scrive un boolean come un byte, 1 se vero e 0 se falso.
+     *
+     * @param value
+     *                  il boolean da scrivere.
+     * @return questa sink.
+     */
+    default Sink putBoolean(boolean value) {
+        return putByte(value ? (byte) 1 : (byte) 0);
+    }
+
+    /**
+     * Scrive uno short su 2 byte.
+     *
+     * @param value
+     *                  lo short da scrivere.
+     * @return questa sink.
+     */
+    default Sink putShort(short value) {
+        putByte((byte) (value >> 8));
+        return putByte((byte) value);
+    }
+
+    /**
+     * Scrive un char su 2 byte, come unità UTF-16.
+     *
+     * @param value
+     *                  il char da scrivere.
+     * @return questa sink.
+     */
+    default Sink putChar(char value) {
+        return putShort((short) value);
+    }
+
+    /**
+     * Scrive un int su 4 byte.
+     *
+     * @param value
+     *                  l'int da scrivere.
+     * @return questa sink.
+     */
+    default Sink putInt(int value) {
+        putByte((byte) (value >> 24));
+        putByte((byte) (value >> 16));
+        putByte((byte) (value >> 8));
+        return putByte((byte) value);
+    }
+
+    /**
+     * Scrive un long su 8 byte.
+     *
+     * @param value
+     *                  il long da scrivere.
+     * @return questa sink.
+     */
+    default Sink putLong(long value) {
+        putInt((int) (value >> 32));
+        return putInt((int) value);
+    }
+
+    /**
+     * Scrive un float su 4 byte, secondo {@link Float#floatToIntBits(float)}.
+     *
+     * @param value
+     *                  il float da scrivere.
+     * @return questa sink.
+     */
+    default Sink putFloat(float value) {
+        return putInt(Float.floatToIntBits(value));
+    }
+
+    /**
+     * Scrive un double su 8 byte, secondo
+     * {@link Double#doubleToLongBits(double)}.
+     *
+     * @param value
+     *                  il double da scrivere.
+     * @return questa sink.
+     */
+    default Sink putDouble(double value) {
+        return putLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Scrive i caratteri di una sequenza codificati in UTF-8, senza
+     * lunghezza. I surrogati non accoppiati vengono scritti come '?', come fa
+     * {@link String#getBytes(java.nio.charset.Charset)}.
+     *
+     * @param chars
+     *                  la sequenza da scrivere.
+     * @return questa sink.
+     */
+    default Sink putString(CharSequence chars) {
+        int length = chars.length();
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+
+            if(c < 0x80)
+                putByte((byte) c);
+            else if(c < 0x800) {
+                putByte((byte) (0xC0 | (c >> 6)));
+                putByte((byte) (0x80 | (c & 0x3F)));
+            }
+            else if(!Character.isSurrogate(c)) {
+                putByte((byte) (0xE0 | (c >> 12)));
+                putByte((byte) (0x80 | ((c >> 6) & 0x3F)));
+                putByte((byte) (0x80 | (c & 0x3F)));
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                putByte((byte) (0xF0 | (codePoint >> 18)));
+                putByte((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                putByte((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                putByte((byte) (0x80 | (codePoint & 0x3F)));
+            }
+            else
+                putByte((byte) '?');
+        }
+        return this;
+    }
+}
@@ -0,0 +1,326 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+
+/**
+ * Calcola il root di un albero di Merkle a partire da un flusso di dati, senza
+ * memorizzare i dati né i nodi dell'albero. Per ogni livello viene mantenuto
+ * al più un hash in attesa del fratello destro, quindi la memoria occupata è
+ * limitata a 64 hash qualunque sia il numero di elementi.
+ *
+ * Il root calcolato coincide con quello di un {@link MerkleTree} costruito
+ * sugli stessi dati nello stesso ordine, ovvero con
+ * {@code new MerkleTree(list).getRoot().getHash()}, compresi i nodi senza
+ * fratello il cui hash viene ricalcolato a partire dall'unico figlio.
+ *
+ * Gli elementi possono essere aggiunti come dati, di cui viene calcolato
+ * l'hash, oppure direttamente come hash delle foglie già calcolati.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ *
+ * @param <T>
+ *                il tipo di dati su cui il root è calcolato.
+ */
+public class StreamingMerkleRoot<T> {
+
+    /**
+     * Numero massimo di livelli, sufficiente per un numero di elementi
+     * rappresentabile con un long.
+     */
+    private static final int MAX_LEVELS = 64;
+
+    /**
+     * Hash in attesa per ogni livello. L'hash del livello l è significativo
+     * solamente se il bit l di count vale 1, e in quel caso è l'ultimo nodo
+     * completo del livello, ancora senza fratello destro.
+     */
+    private final byte[][] pending;
+
+    /**
+     * Hash in corso di calcolo durante l'aggiunta di un elemento.
+     */
+    private final byte[] carry;
+
+    /**
+     * Numero di elementi aggiunti.
+     */
+    private long count;
+
+    /**
+     * Algoritmo di hash usato per le foglie e per i nodi.
+     */
+    private final MerkleHasher hasher;
+
+    /**
+     * Funnel usato per calcolare gli hash dei dati aggiunti.
+     */
+    private final Funnel<? super T> funnel;
+
+    /**
+     * Costruisce un calcolatore senza elementi i cui hash sono calcolati con
+     * MD5.
+     */
+    public StreamingMerkleRoot() {
+        this(MerkleHasher.MD5);
+    }
+
+    /**
+     * Costruisce un calcolatore senza elementi i cui hash sono calcolati con
+     * l'algoritmo dato, usando {@link Funnel#HASH_CODE} per i dati.
+     *
+     * @param hasher
+     *                   l'algoritmo di hash.
+     * @throws IllegalArgumentException
+     *                                      se l'algoritmo è null.
+     */
+    public StreamingMerkleRoot(MerkleHasher hasher) {
+        this(hasher, Funnel.HASH_CODE);
+    }
+
+    /**
+     * Costruisce un calcolatore senza elementi i cui hash sono calcolati con
+     * l'algoritmo dato, calcolando gli hash dei dati sul contenuto scritto dal
+     * funnel. Il root coincide con quello di un {@link MerkleTree} costruito
+     * con lo stesso algoritmo e lo stesso funnel.
+     *
+     * @param hasher
+     *                   l'algoritmo di hash.
+     * @param funnel
+     *                   il funnel che descrive il contenuto dei dati.
+     * @throws IllegalArgumentException
+     *                                      se l'algoritmo o il funnel sono
+     *                                      null.
+     */
+    public StreamingMerkleRoot(MerkleHasher hasher, Funnel<? super T> funnel) {
+
+        if(hasher == null)
+            throw new IllegalArgumentException("hasher passato al costruttore è null!");
+        if(funnel == null)
+            throw new IllegalArgumentException("funnel passato al costruttore è null!");
+
+        this.hasher = hasher;
+        this.funnel = funnel;
+        this.pending = new byte[MAX_LEVELS][hasher.getDigestLength()];
+        this.carry = new byte[hasher.getDigestLength()];
+        this.count = 0;
+    }
+
+    /**
+     * Restituisce l'algoritmo di hash usato per le foglie e per i nodi.
+     *
+     * @return l'algoritmo di hash.
+     */
+    public MerkleHasher getHasher() {
+        return this.hasher;
+    }
+
+    /**
+     * Restituisce il funnel usato per calcolare gli hash dei dati aggiunti.
+     *
+     * @return il funnel dei dati.
+     */
+    public Funnel<? super T> getFunnel() {
+        return this.funnel;
+    }
+
+    /**
+     * Aggiunge un dato in coda al flusso.
+     *
+     * @param data
+     *                 il dato da aggiungere.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public void add(T data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a add() è null!");
+
+        this.hasher.dataDigestInto(data, this.funnel, this.carry, 0);
+        push();
+    }
+
+    /**
+     * Aggiunge in coda al flusso una foglia con l'hash dato, già calcolato.
+     *
+     * @param digest
+     *                   l'hash della foglia in forma binaria.
+     * @throws IllegalArgumentException
+     *                                      se l'hash è null o non ha la
+     *                                      lunghezza degli hash
+     *                                      dell'algoritmo.
+     */
+    public void addDigest(byte[] digest) {
+
+        if(digest == null)
+            throw new IllegalArgumentException("digest passato a addDigest() è null!");
+        if(digest.length != this.carry.length)
+            throw new IllegalArgumentException("digest passato a addDigest() non ha la lunghezza di un hash!");
+
+        System.arraycopy(digest, 0, this.carry, 0, this.carry.length);
+        push();
+    }
+
+    /**
+     * Inserisce l'hash contenuto in carry come nuova foglia. Come in un
+     * contatore binario, finché il livello corrente ha un hash in attesa i due
+     * hash vengono combinati e il risultato risale al livello superiore.
+     */
+    private void push() {
+
+        if(this.count == Long.MAX_VALUE)
+            throw new IllegalStateException("Numero massimo di elementi raggiunto");
+
+        int level = 0;
+        while ((this.count & (1L << level)) != 0) {
+            this.hasher.combineInto(this.pending[level], this.carry, this.carry, 0);
+            level++;
+        }
+        System.arraycopy(this.carry, 0, this.pending[level], 0, this.carry.length);
+
+        this.count++;
+    }
+
+    /**
+     * Restituisce il numero di elementi aggiunti.
+     *
+     * @return il numero di foglie.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Restituisce l'hash in forma binaria del root dell'albero di Merkle
+     * costruito sugli elementi aggiunti finora. Il calcolo combina gli hash in
+     * attesa dal livello più basso al più alto: l'ultimo nodo incompleto di un
+     * livello viene combinato con l'hash in attesa, che è il suo fratello
+     * sinistro, oppure da solo se il livello non ne ha. Il calcolo non modifica
+     * lo stato, quindi è possibile continuare ad aggiungere elementi.
+     *
+     * @return l'hash del root; null se non ci sono elementi.
+     */
+    public byte[] getRootDigest() {
+
+        if(this.count == 0)
+            return null;
+
+        int height = 64 - Long.numberOfLeadingZeros(this.count - 1);
+        byte[] empty = new byte[0];
+
+        // Ultimo nodo incompleto del livello corrente, null se non esiste
+        byte[] spine = null;
+        for (int level = 0; level < height; level++) {
+            boolean hasPending = (this.count & (1L << level)) != 0;
+
+            if(spine == null) {
+                if(hasPending)
+                    // Il nodo in attesa è l'ultimo del livello e non ha fratello
+                    spine = this.hasher.combine(this.pending[level], empty);
+            }
+            else if(hasPending)
+                spine = this.hasher.combine(this.pending[level], spine);
+            else
+                spine = this.hasher.combine(spine, empty);
+        }
+
+        return (spine != null) ? spine : this.pending[height].clone();
+    }
+
+    /**
+     * Restituisce l'hash in forma esadecimale del root dell'albero di Merkle
+     * costruito sugli elementi aggiunti finora.
+     *
+     * @return l'hash del root; null se non ci sono elementi.
+     */
+    public String getRootHash() {
+        byte[] root = getRootDigest();
+        return (root != null) ? HashUtil.toHex(root) : null;
+    }
+
+    /**
+     * Calcola il root di un albero di Merkle costruito sui dati restituiti da
+     * un iteratore, consumandolo.
+     *
+     * @param data
+     *                 l'iteratore dei dati.
+     * @return l'hash esadecimale del root.
+     * @throws IllegalArgumentException
+     *                                      se l'iteratore è null, vuoto o
+     *                                      restituisce un dato null.
+     */
+    public static <T> String rootOf(Iterator<? extends T> data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a rootOf() è null!");
+
+        StreamingMerkleRoot<T> calculator = new StreamingMerkleRoot<>();
+        while (data.hasNext())
+            calculator.add(data.next());
+
+        return checkedRootHash(calculator);
+    }
+
+    /**
+     * Calcola il root di un albero di Merkle costruito sui dati restituiti da
+     * uno spliterator, consumandolo in ordine.
+     *
+     * @param data
+     *                 lo spliterator dei dati.
+     * @return l'hash esadecimale del root.
+     * @throws IllegalArgumentException
+     *                                      se lo spliterator è null, vuoto o
+     *                                      restituisce un dato null.
+     */
+    public static <T> String rootOf(Spliterator<? extends T> data) {
+
+        if(data == null)
+            throw new IllegalArgumentException("data passato a rootOf() è null!");
+
+        StreamingMerkleRoot<T> calculator = new StreamingMerkleRoot<>();
+        data.forEachRemaining(calculator::add);
+
+        return checkedRootHash(calculator);
+    }
+
+    /**
+     * Calcola il root di un albero di Merkle a partire dagli hash delle foglie
+     * restituiti da un iteratore, consumandolo.
+     *
+     * @param digests
+     *                    l'iteratore degli hash delle foglie in forma
+     *                    binaria.
+     * @return l'hash esadecimale del root.
+     * @throws IllegalArgumentException
+     *                                      se l'iteratore è null, vuoto o
+     *                                      restituisce un hash non valido.
+     */
+    public static String rootOfDigests(Iterator<byte[]> digests) {
+
+        if(digests == null)
+            throw new IllegalArgumentException("digests passato a rootOfDigests() è null!");
+
+        StreamingMerkleRoot<Object> calculator = new StreamingMerkleRoot<>();
+        while (digests.hasNext())
+            calculator.addDigest(digests.next());
+
+        return checkedRootHash(calculator);
+    }
+
+    /**
+     * Restituisce l'hash del root di un calcolatore, controllando che abbia
+     * almeno un elemento come richiesto per costruire un albero di Merkle.
+     *
+     * @param calculator
+     *                       il calcolatore.
+     * @return l'hash esadecimale del root.
+     * @throws IllegalArgumentException
+     *                                      se il calcolatore non ha elementi.
+     */
+    private static String checkedRootHash(StreamingMerkleRoot<?> calculator) {
+        if(calculator.getCount() == 0)
+            throw new IllegalArgumentException("Il flusso di dati è vuoto!");
+        return calculator.getRootHash();
+    }
+}
@@ -0,0 +1,111 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link StreamingMerkleRoot}. Questa classe
+ * verifica che il root calcolato sul flusso di dati coincida con quello di un
+ * {@link MerkleTree} costruito sugli stessi dati.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testRootMatchesMerkleTree()}: Verifica, aggiungendo un elemento alla volta, che il
+ * root coincida a ogni passo con quello di un MerkleTree costruito sugli stessi dati.</li>
+ *
+ * <li>{@link #testRootOfIteratorAndSpliterator()}: Verifica che i root calcolati a partire da un
+ * iteratore e da uno spliterator coincidano con quello del MerkleTree.</li>
+ *
+ * <li>{@link #testRootOfDigests()}: Verifica che il root calcolato a partire dagli hash delle
+ * foglie coincida con quello calcolato a partire dai dati.</li>
+ *
+ * <li>{@link #testFunnel()}: Verifica che il root calcolato con un funnel coincida con quello di un
+ * MerkleTree costruito con lo stesso funnel.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per dati o hash
+ * null o non validi e per flussi vuoti, e che un calcolatore vuoto non abbia root.</li>
+ * </ul>
+ */
+class StreamingMerkleRootTest {
+
+    @Test
+    void testRootMatchesMerkleTree() {
+        StreamingMerkleRoot<Long> calculator = new StreamingMerkleRoot<>();
+        HashLinkedList<Long> list = new HashLinkedList<>();
+
+        for (long i = 0; i < 100; i++) {
+            calculator.add(i * 111L);
+            list.addAtTail(i * 111L);
+
+            assertEquals(new MerkleTree<>(list).getRoot().getHash(), calculator.getRootHash(),
+                    "Il root dovrebbe coincidere con quello del MerkleTree per " + (i + 1) + " elementi.");
+            assertEquals(i + 1, calculator.getCount(), "Il numero di elementi dovrebbe coincidere.");
+        }
+    }
+
+    @Test
+    void testRootOfIteratorAndSpliterator() {
+        List<String> data = new ArrayList<>();
+        HashLinkedList<String> list = new HashLinkedList<>();
+        for (int i = 0; i < 13; i++) {
+            data.add("Transazione " + i);
+            list.addAtTail("Transazione " + i);
+        }
+        String expected = new MerkleTree<>(list).getRoot().getHash();
+
+        assertEquals(expected, StreamingMerkleRoot.rootOf(data.iterator()),
+                "Il root calcolato dall'iteratore dovrebbe coincidere.");
+        assertEquals(expected, StreamingMerkleRoot.rootOf(data.spliterator()),
+                "Il root calcolato dallo spliterator dovrebbe coincidere.");
+        assertEquals(expected, StreamingMerkleRoot.rootOf(list.iterator()),
+                "Il root calcolato dall'iteratore della lista dovrebbe coincidere.");
+    }
+
+    @Test
+    void testRootOfDigests() {
+        List<byte[]> digests = new ArrayList<>();
+        List<Integer> data = new ArrayList<>();
+        for (int i = 0; i < 21; i++) {
+            digests.add(HashUtil.dataToDigest(i));
+            data.add(i);
+        }
+
+        assertEquals(StreamingMerkleRoot.rootOf(data.iterator()), StreamingMerkleRoot.rootOfDigests(digests.iterator()),
+                "Il root calcolato dagli hash dovrebbe coincidere con quello calcolato dai dati.");
+    }
+
+    @Test
+    void testFunnel() {
+        StreamingMerkleRoot<String> calculator = new StreamingMerkleRoot<>(MerkleHasher.SHA_256, Funnel.STRING);
+        HashLinkedList<String> list = new HashLinkedList<>(MerkleHasher.SHA_256, Funnel.STRING);
+        assertSame(Funnel.STRING, calculator.getFunnel());
+
+        for (int i = 0; i < 13; i++) {
+            calculator.add("Transazione " + i);
+            list.addAtTail("Transazione " + i);
+
+            assertEquals(new MerkleTree<>(list).getRoot().getHash(), calculator.getRootHash(),
+                    "Il root dovrebbe coincidere con quello del MerkleTree per " + (i + 1) + " elementi.");
+        }
+        assertThrows(IllegalArgumentException.class, () -> new StreamingMerkleRoot<String>(MerkleHasher.MD5, null));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        StreamingMerkleRoot<String> calculator = new StreamingMerkleRoot<>();
+
+        assertNull(calculator.getRootHash(), "Un calcolatore vuoto non dovrebbe avere root.");
+        assertNull(calculator.getRootDigest(), "Un calcolatore vuoto non dovrebbe avere root.");
+        assertThrows(IllegalArgumentException.class, () -> calculator.add(null));
+        assertThrows(IllegalArgumentException.class, () -> calculator.addDigest(null));
+        assertThrows(IllegalArgumentException.class, () -> calculator.addDigest(new byte[3]));
+        assertThrows(IllegalArgumentException.class, () -> StreamingMerkleRoot.rootOf((Iterator<String>) null));
+        assertThrows(IllegalArgumentException.class, () -> StreamingMerkleRoot.rootOf(new ArrayList<String>().iterator()));
+        assertThrows(IllegalArgumentException.class, () -> StreamingMerkleRoot.rootOfDigests(new ArrayList<byte[]>().iterator()));
+    }
+}
@@ -0,0 +1,59 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Liste di interi usate come dati delle foglie dalle classi di test.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+final class TestLists {
+
+    private TestLists() {
+    }
+
+    /**
+     * Restituisce una lista di width interi, in cui l'elemento in posizione i
+     * è data.applyAsInt(i).
+     *
+     * @param hasher
+     *                   l'algoritmo con cui calcolare gli hash della lista.
+     * @param width
+     *                   il numero di elementi della lista.
+     * @param data
+     *                   la funzione che associa a ogni posizione il suo dato.
+     * @return la lista costruita.
+     */
+    static HashLinkedList<Integer> of(MerkleHasher hasher, int width, IntUnaryOperator data) {
+        HashLinkedList<Integer> list = new HashLinkedList<>(hasher);
+        for (int i = 0; i < width; i++)
+            list.addAtTail(data.applyAsInt(i));
+        return list;
+    }
+
+    /**
+     * Restituisce una lista di width interi, in cui l'elemento in posizione i
+     * è i * 7.
+     *
+     * @param hasher
+     *                   l'algoritmo con cui calcolare gli hash della lista.
+     * @param width
+     *                   il numero di elementi della lista.
+     * @return la lista costruita.
+     */
+    static HashLinkedList<Integer> multiplesOf7(MerkleHasher hasher, int width) {
+        return of(hasher, width, i -> i * 7);
+    }
+
+    /**
+     * Restituisce una lista di width interi, in cui l'elemento in posizione i
+     * è i * 7, con l'algoritmo di hash predefinito.
+     *
+     * @param width
+     *                   il numero di elementi della lista.
+     * @return la lista costruita.
+     */
+    static HashLinkedList<Integer> multiplesOf7(int width) {
+        return multiplesOf7(MerkleHasher.MD5, width);
+    }
+}
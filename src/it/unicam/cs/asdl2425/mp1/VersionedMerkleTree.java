@@ -0,0 +1,313 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Albero di Merkle persistente, di cui vengono mantenute più versioni
+ * contemporaneamente. Ogni versione è identificata dal root di un albero di
+ * {@link MerkleNode} immutabili con la stessa forma di un {@link MerkleTree}:
+ * un aggiornamento crea una nuova versione copiando solamente i nodi sui
+ * cammini dalle foglie aggiornate al root, mentre tutti gli altri nodi sono
+ * condivisi con la versione precedente. Una versione con k foglie aggiornate
+ * occupa quindi O(k log n) nodi invece di O(n).
+ *
+ * Vengono mantenute al più un certo numero di versioni: quando un
+ * aggiornamento supera il limite la versione più vecchia viene rilasciata, e
+ * i nodi raggiungibili solamente da essa possono essere liberati dal garbage
+ * collector. Una versione può anche essere rilasciata esplicitamente con
+ * {@link #release(long)}.
+ *
+ * Gli aggiornamenti sono sincronizzati tra loro, mentre le letture non
+ * richiedono sincronizzazione: una prova può essere generata su una versione
+ * mentre vengono create le successive, perché i nodi di una versione non
+ * vengono mai modificati.
+ *
+ * @param <T>
+ *                il tipo di dati su cui l'albero è costruito.
+ *
+ * @author Francesco Palozzi francesco.palozzi@studenti.unicam.it
+ */
+public class VersionedMerkleTree<T> {
+
+    /**
+     * Numero di foglie dell'albero, uguale in tutte le versioni.
+     */
+    private final int width;
+
+    /**
+     * Altezza dell'albero.
+     */
+    private final int height;
+
+    /**
+     * Algoritmo usato per calcolare gli hash.
+     */
+    private final MerkleHasher hasher;
+
+    /**
+     * Funnel usato per calcolare gli hash delle foglie.
+     */
+    private final Funnel<? super T> funnel;
+
+    /**
+     * Numero massimo di versioni mantenute.
+     */
+    private final int retainedVersions;
+
+    /**
+     * Root delle versioni mantenute, per numero di versione.
+     */
+    private final NavigableMap<Long, MerkleNode> versions = new ConcurrentSkipListMap<>();
+
+    /**
+     * Numero dell'ultima versione creata.
+     */
+    private volatile long latestVersion;
+
+    /**
+     * Costruisce un albero persistente a partire da un oggetto
+     * HashLinkedList, usando l'algoritmo e il funnel della lista. I nodi
+     * della versione 0 sono quelli di un {@link MerkleTree} costruito sulla
+     * stessa lista.
+     *
+     * @param hashList
+     *                             un oggetto HashLinkedList contenente i dati
+     *                             e i relativi hash.
+     * @param retainedVersions
+     *                             il numero massimo di versioni mantenute,
+     *                             almeno 1.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota o se
+     *                                      retainedVersions non è positivo.
+     */
+    public VersionedMerkleTree(HashLinkedList<T> hashList, int retainedVersions) {
+
+        if(retainedVersions < 1)
+            throw new IllegalArgumentException("retainedVersions passato al costruttore non è positivo!");
+
+        MerkleTree<T> tree = new MerkleTree<>(hashList);
+        this.width = tree.getWidth();
+        this.height = tree.getHeight();
+        this.hasher = tree.getHasher();
+        this.funnel = tree.getFunnel();
+        this.retainedVersions = retainedVersions;
+        this.versions.put(0L, tree.getRoot());
+    }
+
+    /**
+     * Restituisce il numero di foglie dell'albero.
+     *
+     * @return il numero di foglie.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Restituisce l'altezza dell'albero.
+     *
+     * @return l'altezza dell'albero.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Restituisce l'algoritmo usato per calcolare gli hash dell'albero.
+     *
+     * @return l'algoritmo degli hash.
+     */
+    public MerkleHasher getHasher() {
+        return this.hasher;
+    }
+
+    /**
+     * Restituisce il funnel usato per calcolare gli hash delle foglie.
+     *
+     * @return il funnel dei dati.
+     */
+    public Funnel<? super T> getFunnel() {
+        return this.funnel;
+    }
+
+    /**
+     * Restituisce il numero massimo di versioni mantenute.
+     *
+     * @return il numero di versioni mantenute.
+     */
+    public int getRetainedVersions() {
+        return this.retainedVersions;
+    }
+
+    /**
+     * Restituisce il numero dell'ultima versione creata, che non viene mai
+     * rilasciata.
+     *
+     * @return il numero dell'ultima versione.
+     */
+    public long getLatestVersion() {
+        return this.latestVersion;
+    }
+
+    /**
+     * Restituisce i numeri delle versioni mantenute, in ordine crescente.
+     *
+     * @return l'insieme non modificabile dei numeri di versione.
+     */
+    public SortedSet<Long> getVersions() {
+        return Collections.unmodifiableSortedSet(new TreeSet<>(this.versions.keySet()));
+    }
+
+    /**
+     * Restituisce il root dell'ultima versione.
+     *
+     * @return il nodo radice dell'ultima versione.
+     */
+    public MerkleNode getRoot() {
+        return this.versions.lastEntry().getValue();
+    }
+
+    /**
+     * Restituisce il root di una versione mantenuta. I figli del nodo sono
+     * quelli della versione, quindi l'albero può essere visitato a partire
+     * dal nodo anche dopo che la versione è stata rilasciata.
+     *
+     * @param version
+     *                    il numero della versione.
+     * @return il nodo radice della versione.
+     * @throws IllegalArgumentException
+     *                                      se la versione non esiste o è stata
+     *                                      rilasciata.
+     */
+    public MerkleNode getRoot(long version) {
+        MerkleNode root = this.versions.get(version);
+        if(root == null)
+            throw new IllegalArgumentException("version passato a getRoot() non è una versione mantenuta!");
+        return root;
+    }
+
+    /**
+     * Sostituisce il dato di una foglia, creando una nuova versione.
+     *
+     * @param index
+     *                    la posizione della foglia da aggiornare.
+     * @param newData
+     *                    il nuovo dato della foglia.
+     * @return il numero della nuova versione.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o l'indice non è
+     *                                      compreso tra 0 e la larghezza
+     *                                      dell'albero esclusa.
+     */
+    public long updateLeaf(int index, T newData) {
+
+        if(newData == null)
+            throw new IllegalArgumentException("newData passato a updateLeaf() è null!");
+        if(index < 0 || index >= this.width)
+            throw new IllegalArgumentException("index passato a updateLeaf() non è una posizione valida!");
+
+        return updateLeaves(Map.of(index, newData));
+    }
+
+    /**
+     * Sostituisce i dati di più foglie, creando una sola nuova versione in cui
+     * ogni antenato comune a più foglie aggiornate viene copiato una sola
+     * volta. Se la mappa è vuota non viene creata nessuna versione, in modo
+     * che le versioni mantenute non vengano rimosse da chiamate senza
+     * effetto.
+     *
+     * @param updates
+     *                    mappa che associa alla posizione di ogni foglia da
+     *                    aggiornare il suo nuovo dato.
+     * @return il numero della nuova versione; il numero dell'ultima versione
+     *         se la mappa è vuota.
+     * @throws IllegalArgumentException
+     *                                      se la mappa è null, contiene un
+     *                                      dato null o una posizione non
+     *                                      compresa tra 0 e la larghezza
+     *                                      dell'albero esclusa.
+     */
+    public synchronized long updateLeaves(Map<Integer, T> updates) {
+
+        if(updates == null)
+            throw new IllegalArgumentException("updates passato a updateLeaves() è null!");
+
+        // Controllo di tutti gli aggiornamenti prima di creare la versione
+        int[] positions = new int[updates.size()];
+        int count = 0;
+        for (Map.Entry<Integer, T> entry : updates.entrySet()) {
+            Integer index = entry.getKey();
+            if(index == null || index < 0 || index >= this.width)
+                throw new IllegalArgumentException("updates passato a updateLeaves() contiene una posizione non valida!");
+            if(entry.getValue() == null)
+                throw new IllegalArgumentException("updates passato a updateLeaves() contiene un dato null!");
+            positions[count++] = index;
+        }
+        if(count == 0)
+            return this.latestVersion;
+
+        Arrays.sort(positions);
+        byte[][] digests = new byte[count][];
+        for (int i = 0; i < count; i++)
+            digests[i] = this.hasher.dataDigest(updates.get(positions[i]), this.funnel);
+
+        MerkleNode root = PersistentNodes.copyPath(this.hasher, getRoot(), this.height, 0, positions, digests, 0, count);
+
+        long version = this.latestVersion + 1;
+        this.versions.put(version, root);
+        this.latestVersion = version;
+
+        // Politica di mantenimento: restano le versioni più recenti
+        while (this.versions.size() > this.retainedVersions)
+            this.versions.pollFirstEntry();
+
+        return version;
+    }
+
+    /**
+     * Rilascia una versione, che non può più essere usata per generare prove.
+     * L'ultima versione non può essere rilasciata.
+     *
+     * @param version
+     *                    il numero della versione.
+     * @return true se la versione è stata rilasciata; false se non era
+     *         mantenuta o è l'ultima versione.
+     */
+    public synchronized boolean release(long version) {
+        if(version == this.latestVersion)
+            return false;
+        return this.versions.remove(version) != null;
+    }
+
+    /**
+     * Restituisce la prova di Merkle per la foglia di posizione data in una
+     * versione mantenuta, scendendo dal root della versione fino alla foglia.
+     * La prova coincide con quella di un {@link MerkleTree} con le stesse
+     * foglie della versione.
+     *
+     * @param version
+     *                    il numero della versione.
+     * @param index
+     *                    la posizione della foglia.
+     * @return la prova di Merkle per la foglia.
+     * @throws IllegalArgumentException
+     *                                      se la versione non è mantenuta o la
+     *                                      posizione non è valida.
+     */
+    public MerkleProof getMerkleProofAt(long version, int index) {
+
+        if(index < 0 || index >= this.width)
+            throw new IllegalArgumentException("index passato a getMerkleProofAt() non è valido!");
+        MerkleNode root = this.versions.get(version);
+        if(root == null)
+            throw new IllegalArgumentException("version passato a getMerkleProofAt() non è una versione mantenuta!");
+
+        return PersistentNodes.proofOf(root, this.height, index, this.hasher);
+    }
+}
@@ -0,0 +1,180 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per {@link VersionedMerkleTree}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testVersionsMatchMerkleTree()}: Verifica che ogni versione abbia il root e le prove di un
+ * {@link MerkleTree} aggiornato allo stesso modo, anche dopo le versioni successive.</li>
+ *
+ * <li>{@link #testStructuralSharing()}: Verifica che una nuova versione crei solamente i nodi sui
+ * cammini delle foglie aggiornate.</li>
+ *
+ * <li>{@link #testRetention()}: Verifica che vengano mantenute solamente le versioni più recenti, anche
+ * dopo chiamate senza aggiornamenti, e il rilascio esplicito delle versioni.</li>
+ *
+ * <li>{@link #testProofsDuringUpdates()}: Verifica che le prove di una versione restino valide mentre
+ * un altro thread crea nuove versioni.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate eccezioni per parametri non
+ * validi.</li>
+ * </ul>
+ */
+class VersionedMerkleTreeTest {
+
+    /**
+     * Conta i nodi raggiungibili da un root che non sono raggiungibili da
+     * un altro root.
+     */
+    private static int newNodes(MerkleNode root, MerkleNode previous) {
+        Set<MerkleNode> old = Collections.newSetFromMap(new IdentityHashMap<>());
+        collect(previous, old);
+        Set<MerkleNode> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        collect(root, current);
+        current.removeAll(old);
+        return current.size();
+    }
+
+    private static void collect(MerkleNode node, Set<MerkleNode> nodes) {
+        if(node == null || !nodes.add(node))
+            return;
+        collect(node.getLeft(), nodes);
+        collect(node.getRight(), nodes);
+    }
+
+    @Test
+    void testVersionsMatchMerkleTree() {
+        for (int width : new int[] { 1, 2, 5, 37, 64 }) {
+            VersionedMerkleTree<Integer> versioned = new VersionedMerkleTree<>(TestLists.multiplesOf7(width), 100);
+            MerkleTree<Integer> tree = new MerkleTree<>(TestLists.multiplesOf7(width));
+            List<String> roots = new ArrayList<>();
+            List<Integer> updated = new ArrayList<>();
+            roots.add(tree.getRoot().getHash());
+
+            for (int step = 1; step <= 10; step++) {
+                int index = (step * 13) % width;
+                int data = -step;
+                if(step % 3 == 0) {
+                    int other = (index + width / 2) % width;
+                    Map<Integer, Integer> updates = (other == index) ? Map.of(index, data)
+                            : Map.of(index, data, other, data - 100);
+                    assertEquals(step, versioned.updateLeaves(updates));
+                    tree.updateLeaves(updates);
+                }
+                else {
+                    assertEquals(step, versioned.updateLeaf(index, data));
+                    tree.updateLeaf(index, data);
+                }
+                roots.add(tree.getRoot().getHash());
+                updated.add(data);
+
+                assertEquals(tree.getRoot(), versioned.getRoot());
+                assertIterableEquals(tree.getMerkleProof(data).getProofHashes(),
+                        versioned.getMerkleProofAt(step, index).getProofHashes(), width + " foglie, versione " + step);
+            }
+
+            // Le versioni precedenti non sono cambiate
+            for (int version = 0; version <= 10; version++)
+                assertEquals(roots.get(version), versioned.getRoot(version).getHash());
+            for (int step = 1; step <= 10; step++) {
+                int index = (step * 13) % width;
+                assertTrue(versioned.getMerkleProofAt(step, index).proveValidityOfData(updated.get(step - 1)));
+            }
+            assertTrue(versioned.getMerkleProofAt(0, width - 1).proveValidityOfData((width - 1) * 7));
+        }
+    }
+
+    @Test
+    void testStructuralSharing() {
+        VersionedMerkleTree<Integer> versioned = new VersionedMerkleTree<>(TestLists.multiplesOf7(1000), 10);
+        int height = versioned.getHeight();
+
+        versioned.updateLeaf(500, -1);
+        assertEquals(height + 1, newNodes(versioned.getRoot(1), versioned.getRoot(0)));
+
+        // Due foglie sorelle condividono tutti gli antenati
+        versioned.updateLeaves(Map.of(2, -2, 3, -3));
+        assertEquals(height + 2, newNodes(versioned.getRoot(2), versioned.getRoot(1)));
+
+        // Foglie lontane condividono solamente il root
+        versioned.updateLeaves(Map.of(0, -4, 999, -5));
+        assertEquals(2 * height + 1, newNodes(versioned.getRoot(3), versioned.getRoot(2)));
+
+        // Nessun aggiornamento, nessuna nuova versione
+        assertEquals(3, versioned.updateLeaves(Map.of()));
+        assertEquals(3, versioned.getLatestVersion());
+        assertEquals(Set.of(0L, 1L, 2L, 3L), versioned.getVersions());
+    }
+
+    @Test
+    void testRetention() {
+        VersionedMerkleTree<Integer> versioned = new VersionedMerkleTree<>(TestLists.multiplesOf7(20), 3);
+        for (int i = 0; i < 5; i++)
+            versioned.updateLeaf(i, -i - 1);
+
+        assertEquals(5, versioned.getLatestVersion());
+        assertEquals(Set.of(3L, 4L, 5L), versioned.getVersions());
+
+        // Le chiamate senza aggiornamenti non rimuovono le versioni mantenute
+        for (int i = 0; i < 5; i++)
+            assertEquals(5, versioned.updateLeaves(Map.of()));
+        assertEquals(Set.of(3L, 4L, 5L), versioned.getVersions());
+        assertThrows(IllegalArgumentException.class, () -> versioned.getRoot(1));
+        assertThrows(IllegalArgumentException.class, () -> versioned.getMerkleProofAt(2, 0));
+
+        assertTrue(versioned.release(3));
+        assertFalse(versioned.release(3));
+        assertFalse(versioned.release(5));
+        assertEquals(Set.of(4L, 5L), versioned.getVersions());
+        assertTrue(versioned.getMerkleProofAt(4, 3).proveValidityOfData(-4));
+    }
+
+    @Test
+    void testProofsDuringUpdates() throws Exception {
+        VersionedMerkleTree<Integer> versioned = new VersionedMerkleTree<>(TestLists.multiplesOf7(256), 2000);
+
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 1000; i++)
+                versioned.updateLeaf(i % 256, -i - 1);
+        });
+
+        for (int i = 0; i < 2000; i++) {
+            int index = i % 256;
+            assertTrue(versioned.getMerkleProofAt(0, index).proveValidityOfData(index * 7));
+            assertNotNull(versioned.getRoot());
+        }
+
+        writer.get(10, TimeUnit.SECONDS);
+        assertEquals(1000, versioned.getLatestVersion());
+        assertTrue(versioned.getMerkleProofAt(1000, 999 % 256).proveValidityOfData(-1000));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new VersionedMerkleTree<Integer>(null, 3));
+        assertThrows(IllegalArgumentException.class, () -> new VersionedMerkleTree<>(TestLists.multiplesOf7(4), 0));
+
+        VersionedMerkleTree<Integer> versioned = new VersionedMerkleTree<>(TestLists.multiplesOf7(4), 3);
+        assertThrows(IllegalArgumentException.class, () -> versioned.updateLeaf(4, 1));
+        assertThrows(IllegalArgumentException.class, () -> versioned.updateLeaf(0, null));
+        assertThrows(IllegalArgumentException.class, () -> versioned.updateLeaves(null));
+        assertThrows(IllegalArgumentException.class, () -> versioned.updateLeaves(Map.of(-1, 1)));
+        assertThrows(IllegalArgumentException.class, () -> versioned.getMerkleProofAt(0, 4));
+        assertThrows(IllegalArgumentException.class, () -> versioned.getMerkleProofAt(7, 0));
+        assertEquals(0, versioned.getLatestVersion());
+    }
+}